@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+/*
+ * Writes the op registry index of the compiled ops (see
+ * net.imagej.ops.OpRegistryIndex), so that the op matching service can filter
+ * candidate ops without loading their classes.
+ */
+
+classesDirectory = project.build.outputDirectory
+indexFile = new java.io.File(classesDirectory,
+	'META-INF/imagej-ops/op-registry.txt')
+
+// load the compiled ops and their dependencies in isolation from Maven
+urls = project.compileClasspathElements.collect {
+	new java.io.File(it).toURI().toURL()
+} as java.net.URL[]
+loader = new java.net.URLClassLoader(urls, (ClassLoader) null)
+
+thread = Thread.currentThread()
+previousLoader = thread.getContextClassLoader()
+thread.setContextClassLoader(loader)
+try {
+	registry = loader.loadClass('net.imagej.ops.OpRegistryIndex')
+	args = [classesDirectory, indexFile.getPath()] as String[]
+	registry.getMethod('main', String[].class).invoke(null, (Object) args)
+}
+finally {
+	thread.setContextClassLoader(previousLoader)
+	loader.close()
+}
@@ -50,7 +50,13 @@ public class CustomOpEnvironment extends AbstractContextual implements
 	// -- Fields --
 
 	private final OpEnvironment parent;
-	private final OpIndex index;
+	private final Collection<? extends OpInfo> customInfos;
+
+	/** The parent's ops from which the current index was built. */
+	private Collection<OpInfo> parentInfos;
+
+	/** Index of the available ops, built on demand. */
+	private volatile OpIndex index;
 
 	// -- Constructors --
 
@@ -82,12 +88,8 @@ public class CustomOpEnvironment extends AbstractContextual implements
 	{
 		setContext(context);
 		this.parent = parent;
-		index = new OpIndex();
-		// NB: If this is not performant and/or dynamic enough, we could create/use
-		// a concatenating collection (see e.g. Guava's Iterables.concat method)
-		// that does not copy all the elements.
-		if (parent != null) index.addOps(parent.infos());
-		index.addOps(infos);
+		customInfos = infos == null ? Collections.emptyList() : //
+			new ArrayList<>(infos);
 	}
 
 	// -- OpEnvironment methods --
@@ -99,12 +101,21 @@ public class CustomOpEnvironment extends AbstractContextual implements
 
 	@Override
 	public OpInfo info(final Class<? extends Op> type) {
-		return index.get(type.getName());
+		return index().get(type.getName());
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned collection is an immutable snapshot. If there are no
+	 * additional ops, it is the parent's own snapshot. Otherwise, it is built
+	 * once and shared by all callers until the parent's ops change.
+	 * </p>
+	 */
 	@Override
 	public Collection<OpInfo> infos() {
-		return index.values();
+		if (customInfos.isEmpty() && parent != null) return parent.infos();
+		return index().infos();
 	}
 
 	@Override
@@ -117,23 +128,53 @@ public class CustomOpEnvironment extends AbstractContextual implements
 		return parent().namespace(nsClass);
 	}
 
+	// -- Helper methods --
+
+	/**
+	 * Gets the index of available ops, rebuilding it if the parent's ops have
+	 * changed.
+	 */
+	private OpIndex index() {
+		final Collection<OpInfo> pInfos = parent == null ? null : parent.infos();
+		final OpIndex i = index;
+		if (i != null && pInfos == parentInfos) return i;
+		return buildIndex(pInfos);
+	}
+
+	private synchronized OpIndex buildIndex(
+		final Collection<OpInfo> pInfos)
+	{
+		if (index != null && pInfos == parentInfos) return index;
+		final OpIndex i = new OpIndex();
+		i.addOps(pInfos);
+		i.addOps(customInfos);
+		parentInfos = pInfos;
+		index = i;
+		return i;
+	}
+
 	// -- Helper classes --
 
 	/** A table mapping available ops from class name to {@link OpInfo}. */
 	private static class OpIndex extends HashMap<String, OpInfo> {
 
+		/** Sorted snapshot of the ops, built on demand. */
+		private Collection<OpInfo> infos;
+
 		public void addOps(final Collection<? extends OpInfo> infos) {
 			if (infos == null) return;
 			for (final OpInfo info : infos) {
 				put(info.cInfo().getDelegateClassName(), info);
 			}
 		}
-		
-		@Override
-		public Collection<OpInfo> values() {
-			final ArrayList<OpInfo> infos = new ArrayList<>();
-			infos.addAll(super.values());
-			Collections.sort(infos);
+
+		/** Gets an immutable list of the ops, sorted by priority. */
+		public synchronized Collection<OpInfo> infos() {
+			if (infos == null) {
+				final ArrayList<OpInfo> list = new ArrayList<>(values());
+				Collections.sort(list);
+				infos = Collections.unmodifiableList(list);
+			}
 			return infos;
 		}
 
@@ -34,14 +34,18 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 import net.imagej.ops.OpCandidate.StatusCode;
 
 import org.scijava.Context;
-import org.scijava.InstantiableException;
 import org.scijava.convert.ConvertService;
 import org.scijava.log.LogService;
 import org.scijava.module.Module;
@@ -77,6 +81,26 @@ public class DefaultOpMatchingService extends AbstractService implements
 	@Parameter
 	private LogService log;
 
+	/** Build-time op metadata; loaded on first use. */
+	private volatile OpRegistryIndex registry;
+
+	/** Candidate lookup tables, one per op environment. */
+	private final Map<OpEnvironment, OpInfoIndex> indices = Collections
+		.synchronizedMap(new WeakHashMap<>());
+
+	/** Number of matches served from the match cache. */
+	private final AtomicLong matchCacheHits = new AtomicLong();
+
+	/** Number of matches not served from the match cache. */
+	private final AtomicLong matchCacheMisses = new AtomicLong();
+
+	/** Matching diagnostics, keyed by op name (or type, if no name). */
+	private final Map<Object, MatchStats> matchStats =
+		new ConcurrentHashMap<>();
+
+	/** Whether op instances of cached matches are pooled for reuse. */
+	private volatile boolean pooling;
+
 	// -- OpMatchingService methods --
 
 	@Override
@@ -88,14 +112,14 @@ public class DefaultOpMatchingService extends AbstractService implements
 	public OpCandidate findMatch(final OpEnvironment ops,
 		final List<OpRef> refs)
 	{
-		// find candidates with matching name & type
-		final List<OpCandidate> candidates = findCandidates(ops, refs);
-		assertCandidates(candidates, refs.get(0));
-
-		// narrow down candidates to the exact matches
-		final List<OpCandidate> matches = filterMatches(candidates);
+		return findMatch(ops, refs, false);
+	}
 
-		return singleMatch(candidates, matches);
+	@Override
+	public OpCandidate leaseMatch(final OpEnvironment ops,
+		final List<OpRef> refs)
+	{
+		return findMatch(ops, refs, pooling);
 	}
 
 	@Override
@@ -109,15 +133,7 @@ public class DefaultOpMatchingService extends AbstractService implements
 	public List<OpCandidate> findCandidates(final OpEnvironment ops,
 		final List<OpRef> refs)
 	{
-		final ArrayList<OpCandidate> candidates = new ArrayList<>();
-		for (final OpInfo info : ops.infos()) {
-			for (final OpRef ref : refs) {
-				if (isCandidate(info, ref)) {
-					candidates.add(new OpCandidate(ops, ref, info));
-				}
-			}
-		}
-		return candidates;
+		return index(ops).candidates(ops, refs, false);
 	}
 
 	@Override
@@ -157,11 +173,15 @@ public class DefaultOpMatchingService extends AbstractService implements
 
 	@Override
 	public Module assignInputs(final Module module, final Object... args) {
-		int i = 0;
-		for (final ModuleItem<?> item : OpUtils.inputs(module.getInfo())) {
-			assign(module, args[i++], item);
-		}
-		return module;
+		return assignInputs(module, null, args);
+	}
+
+	@Override
+	public void release(final OpCandidate match) {
+		final OpPool.Lease lease = match.getLease();
+		if (lease == null) return;
+		match.setLease(null);
+		lease.release();
 	}
 
 	@Override
@@ -206,25 +226,296 @@ public class DefaultOpMatchingService extends AbstractService implements
 		return paddedArgs;
 	}
 
-	// -- Helper methods --
+	// -- DefaultOpMatchingService methods --
+
+	/**
+	 * Gets the number of {@link #findMatch} requests which were served from the
+	 * cache of previous matches.
+	 */
+	public long getMatchCacheHits() {
+		return matchCacheHits.get();
+	}
+
+	/**
+	 * Gets the number of {@link #findMatch} requests which could not be served
+	 * from the cache of previous matches.
+	 */
+	public long getMatchCacheMisses() {
+		return matchCacheMisses.get();
+	}
+
+	/**
+	 * Gets the matching diagnostics of each requested op name, by descending
+	 * total matching time.
+	 */
+	public List<MatchStats> getMatchStats() {
+		final List<MatchStats> list = new ArrayList<>(matchStats.values());
+		Collections.sort(list, Comparator.comparingLong(
+			MatchStats::getMatchTime).reversed());
+		return list;
+	}
+
+	/**
+	 * Gets the matching diagnostics of the given op name, or null if it was
+	 * never requested. Requests by type alone are listed under the type's
+	 * {@code NAME} constant.
+	 */
+	public MatchStats getMatchStats(final String name) {
+		for (final MatchStats stats : matchStats.values()) {
+			if (stats.getName().equals(name)) return stats;
+		}
+		return null;
+	}
+
+	/** Clears the matching diagnostics. */
+	public void resetMatchStats() {
+		matchStats.clear();
+	}
 
-	/** Helper method of {@link #findCandidates}. */
-	private boolean isCandidate(final OpInfo info, final OpRef ref) {
-		if (!info.nameMatches(ref.getName())) return false;
+	/** Gets whether op instances of cached matches are pooled for reuse. */
+	public boolean isPooling() {
+		return pooling;
+	}
 
-		// the name matches; now check the class
-		final Class<?> opClass;
+	/**
+	 * Sets whether op instances of cached matches are pooled for reuse.
+	 * <p>
+	 * When enabled, an op executed via {@link OpEnvironment#run} is returned to
+	 * a pool afterwards, even if it fails, with its parameters reset to the values it was created
+	 * with. A later match with the same argument classes then reuses it instead
+	 * of creating and injecting a new instance. Pooling is only safe for ops
+	 * which keep no other state between executions beyond what
+	 * {@link Initializable#initialize()} recomputes, hence it
+	 * is disabled by default.
+	 * </p>
+	 */
+	public void setPooling(final boolean pooling) {
+		this.pooling = pooling;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Helper method of {@link #findMatch(OpEnvironment, List)} and
+	 * {@link #leaseMatch}.
+	 */
+	private OpCandidate findMatch(final OpEnvironment ops,
+		final List<OpRef> refs, final boolean pooled)
+	{
+		final MatchStats stats = stats(refs.get(0));
+		final long start = System.nanoTime();
+		long time = 0;
+		boolean failed = true;
 		try {
-			opClass = info.cInfo().loadClass();
+			final OpCandidate match = findMatch(ops, refs, stats, pooled);
+			time = -match.getInitializeTime();
+			failed = false;
+			return match;
 		}
-		catch (final InstantiableException exc) {
-			final String msg = "Invalid op: " + info.cInfo().getClassName();
-			if (log.isDebug()) log.debug(msg, exc);
-			else log.error(msg);
-			return false;
+		finally {
+			time += System.nanoTime() - start;
+			stats.request(time, failed);
+		}
+	}
+
+	/** Helper method of {@link #findMatch(OpEnvironment, List, boolean)}. */
+	private OpCandidate findMatch(final OpEnvironment ops,
+		final List<OpRef> refs, final MatchStats stats, final boolean pooled)
+	{
+		final OpInfoIndex index = index(ops);
+
+		// reuse the previous match for the same argument classes, if any
+		final OpMatchCache.Key key = OpMatchCache.key(refs);
+		final OpCandidate cached = //
+			cachedMatch(ops, refs, index.matchCache(), key, pooled);
+		if (cached != null) {
+			matchCacheHits.incrementAndGet();
+			stats.cacheHit();
+			final List<OpCandidate> match = Collections.singletonList(cached);
+			return singleMatch(match, match);
+		}
+		matchCacheMisses.incrementAndGet();
+
+		// find candidates with matching name, type & arity
+		final List<OpCandidate> candidates = index.candidates(ops, refs, true);
+
+		// narrow down candidates to the exact matches
+		final List<OpCandidate> matches = filterMatches(candidates);
+		if (matches.size() == 1) {
+			if (cacheable(candidates)) {
+				index.matchCache().put(key, plan(refs, matches.get(0)));
+			}
+			return singleMatch(candidates, matches);
 		}
 
-		return ref.typesMatch(opClass);
+		// NB: No single match; redo with all candidates for a full analysis.
+		final List<OpCandidate> allCandidates = findCandidates(ops, refs);
+		assertCandidates(allCandidates, refs.get(0));
+		return singleMatch(allCandidates, filterMatches(allCandidates));
+	}
+
+	/**
+	 * Gets the index of the given environment's ops, rebuilding it if the
+	 * available ops have changed.
+	 * <p>
+	 * Helper method of {@link #findCandidates} and {@link #findMatch}.
+	 * </p>
+	 */
+	private OpInfoIndex index(final OpEnvironment ops) {
+		final Collection<OpInfo> infos = ops.infos();
+		final OpInfoIndex index = indices.get(ops);
+		if (index != null && index.isIndexOf(infos)) return index;
+		final OpInfoIndex newIndex = new OpInfoIndex(infos, registry(), log);
+		indices.put(ops, newIndex);
+		return newIndex;
+	}
+
+	/**
+	 * Gets the build-time op metadata, loading it on first use.
+	 * <p>
+	 * Helper method of {@link #index}.
+	 * </p>
+	 */
+	private OpRegistryIndex registry() {
+		OpRegistryIndex result = registry;
+		if (result == null) {
+			// NB: Plugins are discovered via the context class loader, too.
+			final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			result = OpRegistryIndex.load(loader == null ? //
+				OpRegistryIndex.class.getClassLoader() : loader);
+			if (log.isDebug()) {
+				log.debug("Loaded op registry index of " + result.size() + " ops");
+			}
+			registry = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Recreates the previous match for the given references, if there is one
+	 * and the matched op still conforms to the new arguments.
+	 * <p>
+	 * Helper method of {@link #findMatch}.
+	 * </p>
+	 */
+	private OpCandidate cachedMatch(final OpEnvironment ops,
+		final List<OpRef> refs, final OpMatchCache cache,
+		final OpMatchCache.Key key, final boolean pooled)
+	{
+		final OpMatchCache.Plan plan = cache.get(key);
+		if (plan == null) return null;
+
+		final OpRef ref = refs.get(plan.refIndex());
+		final OpCandidate candidate = new OpCandidate(ops, ref, plan.info());
+		final Object[] args = ref.getArgs();
+		final Object[] paddedArgs = new Object[plan.inputCount()];
+		for (int i = 0; i < paddedArgs.length; i++) {
+			final int argIndex = plan.argIndex(i);
+			if (argIndex >= 0) paddedArgs[i] = args[argIndex];
+		}
+		candidate.setArgs(paddedArgs);
+
+		// create (or reuse) module and assign the inputs, as planned
+		final OpAccessor accessor = OpAccessor.of(candidate.cInfo());
+		final OpPool.Lease lease = pooled ? plan.pool().lease(
+			() -> moduleService.createModule(candidate.cInfo())) : null;
+		final Module module = lease == null ? //
+			moduleService.createModule(candidate.cInfo()) : lease.module();
+		final Op op = OpUtils.unwrap(module, ref);
+		op.setEnvironment(ops);
+		final MatchStats stats = stats(ref);
+		for (int i = 0; i < paddedArgs.length; i++) {
+			assign(module, accessor, i, paddedArgs[i], plan.mode(i), stats);
+		}
+		candidate.setModule(module);
+
+		// NB: A contingent op must still be happy with the new arguments.
+		if (op instanceof Contingent && !conforms((Contingent) op, ref)) {
+			if (lease != null) lease.release();
+			cache.remove(key);
+			return null;
+		}
+		candidate.setLease(lease);
+		return candidate;
+	}
+
+	/**
+	 * Determines whether a match among the given candidates depends only on the
+	 * classes of the arguments. This is not the case if any contingent op
+	 * rejected the argument values.
+	 * <p>
+	 * Helper method of {@link #findMatch}.
+	 * </p>
+	 */
+	private boolean cacheable(final List<OpCandidate> candidates) {
+		for (final OpCandidate candidate : candidates) {
+			if (candidate.getStatusCode() == StatusCode.DOES_NOT_CONFORM) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records how the given match assigns the arguments to the op's inputs.
+	 * <p>
+	 * Helper method of {@link #findMatch}.
+	 * </p>
+	 */
+	private OpMatchCache.Plan plan(final List<OpRef> refs,
+		final OpCandidate match)
+	{
+		int refIndex = 0;
+		while (refs.get(refIndex) != match.getRef()) refIndex++;
+
+		final List<ModuleItem<?>> inputs = match.inputs();
+		final int[] argIndices = argIndices(inputs, match.getRef()
+			.getArgs().length);
+		final int[] modes = new int[inputs.size()];
+		final Object[] args = match.getArgs();
+		for (int i = 0; i < modes.length; i++) {
+			final Type type = inputs.get(i).getGenericType();
+			if (args[i] == null) modes[i] = OpMatchCache.Plan.CAST;
+			else if (isMatchingClass(args[i], type)) {
+				modes[i] = OpMatchCache.Plan.NULL;
+			}
+			else if (type instanceof Class && !((Class<?>) type).isPrimitive() &&
+				((Class<?>) type).isInstance(args[i]))
+			{
+				modes[i] = OpMatchCache.Plan.CAST;
+			}
+			else modes[i] = OpMatchCache.Plan.CONVERT;
+		}
+		return new OpMatchCache.Plan(match.opInfo(), refIndex, argIndices, modes);
+	}
+
+	/**
+	 * Computes, for each input, the index of the argument assigned to it, or -1
+	 * if the input is padded with null. This follows the same rules as
+	 * {@link #padArgs}.
+	 * <p>
+	 * Helper method of {@link #plan}.
+	 * </p>
+	 */
+	private int[] argIndices(final List<ModuleItem<?>> inputs,
+		final int argCount)
+	{
+		final int[] argIndices = new int[inputs.size()];
+		int requiredCount = 0;
+		for (final ModuleItem<?> item : inputs) {
+			if (item.isRequired()) requiredCount++;
+		}
+		final int argsToPad = inputs.size() - argCount;
+		final int optionalsToFill = inputs.size() - requiredCount - argsToPad;
+		int argIndex = 0, optionalIndex = 0, i = 0;
+		for (final ModuleItem<?> item : inputs) {
+			if (!item.isRequired() && optionalIndex++ >= optionalsToFill) {
+				argIndices[i++] = -1;
+				continue;
+			}
+			argIndices[i++] = argIndex++;
+		}
+		return argIndices;
 	}
 
 	/** Helper method of {@link #findMatch}. */
@@ -251,11 +542,16 @@ public class DefaultOpMatchingService extends AbstractService implements
 	{
 		final ArrayList<OpCandidate> validCandidates = new ArrayList<>();
 		for (final OpCandidate candidate : candidates) {
+			final MatchStats stats = stats(candidate.getRef());
+			stats.candidate();
 			if (!valid(candidate) || !outputsMatch(candidate)) continue;
 			final Object[] args = padArgs(candidate);
 			if (args == null) continue;
 			candidate.setArgs(args);
-			if (missArgs(candidate)) continue;
+			if (missArgs(candidate)) {
+				stats.missingArgs();
+				continue;
+			}
 			validCandidates.add(candidate);
 		}
 		return validCandidates;
@@ -329,7 +625,10 @@ public class DefaultOpMatchingService extends AbstractService implements
 			if (args[i] != null) {
 				final Class<?> typeClass = OpMatchingUtil.getClass(item.getType());
 				final Class<?> argClass = OpMatchingUtil.getClass(args[i]);
-				if (!typeClass.equals(argClass)) return false;
+				if (!typeClass.equals(argClass)) {
+					stats(candidate.getRef()).imperfectTypes();
+					return false;
+				}
 			}
 			i++;
 		}
@@ -358,7 +657,10 @@ public class DefaultOpMatchingService extends AbstractService implements
 			priority = p;
 
 			final int nextLevels = findCastLevels(candidate);
-			if (nextLevels < 0 || nextLevels > minLevels) continue;
+			if (nextLevels < 0 || nextLevels > minLevels) {
+				stats(candidate.getRef()).castRejection();
+				continue;
+			}
 
 			if (!moduleConforms(candidate)) continue;
 
@@ -423,7 +725,9 @@ public class DefaultOpMatchingService extends AbstractService implements
 
 			// initialize the op, if appropriate
 			if (m.getDelegateObject() instanceof Initializable) {
+				final long start = System.nanoTime();
 				((Initializable) m.getDelegateObject()).initialize();
+				matches.get(0).setInitializeTime(System.nanoTime() - start);
 			}
 
 			return matches.get(0);
@@ -488,7 +792,7 @@ public class DefaultOpMatchingService extends AbstractService implements
 		final Object op = module.getDelegateObject();
 		if (op instanceof Contingent) {
 			final Contingent c = (Contingent) op;
-			if (!c.conforms()) {
+			if (!conforms(c, candidate.getRef())) {
 				candidate.setStatus(StatusCode.DOES_NOT_CONFORM);
 				return false;
 			}
@@ -516,7 +820,7 @@ public class DefaultOpMatchingService extends AbstractService implements
 		final Object op = module.getDelegateObject();
 		if (op instanceof Contingent) {
 			final Contingent c = (Contingent) op;
-			if (!c.conforms()) {
+			if (!conforms(c, candidate.getRef())) {
 				candidate.setStatus(StatusCode.DOES_NOT_CONFORM);
 				return null;
 			}
@@ -569,7 +873,7 @@ public class DefaultOpMatchingService extends AbstractService implements
 		op.setEnvironment(candidate.ops());
 
 		// populate the inputs and return the module
-		return assignInputs(module, args);
+		return assignInputs(module, stats(candidate.getRef()), args);
 	}
 
 	/** Helper method of {@link #match(OpCandidate, Object[])}. */
@@ -585,6 +889,7 @@ public class DefaultOpMatchingService extends AbstractService implements
 		}
 
 		final Type type = item.getGenericType();
+		stats(candidate.getRef()).conversion();
 		if (!canConvert(arg, type)) {
 			candidate.setStatus(StatusCode.CANNOT_CONVERT, arg.getClass().getName() +
 				" => " + type, item);
@@ -603,14 +908,50 @@ public class DefaultOpMatchingService extends AbstractService implements
 		return convertService.supports(arg, type);
 	}
 
+	/**
+	 * Assigns the given arguments to the module's inputs, counting conversions
+	 * towards the given diagnostics, if any.
+	 */
+	private Module assignInputs(final Module module, final MatchStats stats,
+		final Object... args)
+	{
+		final OpAccessor accessor = OpAccessor.of(module.getInfo());
+		final List<ModuleItem<?>> inputs = accessor.inputs();
+		for (int i = 0; i < inputs.size(); i++) {
+			assign(module, accessor, i, args[i], stats);
+		}
+		return module;
+	}
+
 	/** Helper method of {@link #assignInputs}. */
-	private void assign(final Module module, final Object arg,
-		final ModuleItem<?> item)
+	private void assign(final Module module, final OpAccessor accessor,
+		final int index, final Object arg, final MatchStats stats)
 	{
+		final ModuleItem<?> item = accessor.inputs().get(index);
 		if (arg != null) {
+			if (stats != null) stats.conversion();
 			final Type type = item.getGenericType();
 			final Object value = convert(arg, type);
-			module.setInput(item.getName(), value);
+			accessor.setInput(module, index, value);
+		}
+		module.resolveInput(item.getName());
+	}
+
+	/** Helper method of {@link #cachedMatch}. */
+	private void assign(final Module module, final OpAccessor accessor,
+		final int index, final Object arg, final int mode,
+		final MatchStats stats)
+	{
+		final ModuleItem<?> item = accessor.inputs().get(index);
+		if (arg != null) {
+			final Object value;
+			if (mode == OpMatchCache.Plan.CAST) value = arg;
+			else if (mode == OpMatchCache.Plan.NULL) value = null;
+			else {
+				stats.conversion();
+				value = convertService.convert(arg, item.getGenericType());
+			}
+			accessor.setInput(module, index, value);
 		}
 		module.resolveInput(item.getName());
 	}
@@ -624,6 +965,48 @@ public class DefaultOpMatchingService extends AbstractService implements
 		return convertService.convert(arg, type);
 	}
 
+	/** Asks the given op whether it conforms, counting the answer. */
+	private boolean conforms(final Contingent op, final OpRef ref) {
+		final boolean conforms = op.conforms();
+		stats(ref).conforms(conforms);
+		return conforms;
+	}
+
+	/** Gets the matching diagnostics of the given reference's op name. */
+	private MatchStats stats(final OpRef ref) {
+		final Object key = statsKey(ref);
+		final MatchStats stats = matchStats.get(key);
+		if (stats != null) return stats;
+		return matchStats.computeIfAbsent(key, k -> new MatchStats(statsName(k)));
+	}
+
+	/**
+	 * Gets the key of the diagnostics for the given reference: its op name or,
+	 * if it has none, its op type.
+	 */
+	private static Object statsKey(final OpRef ref) {
+		if (ref.getName() != null) return ref.getName();
+		final Collection<? extends Type> types = ref.getTypes();
+		return types == null || types.isEmpty() ? "" : types.iterator().next();
+	}
+
+	/**
+	 * Gets the display name of the diagnostics with the given key. Op types
+	 * are shown by their {@code NAME} constant, if any.
+	 */
+	private static String statsName(final Object key) {
+		if (key instanceof String) return (String) key;
+		final Class<?> c = GenericUtils.getClass((Type) key);
+		try {
+			final Object name = c.getField("NAME").get(null);
+			if (name instanceof String) return (String) name;
+		}
+		catch (final ReflectiveOperationException | RuntimeException exc) {
+			// NB: No NAME constant; fall back to the type name.
+		}
+		return c.getName();
+	}
+
 	/** Determines whether the argument is a matching class instance. */
 	private boolean isMatchingClass(final Object arg, final Type type) {
 		return arg instanceof Class && convertService.supports((Class<?>) arg,
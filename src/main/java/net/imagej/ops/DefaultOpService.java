@@ -32,12 +32,22 @@ package net.imagej.ops;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.scijava.command.CommandInfo;
 import org.scijava.command.CommandService;
+import org.scijava.event.EventHandler;
 import org.scijava.plugin.AbstractPTService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.event.PluginsAddedEvent;
+import org.scijava.plugin.event.PluginsListEvent;
+import org.scijava.plugin.event.PluginsRemovedEvent;
 import org.scijava.service.Service;
 
 /**
@@ -59,6 +69,18 @@ public class DefaultOpService extends AbstractPTService<Op> implements
 	@Parameter
 	private NamespaceService namespaceService;
 
+	/**
+	 * Immutable snapshot of the available ops, or null if it must be rebuilt
+	 * because ops were added or removed.
+	 */
+	private volatile Registry registry;
+
+	/** The most recently built registry, whose {@link OpInfo}s are reused. */
+	private Registry lastRegistry;
+
+	/** Number of times ops were added or removed. */
+	private final AtomicLong modifications = new AtomicLong();
+
 	// -- OpEnvironment methods --
 
 	@Override
@@ -68,21 +90,24 @@ public class DefaultOpService extends AbstractPTService<Op> implements
 
 	@Override
 	public OpInfo info(final Class<? extends Op> type) {
-		// TODO: Consider maintaining a separate and efficient
-		// OpInfo data structure in AbstractOpEnvironment.
+		final OpInfo info = registry().byClass.get(type.getName());
+		if (info != null) return info;
+
+		// NB: Not a registered op; wrap the command directly.
 		final CommandInfo cInfo = commandService.getCommand(type);
 		return cInfo == null ? null : new OpInfo(cInfo);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned collection is an immutable snapshot, which is shared by all
+	 * callers until ops are added or removed.
+	 * </p>
+	 */
 	@Override
 	public Collection<OpInfo> infos() {
-		// TODO: Consider maintaining a separate and efficient
-		// OpInfo data structure in AbstractOpEnvironment.
-		final ArrayList<OpInfo> infos = new ArrayList<>();
-		for (final CommandInfo cInfo : commandService.getCommandsOfType(Op.class)) {
-			infos.add(new OpInfo(cInfo));
-		}
-		return infos;
+		return registry().infos;
 	}
 
 	@Override
@@ -90,6 +115,18 @@ public class DefaultOpService extends AbstractPTService<Op> implements
 		return namespaceService.create(nsClass, this);
 	}
 
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final PluginsAddedEvent evt) {
+		invalidate(evt);
+	}
+
+	@EventHandler
+	protected void onEvent(final PluginsRemovedEvent evt) {
+		invalidate(evt);
+	}
+
 	// -- SingletonService methods --
 
 	@Override
@@ -97,4 +134,81 @@ public class DefaultOpService extends AbstractPTService<Op> implements
 		return Op.class;
 	}
 
+	// -- Helper methods --
+
+	/** Gets the current registry of ops, rebuilding it if necessary. */
+	private Registry registry() {
+		final Registry r = registry;
+		return r == null ? buildRegistry() : r;
+	}
+
+	/**
+	 * Rebuilds the registry of ops. The {@link OpInfo}s of the previous registry
+	 * are reused, so only newly added ops are wrapped.
+	 */
+	private synchronized Registry buildRegistry() {
+		while (true) {
+			final Registry current = registry;
+			if (current != null) return current;
+			final long modification = modifications.get();
+			final Map<CommandInfo, OpInfo> wrappers = new HashMap<>();
+			if (lastRegistry != null) {
+				for (final OpInfo info : lastRegistry.infos) {
+					wrappers.put(info.cInfo(), info);
+				}
+			}
+			final Registry r = new Registry(commandService.getCommandsOfType(
+				Op.class), wrappers);
+			lastRegistry = r;
+			registry = r;
+
+			// NB: If ops were added or removed while building, the registry may
+			// miss them; since the invalidation may have preceded the publication,
+			// discard the registry and build it again.
+			if (modifications.get() == modification) return r;
+			registry = null;
+		}
+	}
+
+	/**
+	 * Discards the registry if the event concerns any ops. Registries being
+	 * built concurrently are discarded, too, once built.
+	 */
+	private void invalidate(final PluginsListEvent evt) {
+		for (final PluginInfo<?> info : evt.getItems()) {
+			if (Op.class.isAssignableFrom(info.getPluginType())) {
+				modifications.incrementAndGet();
+				registry = null;
+				return;
+			}
+		}
+	}
+
+	// -- Helper classes --
+
+	/** An immutable snapshot of the available ops. */
+	private static class Registry {
+
+		/** The ops, in priority order. */
+		private final List<OpInfo> infos;
+
+		/** The ops, keyed by class name. */
+		private final Map<String, OpInfo> byClass;
+
+		private Registry(final List<CommandInfo> commands,
+			final Map<CommandInfo, OpInfo> wrappers)
+		{
+			final ArrayList<OpInfo> list = new ArrayList<>(commands.size());
+			final HashMap<String, OpInfo> map = new HashMap<>();
+			for (final CommandInfo cInfo : commands) {
+				OpInfo info = wrappers.get(cInfo);
+				if (info == null) info = new OpInfo(cInfo);
+				list.add(info);
+				map.put(cInfo.getDelegateClassName(), info);
+			}
+			infos = Collections.unmodifiableList(list);
+			byClass = map;
+		}
+	}
+
 }
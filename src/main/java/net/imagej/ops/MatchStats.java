@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Matching diagnostics for one op name, as recorded by the
+ * {@link DefaultOpMatchingService}.
+ * <p>
+ * Counters cover all requests for ops of that name (or of that type, for
+ * requests without a name): how many candidates were examined and why they
+ * were rejected, how often arguments went through the {@code ConvertService},
+ * and how often {@link Contingent#conforms()} was asked. A name with many
+ * requests but few match cache hits, or with many candidates and conversions
+ * per request, points at a call site which keeps the matcher busy.
+ * </p>
+ *
+ * @see DefaultOpMatchingService#getMatchStats()
+ */
+public class MatchStats {
+
+	private final String name;
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder matchTime = new LongAdder();
+	private final LongAdder candidates = new LongAdder();
+	private final LongAdder missingArgs = new LongAdder();
+	private final LongAdder imperfectTypes = new LongAdder();
+	private final LongAdder castRejections = new LongAdder();
+	private final LongAdder conversions = new LongAdder();
+	private final LongAdder conformsCalls = new LongAdder();
+	private final LongAdder conformsRejections = new LongAdder();
+
+	public MatchStats(final String name) {
+		this.name = name;
+	}
+
+	// -- MatchStats methods --
+
+	/** Gets the op name (or type) these diagnostics belong to. */
+	public String getName() {
+		return name;
+	}
+
+	/** Gets the number of {@code findMatch} requests. */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/** Gets the number of requests served from the match cache. */
+	public long getCacheHits() {
+		return cacheHits.sum();
+	}
+
+	/** Gets the number of requests which did not find a single match. */
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	/**
+	 * Gets the total time, in nanoseconds, spent in {@code findMatch}, minus
+	 * the initialization of the matched ops.
+	 */
+	public long getMatchTime() {
+		return matchTime.sum();
+	}
+
+	/** Gets the number of candidates examined. */
+	public long getCandidates() {
+		return candidates.sum();
+	}
+
+	/** Gets the number of candidates rejected for a missing required argument. */
+	public long getMissingArgs() {
+		return missingArgs.sum();
+	}
+
+	/** Gets the number of candidates whose types did not match perfectly. */
+	public long getImperfectTypes() {
+		return imperfectTypes.sum();
+	}
+
+	/** Gets the number of candidates rejected when matching by casting. */
+	public long getCastRejections() {
+		return castRejections.sum();
+	}
+
+	/** Gets the number of {@code ConvertService} queries and conversions. */
+	public long getConversions() {
+		return conversions.sum();
+	}
+
+	/** Gets the number of {@link Contingent#conforms()} invocations. */
+	public long getConformsCalls() {
+		return conformsCalls.sum();
+	}
+
+	/** Gets the number of {@link Contingent#conforms()} rejections. */
+	public long getConformsRejections() {
+		return conformsRejections.sum();
+	}
+
+	/** Clears all counters. */
+	public void reset() {
+		requests.reset();
+		cacheHits.reset();
+		failures.reset();
+		matchTime.reset();
+		candidates.reset();
+		missingArgs.reset();
+		imperfectTypes.reset();
+		castRejections.reset();
+		conversions.reset();
+		conformsCalls.reset();
+		conformsRejections.reset();
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return name + ": requests=" + getRequests() + ", cacheHits=" +
+			getCacheHits() + ", failures=" + getFailures() + ", matchTime=" +
+			getMatchTime() / 1000 + "us, candidates=" + getCandidates() +
+			", missingArgs=" + getMissingArgs() + ", imperfectTypes=" +
+			getImperfectTypes() + ", castRejections=" + getCastRejections() +
+			", conversions=" + getConversions() + ", conformsCalls=" +
+			getConformsCalls() + ", conformsRejections=" + getConformsRejections();
+	}
+
+	// -- Internal methods --
+
+	void request(final long nanos, final boolean failed) {
+		requests.increment();
+		matchTime.add(nanos);
+		if (failed) failures.increment();
+	}
+
+	void cacheHit() {
+		cacheHits.increment();
+	}
+
+	void candidate() {
+		candidates.increment();
+	}
+
+	void missingArgs() {
+		missingArgs.increment();
+	}
+
+	void imperfectTypes() {
+		imperfectTypes.increment();
+	}
+
+	void castRejection() {
+		castRejections.increment();
+	}
+
+	void conversion() {
+		conversions.increment();
+	}
+
+	void conforms(final boolean conforms) {
+		conformsCalls.increment();
+		if (!conforms) conformsRejections.increment();
+	}
+
+}
@@ -0,0 +1,286 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.List;
+
+import org.scijava.InstantiableException;
+import org.scijava.command.Command;
+import org.scijava.command.CommandInfo;
+import org.scijava.command.CommandModule;
+import org.scijava.command.CommandModuleItem;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleInfo;
+import org.scijava.module.ModuleItem;
+import org.scijava.util.ClassUtils;
+
+/**
+ * Direct access to the {@code @Parameter} fields of an op, via cached
+ * {@link MethodHandle}s.
+ * <p>
+ * {@link CommandModule#setInput} and friends look up the parameter by name,
+ * then write the field reflectively, converting the value if needed, on every
+ * call. An accessor resolves each field once, so that assigning an op's
+ * inputs costs a few direct field writes. Values which the field cannot hold
+ * as is, and modules of other classes, fall back to the {@link Module}
+ * methods, which keeps their conversion semantics intact.
+ * </p>
+ * <p>
+ * Accessors are cached per op class, independently of any context: the
+ * parameters are read from the class itself, so that an accessor does not
+ * keep the module infos of a disposed context alive.
+ * </p>
+ *
+ * @see OpUtils#inputs(ModuleInfo)
+ * @see OpUtils#outputs(ModuleInfo)
+ */
+public final class OpAccessor {
+
+	private static final ClassValue<OpAccessor> ACCESSORS =
+		new ClassValue<OpAccessor>()
+	{
+
+		@Override
+		protected OpAccessor computeValue(final Class<?> type) {
+			@SuppressWarnings("unchecked")
+			final Class<? extends Command> commandClass =
+				(Class<? extends Command>) type;
+			return new OpAccessor(type, new CommandInfo(commandClass));
+		}
+	};
+
+	private static final MethodType SETTER = MethodType.methodType(void.class,
+		Object.class, Object.class);
+	private static final MethodType GETTER = MethodType.methodType(
+		Object.class, Object.class);
+
+	/** The op class whose fields are accessed directly, or null if none. */
+	private final Class<?> opClass;
+
+	private final List<ModuleItem<?>> inputs;
+	private final List<ModuleItem<?>> outputs;
+
+	private final Slot[] inputSlots;
+	private final Slot[] outputSlots;
+
+	private OpAccessor(final Class<?> opClass, final ModuleInfo info) {
+		this.opClass = opClass;
+		inputs = Collections.unmodifiableList(OpUtils.inputs(info));
+		outputs = Collections.unmodifiableList(OpUtils.outputs(info));
+		inputSlots = slots(inputs);
+		outputSlots = slots(outputs);
+	}
+
+	// -- Static utility methods --
+
+	/**
+	 * Gets the (cached) accessor for the given op's parameters. Ops which are
+	 * not commands get a new accessor, which falls back to the {@link Module}
+	 * methods.
+	 */
+	public static OpAccessor of(final ModuleInfo info) {
+		final Class<?> c = commandClass(info);
+		return c == null ? new OpAccessor(null, info) : ACCESSORS.get(c);
+	}
+
+	// -- OpAccessor methods --
+
+	/** Gets the op class whose parameters this accessor covers. */
+	public Class<?> opClass() {
+		return opClass;
+	}
+
+	/** Gets the op's inputs, as per {@link OpUtils#inputs(ModuleInfo)}. */
+	public List<ModuleItem<?>> inputs() {
+		return inputs;
+	}
+
+	/** Gets the op's outputs, as per {@link OpUtils#outputs(ModuleInfo)}. */
+	public List<ModuleItem<?>> outputs() {
+		return outputs;
+	}
+
+	/** Sets the value of the input at the given index of {@link #inputs()}. */
+	public void setInput(final Module module, final int index,
+		final Object value)
+	{
+		final Object op = delegate(module);
+		final Slot slot = inputSlots[index];
+		if (op == null || slot == null || !slot.set(op, value)) {
+			module.setInput(inputs.get(index).getName(), value);
+		}
+	}
+
+	/** Gets the value of the input at the given index of {@link #inputs()}. */
+	public Object getInput(final Module module, final int index) {
+		final Object op = delegate(module);
+		final Slot slot = inputSlots[index];
+		if (op == null || slot == null) {
+			return module.getInput(inputs.get(index).getName());
+		}
+		return slot.get(op);
+	}
+
+	/** Sets the value of the output at the given index of {@link #outputs()}. */
+	public void setOutput(final Module module, final int index,
+		final Object value)
+	{
+		final Object op = delegate(module);
+		final Slot slot = outputSlots[index];
+		if (op == null || slot == null || !slot.set(op, value)) {
+			module.setOutput(outputs.get(index).getName(), value);
+		}
+	}
+
+	/** Gets the value of the output at the given index of {@link #outputs()}. */
+	public Object getOutput(final Module module, final int index) {
+		final Object op = delegate(module);
+		final Slot slot = outputSlots[index];
+		if (op == null || slot == null) {
+			return module.getOutput(outputs.get(index).getName());
+		}
+		return slot.get(op);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets the op instance behind the given module, if its fields can be
+	 * accessed directly; or null if not.
+	 */
+	private Object delegate(final Module module) {
+		if (opClass == null || !(module instanceof CommandModule)) return null;
+		final Object command = ((CommandModule) module).getCommand();
+		return command.getClass() == opClass ? command : null;
+	}
+
+	/**
+	 * Gets the class of the given command, or null if the info does not
+	 * describe a plain command, whose fields hold its parameters.
+	 */
+	private static Class<?> commandClass(final ModuleInfo info) {
+		if (!(info instanceof CommandInfo)) return null;
+		final Class<?> c;
+		try {
+			c = ((CommandInfo) info).loadClass();
+		}
+		catch (final InstantiableException exc) {
+			return null;
+		}
+		// NB: Modules which are their own ops are created specially.
+		if (Module.class.isAssignableFrom(c)) return null;
+		return Command.class.isAssignableFrom(c) ? c : null;
+	}
+
+	private static Slot[] slots(final List<ModuleItem<?>> items) {
+		final Slot[] slots = new Slot[items.size()];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = Slot.of(items.get(i));
+		}
+		return slots;
+	}
+
+	// -- Helper classes --
+
+	/** Direct access to one parameter field. */
+	private static final class Slot {
+
+		/** The boxed field type, which values must be instances of. */
+		private final Class<?> type;
+		private final boolean primitive;
+		private final MethodHandle setter;
+		private final MethodHandle getter;
+
+		private Slot(final Field field, final MethodHandle setter,
+			final MethodHandle getter)
+		{
+			primitive = field.getType().isPrimitive();
+			type = ClassUtils.getNonprimitiveType(field.getType());
+			this.setter = setter;
+			this.getter = getter;
+		}
+
+		/** Creates a slot for the given item, or null if it has no field. */
+		private static Slot of(final ModuleItem<?> item) {
+			if (!(item instanceof CommandModuleItem)) return null;
+			final Field field = ((CommandModuleItem<?>) item).getField();
+			if (Modifier.isStatic(field.getModifiers()) || //
+				Modifier.isFinal(field.getModifiers())) return null;
+			try {
+				field.setAccessible(true);
+				final MethodHandles.Lookup lookup = MethodHandles.lookup();
+				return new Slot(field, lookup.unreflectSetter(field).asType(SETTER),
+					lookup.unreflectGetter(field).asType(GETTER));
+			}
+			catch (final Exception | LinkageError exc) {
+				return null;
+			}
+		}
+
+		/**
+		 * Writes the value, if the field can hold it as is.
+		 *
+		 * @return false if the value needs converting, and was not written.
+		 */
+		private boolean set(final Object op, final Object value) {
+			if (value == null ? primitive : !type.isInstance(value)) return false;
+			try {
+				setter.invokeExact(op, value);
+			}
+			catch (final Throwable t) {
+				throw rethrow(t);
+			}
+			return true;
+		}
+
+		private Object get(final Object op) {
+			try {
+				return (Object) getter.invokeExact(op);
+			}
+			catch (final Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		private static RuntimeException rethrow(final Throwable t) {
+			if (t instanceof RuntimeException) return (RuntimeException) t;
+			if (t instanceof Error) throw (Error) t;
+			return new IllegalStateException(t);
+		}
+	}
+
+}
@@ -69,6 +69,8 @@ public class OpCandidate {
 	private String message;
 	private ModuleItem<?> item;
 	private Object[] args;
+	private long initializeTime;
+	private OpPool.Lease lease;
 
 	public OpCandidate(final OpEnvironment ops, final OpRef ref,
 		final OpInfo info)
@@ -122,6 +124,32 @@ public class OpCandidate {
 		return module;
 	}
 
+	/**
+	 * Sets the pooled instance backing the module, to be returned to its pool
+	 * once the module has been executed.
+	 */
+	void setLease(final OpPool.Lease lease) {
+		this.lease = lease;
+	}
+
+	/** Gets the pooled instance backing the module, if any. */
+	OpPool.Lease getLease() {
+		return lease;
+	}
+
+	/** Sets the time, in nanoseconds, spent initializing the matched op. */
+	public void setInitializeTime(final long nanos) {
+		initializeTime = nanos;
+	}
+
+	/**
+	 * Gets the time, in nanoseconds, spent initializing the matched op; or 0 if
+	 * it was not initialized.
+	 */
+	public long getInitializeTime() {
+		return initializeTime;
+	}
+
 	/** Sets the status of the matching attempt. */
 	public void setStatus(final StatusCode code) {
 		setStatus(code, null, null);
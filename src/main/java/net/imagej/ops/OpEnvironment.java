@@ -132,7 +132,14 @@ public interface OpEnvironment extends Contextual {
 	 */
 	@OpMethod(op = net.imagej.ops.run.RunByName.class)
 	default Object run(final String name, final Object... args) {
-		return run(module(name, args));
+		final OpCandidate match = matcher().leaseMatch(this, Collections
+			.singletonList(OpRef.create(name, args)));
+		try {
+			return run(match.getModule());
+		}
+		finally {
+			matcher().release(match);
+		}
 	}
 
 	/**
@@ -153,7 +160,14 @@ public interface OpEnvironment extends Contextual {
 	 */
 	@OpMethod(op = net.imagej.ops.run.RunByType.class)
 	default Object run(final Class<? extends Op> type, final Object... args) {
-		return run(module(type, args));
+		final OpCandidate match = matcher().leaseMatch(this, Collections
+			.singletonList(OpRef.create(type, args)));
+		try {
+			return run(match.getModule());
+		}
+		finally {
+			matcher().release(match);
+		}
 	}
 
 	/**
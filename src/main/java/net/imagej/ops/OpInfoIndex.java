@@ -0,0 +1,364 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.scijava.InstantiableException;
+import org.scijava.log.LogService;
+import org.scijava.module.ModuleItem;
+import org.scijava.util.GenericUtils;
+
+/**
+ * An index of {@link OpInfo}s, for quickly finding the ops which are
+ * candidates for a given {@link OpRef}.
+ * <p>
+ * Ops are bucketed by name (including aliases, with and without namespace)
+ * and, lazily, by op type. As such, the cost of looking up candidates depends
+ * on the number of ops sharing a name or type, rather than on the total number
+ * of ops available.
+ * </p>
+ * <p>
+ * Ops described by an {@link OpRegistryIndex} are bucketed and filtered using
+ * the indexed metadata, so their classes need not be loaded until they are
+ * actually matched.
+ * </p>
+ * <p>
+ * The index is immutable with respect to its list of ops; if the available ops
+ * change, a new index must be built. Use {@link #isIndexOf(Collection)} to
+ * check whether an index is still current.
+ * </p>
+ *
+ * @see OpMatchingService#findCandidates(OpEnvironment, List)
+ */
+public class OpInfoIndex {
+
+	/** The ops of the index, in their original order. */
+	private final Collection<OpInfo> infos;
+
+	/** All entries of the index, in their original order. */
+	private final List<Entry> entries;
+
+	/** Entries keyed by op name and alias, with and without namespace. */
+	private final Map<String, List<Entry>> byName;
+
+	/** Entries keyed by op type; buckets are populated on demand. */
+	private final Map<Class<?>, List<Entry>> byType = new ConcurrentHashMap<>();
+
+	/** Cached match results for the ops of this index. */
+	private final OpMatchCache matchCache = new OpMatchCache();
+
+	private final LogService log;
+
+	public OpInfoIndex(final Collection<OpInfo> infos, final LogService log) {
+		this(infos, OpRegistryIndex.EMPTY, log);
+	}
+
+	public OpInfoIndex(final Collection<OpInfo> infos,
+		final OpRegistryIndex registry, final LogService log)
+	{
+		this.infos = infos;
+		this.log = log;
+		final ArrayList<Entry> list = new ArrayList<>(infos.size());
+		final HashMap<String, List<Entry>> names = new HashMap<>();
+		for (final OpInfo info : infos) {
+			final Entry entry = new Entry(info, list.size(), registry.get(info
+				.cInfo().getClassName()));
+			list.add(entry);
+			for (final String name : names(entry)) {
+				addName(names, name, entry);
+				final String simpleName = OpUtils.stripNamespace(name);
+				if (!simpleName.equals(name)) addName(names, simpleName, entry);
+			}
+		}
+		entries = Collections.unmodifiableList(list);
+		byName = names;
+	}
+
+	// -- OpInfoIndex methods --
+
+	/**
+	 * Gets whether this index was built from the given ops. If the collection is
+	 * the same instance the index was built from, this check is immediate;
+	 * otherwise, the ops are compared element by element.
+	 */
+	public boolean isIndexOf(final Collection<OpInfo> ops) {
+		if (ops == infos) return true;
+		if (ops == null || ops.size() != entries.size()) return false;
+		final Iterator<Entry> iter = entries.iterator();
+		for (final OpInfo info : ops) {
+			if (!iter.next().info.equals(info)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the cache of match results for the ops of this index. The cache is
+	 * discarded along with the index once the available ops change.
+	 */
+	public OpMatchCache matchCache() {
+		return matchCache;
+	}
+
+	/** Gets the number of ops in the index. */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the candidates whose name and types match those of the given
+	 * references.
+	 *
+	 * @param ops The op environment of the candidates.
+	 * @param refs The references to match.
+	 * @param checkArity Whether to exclude ops which cannot accept the number
+	 *          of arguments given by the respective reference.
+	 * @return The candidates, ordered first by op (in the index's original
+	 *         order) and then by reference.
+	 */
+	public List<OpCandidate> candidates(final OpEnvironment ops,
+		final List<OpRef> refs, final boolean checkArity)
+	{
+		final ArrayList<OpCandidate> candidates = new ArrayList<>();
+		if (refs.size() == 1) {
+			final OpRef ref = refs.get(0);
+			for (final Entry entry : bucket(ref)) {
+				if (matches(entry, ref, checkArity)) {
+					candidates.add(new OpCandidate(ops, ref, entry.info));
+				}
+			}
+			return candidates;
+		}
+
+		// NB: Merge the buckets of all references, preserving the op order.
+		final ArrayList<Entry> matchedEntries = new ArrayList<>();
+		final ArrayList<OpRef> matchedRefs = new ArrayList<>();
+		for (final OpRef ref : refs) {
+			for (final Entry entry : bucket(ref)) {
+				if (matches(entry, ref, checkArity)) {
+					matchedEntries.add(entry);
+					matchedRefs.add(ref);
+				}
+			}
+		}
+		final ArrayList<Integer> order = new ArrayList<>(matchedEntries.size());
+		for (int i = 0; i < matchedEntries.size(); i++) {
+			order.add(i);
+		}
+		// NB: The sort is stable, so ties retain the order of the references.
+		order.sort((i1, i2) -> Integer.compare(matchedEntries.get(i1).index,
+			matchedEntries.get(i2).index));
+		for (final int i : order) {
+			candidates.add(new OpCandidate(ops, matchedRefs.get(i), matchedEntries
+				.get(i).info));
+		}
+		return candidates;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets the smallest readily available bucket of entries which could match
+	 * the given reference.
+	 */
+	private List<Entry> bucket(final OpRef ref) {
+		final String name = ref.getName();
+		if (name != null) {
+			final List<Entry> bucket = byName.get(name);
+			return bucket == null ? Collections.emptyList() : bucket;
+		}
+		final Collection<Type> types = ref.getTypes();
+		if (types == null || types.isEmpty()) return entries;
+		// FIXME: Use generic assignability test, once it exists.
+		final Class<?> type = GenericUtils.getClass(types.iterator().next());
+		return byType.computeIfAbsent(type, this::typeBucket);
+	}
+
+	/** Gets all entries whose op class is assignable to the given type. */
+	private List<Entry> typeBucket(final Class<?> type) {
+		final ArrayList<Entry> bucket = new ArrayList<>();
+		for (final Entry entry : entries) {
+			if (entry.isAssignableTo(type)) bucket.add(entry);
+		}
+		return bucket;
+	}
+
+	/** Determines whether the given entry is a candidate for the reference. */
+	private boolean matches(final Entry entry, final OpRef ref,
+		final boolean checkArity)
+	{
+		if (!entry.typesMatch(ref)) return false;
+		return !checkArity || entry.accepts(ref.getArgs().length);
+	}
+
+	/** Gets the names and aliases of the given entry's op, with namespace. */
+	private List<String> names(final Entry entry) {
+		if (entry.record != null) return entry.record.names();
+		final OpInfo info = entry.info;
+		final ArrayList<String> names = new ArrayList<>();
+		try {
+			final String name = info.getName();
+			if (name != null) names.add(name);
+			final String[] aliases = info.getAliases();
+			if (aliases != null) for (final String alias : aliases) {
+				names.add(alias);
+			}
+		}
+		catch (final RuntimeException exc) {
+			// NB: An op whose name cannot be determined only matches unnamed refs.
+			if (log != null) log.debug("Cannot determine name of op: " + info, exc);
+		}
+		return names;
+	}
+
+	private static void addName(final Map<String, List<Entry>> names,
+		final String name, final Entry entry)
+	{
+		final List<Entry> bucket = names.computeIfAbsent(name,
+			k -> new ArrayList<>());
+		// NB: Avoid duplicates, e.g., when an alias equals the simple name.
+		if (bucket.isEmpty() || bucket.get(bucket.size() - 1) != entry) {
+			bucket.add(entry);
+		}
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * An {@link OpInfo} together with its indexed or lazily computed matching
+	 * metadata.
+	 */
+	private class Entry {
+
+		private final OpInfo info;
+		private final int index;
+
+		/** Build-time metadata of the op, or null if not indexed. */
+		private final OpRegistryIndex.Record record;
+
+		private volatile boolean loaded;
+		private Class<?> opClass;
+
+		private volatile boolean counted;
+		private int inputCount, requiredCount;
+
+		private Entry(final OpInfo info, final int index,
+			final OpRegistryIndex.Record record)
+		{
+			this.info = info;
+			this.index = index;
+			this.record = record;
+		}
+
+		/** Gets the op class, or null if it cannot be loaded. */
+		private Class<?> opClass() {
+			if (!loaded) loadClass();
+			return opClass;
+		}
+
+		/**
+		 * Determines whether the op accepts the given number of arguments, with
+		 * optional parameters taken into account. Invalid ops accept nothing.
+		 */
+		private boolean accepts(final int arity) {
+			if (record != null) {
+				return arity >= record.requiredCount() && arity <= record.inputCount();
+			}
+			if (!counted) countInputs();
+			return arity >= requiredCount && arity <= inputCount;
+		}
+
+		/** Determines whether the op class is assignable to the given type. */
+		private boolean isAssignableTo(final Class<?> type) {
+			if (record != null) return record.isAssignableTo(type);
+			final Class<?> c = opClass();
+			return c != null && type.isAssignableFrom(c);
+		}
+
+		/** Determines whether the op class matches the reference's types. */
+		private boolean typesMatch(final OpRef ref) {
+			if (record == null) {
+				final Class<?> c = opClass();
+				return c != null && ref.typesMatch(c);
+			}
+			final Collection<Type> types = ref.getTypes();
+			if (types == null) return true;
+			for (final Type t : types) {
+				// FIXME: Use generic assignability test, once it exists.
+				if (!record.isAssignableTo(GenericUtils.getClass(t))) return false;
+			}
+			return true;
+		}
+
+		private synchronized void loadClass() {
+			if (loaded) return;
+			try {
+				opClass = info.cInfo().loadClass();
+			}
+			catch (final InstantiableException exc) {
+				final String msg = "Invalid op: " + info.cInfo().getClassName();
+				if (log == null) {/* NB: No logging. */}
+				else if (log.isDebug()) log.debug(msg, exc);
+				else log.error(msg);
+			}
+			loaded = true;
+		}
+
+		private synchronized void countInputs() {
+			if (counted) return;
+			if (info.cInfo().isValid()) {
+				for (final ModuleItem<?> item : info.inputs()) {
+					inputCount++;
+					if (item.isRequired()) requiredCount++;
+				}
+			}
+			else {
+				// NB: Invalid ops cannot match any number of arguments.
+				requiredCount = Integer.MAX_VALUE;
+			}
+			counted = true;
+		}
+
+		@Override
+		public String toString() {
+			return index + ": " + info;
+		}
+	}
+
+}
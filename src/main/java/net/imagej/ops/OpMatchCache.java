@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded cache of op matching results, keyed by the name, types and
+ * argument classes of the {@link OpRef}s being matched.
+ * <p>
+ * Each entry records which {@link OpInfo} won the match, for which reference,
+ * and how the reference's arguments were assigned to the op's inputs. Entries
+ * are evicted in least-recently-used order once the capacity is exceeded.
+ * </p>
+ *
+ * @see DefaultOpMatchingService
+ */
+public class OpMatchCache {
+
+	/** Default maximum number of cached matches. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final int capacity;
+
+	private final Map<Key, Plan> plans;
+
+	public OpMatchCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public OpMatchCache(final int capacity) {
+		this.capacity = capacity;
+		plans = new LinkedHashMap<Key, Plan>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, Plan> eldest) {
+				return size() > OpMatchCache.this.capacity;
+			}
+		};
+	}
+
+	// -- OpMatchCache methods --
+
+	/** Gets the cached match for the given key, or null if none. */
+	public synchronized Plan get(final Key key) {
+		return plans.get(key);
+	}
+
+	/** Caches the given match. */
+	public synchronized void put(final Key key, final Plan plan) {
+		plans.put(key, plan);
+	}
+
+	/** Discards the cached match for the given key, if any. */
+	public synchronized void remove(final Key key) {
+		plans.remove(key);
+	}
+
+	/** Discards all cached matches. */
+	public synchronized void clear() {
+		plans.clear();
+	}
+
+	/** Gets the number of cached matches. */
+	public synchronized int size() {
+		return plans.size();
+	}
+
+	/** Gets the maximum number of cached matches. */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Creates a cache key for the given references. The key retains the
+	 * references' names, types and argument classes, but not the arguments
+	 * themselves.
+	 */
+	public static Key key(final List<OpRef> refs) {
+		final ArrayList<Object> parts = new ArrayList<>(4 * refs.size());
+		for (final OpRef ref : refs) {
+			parts.add(ref.getName());
+			parts.add(ref.getTypes());
+			parts.add(ref.getOutTypes());
+			parts.add(signature(ref.getArgs()));
+		}
+		return new Key(parts);
+	}
+
+	// -- Helper methods --
+
+	private static List<Object> signature(final Object[] args) {
+		final ArrayList<Object> signature = new ArrayList<>(args.length);
+		for (final Object arg : args) {
+			if (arg == null) signature.add(null);
+			else if (arg instanceof Class) signature.add(new ClassArg((Class<?>) arg));
+			else signature.add(arg.getClass());
+		}
+		return signature;
+	}
+
+	// -- Helper classes --
+
+	/** Key identifying a request by names, types and argument classes. */
+	public static final class Key {
+
+		private final List<Object> parts;
+		private final int hash;
+
+		private Key(final List<Object> parts) {
+			this.parts = parts;
+			hash = parts.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (o == this) return true;
+			if (!(o instanceof Key)) return false;
+			final Key that = (Key) o;
+			return hash == that.hash && parts.equals(that.parts);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * A previously computed match: the winning op, the index of the matching
+	 * reference, and how to assign that reference's arguments to the op's
+	 * inputs.
+	 */
+	public static final class Plan {
+
+		/** The argument is assigned as is, with no conversion. */
+		public static final int CAST = 0;
+
+		/** The argument is converted with the {@code ConvertService}. */
+		public static final int CONVERT = 1;
+
+		/** The input is assigned null (matching class or padded optional). */
+		public static final int NULL = 2;
+
+		private final OpInfo info;
+		private final int refIndex;
+		private final int[] argIndices;
+		private final int[] modes;
+		private final OpPool pool = new OpPool();
+
+		/**
+		 * @param info The op which matched.
+		 * @param refIndex The index of the reference which matched.
+		 * @param argIndices For each op input, the index of the reference
+		 *          argument assigned to it, or -1 for a padded optional input.
+		 * @param modes For each op input, how to assign the argument: one of
+		 *          {@link #CAST}, {@link #CONVERT} or {@link #NULL}.
+		 */
+		public Plan(final OpInfo info, final int refIndex, final int[] argIndices,
+			final int[] modes)
+		{
+			this.info = info;
+			this.refIndex = refIndex;
+			this.argIndices = argIndices;
+			this.modes = modes;
+		}
+
+		/** Gets the op which matched. */
+		public OpInfo info() {
+			return info;
+		}
+
+		/** Gets the index of the reference which matched. */
+		public int refIndex() {
+			return refIndex;
+		}
+
+		/** Gets the number of op inputs. */
+		public int inputCount() {
+			return argIndices.length;
+		}
+
+		/**
+		 * Gets the index of the argument assigned to the given op input, or -1 if
+		 * the input is padded with null.
+		 */
+		public int argIndex(final int input) {
+			return argIndices[input];
+		}
+
+		/** Gets how the argument of the given op input is assigned. */
+		public int mode(final int input) {
+			return modes[input];
+		}
+
+		/** Gets the pool of op instances executing this match. */
+		public OpPool pool() {
+			return pool;
+		}
+
+		@Override
+		public String toString() {
+			return info + " <- " + Arrays.toString(argIndices);
+		}
+	}
+
+	/** A {@link Class} passed as argument, to indicate a typed null. */
+	private static final class ClassArg {
+
+		private final Class<?> c;
+
+		private ClassArg(final Class<?> c) {
+			this.c = c;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			return o instanceof ClassArg && ((ClassArg) o).c == c;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(c) + 1;
+		}
+	}
+
+}
@@ -72,6 +72,26 @@ public interface OpMatchingService extends ImageJService {
 	 */
 	OpCandidate findMatch(OpEnvironment ops, List<OpRef> refs);
 
+	/**
+	 * Finds and initializes the best module matching any of the given op name
+	 * and/or type + arguments, for a single execution. The matching module may
+	 * be backed by a pooled op instance, so the returned {@link OpCandidate}
+	 * must be passed to {@link #release} once the module has been executed.
+	 * Does the same as {@link #findMatch(OpEnvironment, List)} by default.
+	 *
+	 * @param ops The pool from which candidate ops should be drawn.
+	 * @param refs The op references describing the op to match.
+	 * @return An {@link OpCandidate} containing the module which wraps the best
+	 *         {@link Op}, with populated inputs, ready to run.
+	 * @throws IllegalArgumentException if there is no match, or if there is more
+	 *           than one match at the same priority.
+	 */
+	default OpCandidate leaseMatch(final OpEnvironment ops,
+		final List<OpRef> refs)
+	{
+		return findMatch(ops, refs);
+	}
+
 	/**
 	 * Builds a list of candidate ops which might match the given op reference.
 	 * 
@@ -121,4 +141,13 @@ public interface OpMatchingService extends ImageJService {
 	/** Assigns arguments into the given module's inputs. */
 	Module assignInputs(Module module, Object... args);
 
+	/**
+	 * Notifies the service that the module of a match obtained from
+	 * {@link #leaseMatch} has been executed and is no longer referenced, so that
+	 * its op instance may be reused by a later match. Does nothing by default.
+	 */
+	default void release(final OpCandidate match) {
+		// NB: No pooling by default.
+	}
+
 }
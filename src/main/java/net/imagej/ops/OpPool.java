@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.scijava.module.Module;
+
+/**
+ * A bounded pool of op instances, wrapped as {@link Module}s, which can be
+ * reused by repeated executions of the same match.
+ * <p>
+ * When an instance is first created, the values of all its parameters are
+ * recorded. Once released, these values are restored, so the next lease
+ * starts from the state of a newly created instance, minus the cost of
+ * creating and injecting it. Instances with non-null output values right
+ * after creation are never pooled, since those values would be shared
+ * between executions.
+ * </p>
+ *
+ * @see OpMatchCache.Plan#pool()
+ */
+public class OpPool {
+
+	/** Default maximum number of idle instances. */
+	public static final int DEFAULT_CAPACITY = Runtime.getRuntime()
+		.availableProcessors();
+
+	private final int capacity;
+
+	private final ConcurrentLinkedQueue<Lease> idle =
+		new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	private final AtomicLong reuses = new AtomicLong();
+	private final AtomicLong creations = new AtomicLong();
+
+	public OpPool() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public OpPool(final int capacity) {
+		this.capacity = capacity;
+	}
+
+	// -- OpPool methods --
+
+	/**
+	 * Leases an idle instance, or creates a new one if none is idle.
+	 *
+	 * @param factory Creates a new instance, if needed.
+	 */
+	public Lease lease(final Supplier<Module> factory) {
+		final Lease lease = idle.poll();
+		if (lease != null) {
+			idleCount.decrementAndGet();
+			reuses.incrementAndGet();
+			return lease;
+		}
+		creations.incrementAndGet();
+		return new Lease(this, factory.get());
+	}
+
+	/** Gets the number of idle instances. */
+	public int size() {
+		return idleCount.get();
+	}
+
+	/** Gets the maximum number of idle instances. */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/** Gets the number of leases served by an idle instance. */
+	public long getReuses() {
+		return reuses.get();
+	}
+
+	/** Gets the number of leases which created a new instance. */
+	public long getCreations() {
+		return creations.get();
+	}
+
+	// -- Helper methods --
+
+	/** Helper method of {@link Lease#release()}. */
+	private void offer(final Lease lease) {
+		if (idleCount.incrementAndGet() > capacity) {
+			idleCount.decrementAndGet();
+			return;
+		}
+		idle.offer(lease);
+	}
+
+	// -- Helper classes --
+
+	/** A pooled instance, with the parameter values it was created with. */
+	public static final class Lease {
+
+		private final OpPool pool;
+		private final Module module;
+		private final OpAccessor accessor;
+		private final Object[] inputs;
+		private final Object[] outputs;
+		private final boolean poolable;
+
+		private Lease(final OpPool pool, final Module module) {
+			this.pool = pool;
+			this.module = module;
+			accessor = OpAccessor.of(module.getInfo());
+			inputs = new Object[accessor.inputs().size()];
+			for (int i = 0; i < inputs.length; i++) {
+				inputs[i] = accessor.getInput(module, i);
+			}
+			outputs = new Object[accessor.outputs().size()];
+			boolean noOutputs = true;
+			for (int i = 0; i < outputs.length; i++) {
+				outputs[i] = accessor.getOutput(module, i);
+				if (outputs[i] != null) noOutputs = false;
+			}
+			poolable = noOutputs;
+		}
+
+		/** Gets the leased instance. */
+		public Module module() {
+			return module;
+		}
+
+		/**
+		 * Restores the parameter values the instance was created with, and
+		 * returns it to the pool. The instance must not be used afterwards.
+		 */
+		public void release() {
+			if (!poolable) return;
+			for (int i = 0; i < inputs.length; i++) {
+				accessor.setInput(module, i, inputs[i]);
+			}
+			for (int i = 0; i < outputs.length; i++) {
+				accessor.setOutput(module, i, outputs[i]);
+			}
+			pool.offer(this);
+		}
+	}
+
+}
@@ -0,0 +1,401 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.scijava.command.Command;
+import org.scijava.command.CommandInfo;
+import org.scijava.module.ModuleItem;
+import org.scijava.plugin.DefaultPluginFinder;
+import org.scijava.plugin.PluginIndex;
+import org.scijava.plugin.PluginInfo;
+
+/**
+ * A compact index of op metadata, generated at build time, which lets the
+ * {@link OpMatchingService} narrow down candidates without loading op classes.
+ * <p>
+ * For each op class, the index records its name and aliases, the names of all
+ * its supertypes and its number of (required) inputs. It is written by
+ * {@code src/main/groovy/index-ops.groovy} after compilation, to
+ * {@value #RESOURCE} in the build output, and read back with
+ * {@link #load(ClassLoader)} from all such resources on the class path.
+ * </p>
+ * <p>
+ * Each line of the index describes one op, with tab-separated fields: class
+ * name, CRC-32 of the class file, name, comma-separated aliases, input count,
+ * required input count and comma-separated supertype names. Lines starting
+ * with {@code #} are comments.
+ * </p>
+ * <p>
+ * A record is only used if the checksum matches the class file the class
+ * loader would load. Stale records, e.g. of classes recompiled without
+ * reindexing, are ignored, and their ops matched by loading their classes.
+ * </p>
+ *
+ * @see OpInfoIndex
+ */
+public class OpRegistryIndex {
+
+	/** Path of the index resources. */
+	public static final String RESOURCE = "META-INF/imagej-ops/op-registry.txt";
+
+	/** An index without any entries. */
+	public static final OpRegistryIndex EMPTY = new OpRegistryIndex(Collections
+		.emptyMap(), null);
+
+	private static final String HEADER = "# imagej-ops op registry, version 2";
+
+	private final Map<String, Record> records;
+
+	/** The class loader whose class files the records are checked against. */
+	private final ClassLoader loader;
+
+	private OpRegistryIndex(final Map<String, Record> records,
+		final ClassLoader loader)
+	{
+		this.records = records;
+		this.loader = loader;
+	}
+
+	// -- OpRegistryIndex methods --
+
+	/**
+	 * Gets the metadata of the given op class.
+	 *
+	 * @return The metadata, or null if the class is not indexed, or its class
+	 *         file has changed since.
+	 */
+	public Record get(final String className) {
+		final Record record = records.get(className);
+		return record == null || !record.isCurrent(loader, className) ? null
+			: record;
+	}
+
+	/** Gets the number of indexed op classes. */
+	public int size() {
+		return records.size();
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Loads and merges all op registry indices available from the given class
+	 * loader. Malformed indices are skipped.
+	 */
+	public static OpRegistryIndex load(final ClassLoader loader) {
+		final Map<String, Record> records = new HashMap<>();
+		final Map<String, String> strings = new HashMap<>();
+		try {
+			final Enumeration<URL> urls = loader.getResources(RESOURCE);
+			while (urls.hasMoreElements()) {
+				final URL url = urls.nextElement();
+				try (final Reader reader = new InputStreamReader(url.openStream(),
+					StandardCharsets.UTF_8))
+				{
+					read(reader, records, strings);
+				}
+				catch (final IOException | RuntimeException exc) {
+					// NB: An unreadable index merely costs class loading.
+				}
+			}
+		}
+		catch (final IOException exc) {
+			// NB: Without an index, classes are loaded for matching.
+		}
+		return records.isEmpty() ? EMPTY : new OpRegistryIndex(records, loader);
+	}
+
+	/**
+	 * Reads an index from the given reader, whose records are checked against
+	 * the class files of the given class loader.
+	 */
+	public static OpRegistryIndex read(final Reader reader,
+		final ClassLoader loader) throws IOException
+	{
+		final Map<String, Record> records = new HashMap<>();
+		read(reader, records, new HashMap<>());
+		return new OpRegistryIndex(records, loader);
+	}
+
+	/**
+	 * Writes the index of the given ops. Ops which cannot be loaded are
+	 * omitted.
+	 */
+	public static void write(final Collection<OpInfo> infos, final Writer writer)
+		throws IOException
+	{
+		writer.write(HEADER + "\n");
+		for (final OpInfo info : infos) {
+			final String line = line(info);
+			if (line != null) writer.write(line + "\n");
+		}
+	}
+
+	/**
+	 * Writes the index of the ops whose classes are in the given build output
+	 * directory. Invoked by {@code index-ops.groovy} at build time.
+	 *
+	 * @param args The class output directory, and the index file to write.
+	 */
+	public static void main(final String... args) throws IOException {
+		final File classesDir = new File(args[0]);
+		final File indexFile = new File(args[1]);
+		final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+		final PluginIndex pluginIndex = new PluginIndex(new DefaultPluginFinder(
+			loader));
+		pluginIndex.discover();
+		final String classesURL = classesDir.toURI().toURL().toString();
+		final List<OpInfo> infos = new ArrayList<>();
+		for (final PluginInfo<Op> plugin : pluginIndex.getPlugins(Op.class)) {
+			final URL classURL = loader.getResource(plugin.getClassName().replace(
+				'.', '/') + ".class");
+			if (classURL == null || !classURL.toString().startsWith(classesURL)) {
+				// NB: Only index ops of this build.
+				continue;
+			}
+			@SuppressWarnings({ "rawtypes", "unchecked" })
+			final PluginInfo<Command> command = (PluginInfo) plugin;
+			infos.add(new OpInfo(new CommandInfo(command)));
+		}
+
+		indexFile.getParentFile().mkdirs();
+		try (final Writer writer = new OutputStreamWriter(Files.newOutputStream(
+			indexFile.toPath()), StandardCharsets.UTF_8))
+		{
+			write(infos, writer);
+		}
+	}
+
+	// -- Helper methods --
+
+	private static void read(final Reader reader,
+		final Map<String, Record> records, final Map<String, String> strings)
+		throws IOException
+	{
+		final BufferedReader in = new BufferedReader(reader);
+		final String header = in.readLine();
+		if (!HEADER.equals(header)) {
+			throw new IOException("Unsupported op registry: " + header);
+		}
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			final String[] fields = line.split("\t", -1);
+			if (fields.length != 7) {
+				throw new IOException("Malformed op registry line: " + line);
+			}
+			final List<String> names = new ArrayList<>();
+			if (!fields[2].isEmpty()) names.add(fields[2]);
+			names.addAll(split(fields[3], strings));
+			records.put(fields[0], new Record(Long.parseLong(fields[1], 16), names,
+				Integer.parseInt(fields[4]), Integer.parseInt(fields[5]),
+				new LinkedHashSet<>(split(fields[6], strings))));
+		}
+	}
+
+	/** Splits a comma-separated list, sharing equal strings. */
+	private static List<String> split(final String list,
+		final Map<String, String> strings)
+	{
+		if (list.isEmpty()) return Collections.emptyList();
+		final List<String> values = Arrays.asList(list.split(","));
+		for (int i = 0; i < values.size(); i++) {
+			values.set(i, strings.computeIfAbsent(values.get(i), s -> s));
+		}
+		return values;
+	}
+
+	/** Gets the index line of the given op, or null if it cannot be loaded. */
+	private static String line(final OpInfo info) {
+		final CommandInfo cInfo = info.cInfo();
+		final Class<?> opClass;
+		try {
+			opClass = cInfo.loadClass();
+		}
+		catch (final Exception exc) {
+			return null;
+		}
+		if (!cInfo.isValid()) return null;
+
+		int inputCount = 0, requiredCount = 0;
+		final String name;
+		final String[] aliases;
+		try {
+			for (final ModuleItem<?> item : info.inputs()) {
+				inputCount++;
+				if (item.isRequired()) requiredCount++;
+			}
+			name = info.getName();
+			aliases = info.getAliases();
+		}
+		catch (final RuntimeException exc) {
+			// NB: Leave ops with broken metadata to the matching engine.
+			return null;
+		}
+		final long checksum = checksum(opClass.getClassLoader(), cInfo
+			.getClassName());
+		if (checksum < 0) return null;
+		final Set<String> types = new LinkedHashSet<>();
+		addTypes(opClass, types);
+
+		return cInfo.getClassName() + "\t" + Long.toHexString(checksum) + "\t" +
+			(name == null ? "" : name) + "\t" +
+			(aliases == null ? "" : String.join(",", aliases)) + "\t" + inputCount +
+			"\t" + requiredCount + "\t" + String.join(",", types);
+	}
+
+	/**
+	 * Gets the CRC-32 of the given class's class file, as found by the given
+	 * class loader; or -1 if it cannot be read. For classes in JAR files, the
+	 * checksum is taken from the JAR's directory, without reading the class.
+	 */
+	private static long checksum(final ClassLoader loader,
+		final String className)
+	{
+		if (loader == null) return -1;
+		final URL url = loader.getResource(className.replace('.', '/') +
+			".class");
+		if (url == null) return -1;
+		try {
+			final URLConnection connection = url.openConnection();
+			if (connection instanceof JarURLConnection) {
+				return ((JarURLConnection) connection).getJarEntry().getCrc();
+			}
+			final CRC32 crc = new CRC32();
+			final byte[] buffer = new byte[8192];
+			try (final InputStream in = connection.getInputStream()) {
+				int r;
+				while ((r = in.read(buffer)) > 0) {
+					crc.update(buffer, 0, r);
+				}
+			}
+			return crc.getValue();
+		}
+		catch (final IOException exc) {
+			return -1;
+		}
+	}
+
+	/** Adds the names of the given class and all its supertypes. */
+	private static void addTypes(final Class<?> c, final Set<String> types) {
+		if (c == null || !types.add(c.getName())) return;
+		addTypes(c.getSuperclass(), types);
+		for (final Class<?> iface : c.getInterfaces()) {
+			addTypes(iface, types);
+		}
+	}
+
+	// -- Helper classes --
+
+	/** The indexed metadata of an op class. */
+	public static final class Record {
+
+		private final long checksum;
+		private final List<String> names;
+		private final int inputCount;
+		private final int requiredCount;
+		private final Set<String> types;
+
+		/** Whether the class file matches the checksum, or null if unchecked. */
+		private volatile Boolean current;
+
+		private Record(final long checksum, final List<String> names,
+			final int inputCount, final int requiredCount, final Set<String> types)
+		{
+			this.checksum = checksum;
+			this.names = names;
+			this.inputCount = inputCount;
+			this.requiredCount = requiredCount;
+			this.types = types;
+		}
+
+		/** Gets the op's name and aliases, with namespace. */
+		public List<String> names() {
+			return names;
+		}
+
+		/** Gets the op's number of inputs. */
+		public int inputCount() {
+			return inputCount;
+		}
+
+		/** Gets the op's number of required inputs. */
+		public int requiredCount() {
+			return requiredCount;
+		}
+
+		/** Gets whether the op class is assignable to the given type. */
+		public boolean isAssignableTo(final Class<?> type) {
+			return types.contains(type.getName());
+		}
+
+		/**
+		 * Gets whether the class file which the given class loader would load
+		 * still matches the record.
+		 */
+		private boolean isCurrent(final ClassLoader loader,
+			final String className)
+		{
+			Boolean result = current;
+			if (result == null) {
+				result = checksum(loader, className) == checksum;
+				current = result;
+			}
+			return result;
+		}
+	}
+
+}
@@ -32,9 +32,7 @@ package net.imagej.ops.cached;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Objects;
 
 import net.imagej.ops.AbstractOp;
 import net.imagej.ops.CustomOpEnvironment;
@@ -42,26 +40,38 @@ import net.imagej.ops.Op;
 import net.imagej.ops.OpEnvironment;
 import net.imagej.ops.OpInfo;
 import net.imagej.ops.OpRef;
+import net.imagej.ops.special.SpecialOp;
+import net.imagej.ops.special.function.BinaryFunctionOp;
 import net.imagej.ops.special.function.UnaryFunctionOp;
+import net.imagej.ops.special.hybrid.BinaryHybridCF;
 import net.imagej.ops.special.hybrid.UnaryHybridCF;
 
 import org.scijava.Priority;
-import org.scijava.cache.CacheService;
 import org.scijava.command.CommandInfo;
 import org.scijava.module.Module;
 import org.scijava.module.ModuleItem;
-import org.scijava.plugin.Parameter;
 import org.scijava.util.GenericUtils;
 
 /**
  * Creates {@link CachedFunctionOp}s which know how to cache their outputs.
+ * <p>
+ * Unary and binary functions and hybrids are cached. Computers are not
+ * wrapped: they are typically mapped over the elements of an image, where a
+ * cache lookup per element costs more than the computation it saves.
+ * </p>
+ * <p>
+ * Outputs are stored in an {@link OpCache}, which is bounded by the estimated
+ * size of the cached outputs. Environments may share a cache by passing the
+ * same {@link OpCache} instance to their constructors. To recognize images
+ * with identical pixels, enable fingerprinting on the cache via
+ * {@code cache().setFingerprinting(true)}.
+ * </p>
  * 
  * @author Christian Dietz (University of Konstanz)
  */
 public class CachedOpEnvironment extends CustomOpEnvironment {
 
-	@Parameter
-	private CacheService cs;
+	private final OpCache cache;
 	private Collection<Class<?>> ignoredOps;
 
 	public CachedOpEnvironment(final OpEnvironment parent) {
@@ -77,8 +87,16 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 	public CachedOpEnvironment(final OpEnvironment parent,
 		final Collection<? extends OpInfo> prioritizedInfos,
 		final Collection<Class<?>> ignoredOps)
+	{
+		this(parent, prioritizedInfos, ignoredOps, new OpCache());
+	}
+
+	public CachedOpEnvironment(final OpEnvironment parent,
+		final Collection<? extends OpInfo> prioritizedInfos,
+		final Collection<Class<?>> ignoredOps, final OpCache cache)
 	{
 		super(parent, prioritizedInfos);
+		this.cache = cache;
 
 		if (prioritizedInfos != null) for (final OpInfo info : prioritizedInfos) {
 			info.cInfo().setPriority(Priority.FIRST_PRIORITY);
@@ -101,17 +119,40 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 			}
 		}
 
+		// NB: The order matters, since binary ops are also unary ops,
+		// and hybrids are also functions and computers.
 		final Op cachedOp;
-		if (op instanceof UnaryHybridCF) {
+		if (op instanceof BinaryHybridCF) {
+			cachedOp = wrapBinaryHybrid((BinaryHybridCF<?, ?, ?>) op);
+		}
+		else if (op instanceof UnaryHybridCF) {
 			cachedOp = wrapUnaryHybrid((UnaryHybridCF<?, ?>) op);
 		}
+		else if (op instanceof BinaryFunctionOp) {
+			cachedOp = wrapBinaryFunction((BinaryFunctionOp<?, ?, ?>) op);
+		}
 		else if (op instanceof UnaryFunctionOp) {
 			cachedOp = wrapUnaryFunction((UnaryFunctionOp<?, ?>) op);
 		}
 		else return op;
 
-		getContext().inject(cachedOp);
-		return cachedOp;
+		// NB: Do not cache if the wrapper lacks a requested special op type,
+		// e.g. the inplace of a BinaryHybridCFI.
+		for (final Type t : ref.getTypes()) {
+			final Class<?> raw = GenericUtils.getClass(t);
+			if (SpecialOp.class.isAssignableFrom(raw) && !raw.isInstance(cachedOp)) {
+				return op;
+			}
+		}
+
+		return inject(cachedOp);
+	}
+
+	// -- CachedOpEnvironment methods --
+
+	/** Gets the cache holding the outputs, including its statistics. */
+	public OpCache cache() {
+		return cache;
 	}
 
 	// -- Helper methods --
@@ -128,6 +169,24 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 		return new CachedHybridOp<>(op, otherArgs(op, 2));
 	}
 
+	private <I1, I2, O> CachedBinaryFunctionOp<I1, I2, O> wrapBinaryFunction(
+		final BinaryFunctionOp<I1, I2, O> op)
+	{
+		return new CachedBinaryFunctionOp<>(op, otherArgs(op, 2));
+	}
+
+	private <I1, I2, O> CachedBinaryHybridOp<I1, I2, O> wrapBinaryHybrid(
+		final BinaryHybridCF<I1, I2, O> op)
+	{
+		return new CachedBinaryHybridOp<>(op, otherArgs(op, 3));
+	}
+
+	/** Injects the given wrapper with the environment's context. */
+	private <OP extends Op> OP inject(final OP op) {
+		getContext().inject(op);
+		return op;
+	}
+
 	/**
 	 * Gets the given {@link Op} instance's argument value, starting at the
 	 * specified offset.
@@ -143,6 +202,20 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 		return args.toArray();
 	}
 
+	/** Creates the cache key of a computation with one input. */
+	private OpCache.Key key(final Object input, final Op op,
+		final Object[] args)
+	{
+		return OpCache.key(cache.keyOf(input), op, args);
+	}
+
+	/** Creates the cache key of a computation with two inputs. */
+	private OpCache.Key key(final Object input1, final Object input2,
+		final Op op, final Object[] args)
+	{
+		return OpCache.key(cache.keyOf(input1), cache.keyOf(input2), op, args);
+	}
+
 	// -- Helper classes --
 
 	/**
@@ -157,9 +230,6 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 		UnaryFunctionOp<I, O>
 	{
 
-		@Parameter
-		private CacheService cache;
-
 		private final UnaryFunctionOp<I, O> delegate;
 
 		private final Object[] args;
@@ -174,14 +244,14 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 		@Override
 		public O calculate(final I input) {
 
-			final Hash hash = new Hash(input, delegate, args);
+			final OpCache.Key key = key(input, delegate, args);
 
 			@SuppressWarnings("unchecked")
-			O output = (O) cache.get(hash);
+			O output = (O) cache.get(key);
 
 			if (output == null) {
 				output = delegate.calculate(input);
-				cache.put(hash, output);
+				cache.put(key, output);
 			}
 			return output;
 		}
@@ -213,7 +283,10 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 
 		@Override
 		public CachedFunctionOp<I, O> getIndependentInstance() {
-			return this;
+			final UnaryFunctionOp<I, O> independent = delegate
+				.getIndependentInstance();
+			if (independent == delegate) return this;
+			return inject(new CachedFunctionOp<>(independent, args));
 		}
 
 	}
@@ -231,9 +304,6 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 		UnaryHybridCF<I, O>
 	{
 
-		@Parameter
-		private CacheService cache;
-
 		private final UnaryHybridCF<I, O> delegate;
 
 		private final Object[] args;
@@ -248,15 +318,15 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 
 		@Override
 		public O calculate(final I input) {
-			final Hash hash = new Hash(input, delegate, args);
+			final OpCache.Key key = key(input, delegate, args);
 
 			@SuppressWarnings("unchecked")
-			O output = (O) cache.get(hash);
+			O output = (O) cache.get(key);
 
 			if (output == null) {
 				output = createOutput(input);
 				compute(input, output);
-				cache.put(hash, output);
+				cache.put(key, output);
 			}
 			return output;
 		}
@@ -278,32 +348,155 @@ public class CachedOpEnvironment extends CustomOpEnvironment {
 
 		@Override
 		public CachedHybridOp<I, O> getIndependentInstance() {
-			return this;
+			final UnaryHybridCF<I, O> independent = delegate.getIndependentInstance();
+			if (independent == delegate) return this;
+			return inject(new CachedHybridOp<>(independent, args));
 		}
 	}
 
 	/**
-	 * Simple utility class to wrap two objects and an array of objects in a
-	 * single object which combines their hashes.
+	 * Wraps a {@link BinaryFunctionOp} and caches the results. New inputs will
+	 * result in re-computation of the result.
+	 * 
+	 * @param <I1>
+	 * @param <I2>
+	 * @param <O>
 	 */
-	private class Hash {
+	class CachedBinaryFunctionOp<I1, I2, O> extends AbstractOp implements
+		BinaryFunctionOp<I1, I2, O>
+	{
+
+		private final BinaryFunctionOp<I1, I2, O> delegate;
+
+		private final Object[] args;
+
+		public CachedBinaryFunctionOp(final BinaryFunctionOp<I1, I2, O> delegate,
+			final Object[] args)
+		{
+			this.delegate = delegate;
+			this.args = args;
+		}
+
+		@Override
+		public O calculate(final I1 input1, final I2 input2) {
+			final OpCache.Key key = key(input1, input2, delegate, args);
+
+			@SuppressWarnings("unchecked")
+			O output = (O) cache.get(key);
+
+			if (output == null) {
+				output = delegate.calculate(input1, input2);
+				cache.put(key, output);
+			}
+			return output;
+		}
 
-		private final int hash;
+		@Override
+		public void run() {
+			delegate.run();
+		}
 
-		public Hash(final Object o1, final Object o2, final Object[] args) {
-			hash = Objects.hash(o1, o2.getClass(), Arrays.hashCode(args));
+		@Override
+		public I1 in1() {
+			return delegate.in1();
 		}
 
 		@Override
-		public int hashCode() {
-			return hash;
+		public I2 in2() {
+			return delegate.in2();
+		}
+
+		@Override
+		public void setInput1(final I1 input1) {
+			delegate.setInput1(input1);
+		}
+
+		@Override
+		public void setInput2(final I2 input2) {
+			delegate.setInput2(input2);
+		}
+
+		@Override
+		public O out() {
+			return delegate.out();
+		}
+
+		@Override
+		public void initialize() {
+			delegate.initialize();
+		}
+
+		@Override
+		public CachedBinaryFunctionOp<I1, I2, O> getIndependentInstance() {
+			final BinaryFunctionOp<I1, I2, O> independent = delegate
+				.getIndependentInstance();
+			if (independent == delegate) return this;
+			return inject(new CachedBinaryFunctionOp<>(independent, args));
+		}
+
+	}
+
+	/**
+	 * Wraps a {@link BinaryHybridCF} and caches the results. New inputs will
+	 * result in re-computation if {@link BinaryHybridCF} is used as
+	 * {@link BinaryFunctionOp}.
+	 * 
+	 * @param <I1>
+	 * @param <I2>
+	 * @param <O>
+	 */
+	class CachedBinaryHybridOp<I1, I2, O> extends
+		CachedBinaryFunctionOp<I1, I2, O> implements BinaryHybridCF<I1, I2, O>
+	{
+
+		private final BinaryHybridCF<I1, I2, O> delegate;
+
+		private final Object[] args;
+
+		public CachedBinaryHybridOp(final BinaryHybridCF<I1, I2, O> delegate,
+			final Object[] args)
+		{
+			super(delegate, args);
+			this.delegate = delegate;
+			this.args = args;
+		}
+
+		@Override
+		public O calculate(final I1 input1, final I2 input2) {
+			final OpCache.Key key = key(input1, input2, delegate, args);
+
+			@SuppressWarnings("unchecked")
+			O output = (O) cache.get(key);
+
+			if (output == null) {
+				output = createOutput(input1, input2);
+				compute(input1, input2, output);
+				cache.put(key, output);
+			}
+			return output;
+		}
+
+		@Override
+		public O createOutput(final I1 input1, final I2 input2) {
+			return delegate.createOutput(input1, input2);
+		}
+
+		@Override
+		public void compute(final I1 input1, final I2 input2, final O output) {
+			delegate.compute(input1, input2, output);
+		}
+
+		@Override
+		public void setOutput(final O output) {
+			delegate.setOutput(output);
 		}
 
 		@Override
-		public boolean equals(final Object obj) {
-			if (obj == this) return true;
-			if (obj instanceof Hash) return hash == ((Hash) obj).hash;
-			return false;
+		public CachedBinaryHybridOp<I1, I2, O> getIndependentInstance() {
+			final BinaryHybridCF<I1, I2, O> independent = delegate
+				.getIndependentInstance();
+			if (independent == delegate) return this;
+			return inject(new CachedBinaryHybridOp<>(independent, args));
 		}
 	}
 }
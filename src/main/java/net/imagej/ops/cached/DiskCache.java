@@ -0,0 +1,453 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.cached;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.imglib2.Dimensions;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Intervals;
+
+/**
+ * A second tier of an {@link OpCache}, which stores images evicted from
+ * memory in files of a scratch directory.
+ * <p>
+ * {@link ArrayImg}s and {@link PlanarImg}s of {@link NativeType}s with
+ * primitive array storage are supported. Each image is written to its own
+ * file, as the concatenation of its storage arrays in native byte order; the
+ * image's type and dimensions are kept in memory. Once the total size of all
+ * files exceeds the configured budget, files are discarded according to the
+ * configured {@link EvictionPolicy}.
+ * </p>
+ * <p>
+ * Reading an image back copies its file into a new image of the same kind,
+ * then discards the file, since the image is returned to the memory tier.
+ * Files are written and read through a {@link FileChannel}, in blocks of a
+ * heap buffer, so that no file stays mapped once it is discarded.
+ * </p>
+ * <p>
+ * The files of a cache in a temporary directory are purged when the JVM
+ * exits, along with the directory. Caches in other directories should be
+ * {@link #purge() purged} when no longer needed.
+ * </p>
+ *
+ * @see OpCache#setDiskCache(DiskCache)
+ */
+public class DiskCache {
+
+	/** How files are chosen for discarding, once the budget is exceeded. */
+	public enum EvictionPolicy {
+			/** Discards the least recently written file first. */
+			FIFO,
+			/** Discards the least recently used file first. */
+			LRU,
+			/** Discards the largest file first. */
+			LARGEST_FIRST
+	}
+
+	/** Size in bytes of the buffer through which files are written and read. */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final String PREFIX = "result-";
+	private static final String SUFFIX = ".bin";
+
+	private final File directory;
+	private final long maxBytes;
+	private final EvictionPolicy policy;
+
+	private final LinkedHashMap<Object, Spilled> entries;
+
+	private long bytes;
+	private long fileCount;
+	private long evictions;
+
+	/**
+	 * Creates a disk cache in a new temporary directory, with the given budget
+	 * and least recently used eviction.
+	 *
+	 * @param maxBytes Maximum size in bytes of all spilled images.
+	 * @throws IOException if the temporary directory cannot be created.
+	 */
+	public DiskCache(final long maxBytes) throws IOException {
+		this(Files.createTempDirectory("imagej-ops-cache").toFile(), maxBytes,
+			EvictionPolicy.LRU);
+		// NB: The directory can only be deleted on exit once it is empty.
+		final File dir = directory;
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteFiles(dir)));
+		directory.deleteOnExit();
+	}
+
+	/**
+	 * Creates a disk cache.
+	 *
+	 * @param directory Scratch directory for the spilled images.
+	 * @param maxBytes Maximum size in bytes of all spilled images.
+	 * @param policy How files are discarded to stay within the budget.
+	 */
+	public DiskCache(final File directory, final long maxBytes,
+		final EvictionPolicy policy)
+	{
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.policy = policy;
+		entries = new LinkedHashMap<>(16, 0.75f, policy == EvictionPolicy.LRU);
+	}
+
+	// -- DiskCache methods --
+
+	/**
+	 * Spills the given image to disk, discarding other files as needed to stay
+	 * within the budget.
+	 *
+	 * @return true if the image was written; false if it cannot be spilled,
+	 *         exceeds the whole budget or writing failed.
+	 */
+	public synchronized boolean put(final Object key, final Object value) {
+		final List<Object> arrays = arrays(value);
+		if (arrays == null) return false;
+		long size = 0;
+		for (final Object array : arrays) {
+			size += Array.getLength(array) * componentBytes(array);
+		}
+		if (size > maxBytes) return false;
+
+		remove(key);
+		final File file = new File(directory, PREFIX + fileCount++ + SUFFIX);
+		try {
+			write(file, arrays);
+		}
+		catch (final IOException exc) {
+			// NB: A cache may always fail to store a result.
+			file.delete();
+			return false;
+		}
+		final NativeImg<?, ?> img = (NativeImg<?, ?>) value;
+		entries.put(key, new Spilled(file, size, value instanceof PlanarImg,
+			Intervals.dimensionsAsLongArray(img), ((NativeType<?>) img
+				.firstElement()).createVariable()));
+		bytes += size;
+
+		while (bytes > maxBytes) {
+			evict();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the spilled image of the given key back into memory, discarding
+	 * its file.
+	 *
+	 * @return The image, or null if there is none or reading failed.
+	 */
+	public synchronized Object get(final Object key) {
+		final Spilled spilled = entries.remove(key);
+		if (spilled == null) return null;
+		bytes -= spilled.bytes;
+		try {
+			return read(spilled);
+		}
+		catch (final IOException exc) {
+			return null;
+		}
+		finally {
+			spilled.file.delete();
+		}
+	}
+
+	/** Discards the spilled image of the given key, if any. */
+	public synchronized void remove(final Object key) {
+		final Spilled spilled = entries.remove(key);
+		if (spilled == null) return;
+		bytes -= spilled.bytes;
+		spilled.file.delete();
+	}
+
+	/** Discards all spilled images. */
+	public synchronized void clear() {
+		for (final Spilled spilled : entries.values()) {
+			spilled.file.delete();
+		}
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Discards all spilled images, and deletes any other files of spilled
+	 * images left in the scratch directory, e.g. by an earlier cache.
+	 */
+	public synchronized void purge() {
+		clear();
+		deleteFiles(directory);
+	}
+
+	/** Gets the number of spilled images. */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/** Gets the size in bytes of all spilled images. */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/** Gets the maximum size in bytes of all spilled images. */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** Gets the number of files discarded to stay within the budget. */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/** Gets the scratch directory of the spilled images. */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/** Gets the policy by which files are discarded. */
+	public EvictionPolicy getEvictionPolicy() {
+		return policy;
+	}
+
+	// -- Utility methods --
+
+	/** Gets whether the given object is an image which can be spilled. */
+	public static boolean canSpill(final Object o) {
+		return arrays(o) != null;
+	}
+
+	// -- Helper methods --
+
+	private void evict() {
+		final Iterator<Map.Entry<Object, Spilled>> iter = entries.entrySet()
+			.iterator();
+		Map.Entry<Object, Spilled> victim = iter.next();
+		if (policy == EvictionPolicy.LARGEST_FIRST) {
+			while (iter.hasNext()) {
+				final Map.Entry<Object, Spilled> e = iter.next();
+				if (e.getValue().bytes > victim.getValue().bytes) victim = e;
+			}
+		}
+		remove(victim.getKey());
+		evictions++;
+	}
+
+	/**
+	 * Gets the primitive storage arrays of the given image.
+	 *
+	 * @return The arrays, or null if the object is not an image which can be
+	 *         spilled.
+	 */
+	private static List<Object> arrays(final Object o) {
+		if (!(o instanceof ArrayImg || o instanceof PlanarImg)) return null;
+		if (Intervals.numElements((Dimensions) o) == 0) return null;
+		if (!(((NativeImg<?, ?>) o).firstElement() instanceof NativeType)) {
+			return null;
+		}
+		final List<Object> arrays = new ArrayList<>();
+		if (o instanceof ArrayImg) {
+			if (!addArray(((ArrayImg<?, ?>) o).update(null), arrays)) return null;
+		}
+		else {
+			final PlanarImg<?, ?> planar = (PlanarImg<?, ?>) o;
+			for (int i = 0; i < planar.numSlices(); i++) {
+				if (!addArray(planar.getPlane(i), arrays)) return null;
+			}
+		}
+		return arrays;
+	}
+
+	private static boolean addArray(final Object access,
+		final List<Object> arrays)
+	{
+		if (!(access instanceof ArrayDataAccess)) return false;
+		final Object array = ((ArrayDataAccess<?>) access).getCurrentStorageArray();
+		if (componentBytes(array) == 0) return false;
+		arrays.add(array);
+		return true;
+	}
+
+	private static int componentBytes(final Object array) {
+		if (array instanceof byte[]) return 1;
+		if (array instanceof short[] || array instanceof char[]) return 2;
+		if (array instanceof int[] || array instanceof float[]) return 4;
+		if (array instanceof long[] || array instanceof double[]) return 8;
+		return 0;
+	}
+
+	/** Deletes the files of spilled images in the given directory. */
+	private static void deleteFiles(final File dir) {
+		final File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) &&
+			name.endsWith(SUFFIX));
+		if (files == null) return;
+		for (final File file : files) {
+			file.delete();
+		}
+	}
+
+	private static void write(final File file, final List<Object> arrays)
+		throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder
+			.nativeOrder());
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.WRITE))
+		{
+			for (final Object array : arrays) {
+				final int length = Array.getLength(array);
+				final int bytes = componentBytes(array);
+				final int step = BUFFER_SIZE / bytes;
+				for (int offset = 0; offset < length; offset += step) {
+					final int count = Math.min(step, length - offset);
+					buffer.clear();
+					put(buffer, array, offset, count);
+					buffer.position(count * bytes);
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Object read(final Spilled spilled) throws IOException {
+		final NativeImg img = spilled.planar ? //
+			new PlanarImgFactory().create(spilled.dims, spilled.type) : //
+			new ArrayImgFactory().create(spilled.dims, spilled.type);
+		final List<Object> arrays = arrays(img);
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder
+			.nativeOrder());
+		try (final FileChannel channel = FileChannel.open(spilled.file.toPath(),
+			StandardOpenOption.READ))
+		{
+			for (final Object array : arrays) {
+				final int length = Array.getLength(array);
+				final int bytes = componentBytes(array);
+				final int step = BUFFER_SIZE / bytes;
+				for (int offset = 0; offset < length; offset += step) {
+					final int count = Math.min(step, length - offset);
+					buffer.clear();
+					buffer.limit(count * bytes);
+					while (buffer.hasRemaining()) {
+						if (channel.read(buffer) < 0) throw new EOFException();
+					}
+					buffer.flip();
+					get(buffer, array, offset, count);
+				}
+			}
+		}
+		return img;
+	}
+
+	/** Copies part of the array to the start of the buffer. */
+	private static void put(final ByteBuffer buffer, final Object array,
+		final int offset, final int count)
+	{
+		if (array instanceof byte[]) buffer.put((byte[]) array, offset, count);
+		else if (array instanceof short[]) buffer.asShortBuffer().put(
+			(short[]) array, offset, count);
+		else if (array instanceof char[]) buffer.asCharBuffer().put(
+			(char[]) array, offset, count);
+		else if (array instanceof int[]) buffer.asIntBuffer().put((int[]) array,
+			offset, count);
+		else if (array instanceof float[]) buffer.asFloatBuffer().put(
+			(float[]) array, offset, count);
+		else if (array instanceof long[]) buffer.asLongBuffer().put(
+			(long[]) array, offset, count);
+		else if (array instanceof double[]) buffer.asDoubleBuffer().put(
+			(double[]) array, offset, count);
+	}
+
+	/** Copies the start of the buffer to part of the array. */
+	private static void get(final ByteBuffer buffer, final Object array,
+		final int offset, final int count)
+	{
+		if (array instanceof byte[]) buffer.get((byte[]) array, offset, count);
+		else if (array instanceof short[]) buffer.asShortBuffer().get(
+			(short[]) array, offset, count);
+		else if (array instanceof char[]) buffer.asCharBuffer().get(
+			(char[]) array, offset, count);
+		else if (array instanceof int[]) buffer.asIntBuffer().get((int[]) array,
+			offset, count);
+		else if (array instanceof float[]) buffer.asFloatBuffer().get(
+			(float[]) array, offset, count);
+		else if (array instanceof long[]) buffer.asLongBuffer().get(
+			(long[]) array, offset, count);
+		else if (array instanceof double[]) buffer.asDoubleBuffer().get(
+			(double[]) array, offset, count);
+	}
+
+	// -- Helper classes --
+
+	/** A spilled image: its file, and what is needed to recreate it. */
+	private static class Spilled {
+
+		private final File file;
+		private final long bytes;
+		private final boolean planar;
+		private final long[] dims;
+		private final NativeType<?> type;
+
+		private Spilled(final File file, final long bytes, final boolean planar,
+			final long[] dims, final NativeType<?> type)
+		{
+			this.file = file;
+			this.bytes = bytes;
+			this.planar = planar;
+			this.dims = dims;
+			this.type = type;
+		}
+	}
+
+}
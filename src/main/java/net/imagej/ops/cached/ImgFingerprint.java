@@ -0,0 +1,324 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.cached;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.ComplexType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * A fingerprint of the content of an image, used by {@link OpCache} to
+ * recognize images with identical pixels.
+ * <p>
+ * Two fingerprints are equal if the images have the same class, element type,
+ * interval and a 64-bit hash of their pixel values. The hash is an
+ * xxHash64-style streaming hash over the primitive backing arrays of
+ * {@link ArrayImg}s, {@link PlanarImg}s (plane by plane) and cell images (cell
+ * by cell); other {@link RandomAccessibleInterval}s of {@link ComplexType}s are
+ * hashed value by value in flat iteration order.
+ * </p>
+ * <p>
+ * Computing a fingerprint reads every pixel, so it costs about as much as a
+ * cheap op over the image. Since fingerprints compare by hash, two different
+ * images collide with a probability of about 2<sup>-64</sup>.
+ * </p>
+ *
+ * @see OpCache#setFingerprinting(boolean)
+ */
+public final class ImgFingerprint {
+
+	private final Class<?> imgClass;
+	private final Class<?> typeClass;
+	private final long[] min;
+	private final long[] max;
+	private final long hash;
+
+	private ImgFingerprint(final Class<?> imgClass, final Class<?> typeClass,
+		final long[] min, final long[] max, final long hash)
+	{
+		this.imgClass = imgClass;
+		this.typeClass = typeClass;
+		this.min = min;
+		this.max = max;
+		this.hash = hash;
+	}
+
+	// -- ImgFingerprint methods --
+
+	/** Gets the 64-bit hash of the pixel values. */
+	public long hash() {
+		return hash;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public boolean equals(final Object o) {
+		if (o == this) return true;
+		if (!(o instanceof ImgFingerprint)) return false;
+		final ImgFingerprint that = (ImgFingerprint) o;
+		return hash == that.hash && imgClass == that.imgClass &&
+			typeClass == that.typeClass && Arrays.equals(min, that.min) && Arrays
+				.equals(max, that.max);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(hash, imgClass, typeClass, Arrays.hashCode(min), Arrays
+			.hashCode(max));
+	}
+
+	@Override
+	public String toString() {
+		return imgClass.getSimpleName() + "<" + (typeClass == null ? "?"
+			: typeClass.getSimpleName()) + ">" + Arrays.toString(min) + "-" + Arrays
+				.toString(max) + "#" + Long.toHexString(hash);
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Computes the fingerprint of the given object.
+	 *
+	 * @return The fingerprint, or null if the object is not an image whose
+	 *         content can be fingerprinted.
+	 */
+	public static ImgFingerprint of(final Object o) {
+		if (!(o instanceof RandomAccessibleInterval)) return null;
+		final RandomAccessibleInterval<?> rai = (RandomAccessibleInterval<?>) o;
+		final long[] min = Intervals.minAsLongArray(rai);
+		final long[] max = Intervals.maxAsLongArray(rai);
+		final Object type = Intervals.numElements(rai) == 0 ? null : Util
+			.getTypeFromInterval(rai);
+		final Class<?> typeClass = type == null ? null : type.getClass();
+
+		final Hasher hasher = new Hasher();
+		if (type == null || hashStorage(rai, hasher) || hashValues(rai,
+			hasher))
+		{
+			return new ImgFingerprint(o.getClass(), typeClass, min, max, hasher
+				.digest());
+		}
+		return null;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Hashes the primitive backing arrays of a native image.
+	 *
+	 * @return false if the image's storage is not accessible as arrays.
+	 */
+	private static boolean hashStorage(final Object img, final Hasher hasher) {
+		if (img instanceof ArrayImg) {
+			return hashAccess(((ArrayImg<?, ?>) img).update(null), hasher);
+		}
+		if (img instanceof PlanarImg) {
+			final PlanarImg<?, ?> planar = (PlanarImg<?, ?>) img;
+			for (int i = 0; i < planar.numSlices(); i++) {
+				if (!hashAccess(planar.getPlane(i), hasher)) return false;
+			}
+			return true;
+		}
+		if (img instanceof AbstractCellImg) {
+			final IterableInterval<?> cells = ((AbstractCellImg<?, ?, ?, ?>) img)
+				.getCells();
+			for (final Object cell : cells) {
+				if (!hashAccess(((Cell<?>) cell).getData(), hasher)) return false;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Hashes the values of an image of {@link ComplexType}s in flat iteration
+	 * order.
+	 *
+	 * @return false if the image is not an image of {@link ComplexType}s.
+	 */
+	private static boolean hashValues(final RandomAccessibleInterval<?> rai,
+		final Hasher hasher)
+	{
+		final Cursor<?> c = Views.flatIterable(rai).cursor();
+		while (c.hasNext()) {
+			final Object value = c.next();
+			if (value instanceof RealType) {
+				hasher.update(Double.doubleToLongBits(((RealType<?>) value)
+					.getRealDouble()));
+			}
+			else if (value instanceof ComplexType) {
+				final ComplexType<?> complex = (ComplexType<?>) value;
+				hasher.update(Double.doubleToLongBits(complex.getRealDouble()));
+				hasher.update(Double.doubleToLongBits(complex.getImaginaryDouble()));
+			}
+			else return false;
+		}
+		return true;
+	}
+
+	private static boolean hashAccess(final Object access, final Hasher hasher) {
+		if (!(access instanceof ArrayDataAccess)) return false;
+		final Object array = ((ArrayDataAccess<?>) access).getCurrentStorageArray();
+		if (array instanceof byte[]) hasher.update((byte[]) array);
+		else if (array instanceof short[]) hasher.update((short[]) array);
+		else if (array instanceof char[]) hasher.update((char[]) array);
+		else if (array instanceof int[]) hasher.update((int[]) array);
+		else if (array instanceof long[]) hasher.update((long[]) array);
+		else if (array instanceof float[]) hasher.update((float[]) array);
+		else if (array instanceof double[]) hasher.update((double[]) array);
+		else if (array instanceof boolean[]) hasher.update((boolean[]) array);
+		else return false;
+		return true;
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A streaming 64-bit hash with the round and avalanche functions of
+	 * xxHash64, consuming one 64-bit word at a time into four lanes.
+	 */
+	private static final class Hasher {
+
+		private static final long P1 = 0x9E3779B185EBCA87L;
+		private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+		private static final long P3 = 0x165667B19E3779F9L;
+		private static final long P4 = 0x85EBCA77C2B2AE63L;
+		private static final long P5 = 0x27D4EB2F165667C5L;
+
+		private long v1 = P1 + P2;
+		private long v2 = P2;
+		private long v3 = 0;
+		private long v4 = -P1;
+		private long count;
+
+		private void update(final long word) {
+			switch ((int) (count++ & 3)) {
+				case 0:
+					v1 = round(v1, word);
+					break;
+				case 1:
+					v2 = round(v2, word);
+					break;
+				case 2:
+					v3 = round(v3, word);
+					break;
+				default:
+					v4 = round(v4, word);
+			}
+		}
+
+		private void update(final byte[] a) {
+			final int n = a.length & ~7;
+			for (int i = 0; i < n; i += 8) {
+				update((a[i] & 0xffL) | (a[i + 1] & 0xffL) << 8 | (a[i + 2] &
+					0xffL) << 16 | (a[i + 3] & 0xffL) << 24 | (a[i + 4] & 0xffL) << 32 |
+					(a[i + 5] & 0xffL) << 40 | (a[i + 6] & 0xffL) << 48 | (a[i + 7] &
+						0xffL) << 56);
+			}
+			for (int i = n; i < a.length; i++)
+				update(a[i]);
+		}
+
+		private void update(final short[] a) {
+			for (final short v : a)
+				update(v);
+		}
+
+		private void update(final char[] a) {
+			for (final char v : a)
+				update(v);
+		}
+
+		private void update(final int[] a) {
+			for (final int v : a)
+				update(v);
+		}
+
+		private void update(final long[] a) {
+			for (final long v : a)
+				update(v);
+		}
+
+		private void update(final float[] a) {
+			for (final float v : a)
+				update(Float.floatToIntBits(v));
+		}
+
+		private void update(final double[] a) {
+			for (final double v : a)
+				update(Double.doubleToLongBits(v));
+		}
+
+		private void update(final boolean[] a) {
+			for (final boolean v : a)
+				update(v ? 1 : 0);
+		}
+
+		private long digest() {
+			long h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long
+				.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = merge(h, v1);
+			h = merge(h, v2);
+			h = merge(h, v3);
+			h = merge(h, v4);
+			h += P5 + count;
+			h ^= h >>> 33;
+			h *= P2;
+			h ^= h >>> 29;
+			h *= P3;
+			h ^= h >>> 32;
+			return h;
+		}
+
+		private static long round(final long acc, final long word) {
+			return Long.rotateLeft(acc + word * P2, 31) * P1;
+		}
+
+		private static long merge(final long h, final long lane) {
+			return (h ^ round(0, lane)) * P1 + P4;
+		}
+	}
+
+}
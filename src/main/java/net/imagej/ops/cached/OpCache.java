@@ -0,0 +1,695 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.cached;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import net.imagej.ops.Op;
+import net.imglib2.Dimensions;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.ComplexType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+
+/**
+ * A cache for the results of {@link Op}s, bounded by the estimated memory
+ * footprint of the cached results.
+ * <p>
+ * Results are keyed by the full identity of a computation: the inputs, the
+ * class of the op and the values of the op's other arguments. Immutable
+ * values (e.g., strings and numbers), and copies of {@link Type}s and of
+ * primitive arrays, are compared by value; other inputs and arguments (e.g.,
+ * images) are compared by identity and referenced weakly, so the cache does
+ * not keep them alive. Once the estimated size of all cached results exceeds
+ * the configured budget, the least recently used results are evicted.
+ * </p>
+ * <p>
+ * Optionally, images can be keyed by an {@link ImgFingerprint} of their
+ * content instead of their identity (see {@link #setFingerprinting}). Then
+ * images with identical pixels share cached results, and results computed
+ * from an image are no longer found once its pixels change.
+ * </p>
+ * <p>
+ * Optionally, images evicted from memory are spilled to a second,
+ * disk-based tier (see {@link #setDiskCache}), from which they are read back
+ * into memory on their next lookup, instead of being recomputed.
+ * </p>
+ *
+ * @see CachedOpEnvironment
+ */
+public class OpCache {
+
+	/** Estimated size of a result which is neither an image nor an array. */
+	private static final long OBJECT_BYTES = 64;
+
+	/** Estimated size of a reference, e.g., an element of a collection. */
+	private static final long REFERENCE_BYTES = 8;
+
+	/**
+	 * Immutable classes with value-based equality, whose instances are keyed by
+	 * value. Instances of other classes are keyed by identity, even with
+	 * value-based equality: if mutable, a later change of an instance would
+	 * silently change the keys holding it.
+	 */
+	private static final Set<Class<?>> IMMUTABLE_VALUES = new HashSet<>(Arrays
+		.asList(String.class, Boolean.class, Character.class, Byte.class,
+			Short.class, Integer.class, Long.class, Float.class, Double.class,
+			BigInteger.class, BigDecimal.class, ImgFingerprint.class));
+
+	private final long maxBytes;
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16,
+		0.75f, true);
+
+	/** Queue of weakly referenced inputs which were garbage collected. */
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+	/** Evicted results being written to the disk tier. */
+	private final Map<Key, Spill> spills = new HashMap<>();
+
+	/** Results being read back from the disk tier. */
+	private final Map<Key, FutureTask<Object>> loads = new HashMap<>();
+
+	/** Keys whose results are to be discarded from the disk tier. */
+	private final List<Key> orphans = new ArrayList<>();
+
+	private volatile boolean fingerprinting;
+
+	private DiskCache diskCache;
+
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/** Creates a cache with a budget of one eighth of the maximum heap size. */
+	public OpCache() {
+		this(Runtime.getRuntime().maxMemory() / 8);
+	}
+
+	/**
+	 * Creates a cache with the given budget.
+	 *
+	 * @param maxBytes Maximum estimated size in bytes of all cached results.
+	 */
+	public OpCache(final long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	// -- OpCache methods --
+
+	/**
+	 * Gets the cached result of the given computation. A result spilled to the
+	 * disk tier is read back outside of the cache's lock, so that other lookups
+	 * proceed meanwhile.
+	 *
+	 * @return The cached result, or null if there is none.
+	 */
+	public Object get(final Key key) {
+		final FutureTask<Object> load;
+		final boolean loader;
+		synchronized (this) {
+			purge();
+			final Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				return entry.value;
+			}
+			final Spill spill = spills.get(key);
+			if (spill != null || diskCache == null) {
+				// NB: A result replaced while being spilled is stale.
+				final Object value = spill != null && spill.current ? spill.value
+					: null;
+				if (value == null) misses++;
+				else hits++;
+				return value;
+			}
+			final FutureTask<Object> pending = loads.get(key);
+			loader = pending == null;
+			if (loader) {
+				final DiskCache disk = diskCache;
+				load = new FutureTask<>(() -> disk.get(key));
+				loads.put(key, load);
+			}
+			else load = pending;
+		}
+		if (loader) load.run();
+		final Object value = result(load);
+		List<Spill> evicted = null;
+		synchronized (this) {
+			// NB: A result put meanwhile takes precedence.
+			if (loader && loads.get(key) == load) {
+				loads.remove(key);
+				if (value != null) evicted = store(key, value);
+			}
+			if (value == null) misses++;
+			else hits++;
+		}
+		spill(evicted);
+		discardOrphans();
+		return value;
+	}
+
+	/**
+	 * Caches the result of the given computation, evicting least recently used
+	 * results as needed to stay within the budget. Results which are larger
+	 * than the whole budget are not cached. Evicted results are spilled to the
+	 * disk tier outside of the cache's lock.
+	 */
+	public void put(final Key key, final Object value) {
+		final List<Spill> evicted;
+		final DiskCache disk;
+		synchronized (this) {
+			purge();
+			loads.remove(key);
+			final Spill spill = spills.get(key);
+			if (spill != null) spill.current = false;
+			// NB: An outdated spill in progress discards its own file.
+			disk = spill == null ? diskCache : null;
+			evicted = store(key, value);
+		}
+		if (disk != null) disk.remove(key);
+		spill(evicted);
+		discardOrphans();
+	}
+
+	/** Discards all cached results. */
+	public void clear() {
+		final DiskCache disk;
+		synchronized (this) {
+			entries.clear();
+			bytes = 0;
+			loads.clear();
+			for (final Spill spill : spills.values()) {
+				spill.current = false;
+			}
+			disk = diskCache;
+		}
+		if (disk != null) disk.clear();
+	}
+
+	/** Gets the number of cached results. */
+	public synchronized int size() {
+		purge();
+		return entries.size();
+	}
+
+	/** Gets the estimated size in bytes of all cached results. */
+	public synchronized long getBytes() {
+		purge();
+		return bytes;
+	}
+
+	/** Gets the maximum estimated size in bytes of all cached results. */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** Gets whether images are keyed by the fingerprint of their content. */
+	public boolean isFingerprinting() {
+		return fingerprinting;
+	}
+
+	/**
+	 * Sets whether images are keyed by the fingerprint of their content,
+	 * rather than by their identity. Fingerprinting costs a pass over the
+	 * pixels of each input image per lookup.
+	 *
+	 * @see ImgFingerprint
+	 */
+	public void setFingerprinting(final boolean fingerprinting) {
+		this.fingerprinting = fingerprinting;
+	}
+
+	/**
+	 * Gets the object by which the given input is keyed: its
+	 * {@link ImgFingerprint} if fingerprinting is enabled and the input is an
+	 * image, or else the input itself.
+	 */
+	public Object keyOf(final Object input) {
+		if (!fingerprinting) return input;
+		final ImgFingerprint fingerprint = ImgFingerprint.of(input);
+		return fingerprint == null ? input : fingerprint;
+	}
+
+	/** Gets the disk tier to which evicted images are spilled, if any. */
+	public synchronized DiskCache getDiskCache() {
+		return diskCache;
+	}
+
+	/**
+	 * Sets the disk tier to which images evicted from memory are spilled.
+	 *
+	 * @param diskCache The disk tier, or null to discard evicted results.
+	 */
+	public void setDiskCache(final DiskCache diskCache) {
+		final DiskCache previous;
+		synchronized (this) {
+			previous = this.diskCache;
+			if (previous == diskCache) return;
+			this.diskCache = diskCache;
+			loads.clear();
+			orphans.clear();
+			for (final Spill spill : spills.values()) {
+				spill.current = false;
+			}
+		}
+		if (previous != null) previous.clear();
+	}
+
+	/** Gets the number of lookups which found a cached result. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Gets the number of lookups which found no cached result. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Gets the number of results evicted to stay within the budget. */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Creates the key of a computation.
+	 *
+	 * @param input The input of the computation.
+	 * @param op The op performing the computation.
+	 * @param args The values of the op's other arguments.
+	 */
+	public static Key key(final Object input, final Op op, final Object[] args) {
+		return new Key(new Object[] { input }, op.getClass(), args);
+	}
+
+	/**
+	 * Creates the key of a computation with two inputs.
+	 *
+	 * @param input1 The first input of the computation.
+	 * @param input2 The second input of the computation.
+	 * @param op The op performing the computation.
+	 * @param args The values of the op's other arguments.
+	 */
+	public static Key key(final Object input1, final Object input2, final Op op,
+		final Object[] args)
+	{
+		return new Key(new Object[] { input1, input2 }, op.getClass(), args);
+	}
+
+	/**
+	 * Estimates the memory footprint of the given object. Images are estimated
+	 * by their number of elements times the bits per pixel of their type;
+	 * arrays and collections by their length.
+	 */
+	public static long estimateBytes(final Object o) {
+		if (o == null) return 0;
+		if (o instanceof Dimensions) {
+			final long numElements = Intervals.numElements((Dimensions) o);
+			final Object type = numElements == 0 ? null : elementType(o);
+			if (type != null) {
+				return OBJECT_BYTES + (numElements * bitsPerPixel(type) + 7) / 8;
+			}
+		}
+		if (o.getClass().isArray()) {
+			final Class<?> c = o.getClass().getComponentType();
+			return OBJECT_BYTES + Array.getLength(o) * componentBytes(c);
+		}
+		if (o instanceof Collection) {
+			return OBJECT_BYTES + ((Collection<?>) o).size() * (REFERENCE_BYTES +
+				OBJECT_BYTES);
+		}
+		return OBJECT_BYTES;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Stores a result in memory, evicting least recently used results as
+	 * needed. Evicted images are reserved for spilling to the disk tier, if
+	 * any, unless a previous result of theirs is still being spilled.
+	 *
+	 * @return The results to {@link #spill}, or null if there are none.
+	 */
+	private List<Spill> store(final Key key, final Object value) {
+		final long size = estimateBytes(value);
+		if (size > maxBytes) return null;
+		key.register(collected);
+		final Entry previous = entries.put(key, new Entry(value, size));
+		if (previous != null) bytes -= previous.bytes;
+		bytes += size;
+
+		List<Spill> evicted = null;
+		final Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+		while (bytes > maxBytes && iter.hasNext()) {
+			final Map.Entry<Key, Entry> e = iter.next();
+			bytes -= e.getValue().bytes;
+			iter.remove();
+			evictions++;
+			final Object result = e.getValue().value;
+			if (diskCache == null || spills.containsKey(e.getKey()) || !DiskCache
+				.canSpill(result)) continue;
+			final Spill spill = new Spill(diskCache, e.getKey(), result);
+			spills.put(spill.key, spill);
+			if (evicted == null) evicted = new ArrayList<>();
+			evicted.add(spill);
+		}
+		return evicted;
+	}
+
+	/**
+	 * Writes the given evicted results to the disk tier, then publishes them.
+	 * Must be called without holding the cache's lock.
+	 */
+	private void spill(final List<Spill> evicted) {
+		if (evicted == null) return;
+		for (final Spill spill : evicted) {
+			final boolean written = spill.disk.put(spill.key, spill.value);
+			final boolean stale;
+			synchronized (this) {
+				stale = written && !spill.current;
+				if (!stale) spills.remove(spill.key);
+			}
+			if (!stale) continue;
+
+			// NB: The result was replaced while being written; discard the file
+			// before the key is looked up on disk again.
+			spill.disk.remove(spill.key);
+			synchronized (this) {
+				spills.remove(spill.key);
+			}
+		}
+	}
+
+	/**
+	 * Discards entries whose weakly referenced input was garbage collected.
+	 * Their results on the disk tier are discarded later, by
+	 * {@link #discardOrphans()}.
+	 */
+	private void purge() {
+		Object ref;
+		while ((ref = collected.poll()) != null) {
+			final Key key = ((InputReference) ref).key;
+			final Entry entry = entries.remove(key);
+			if (entry != null) bytes -= entry.bytes;
+			if (diskCache != null) orphans.add(key);
+		}
+	}
+
+	/**
+	 * Discards the results of purged entries from the disk tier. Must be called
+	 * without holding the cache's lock.
+	 */
+	private void discardOrphans() {
+		final List<Key> keys;
+		final DiskCache disk;
+		synchronized (this) {
+			if (orphans.isEmpty()) return;
+			keys = new ArrayList<>(orphans);
+			orphans.clear();
+			disk = diskCache;
+		}
+		for (final Key key : keys) {
+			disk.remove(key);
+		}
+	}
+
+	/** Gets the result of the given load, or null if it failed. */
+	private static Object result(final FutureTask<Object> load) {
+		try {
+			return load.get();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (final ExecutionException exc) {
+			// NB: A cache may always fail to return a result.
+			return null;
+		}
+	}
+
+	private static Object elementType(final Object o) {
+		if (o instanceof IterableInterval) {
+			return ((IterableInterval<?>) o).firstElement();
+		}
+		if (o instanceof RandomAccessibleInterval) {
+			return Util.getTypeFromInterval((RandomAccessibleInterval<?>) o);
+		}
+		return null;
+	}
+
+	private static long bitsPerPixel(final Object type) {
+		if (type instanceof RealType) return ((RealType<?>) type).getBitsPerPixel();
+		if (type instanceof ComplexType) return 128;
+		return 8 * (REFERENCE_BYTES + OBJECT_BYTES);
+	}
+
+	private static long componentBytes(final Class<?> c) {
+		if (c == byte.class || c == boolean.class) return 1;
+		if (c == short.class || c == char.class) return 2;
+		if (c == int.class || c == float.class) return 4;
+		if (c == long.class || c == double.class) return 8;
+		return REFERENCE_BYTES + OBJECT_BYTES;
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * Key identifying a computation by inputs, op class and argument values.
+	 */
+	public static final class Key {
+
+		/**
+		 * The inputs and the arguments. Once the key is stored in the cache,
+		 * values which are keyed by identity are replaced by weak references to
+		 * them.
+		 */
+		private final Object[] inputs, args;
+
+		private final Class<?> opClass;
+		private final int hash;
+
+		private Key(final Object[] inputs, final Class<?> opClass,
+			final Object[] args)
+		{
+			this.inputs = snapshot(inputs);
+			this.opClass = opClass;
+			this.args = snapshot(args);
+			hash = Objects.hash(valuesHash(this.inputs), opClass, valuesHash(
+				this.args));
+		}
+
+		/**
+		 * Switches identity-keyed values to weak references, for storage in the
+		 * cache.
+		 */
+		private void register(final ReferenceQueue<Object> queue) {
+			register(inputs, queue);
+			register(args, queue);
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (o == this) return true;
+			if (!(o instanceof Key)) return false;
+			final Key that = (Key) o;
+			if (hash != that.hash || opClass != that.opClass) return false;
+			return valuesEqual(inputs, that.inputs) && valuesEqual(args, that.args);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		private void register(final Object[] values,
+			final ReferenceQueue<Object> queue)
+		{
+			if (values == null) return;
+			for (int i = 0; i < values.length; i++) {
+				final Object value = values[i];
+				if (value == null || value instanceof InputReference) continue;
+				if (valueKeyed(value)) continue;
+				values[i] = new InputReference(value, queue, this);
+			}
+		}
+
+		private static boolean valuesEqual(final Object[] values1,
+			final Object[] values2)
+		{
+			if (values1 == null || values2 == null) return values1 == values2;
+			if (values1.length != values2.length) return false;
+			for (int i = 0; i < values1.length; i++) {
+				if (!valueEquals(values1[i], values2[i])) return false;
+			}
+			return true;
+		}
+
+		private static boolean valueEquals(final Object o1, final Object o2) {
+			final Object v1 = resolve(o1), v2 = resolve(o2);
+			if (v1 == null || v2 == null) {
+				// NB: A garbage collected value makes the key stale.
+				return o1 == null && o2 == null;
+			}
+			if (v1 == v2) return true;
+			return valueKeyed(v1) && Objects.deepEquals(v1, v2);
+		}
+
+		/**
+		 * Hashes the given values consistently with {@link #valueEquals}: by
+		 * value if keyed by value, or else by identity.
+		 */
+		private static int valuesHash(final Object[] values) {
+			if (values == null) return 0;
+			int hash = 1;
+			for (final Object value : values) {
+				final int h;
+				if (value == null) h = 0;
+				else if (!valueKeyed(value)) h = System.identityHashCode(value);
+				else if (value.getClass().isArray()) {
+					h = Arrays.deepHashCode(new Object[] { value });
+				}
+				else h = value.hashCode();
+				hash = 31 * hash + h;
+			}
+			return hash;
+		}
+
+		/**
+		 * Copies the given values, replacing each {@link Type} and primitive
+		 * array by a copy of it. These are mutable (e.g., the element of a
+		 * cursor), so the key keeps their value at the time of the computation.
+		 */
+		private static Object[] snapshot(final Object[] values) {
+			if (values == null) return null;
+			final Object[] copy = values.clone();
+			for (int i = 0; i < copy.length; i++) {
+				if (copy[i] instanceof Type) copy[i] = ((Type<?>) copy[i]).copy();
+				else if (primitiveArray(copy[i])) {
+					final int length = Array.getLength(copy[i]);
+					final Object array = Array.newInstance(copy[i].getClass()
+						.getComponentType(), length);
+					System.arraycopy(copy[i], 0, array, 0, length);
+					copy[i] = array;
+				}
+			}
+			return copy;
+		}
+
+		/**
+		 * Whether the given value is compared by value: a snapshot of a
+		 * {@link Type} or of a primitive array, or an instance of an immutable
+		 * value class.
+		 */
+		private static boolean valueKeyed(final Object value) {
+			return value instanceof Type || primitiveArray(value) ||
+				IMMUTABLE_VALUES.contains(value.getClass());
+		}
+
+		private static boolean primitiveArray(final Object value) {
+			return value != null && value.getClass().isArray() && value.getClass()
+				.getComponentType().isPrimitive();
+		}
+
+		private static Object resolve(final Object o) {
+			return o instanceof InputReference ? ((InputReference) o).get() : o;
+		}
+	}
+
+	/**
+	 * A weak reference to an input or argument, remembering the key it belongs
+	 * to.
+	 */
+	private static class InputReference extends WeakReference<Object> {
+
+		private final Key key;
+
+		private InputReference(final Object input,
+			final ReferenceQueue<Object> queue, final Key key)
+		{
+			super(input, queue);
+			this.key = key;
+		}
+	}
+
+	/** An evicted result being written to the disk tier. */
+	private static class Spill {
+
+		private final DiskCache disk;
+		private final Key key;
+		private final Object value;
+
+		/** Whether the result was not replaced meanwhile. Guarded by the cache. */
+		private boolean current = true;
+
+		private Spill(final DiskCache disk, final Key key, final Object value) {
+			this.disk = disk;
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/** A cached result, with its estimated size. */
+	private static class Entry {
+
+		private final Object value;
+		private final long bytes;
+
+		private Entry(final Object value, final long bytes) {
+			this.value = value;
+			this.bytes = bytes;
+		}
+	}
+
+}
@@ -0,0 +1,482 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+
+import org.scijava.parse.Group;
+import org.scijava.parse.Operator;
+import org.scijava.parse.Operators;
+import org.scijava.parse.SyntaxTree;
+import org.scijava.parse.Variable;
+import org.scijava.parse.eval.Evaluator;
+
+/**
+ * An expression over images, fused into a single per-pixel pass.
+ * <p>
+ * The syntax tree is compiled into a program over a file of registers, with
+ * one register per distinct subexpression; repeated variables and
+ * subexpressions are hence loaded or computed only once per pixel, and no
+ * intermediate images are produced. Each register holds a block of pixels, so
+ * that every instruction runs a tight loop over the block, which stays in
+ * cache until the results are written.
+ * </p>
+ *
+ * @see OpEvaluator#evaluateFused(String)
+ */
+final class FusedExpression {
+
+	/** Number of pixels evaluated together by each instruction. */
+	private static final int BLOCK_SIZE = 256;
+
+	/** One step of the program, over a block of {@code n} pixels. */
+	private interface Instruction {
+
+		void execute(double[][] r, int n);
+	}
+
+	private final Evaluator evaluator;
+
+	/**
+	 * Register holding the value of each distinct subexpression, keyed by its
+	 * printed syntax tree.
+	 */
+	private final Map<String, Integer> registers = new HashMap<>();
+
+	/** Register holding the pixel values of each distinct image. */
+	private final Map<Object, Integer> imageRegisters = new IdentityHashMap<>();
+
+	private final List<IterableInterval<? extends RealType<?>>> images =
+		new ArrayList<>();
+
+	private final List<Instruction> program = new ArrayList<>();
+
+	/** Values of the constant registers. */
+	private final Map<Integer, Double> constants = new HashMap<>();
+
+	private int registerCount;
+
+	private final int result;
+
+	public FusedExpression(final SyntaxTree tree, final Evaluator evaluator) {
+		this.evaluator = evaluator;
+		result = compile(tree);
+		if (images.isEmpty()) {
+			throw new IllegalArgumentException("No image operands: " + tree);
+		}
+		final IterableInterval<?> first = images.get(0);
+		for (final IterableInterval<?> image : images) {
+			checkCompatible(first, image);
+		}
+	}
+
+	// -- FusedExpression methods --
+
+	/** Gets the images read by the expression, in order of appearance. */
+	public List<IterableInterval<? extends RealType<?>>> images() {
+		return images;
+	}
+
+	/**
+	 * Ensures that the given output has the same dimensions and iteration order
+	 * as the images of the expression.
+	 *
+	 * @throws IllegalArgumentException if the output is incompatible.
+	 */
+	public void checkOutput(final IterableInterval<?> output) {
+		checkCompatible(images.get(0), output);
+	}
+
+	/**
+	 * Evaluates the expression for the given range of pixels, in iteration
+	 * order, writing the results to the given output.
+	 */
+	public void compute(final IterableInterval<? extends RealType<?>> output,
+		final int startIndex, final int stepSize, final int numSteps)
+	{
+		final double[][] r = new double[registerCount][BLOCK_SIZE];
+		for (final Map.Entry<Integer, Double> constant : constants.entrySet()) {
+			Arrays.fill(r[constant.getKey()], constant.getValue());
+		}
+		final Instruction[] code = program.toArray(new Instruction[0]);
+
+		final int n = images.size();
+		final double[][] pixels = new double[n][];
+		@SuppressWarnings("unchecked")
+		final Cursor<? extends RealType<?>>[] cursors = new Cursor[n];
+		for (int i = 0; i < n; i++) {
+			final IterableInterval<? extends RealType<?>> image = images.get(i);
+			pixels[i] = r[imageRegisters.get(image)];
+			cursors[i] = image.cursor();
+		}
+		final Cursor<? extends RealType<?>> outCursor = output.cursor();
+		final double[] values = r[result];
+
+		for (int done = 0; done < numSteps; done += BLOCK_SIZE) {
+			final int size = Math.min(BLOCK_SIZE, numSteps - done);
+			final int first = done == 0 ? startIndex + 1 : stepSize;
+			for (int i = 0; i < n; i++) {
+				load(cursors[i], pixels[i], size, first, stepSize);
+			}
+			for (final Instruction instruction : code) {
+				instruction.execute(r, size);
+			}
+			for (int k = 0; k < size; k++) {
+				outCursor.jumpFwd(k == 0 ? first : stepSize);
+				outCursor.get().setReal(values[k]);
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Compiles the given subexpression, returning its register. */
+	private int compile(final SyntaxTree tree) {
+		// NB: SyntaxTree cannot be hashed directly, since leaves have no children.
+		final String key = tree.toString();
+		final Integer existing = registers.get(key);
+		if (existing != null) return existing;
+		final int register = emit(tree);
+		registers.put(key, register);
+		return register;
+	}
+
+	private int emit(final SyntaxTree tree) {
+		final Object token = tree.token();
+		if (token instanceof Number) {
+			return constant(((Number) token).doubleValue());
+		}
+		if (token instanceof Variable) return operand((Variable) token);
+		if (token instanceof Group) {
+			// NB: A parenthesized expression.
+			if (((Group) token).matches(Operators.PARENS) && tree.count() == 1) {
+				return compile(tree.child(0));
+			}
+			throw unsupported(token);
+		}
+		if (token instanceof Operator) {
+			final Operator op = (Operator) token;
+			if (op.getArity() == 1) return unary(op, compile(tree.child(0)));
+			if (op.getArity() == 2) {
+				return binary(op, compile(tree.child(0)), compile(tree.child(1)));
+			}
+		}
+		throw unsupported(token);
+	}
+
+	private int operand(final Variable variable) {
+		final Object value = evaluator.get(variable);
+		if (value instanceof Number) {
+			return constant(((Number) value).doubleValue());
+		}
+		if (value instanceof RealType) {
+			return constant(((RealType<?>) value).getRealDouble());
+		}
+		if (value instanceof IterableInterval && ((IterableInterval<?>) value)
+			.firstElement() instanceof RealType)
+		{
+			final Integer existing = imageRegisters.get(value);
+			if (existing != null) return existing;
+			@SuppressWarnings("unchecked")
+			final IterableInterval<? extends RealType<?>> image =
+				(IterableInterval<? extends RealType<?>>) value;
+			final int register = registerCount++;
+			images.add(image);
+			imageRegisters.put(image, register);
+			return register;
+		}
+		throw new IllegalArgumentException("Unsupported operand: " + variable);
+	}
+
+	private int constant(final double value) {
+		final int register = registerCount++;
+		constants.put(register, value);
+		return register;
+	}
+
+	private int unary(final Operator op, final int a) {
+		if (op.equals(Operators.POS)) return a;
+		for (final Unary f : Unary.values()) {
+			if (!op.equals(f.operator)) continue;
+			if (constants.containsKey(a)) {
+				// NB: Fold operations on constants.
+				final double[] z = new double[1];
+				f.apply(new double[] { constants.get(a) }, z, 1);
+				return constant(z[0]);
+			}
+			final int o = registerCount++;
+			program.add((r, n) -> f.apply(r[a], r[o], n));
+			return o;
+		}
+		throw unsupported(op);
+	}
+
+	private int binary(final Operator op, final int a, final int b) {
+		for (final Binary f : Binary.values()) {
+			if (!op.equals(f.operator)) continue;
+			if (constants.containsKey(a) && constants.containsKey(b)) {
+				// NB: Fold operations on constants.
+				final double[] z = new double[1];
+				f.apply(new double[] { constants.get(a) }, new double[] { constants
+					.get(b) }, z, 1);
+				return constant(z[0]);
+			}
+			final int o = registerCount++;
+			program.add((r, n) -> f.apply(r[a], r[b], r[o], n));
+			return o;
+		}
+		throw unsupported(op);
+	}
+
+	private static void load(final Cursor<? extends RealType<?>> cursor,
+		final double[] values, final int size, final int first, final int step)
+	{
+		for (int k = 0; k < size; k++) {
+			cursor.jumpFwd(k == 0 ? first : step);
+			values[k] = cursor.get().getRealDouble();
+		}
+	}
+
+	private static void checkCompatible(final IterableInterval<?> a,
+		final IterableInterval<?> b)
+	{
+		if (!Intervals.equalDimensions(a, b) || !a.iterationOrder().equals(b
+			.iterationOrder()))
+		{
+			throw new IllegalArgumentException(
+				"Images differ in dimensions or iteration order");
+		}
+	}
+
+	private static double truth(final double v) {
+		return v != 0 && !Double.isNaN(v) ? 1 : 0;
+	}
+
+	private static IllegalArgumentException unsupported(final Object token) {
+		return new IllegalArgumentException("Unsupported in fused expressions: " +
+			token);
+	}
+
+	// -- Helper classes --
+
+	/** Unary operators, applied to blocks of values. */
+	private enum Unary {
+
+		NEG(Operators.NEG) {
+
+			@Override
+			void apply(final double[] x, final double[] z, final int n) {
+				for (int i = 0; i < n; i++) z[i] = -x[i];
+			}
+		},
+
+		NOT(Operators.NOT) {
+
+			@Override
+			void apply(final double[] x, final double[] z, final int n) {
+				for (int i = 0; i < n; i++) z[i] = 1 - truth(x[i]);
+			}
+		};
+
+		private final Operator operator;
+
+		private Unary(final Operator operator) {
+			this.operator = operator;
+		}
+
+		abstract void apply(double[] x, double[] z, int n);
+	}
+
+	/** Binary operators, applied to blocks of values. */
+	private enum Binary {
+
+		POW(Operators.POW) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = Math.pow(x[i], y[i]);
+			}
+		},
+
+		MUL(Operators.MUL) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] * y[i];
+			}
+		},
+
+		DIV(Operators.DIV) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] / y[i];
+			}
+		},
+
+		MOD(Operators.MOD) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] % y[i];
+			}
+		},
+
+		ADD(Operators.ADD) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] + y[i];
+			}
+		},
+
+		SUB(Operators.SUB) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] - y[i];
+			}
+		},
+
+		LESS_THAN(Operators.LESS_THAN) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] < y[i] ? 1 : 0;
+			}
+		},
+
+		GREATER_THAN(Operators.GREATER_THAN) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] > y[i] ? 1 : 0;
+			}
+		},
+
+		LESS_THAN_OR_EQUAL(Operators.LESS_THAN_OR_EQUAL) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] <= y[i] ? 1 : 0;
+			}
+		},
+
+		GREATER_THAN_OR_EQUAL(Operators.GREATER_THAN_OR_EQUAL) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] >= y[i] ? 1 : 0;
+			}
+		},
+
+		EQUAL(Operators.EQUAL) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] == y[i] ? 1 : 0;
+			}
+		},
+
+		NOT_EQUAL(Operators.NOT_EQUAL) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = x[i] != y[i] ? 1 : 0;
+			}
+		},
+
+		LOGICAL_AND(Operators.LOGICAL_AND) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) z[i] = truth(x[i]) * truth(y[i]);
+			}
+		},
+
+		LOGICAL_OR(Operators.LOGICAL_OR) {
+
+			@Override
+			void apply(final double[] x, final double[] y, final double[] z,
+				final int n)
+			{
+				for (int i = 0; i < n; i++) {
+					z[i] = Math.max(truth(x[i]), truth(y[i]));
+				}
+			}
+		};
+
+		private final Operator operator;
+
+		private Binary(final Operator operator) {
+			this.operator = operator;
+		}
+
+		abstract void apply(double[] x, double[] y, double[] z, int n);
+	}
+
+}
@@ -40,6 +40,11 @@ import java.util.Map;
 import net.imagej.ops.Op;
 import net.imagej.ops.OpEnvironment;
 import net.imagej.ops.Ops;
+import net.imagej.ops.thread.chunker.Chunk;
+import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imglib2.IterableInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
 
 import org.scijava.parse.Operator;
 import org.scijava.parse.Operators;
@@ -128,6 +133,42 @@ public class OpEvaluator extends AbstractStandardStackEvaluator {
 
 	// -- OpEvaluator methods --
 
+	/**
+	 * Evaluates the given expression over images, fused into a single parallel
+	 * per-pixel pass.
+	 * <p>
+	 * Unlike {@link #evaluate(String)}, which executes one op per operator and
+	 * hence produces an intermediate image for each, no intermediate images are
+	 * created. Variables must be {@link RealType} images with the same
+	 * dimensions and iteration order, or numbers. Values are computed in double
+	 * precision, with relational and logical operators yielding {@code 1} or
+	 * {@code 0}, and written to a new {@link DoubleType} image.
+	 * </p>
+	 *
+	 * @throws IllegalArgumentException if the expression has no image operands,
+	 *           or anything but arithmetic, relational and logical operators.
+	 */
+	public IterableInterval<DoubleType> evaluateFused(final String expression) {
+		final FusedExpression fused = fuse(expression);
+		@SuppressWarnings("unchecked")
+		final IterableInterval<DoubleType> output =
+			(IterableInterval<DoubleType>) ops.run(Ops.Create.Img.class, fused
+				.images().get(0), new DoubleType());
+		compute(fused, output);
+		return output;
+	}
+
+	/**
+	 * As {@link #evaluateFused(String)}, writing the results to the given output
+	 * image, which must match the image operands.
+	 */
+	public <T extends RealType<T>> IterableInterval<T> evaluateFused(
+		final String expression, final IterableInterval<T> output)
+	{
+		compute(fuse(expression), output);
+		return output;
+	}
+
 	/**
 	 * Executes the given {@link Operator operation} with the specified argument
 	 * list.
@@ -416,6 +457,25 @@ public class OpEvaluator extends AbstractStandardStackEvaluator {
 
 	// -- Helper methods --
 
+	private FusedExpression fuse(final String expression) {
+		return new FusedExpression(getParser().parseTree(expression), this);
+	}
+
+	private void compute(final FusedExpression fused,
+		final IterableInterval<? extends RealType<?>> output)
+	{
+		fused.checkOutput(output);
+		ops.run(ChunkerOp.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				fused.compute(output, startIndex, stepSize, numSteps);
+			}
+		}, output.size());
+	}
+
 	private List<?> list(final Object o) {
 		if (o instanceof List) return (List<?>) o;
 		return Collections.singletonList(o);
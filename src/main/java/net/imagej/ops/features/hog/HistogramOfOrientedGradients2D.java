@@ -40,6 +40,7 @@ import net.imagej.ops.create.img.CreateImgFromDimsAndType;
 import net.imagej.ops.special.function.Functions;
 import net.imagej.ops.special.function.UnaryFunctionOp;
 import net.imagej.ops.special.hybrid.AbstractUnaryHybridCF;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imagej.ops.thread.chunker.CursorBasedChunk;
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
@@ -97,15 +98,11 @@ public class HistogramOfOrientedGradients2D<T extends RealType<T>>
 
 	private Converter<GenericComposite<FloatType>, FloatType> converterGetMax;
 
-	private ExecutorService es;
-
 	@Parameter
 	private ThreadService ts;
 
 	@Override
 	public void initialize() {
-		es = ts.getExecutorService();
-
 		createOp = Functions.unary(ops(), CreateImgFromDimsAndType.class, RandomAccessibleInterval.class,
 				new FinalInterval(in().dimension(0), in().dimension(1), numOrientations), new FloatType());
 
@@ -149,6 +146,7 @@ public class HistogramOfOrientedGradients2D<T extends RealType<T>>
 	@SuppressWarnings("unchecked")
 	@Override
 	public void compute(RandomAccessibleInterval<T> in, RandomAccessibleInterval<T> out) {
+		final ExecutorService es = ExecutionContext.executor(this, ts);
 		final RandomAccessible<FloatType> convertedIn = Converters.convert(Views.extendMirrorDouble(in),
 				converterToFloat, new FloatType());
 
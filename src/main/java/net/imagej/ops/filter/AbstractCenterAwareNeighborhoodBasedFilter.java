@@ -83,6 +83,17 @@ public abstract class AbstractCenterAwareNeighborhoodBasedFilter<I, O> extends
 		return shape;
 	}
 
+	/**
+	 * Get the factory for the out-of-bounds strategy used by this filter.
+	 * 
+	 * @return the out-of-bounds factory
+	 */
+	public OutOfBoundsFactory<I, RandomAccessibleInterval<I>>
+		getOutOfBoundsFactory()
+	{
+		return outOfBoundsFactory;
+	}
+
 	/**
 	 * @param inType First element from the input {@link RandomAccessibleInterval}
 	 *          that may be used for determining the class.
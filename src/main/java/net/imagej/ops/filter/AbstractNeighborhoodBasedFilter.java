@@ -81,6 +81,17 @@ public abstract class AbstractNeighborhoodBasedFilter<I, O> extends
 		return shape;
 	}
 
+	/**
+	 * Get the factory for the out-of-bounds strategy used by this filter.
+	 * 
+	 * @return the out-of-bounds factory
+	 */
+	public OutOfBoundsFactory<I, RandomAccessibleInterval<I>>
+		getOutOfBoundsFactory()
+	{
+		return outOfBoundsFactory;
+	}
+
 	/**
 	 * @return the Computer to map to all neighborhoods of input to output.
 	 */
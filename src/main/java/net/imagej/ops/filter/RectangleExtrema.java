@@ -0,0 +1,532 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.filter;
+
+import net.imagej.ops.Environmental;
+import net.imagej.ops.thread.chunker.Chunk;
+import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Computes the minimum or maximum over {@link RectangleShape} neighborhoods
+ * with the van Herk/Gil-Werman algorithm, at a constant cost per pixel
+ * regardless of the size of the rectangle.
+ * <p>
+ * The extrema of a rectangle are separable, and are computed one dimension
+ * after the other. Each line is cut into blocks of the rectangle's width, and
+ * the running extrema from the start and from the end of each block are
+ * computed; the extremum of a window is then the extremum of a suffix of one
+ * block and a prefix of the next, i.e., three comparisons per pixel per
+ * dimension. Lines are processed in parallel, and lines beyond the first
+ * dimension in panels of adjacent lines, so that memory is read contiguously.
+ * </p>
+ * <p>
+ * The interval is processed in boxes, one after the other, so that only a
+ * bounded number of values (plus a halo of the span) is buffered at a time.
+ * Boxes are tiled along the last dimension and, if there are more than two,
+ * the second; the halo of each box is read again by its neighbors.
+ * </p>
+ */
+public final class RectangleExtrema {
+
+	private RectangleExtrema() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/** Number of adjacent lines processed together beyond the first dimension. */
+	private static final int PANEL_SIZE = 256;
+
+	/** Number of values buffered per box, if its lines are short enough. */
+	private static final int BOX_SIZE = 1 << 22;
+
+	/** Maximum number of values buffered per box, of a single tile. */
+	private static final long MAX_BOX_SIZE = 1 << 24;
+
+	/** A function of a pixel's value and the extrema of its neighborhood. */
+	public interface ExtremaFunction {
+
+		/**
+		 * @return the output value of the pixel of value {@code center}, in a
+		 *         neighborhood with the given minimum and maximum
+		 */
+		double compute(double center, double min, double max);
+	}
+
+	/** Receives the (signed) extrema of a box. */
+	private interface BoxWriter {
+
+		/**
+		 * @param from the position of the box, relative to the interval's minimum
+		 * @param box the dimensions of the box
+		 * @param extrema the extrema, in flat order, one array per sign
+		 */
+		void write(long[] from, long[] box, double[][] extrema);
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Whether the extrema of the given shape, over the given input, can be
+	 * computed into the given output with the van Herk/Gil-Werman algorithm.
+	 */
+	public static boolean handles(final Shape shape,
+		final RandomAccessibleInterval<?> input, final IterableInterval<?> output)
+	{
+		if (!(shape instanceof RectangleShape)) return false;
+		if (!(Views.iterable(input).firstElement() instanceof RealType)) {
+			return false;
+		}
+		if (!(output.firstElement() instanceof RealType)) return false;
+		if (!Intervals.equalDimensions(input, output)) return false;
+		if (!(output instanceof RandomAccessibleInterval) && !output
+			.iterationOrder().equals(Views.flatIterable(input).iterationOrder()))
+		{
+			return false;
+		}
+		// NB: The extrema of a rectangle without its center are not separable.
+		final RectangleShape rect = (RectangleShape) shape;
+		final long fullSize = (long) Math.pow(2 * rect.getSpan() + 1, input
+			.numDimensions());
+		if (rect.neighborhoodsRandomAccessible(input).randomAccess().get()
+			.size() < fullSize) return false;
+		// NB: A box of a single tile, with its halo, must be buffered.
+		final long[] box = Intervals.dimensionsAsLongArray(input);
+		box[box.length - 1] = 1;
+		if (box.length > 2) box[1] = 1;
+		return bufferSize(box, rect.getSpan()) <= MAX_BOX_SIZE;
+	}
+
+	/**
+	 * Computes the minimum of each neighborhood of the given shape.
+	 *
+	 * @param op the op whose environment runs the computation in parallel
+	 * @param source the input, extended beyond the interval
+	 * @param interval the interval whose neighborhoods are computed
+	 * @param shape the neighborhood shape
+	 * @param output the {@link RealType} output, for which
+	 *          {@link #handles(Shape, RandomAccessibleInterval, IterableInterval)}
+	 *          holds
+	 */
+	public static void min(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval,
+		final RectangleShape shape, final IterableInterval<?> output)
+	{
+		compute(op, source, interval, shape.getSpan(), new double[] { 1 },
+			(from, box, extrema) -> write(op, interval, extrema[0], 1, from, box,
+				output));
+	}
+
+	/**
+	 * Computes the maximum of each neighborhood of the given shape.
+	 *
+	 * @see #min(Environmental, RandomAccessible, Interval, RectangleShape,
+	 *      IterableInterval)
+	 */
+	public static void max(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval,
+		final RectangleShape shape, final IterableInterval<?> output)
+	{
+		// NB: The maximum is the negated minimum of the negated values.
+		compute(op, source, interval, shape.getSpan(), new double[] { -1 },
+			(from, box, extrema) -> write(op, interval, extrema[0], -1, from, box,
+				output));
+	}
+
+	/**
+	 * Computes a function of each pixel and the minimum and maximum of its
+	 * neighborhood, reading the source only once.
+	 *
+	 * @see #min(Environmental, RandomAccessible, Interval, RectangleShape,
+	 *      IterableInterval)
+	 */
+	public static void minMax(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval,
+		final RectangleShape shape, final IterableInterval<?> output,
+		final ExtremaFunction function)
+	{
+		compute(op, source, interval, shape.getSpan(), new double[] { 1, -1 },
+			(from, box, extrema) -> write(op, source, interval, extrema[0],
+				extrema[1], function, from, box, output));
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Computes the minima of the values multiplied by each of the given signs,
+	 * box by box.
+	 */
+	private static void compute(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval, final int span,
+		final double[] signs, final BoxWriter writer)
+	{
+		final int n = interval.numDimensions();
+		final long[] tile = tileSize(interval, span);
+		final long[] from = new long[n];
+		final long[] box = new long[n];
+		final long[] sizes = new long[n];
+
+		// NB: The minima of each sign are reduced in turn, sharing one spare.
+		final double[][] buffers = new double[signs.length + 1][(int) bufferSize(
+			tile, span)];
+		final double[][] values = new double[signs.length][];
+		while (true) {
+			for (int d = 0; d < n; d++) {
+				box[d] = Math.min(tile[d], interval.dimension(d) - from[d]);
+				sizes[d] = box[d] + (d == 0 ? 0 : 2 * span);
+			}
+
+			System.arraycopy(buffers, 0, values, 0, signs.length);
+			double[] spare = buffers[signs.length];
+			readLines(op, source, interval, span, from, signs, sizes, values);
+			for (int c = 0; c < signs.length; c++) {
+				final long[] dims = sizes.clone();
+				for (int d = 1; d < n; d++) {
+					final long[] inSizes = dims.clone();
+					dims[d] = box[d];
+					reducePanels(op, values[c], inSizes, d, dims[d], span, spare);
+					final double[] result = spare;
+					spare = values[c];
+					values[c] = result;
+				}
+			}
+			writer.write(from, box, values);
+
+			// advance to the next box
+			int d = 0;
+			while (d < n && (from[d] += tile[d]) >= interval.dimension(d)) {
+				from[d++] = 0;
+			}
+			if (d == n) break;
+		}
+	}
+
+	/**
+	 * Gets the dimensions of the boxes the interval is processed in. Boxes span
+	 * the first dimension and, except for the second of more than two, the
+	 * middle ones; they are tiled along the others, such that about
+	 * {@link #BOX_SIZE} values are buffered per box. Tiles are square if they
+	 * are smaller than the interval, to keep the halo small.
+	 */
+	private static long[] tileSize(final Interval interval, final int span) {
+		final long[] tile = Intervals.dimensionsAsLongArray(interval);
+		final int last = tile.length - 1;
+		if (last == 0) {
+			// NB: One-dimensional boxes are read as lines, with their halo.
+			tile[0] = Math.min(tile[0], BOX_SIZE);
+			return tile;
+		}
+		long lineSize = 1;
+		for (int d = 0; d < last; d++) {
+			if (d != 1) lineSize *= tile[d] + (d == 0 ? 0 : 2 * span);
+		}
+		final long lines = Math.max(1, BOX_SIZE / lineSize);
+		long rows = 1;
+		if (last > 1) {
+			final long side = (long) Math.sqrt(lines) - 2 * span;
+			tile[1] = Math.min(tile[1], Math.max(1, side));
+			rows = tile[1] + 2 * span;
+		}
+		tile[last] = Math.min(tile[last], Math.max(1, lines / rows - 2 * span));
+		return tile;
+	}
+
+	/**
+	 * Gets the number of values buffered for a box of the given dimensions: the
+	 * first dimension is buffered without its halo.
+	 */
+	private static long bufferSize(final long[] box, final int span) {
+		long size = box[0];
+		for (int d = 1; d < box.length; d++) {
+			size *= box[d] + 2 * span;
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the number of consecutive elements of a box, in flat order, which
+	 * are also consecutive in the interval.
+	 */
+	private static long runLength(final Interval interval, final long[] box) {
+		long length = 1;
+		for (int d = 0; d < box.length; d++) {
+			length *= box[d];
+			if (box[d] != interval.dimension(d)) break;
+		}
+		return length;
+	}
+
+	/** Gets the flat index in the interval of the given element of a box. */
+	private static long offset(final Interval interval, final long[] from,
+		final long[] box, final long index)
+	{
+		long offset = 0, stride = 1, rest = index;
+		for (int d = 0; d < box.length; d++) {
+			offset += (from[d] + rest % box[d]) * stride;
+			rest /= box[d];
+			stride *= interval.dimension(d);
+		}
+		return offset;
+	}
+
+	/**
+	 * Computes the minima along the first dimension, from lines of the source
+	 * read with a halo of the span, for each of the given signs.
+	 *
+	 * @param from the position of the box, relative to the interval's minimum
+	 */
+	private static void readLines(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval, final int span,
+		final long[] from, final double[] signs, final long[] sizes,
+		final double[][] results)
+	{
+		final int length = (int) sizes[0];
+		final int window = 2 * span + 1;
+		final int lines = (int) (Intervals.numElements(sizes) / length);
+		op.ops().run(ChunkerOp.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				final RandomAccess<?> access = source.randomAccess();
+				final long[] position = new long[sizes.length];
+				final double[] values = new double[length + window - 1];
+				final double[] line = new double[values.length];
+				final double[] prefix = new double[line.length];
+				for (int i = 0; i < numSteps; i++) {
+					final int index = startIndex + i * stepSize;
+					position[0] = interval.min(0) - span + from[0];
+					long rest = index;
+					for (int d = 1; d < sizes.length; d++) {
+						position[d] = interval.min(d) - span + from[d] + rest % sizes[d];
+						rest /= sizes[d];
+					}
+					access.setPosition(position);
+					for (int x = 0; x < values.length; x++) {
+						values[x] = ((RealType<?>) access.get()).getRealDouble();
+						access.fwd(0);
+					}
+					final int offset = index * length;
+					for (int c = 0; c < signs.length; c++) {
+						for (int x = 0; x < line.length; x++) {
+							line[x] = signs[c] * values[x];
+						}
+						runs(line, prefix, line.length, 1, window);
+						final double[] result = results[c];
+						for (int x = 0; x < length; x++) {
+							result[offset + x] = min(line[x], prefix[x + window - 1]);
+						}
+					}
+				}
+			}
+		}, lines);
+	}
+
+	/**
+	 * Computes the minima along dimension {@code d} of the given values, in
+	 * panels of adjacent lines.
+	 */
+	private static void reducePanels(final Environmental op,
+		final double[] values, final long[] sizes, final int d,
+		final long resultLength, final int span, final double[] result)
+	{
+		final int window = 2 * span + 1;
+		long innerSize = 1;
+		for (int e = 0; e < d; e++) {
+			innerSize *= sizes[e];
+		}
+		final int inner = (int) innerSize;
+		final int length = (int) sizes[d];
+		final int outLength = (int) resultLength;
+		final int panels = (inner + PANEL_SIZE - 1) / PANEL_SIZE;
+		long outerSize = 1;
+		for (int e = d + 1; e < sizes.length; e++) {
+			outerSize *= sizes[e];
+		}
+		final int units = (int) outerSize * panels;
+		op.ops().run(ChunkerOp.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				final int capacity = Math.min(PANEL_SIZE, inner);
+				final double[] panel = new double[length * capacity];
+				final double[] prefix = new double[panel.length];
+				for (int i = 0; i < numSteps; i++) {
+					final int unit = startIndex + i * stepSize;
+					final int outer = unit / panels;
+					final int start = unit % panels * PANEL_SIZE;
+					final int width = Math.min(PANEL_SIZE, inner - start);
+
+					final int offset = outer * inner * length + start;
+					for (int r = 0; r < length; r++) {
+						System.arraycopy(values, offset + r * inner, panel, r * width,
+							width);
+					}
+					runs(panel, prefix, length, width, window);
+					final int outOffset = outer * inner * outLength + start;
+					final int shift = (window - 1) * width;
+					for (int r = 0; r < outLength; r++) {
+						final int row = r * width;
+						final int outRow = outOffset + r * inner;
+						for (int j = 0; j < width; j++) {
+							result[outRow + j] = min(panel[row + j], prefix[row + shift +
+								j]);
+						}
+					}
+				}
+			}
+		}, units);
+	}
+
+	/**
+	 * Replaces the given rows by their running minima from the end of each
+	 * block of {@code window} rows, and stores the running minima from the
+	 * start of each block in {@code prefix}.
+	 *
+	 * @param rows the rows, one after the other
+	 * @param prefix the array receiving the running minima from block starts
+	 * @param length the number of rows
+	 * @param width the number of elements per row
+	 * @param window the number of rows per block
+	 */
+	private static void runs(final double[] rows, final double[] prefix,
+		final int length, final int width, final int window)
+	{
+		for (int block = 0; block < length; block += window) {
+			final int end = Math.min(block + window, length);
+			System.arraycopy(rows, block * width, prefix, block * width, width);
+			for (int i = (block + 1) * width; i < end * width; i++) {
+				prefix[i] = min(prefix[i - width], rows[i]);
+			}
+			for (int i = (end - 1) * width - 1; i >= block * width; i--) {
+				rows[i] = min(rows[i], rows[i + width]);
+			}
+		}
+	}
+
+	/**
+	 * Writes the given values of a box, multiplied by {@code sign}, to the
+	 * output.
+	 */
+	private static void write(final Environmental op, final Interval interval,
+		final double[] values, final double sign, final long[] from,
+		final long[] box, final IterableInterval<?> output)
+	{
+		final long run = runLength(interval, box);
+		op.ops().run(ChunkerOp.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				final Cursor<?> cursor = flatCursor(output);
+				long position = -1, runStart = -1, runOffset = 0;
+				for (int i = 0; i < numSteps; i++) {
+					final int index = startIndex + i * stepSize;
+					final long start = index - index % run;
+					if (start != runStart) {
+						runStart = start;
+						runOffset = offset(interval, from, box, start);
+					}
+					final long target = runOffset + index - start;
+					cursor.jumpFwd(target - position);
+					position = target;
+					((RealType<?>) cursor.get()).setReal(sign * values[index]);
+				}
+			}
+		}, (int) Intervals.numElements(box));
+	}
+
+	/**
+	 * Writes the function of each pixel of a box and its extrema to the
+	 * output.
+	 */
+	private static void write(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval,
+		final double[] mins, final double[] negatedMaxs,
+		final ExtremaFunction function, final long[] from, final long[] box,
+		final IterableInterval<?> output)
+	{
+		final long run = runLength(interval, box);
+		op.ops().run(ChunkerOp.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				final Cursor<?> centers = Views.flatIterable(Views.interval(source,
+					interval)).cursor();
+				final Cursor<?> cursor = flatCursor(output);
+				long position = -1, runStart = -1, runOffset = 0;
+				for (int i = 0; i < numSteps; i++) {
+					final int index = startIndex + i * stepSize;
+					final long start = index - index % run;
+					if (start != runStart) {
+						runStart = start;
+						runOffset = offset(interval, from, box, start);
+					}
+					final long target = runOffset + index - start;
+					centers.jumpFwd(target - position);
+					cursor.jumpFwd(target - position);
+					position = target;
+					final RealType<?> center = (RealType<?>) centers.get();
+					((RealType<?>) cursor.get()).setReal(function.compute(center
+						.getRealDouble(), mins[index], -negatedMaxs[index]));
+				}
+			}
+		}, (int) Intervals.numElements(box));
+	}
+
+	private static Cursor<?> flatCursor(final IterableInterval<?> output) {
+		if (output instanceof RandomAccessibleInterval) {
+			return Views.flatIterable((RandomAccessibleInterval<?>) output)
+				.cursor();
+		}
+		return output.cursor();
+	}
+
+	private static double min(final double a, final double b) {
+		return a < b ? a : b;
+	}
+
+}
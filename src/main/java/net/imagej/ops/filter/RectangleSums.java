@@ -0,0 +1,388 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.filter;
+
+import net.imagej.ops.Environmental;
+import net.imagej.ops.thread.ExecutionContext;
+import net.imagej.ops.thread.chunker.Chunk;
+import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Computes statistics over {@link RectangleShape} neighborhoods from running
+ * sums, at a constant cost per pixel regardless of the size of the rectangle.
+ * <p>
+ * The rectangle is swept along the last dimension: an accumulator holding the
+ * sums over the rectangle's extent in that dimension is updated by adding the
+ * slice entering the rectangle and subtracting the slice leaving it. The sums
+ * over the remaining dimensions are then computed from the accumulator with
+ * running sums along each of its lines. Only a few slices of memory are needed,
+ * and slabs of slices are processed in parallel.
+ * </p>
+ */
+public final class RectangleSums {
+
+	private RectangleSums() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/** Maximum number of slice elements kept in memory per sweep. */
+	private static final long RING_SIZE = 1 << 22;
+
+	/** A statistic computed from the sums over a neighborhood. */
+	private interface Statistic {
+
+		/**
+		 * Computes the statistic from the count of a neighborhood and the sums of
+		 * its values and squared values, each value being shifted by
+		 * {@code shift}.
+		 */
+		double compute(long n, double sum, double sumOfSquares, double shift);
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Whether the statistics of the given shape, over the given input, can be
+	 * computed into the given output from running sums.
+	 */
+	public static boolean handles(final Shape shape,
+		final RandomAccessibleInterval<?> input, final IterableInterval<?> output)
+	{
+		if (!(shape instanceof RectangleShape)) return false;
+		if (!(Views.iterable(input).firstElement() instanceof RealType)) {
+			return false;
+		}
+		if (!(output.firstElement() instanceof RealType)) return false;
+		if (!Intervals.equalDimensions(input, output)) return false;
+		if (!(output instanceof RandomAccessibleInterval) && !output
+			.iterationOrder().equals(Views.flatIterable(input).iterationOrder()))
+		{
+			return false;
+		}
+		// NB: Slices are buffered in arrays, with a halo of the span.
+		final int span = ((RectangleShape) shape).getSpan();
+		long sliceSize = 1;
+		for (int d = 0; d < input.numDimensions() - 1; d++) {
+			sliceSize *= input.dimension(d) + 2 * span;
+		}
+		return sliceSize <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Computes the mean of each neighborhood of the given shape.
+	 *
+	 * @param op the op whose environment runs the computation in parallel
+	 * @param source the input, extended beyond the interval
+	 * @param interval the interval whose neighborhoods are computed
+	 * @param shape the neighborhood shape
+	 * @param output the {@link RealType} output, for which
+	 *          {@link #handles(Shape, RandomAccessibleInterval, IterableInterval)}
+	 *          holds
+	 */
+	public static void mean(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval,
+		final RectangleShape shape, final IterableInterval<?> output)
+	{
+		// NB: Unshifted, for the same results as summing the neighborhood.
+		compute(op, source, interval, shape, output, false,
+			(n, sum, sumOfSquares, shift) -> sum / n);
+	}
+
+	/**
+	 * Computes the (sample) variance of each neighborhood of the given shape.
+	 *
+	 * @see #mean(Environmental, RandomAccessible, Interval, RectangleShape,
+	 *      IterableInterval)
+	 */
+	public static void variance(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval,
+		final RectangleShape shape, final IterableInterval<?> output)
+	{
+		// NB: The values are shifted by a sample, to limit cancellation.
+		compute(op, source, interval, shape, output, true, (n, sum, sumOfSquares,
+			shift) -> n < 2 ? Double.NaN : Math.max(0, sumOfSquares - sum * sum /
+				n) / (n - 1));
+	}
+
+	// -- Helper methods --
+
+	private static void compute(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval,
+		final RectangleShape shape, final IterableInterval<?> output,
+		final boolean squares, final Statistic statistic)
+	{
+		final int span = shape.getSpan();
+		final int numDims = interval.numDimensions();
+		final long fullSize = (long) Math.pow(2 * span + 1, numDims);
+		final boolean skipCenter = shape.neighborhoodsRandomAccessible(source)
+			.randomAccess().get().size() < fullSize;
+
+		final double shift;
+		if (squares) {
+			final RandomAccess<?> access = source.randomAccess();
+			access.setPosition(Intervals.minAsLongArray(interval));
+			shift = ((RealType<?>) access.get()).getRealDouble();
+		}
+		else shift = 0;
+
+		final Sweep sweep = new Sweep(source, interval, span, skipCenter, squares,
+			shift, statistic);
+		final long length = interval.dimension(numDims - 1);
+		final int slabs = (int) Math.min(length, ExecutionContext.parallelism(
+			op));
+		op.ops().run(ChunkerOp.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				for (int i = 0; i < numSteps; i++) {
+					final int slab = startIndex + i * stepSize;
+					sweep.run(output, length * slab / slabs, length * (slab + 1) /
+						slabs);
+				}
+			}
+		}, slabs);
+	}
+
+	// -- Helper classes --
+
+	/** Sweeps the rectangle along the last dimension of the interval. */
+	private static class Sweep {
+
+		private final RandomAccessible<?> source;
+		private final Interval interval;
+		private final int span;
+		private final boolean skipCenter;
+		private final boolean squares;
+		private final double shift;
+		private final Statistic statistic;
+
+		private final int lastDim;
+
+		/** Dimensions of a buffered slice, including the halo. */
+		private final long[] sliceDims;
+
+		/** Number of elements of a buffered slice, and of an output slice. */
+		private final int sliceSize, outputSize;
+
+		private final long count;
+
+		public Sweep(final RandomAccessible<?> source, final Interval interval,
+			final int span, final boolean skipCenter, final boolean squares,
+			final double shift, final Statistic statistic)
+		{
+			this.source = source;
+			this.interval = interval;
+			this.span = span;
+			this.skipCenter = skipCenter;
+			this.squares = squares;
+			this.shift = shift;
+			this.statistic = statistic;
+
+			lastDim = interval.numDimensions() - 1;
+			sliceDims = new long[lastDim];
+			long size = 1, outSize = 1;
+			for (int d = 0; d < lastDim; d++) {
+				sliceDims[d] = interval.dimension(d) + 2 * span;
+				size *= sliceDims[d];
+				outSize *= interval.dimension(d);
+			}
+			sliceSize = (int) size;
+			outputSize = (int) outSize;
+			final long fullCount = (long) Math.pow(2 * span + 1, lastDim + 1);
+			count = skipCenter ? fullCount - 1 : fullCount;
+		}
+
+		/**
+		 * Computes the output slices from {@code start} (inclusive) to
+		 * {@code end} (exclusive), relative to the interval's minimum.
+		 */
+		public void run(final IterableInterval<?> output, final long start,
+			final long end)
+		{
+			if (start >= end) return;
+			final double[] sum = new double[sliceSize];
+			final double[] sumSq = squares ? new double[sliceSize] : null;
+			final double[][] buffers = new double[squares ? 4 : 2][sliceSize];
+
+			// NB: Keep the slices within the rectangle if they are small enough,
+			// so that leaving slices need not be read again.
+			final int window = 2 * span + 1;
+			final double[][] ring = (long) window * sliceSize <= RING_SIZE
+				? new double[window][sliceSize] : null;
+			final double[] slice = ring == null ? new double[sliceSize] : null;
+
+			for (long z = start - span; z < start + span; z++) {
+				enter(z, ring, slice, sum, sumSq);
+			}
+
+			final Cursor<?> outCursor = flatCursor(output);
+			outCursor.jumpFwd(start * outputSize);
+			final Cursor<?> centers = skipCenter ? Views.flatIterable(Views
+				.interval(source, interval)).cursor() : null;
+			if (centers != null) centers.jumpFwd(start * outputSize);
+
+			for (long z = start; z < end; z++) {
+				enter(z + span, ring, slice, sum, sumSq);
+				final double[] sums = boxSum(sum, buffers[0], buffers[1]);
+				final double[] sumsSq = squares ? boxSum(sumSq, buffers[2],
+					buffers[3]) : null;
+				for (int i = 0; i < outputSize; i++) {
+					double s = sums[i];
+					double sq = squares ? sumsSq[i] : 0;
+					if (centers != null) {
+						final double c = value(centers.next());
+						s -= c;
+						sq -= c * c;
+					}
+					final RealType<?> out = (RealType<?>) outCursor.next();
+					out.setReal(statistic.compute(count, s, sq, shift));
+				}
+				final long leaving = z - span;
+				final double[] values = ring == null ? read(leaving, slice)
+					: ring[(int) Math.floorMod(leaving, window)];
+				add(values, sum, sumSq, -1);
+			}
+		}
+
+		/** Reads the given slice, and adds it to the sums. */
+		private void enter(final long z, final double[][] ring,
+			final double[] slice, final double[] sum, final double[] sumSq)
+		{
+			final double[] values = ring == null ? slice : ring[(int) Math.floorMod(
+				z, ring.length)];
+			add(read(z, values), sum, sumSq, 1);
+		}
+
+		/**
+		 * Reads the given slice of the source, relative to the interval's minimum,
+		 * with its halo.
+		 */
+		private double[] read(final long z, final double[] values) {
+			final long[] smin = new long[lastDim + 1];
+			final long[] smax = new long[lastDim + 1];
+			for (int d = 0; d < lastDim; d++) {
+				smin[d] = interval.min(d) - span;
+				smax[d] = interval.max(d) + span;
+			}
+			smin[lastDim] = smax[lastDim] = interval.min(lastDim) + z;
+			final Cursor<?> cursor = Views.flatIterable(Views.interval(source,
+				new FinalInterval(smin, smax))).cursor();
+			for (int i = 0; i < sliceSize; i++) {
+				values[i] = value(cursor.next());
+			}
+			return values;
+		}
+
+		/** Adds (or subtracts) the given slice values to the sums. */
+		private static void add(final double[] values, final double[] sum,
+			final double[] sumSq, final int sign)
+		{
+			for (int i = 0; i < values.length; i++) {
+				final double v = sign * values[i];
+				sum[i] += v;
+				if (sumSq != null) sumSq[i] += v * values[i];
+			}
+		}
+
+		/**
+		 * Sums the given slice over the rectangle's extent in each of its
+		 * dimensions, removing the halo, using the two given buffers.
+		 *
+		 * @return the buffer holding the sums, with the output slice's layout
+		 */
+		private double[] boxSum(final double[] slice, final double[] buf1,
+			final double[] buf2)
+		{
+			final int window = 2 * span + 1;
+			double[] src = slice, dst = buf1;
+			int stride = 1;
+			int outer = sliceSize;
+			for (int d = 0; d < lastDim; d++) {
+				final int in = (int) sliceDims[d];
+				final int out = (int) interval.dimension(d);
+				outer /= in;
+				for (int o = 0; o < outer; o++) {
+					final int srcBase = o * in * stride;
+					final int dstBase = o * out * stride;
+					// first row: sum of the window's rows
+					for (int i = 0; i < stride; i++) {
+						double acc = 0;
+						for (int t = 0; t < window; t++) {
+							acc += src[srcBase + t * stride + i];
+						}
+						dst[dstBase + i] = acc;
+					}
+					// subsequent rows: slide the window by one row
+					for (int x = 1; x < out; x++) {
+						final int prev = dstBase + (x - 1) * stride;
+						final int row = dstBase + x * stride;
+						final int enter = srcBase + (x + window - 1) * stride;
+						final int leave = srcBase + (x - 1) * stride;
+						for (int i = 0; i < stride; i++) {
+							dst[row + i] = dst[prev + i] + src[enter + i] - src[leave + i];
+						}
+					}
+				}
+				stride *= out;
+				src = dst;
+				dst = dst == buf1 ? buf2 : buf1;
+			}
+			return src;
+		}
+
+		private double value(final Object type) {
+			return ((RealType<?>) type).getRealDouble() - shift;
+		}
+
+		private Cursor<?> flatCursor(final IterableInterval<?> output) {
+			if (output instanceof RandomAccessibleInterval) {
+				return Views.flatIterable((RandomAccessibleInterval<?>) output)
+					.cursor();
+			}
+			return output.cursor();
+		}
+	}
+
+}
@@ -33,6 +33,7 @@ package net.imagej.ops.filter.fft;
 import net.imagej.ops.Contingent;
 import net.imagej.ops.Ops;
 import net.imagej.ops.special.computer.AbstractUnaryComputerOp;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.fft2.FFTMethods;
 import net.imglib2.type.numeric.ComplexType;
@@ -72,12 +73,13 @@ public class FFTMethodsOpC<T extends RealType<T>, C extends ComplexType<C>>
 	{
 
 		// perform a real to complex FFT in the first dimension
-		FFTMethods.realToComplex(input, output, 0, false, ts.getExecutorService());
+		FFTMethods.realToComplex(input, output, 0, false, ExecutionContext
+			.executor(this, ts));
 
 		// loop and perform complex to complex FFT in the remaining dimensions
 		for (int d = 1; d < input.numDimensions(); d++)
-			FFTMethods.complexToComplex(output, d, true, false, ts
-				.getExecutorService());
+			FFTMethods.complexToComplex(output, d, true, false, ExecutionContext
+				.executor(this, ts));
 	}
 
 	/**
@@ -36,6 +36,7 @@ import org.scijava.thread.ThreadService;
 
 import net.imagej.ops.Ops;
 import net.imagej.ops.special.computer.AbstractUnaryComputerOp;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.gauss3.Gauss3;
@@ -68,7 +69,7 @@ public class DefaultGaussRA<T extends NumericType<T> & NativeType<T>> extends
 	{
 		try {
 			SeparableSymmetricConvolution.convolve(Gauss3.halfkernels(sigmas), input,
-				output, threads.getExecutorService());
+				output, ExecutionContext.executor(this, threads));
 		}
 		catch (final IncompatibleTypeException e) {
 			throw new RuntimeException(e);
@@ -32,6 +32,7 @@ package net.imagej.ops.filter.gauss;
 
 import net.imagej.ops.Ops;
 import net.imagej.ops.special.hybrid.AbstractUnaryHybridCF;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.gauss3.Gauss3;
@@ -86,7 +87,7 @@ public class DefaultGaussRAI<T extends NumericType<T> & NativeType<T>> extends
 
 		try {
 			SeparableSymmetricConvolution.convolve(Gauss3.halfkernels(sigmas), eIn,
-				output, threads.getExecutorService());
+				output, ExecutionContext.executor(this, threads));
 		}
 		catch (final IncompatibleTypeException e) {
 			throw new RuntimeException(e);
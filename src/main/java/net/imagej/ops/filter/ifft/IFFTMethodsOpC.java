@@ -33,6 +33,7 @@ package net.imagej.ops.filter.ifft;
 import net.imagej.ops.Contingent;
 import net.imagej.ops.Ops;
 import net.imagej.ops.special.computer.AbstractUnaryComputerOp;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.fft2.FFTMethods;
 import net.imglib2.type.numeric.ComplexType;
@@ -70,12 +71,12 @@ public class IFFTMethodsOpC<C extends ComplexType<C>, T extends RealType<T>>
 		final RandomAccessibleInterval<T> output)
 	{
 		for (int d = input.numDimensions() - 1; d > 0; d--)
-			FFTMethods.complexToComplex(input, d, false, true, ts
-				.getExecutorService());
+			FFTMethods.complexToComplex(input, d, false, true, ExecutionContext
+				.executor(this, ts));
 
 		FFTMethods.complexToReal(input, output, FFTMethods
-			.unpaddingIntervalCentered(input, output), 0, true, ts
-				.getExecutorService());
+			.unpaddingIntervalCentered(input, output), 0, true, ExecutionContext
+				.executor(this, ts));
 	}
 
 	/**
@@ -33,6 +33,7 @@ package net.imagej.ops.filter.ifft;
 import net.imagej.ops.Contingent;
 import net.imagej.ops.Ops;
 import net.imagej.ops.special.inplace.AbstractUnaryInplaceOp;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.fft2.FFTMethods;
 import net.imglib2.type.numeric.ComplexType;
@@ -64,8 +65,8 @@ public class IFFTMethodsOpI<C extends ComplexType<C>> extends
 	@Override
 	public void mutate(final RandomAccessibleInterval<C> inout) {
 		for (int d = inout.numDimensions() - 1; d >= 0; d--)
-			FFTMethods.complexToComplex(inout, d, false, true, ts
-				.getExecutorService());
+			FFTMethods.complexToComplex(inout, d, false, true, ExecutionContext
+				.executor(this, ts));
 	}
 
 	/**
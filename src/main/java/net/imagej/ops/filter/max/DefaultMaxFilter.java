@@ -32,8 +32,13 @@ package net.imagej.ops.filter.max;
 
 import net.imagej.ops.Ops;
 import net.imagej.ops.filter.AbstractNeighborhoodBasedFilter;
+import net.imagej.ops.filter.RectangleExtrema;
 import net.imagej.ops.special.computer.Computers;
 import net.imagej.ops.special.computer.UnaryComputerOp;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.view.Views;
 
 import org.scijava.Priority;
 import org.scijava.plugin.Plugin;
@@ -49,6 +54,19 @@ public class DefaultMaxFilter<T, V> extends
 	AbstractNeighborhoodBasedFilter<T, V> implements MaxFilterOp<T, V>
 {
 
+	@Override
+	public void compute(final RandomAccessibleInterval<T> input,
+		final IterableInterval<V> output)
+	{
+		// NB: Rectangles are computed with the van Herk/Gil-Werman algorithm, at
+		// constant cost per pixel regardless of their size.
+		if (RectangleExtrema.handles(getShape(), input, output)) {
+			RectangleExtrema.max(this, Views.extend(input, getOutOfBoundsFactory()),
+				input, (RectangleShape) getShape(), output);
+		}
+		else super.compute(input, output);
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	protected UnaryComputerOp<Iterable<T>, V> unaryComputer(final V out) {
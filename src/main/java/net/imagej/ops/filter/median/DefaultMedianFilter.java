@@ -34,6 +34,10 @@ import net.imagej.ops.Ops;
 import net.imagej.ops.filter.AbstractNeighborhoodBasedFilter;
 import net.imagej.ops.special.computer.Computers;
 import net.imagej.ops.special.computer.UnaryComputerOp;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.view.Views;
 
 import org.scijava.Priority;
 import org.scijava.plugin.Plugin;
@@ -49,6 +53,19 @@ public class DefaultMedianFilter<T, V> extends
 	AbstractNeighborhoodBasedFilter<T, V> implements MedianFilterOp<T, V>
 {
 
+	@Override
+	public void compute(final RandomAccessibleInterval<T> input,
+		final IterableInterval<V> output)
+	{
+		// NB: Rectangles over 8- and 16-bit integers are computed from sliding
+		// histograms, at a cost per pixel proportional to the rectangle's face.
+		if (HistogramMedian.handles(getShape(), input, output)) {
+			HistogramMedian.median(this, Views.extend(input,
+				getOutOfBoundsFactory()), input, (RectangleShape) getShape(), output);
+		}
+		else super.compute(input, output);
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	protected UnaryComputerOp<Iterable<T>, V> unaryComputer(final V type) {
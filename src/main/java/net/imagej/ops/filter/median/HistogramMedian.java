@@ -0,0 +1,389 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.filter.median;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.imagej.ops.Environmental;
+import net.imagej.ops.thread.chunker.Chunk;
+import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Computes the median of {@link RectangleShape} neighborhoods of integer
+ * images with at most 16 bits, from a sliding histogram.
+ * <p>
+ * Along each line of the image, the histogram of the rectangle is updated as
+ * the rectangle moves by one pixel, by removing the values leaving it and
+ * adding the values entering it, and the median is tracked incrementally
+ * (Huang, Yang &amp; Tang, 1979). The cost per pixel is hence proportional to
+ * the size of the rectangle's face rather than its volume. Lines are computed
+ * in parallel, and each line of the input is read only once per chunk of
+ * lines.
+ * </p>
+ * <p>
+ * The median is the element of rank {@code floor(n/2)}, as with
+ * {@code stats.median}.
+ * </p>
+ */
+final class HistogramMedian {
+
+	/** Maximum number of histogram bins, i.e., distinct input values. */
+	private static final long MAX_BINS = 1 << 16;
+
+	/**
+	 * Number of bins per block of the coarse histogram, through which the median
+	 * moves quickly across sparse histograms.
+	 */
+	private static final int SHIFT = 4, BLOCK = 1 << SHIFT, MASK = BLOCK - 1;
+
+	private HistogramMedian() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Whether the medians of the given shape, over the given input, can be
+	 * computed into the given output from sliding histograms.
+	 */
+	public static boolean handles(final Shape shape,
+		final RandomAccessibleInterval<?> input, final IterableInterval<?> output)
+	{
+		if (!(shape instanceof RectangleShape)) return false;
+		final Object type = Views.iterable(input).firstElement();
+		if (!(type instanceof IntegerType)) return false;
+		final IntegerType<?> integer = (IntegerType<?>) type;
+		if (integer.getMaxValue() - integer.getMinValue() + 1 > MAX_BINS) {
+			return false;
+		}
+		if (!(output.firstElement() instanceof RealType)) return false;
+		if (!Intervals.equalDimensions(input, output)) return false;
+		if (!(output instanceof RandomAccessibleInterval) && !output
+			.iterationOrder().equals(Views.flatIterable(input).iterationOrder()))
+		{
+			return false;
+		}
+		// NB: Lines are buffered in arrays, with a halo of the span.
+		final int span = ((RectangleShape) shape).getSpan();
+		return input.dimension(0) + 2 * span <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Computes the median of each neighborhood of the given shape.
+	 *
+	 * @param op the op whose environment runs the computation in parallel
+	 * @param source the input, extended beyond the interval
+	 * @param interval the interval whose neighborhoods are computed
+	 * @param shape the neighborhood shape
+	 * @param output the {@link RealType} output, for which
+	 *          {@link #handles(Shape, RandomAccessibleInterval, IterableInterval)}
+	 *          holds
+	 */
+	public static void median(final Environmental op,
+		final RandomAccessible<?> source, final Interval interval,
+		final RectangleShape shape, final IterableInterval<?> output)
+	{
+		final int span = shape.getSpan();
+		final int numDims = interval.numDimensions();
+		final long fullSize = (long) Math.pow(2 * span + 1, numDims);
+		final boolean skipCenter = shape.neighborhoodsRandomAccessible(source)
+			.randomAccess().get().size() < fullSize;
+
+		final IntegerType<?> type = (IntegerType<?>) Views.iterable(Views.interval(
+			source, interval)).firstElement();
+		final long lines = Intervals.numElements(interval) / interval.dimension(0);
+		op.ops().run(ChunkerOp.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				final Lines worker = new Lines(source, interval, span, skipCenter,
+					(long) type.getMinValue(), (int) (type.getMaxValue() - type
+						.getMinValue() + 1));
+				final Cursor<?> outCursor = flatCursor(output);
+				long position = 0;
+				for (int i = 0; i < numSteps; i++) {
+					final long line = startIndex + (long) i * stepSize;
+					outCursor.jumpFwd(line * interval.dimension(0) - position);
+					worker.compute(line, outCursor);
+					position = (line + 1) * interval.dimension(0);
+				}
+			}
+		}, lines);
+	}
+
+	// -- Helper methods --
+
+	private static Cursor<?> flatCursor(final IterableInterval<?> output) {
+		if (output instanceof RandomAccessibleInterval) {
+			return Views.flatIterable((RandomAccessibleInterval<?>) output).cursor();
+		}
+		return output.cursor();
+	}
+
+	// -- Helper classes --
+
+	/** Computes the medians of lines of the interval, with a single histogram. */
+	private static class Lines {
+
+		private final RandomAccessible<?> source;
+		private final Interval interval;
+		private final int span;
+		private final boolean skipCenter;
+		private final long minValue;
+
+		private final int width;
+		private final int window;
+
+		/** Offsets of the rectangle's lines, in dimensions other than the first. */
+		private final long[][] offsets;
+
+		/** Rank of the median within each neighborhood. */
+		private final int rank;
+
+		private final int[] histogram;
+
+		/** Counts of the blocks of {@link #BLOCK} bins of the histogram. */
+		private final int[] coarse;
+
+		/** Current median bin, and number of values in lower bins. */
+		private int median, below;
+
+		/** Input lines, as bin indices, by their position in higher dimensions. */
+		private Map<LineKey, int[]> cache = new HashMap<>();
+
+		public Lines(final RandomAccessible<?> source, final Interval interval,
+			final int span, final boolean skipCenter, final long minValue,
+			final int bins)
+		{
+			this.source = source;
+			this.interval = interval;
+			this.span = span;
+			this.skipCenter = skipCenter;
+			this.minValue = minValue;
+			width = (int) interval.dimension(0);
+			window = 2 * span + 1;
+			histogram = new int[bins];
+			coarse = new int[(bins + BLOCK - 1) >> SHIFT];
+
+			final int numDims = interval.numDimensions();
+			final int faceSize = (int) Math.pow(window, numDims - 1);
+			offsets = new long[faceSize][numDims - 1];
+			for (int f = 0; f < faceSize; f++) {
+				int index = f;
+				for (int d = 0; d < numDims - 1; d++) {
+					offsets[f][d] = index % window - span;
+					index /= window;
+				}
+			}
+			final long count = (long) faceSize * window;
+			rank = (int) ((skipCenter ? count - 1 : count) / 2);
+		}
+
+		/**
+		 * Computes the medians of the given line, relative to the interval,
+		 * writing them to the given cursor positioned just before the line.
+		 */
+		public void compute(final long line, final Cursor<?> out) {
+			final int[][] rows = rows(position(line));
+			final int[] center = skipCenter ? rows[rows.length / 2] : null;
+
+			// NB: The histogram state is kept in locals within the hot loop.
+			final int[] h = histogram;
+			final int[] c = coarse;
+			int m = median, low = below;
+
+			// fill the histogram with the rectangle at the line's start
+			for (final int[] row : rows) {
+				for (int x = 0; x < window - 1; x++) {
+					final int bin = row[x];
+					h[bin]++;
+					c[bin >> SHIFT]++;
+					low += (bin - m) >>> 31;
+				}
+			}
+			for (int x = 0; x < width; x++) {
+				for (final int[] row : rows) {
+					final int bin = row[x + window - 1];
+					h[bin]++;
+					c[bin >> SHIFT]++;
+					low += (bin - m) >>> 31;
+				}
+				if (center != null) {
+					final int bin = center[x + span];
+					h[bin]--;
+					c[bin >> SHIFT]--;
+					low -= (bin - m) >>> 31;
+				}
+
+				// move the median bin to the bin holding the value of the rank,
+				// skipping whole blocks of bins where possible
+				while (low > rank) {
+					if ((m & MASK) == 0 && low - c[(m >> SHIFT) - 1] > rank) {
+						m -= BLOCK;
+						low -= c[m >> SHIFT];
+					}
+					else {
+						m--;
+						low -= h[m];
+					}
+				}
+				while (low + h[m] <= rank) {
+					if ((m & MASK) == 0 && low + c[m >> SHIFT] <= rank) {
+						low += c[m >> SHIFT];
+						m += BLOCK;
+					}
+					else {
+						low += h[m];
+						m++;
+					}
+				}
+				((RealType<?>) out.next()).setReal(minValue + m);
+
+				if (center != null) {
+					final int bin = center[x + span];
+					h[bin]++;
+					c[bin >> SHIFT]++;
+					low += (bin - m) >>> 31;
+				}
+				for (final int[] row : rows) {
+					final int bin = row[x];
+					h[bin]--;
+					c[bin >> SHIFT]--;
+					low -= (bin - m) >>> 31;
+				}
+			}
+
+			// NB: Empty the histogram for the next line, keeping the median as a
+			// starting point.
+			for (final int[] row : rows) {
+				for (int x = width; x < width + window - 1; x++) {
+					final int bin = row[x];
+					h[bin]--;
+					c[bin >> SHIFT]--;
+					low -= (bin - m) >>> 31;
+				}
+			}
+			median = m;
+			below = low;
+		}
+
+		/** Gets the position of the given line, in dimensions beyond the first. */
+		private long[] position(final long line) {
+			final long[] position = new long[offsets[0].length];
+			long index = line;
+			for (int d = 0; d < position.length; d++) {
+				final long dim = interval.dimension(d + 1);
+				position[d] = interval.min(d + 1) + index % dim;
+				index /= dim;
+			}
+			return position;
+		}
+
+		/**
+		 * Gets the input lines within the rectangle around the given line, reading
+		 * only those not read for the previous line.
+		 */
+		private int[][] rows(final long[] position) {
+			final Map<LineKey, int[]> next = new HashMap<>();
+			final int[][] rows = new int[offsets.length][];
+			for (int f = 0; f < offsets.length; f++) {
+				final long[] key = new long[position.length];
+				for (int d = 0; d < key.length; d++) {
+					key[d] = position[d] + offsets[f][d];
+				}
+				final LineKey lineKey = new LineKey(key);
+				int[] row = cache.get(lineKey);
+				if (row == null) row = read(key);
+				next.put(lineKey, row);
+				rows[f] = row;
+			}
+			cache = next;
+			return rows;
+		}
+
+		/** Reads the input line at the given position, with its halo. */
+		private int[] read(final long[] position) {
+			final long[] min = new long[position.length + 1];
+			final long[] max = new long[position.length + 1];
+			min[0] = interval.min(0) - span;
+			max[0] = interval.max(0) + span;
+			for (int d = 0; d < position.length; d++) {
+				min[d + 1] = max[d + 1] = position[d];
+			}
+			final Cursor<?> cursor = Views.flatIterable(Views.interval(source,
+				new FinalInterval(min, max))).cursor();
+			final int[] row = new int[width + window - 1];
+			for (int x = 0; x < row.length; x++) {
+				row[x] = (int) (((IntegerType<?>) cursor.next()).getIntegerLong() -
+					minValue);
+			}
+			return row;
+		}
+	}
+
+	/** A position of a line, in dimensions beyond the first. */
+	private static class LineKey {
+
+		private final long[] position;
+
+		public LineKey(final long[] position) {
+			this.position = position;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			return o instanceof LineKey && Arrays.equals(position,
+				((LineKey) o).position);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(position);
+		}
+	}
+
+}
@@ -41,6 +41,7 @@ import net.imagej.ops.create.img.CreateImgFromDimsAndType;
 import net.imagej.ops.special.function.Functions;
 import net.imagej.ops.special.function.UnaryFunctionOp;
 import net.imagej.ops.special.hybrid.AbstractUnaryHybridCF;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
@@ -71,8 +72,6 @@ public class DefaultDistanceTransform<B extends BooleanType<B>, T extends RealTy
 	@SuppressWarnings("rawtypes")
 	private UnaryFunctionOp<FinalInterval, RandomAccessibleInterval> createOp;
 
-	private ExecutorService es;
-
 	@Override
 	public boolean conforms() {
 		long max_dist = 0;
@@ -83,7 +82,6 @@ public class DefaultDistanceTransform<B extends BooleanType<B>, T extends RealTy
 
 	@Override
 	public void initialize() {
-		es = ts.getExecutorService();
 		createOp = Functions.unary(ops(), CreateImgFromDimsAndType.class, RandomAccessibleInterval.class,
 				new FinalInterval(in()), new FloatType());
 	}
@@ -100,6 +98,7 @@ public class DefaultDistanceTransform<B extends BooleanType<B>, T extends RealTy
 	 */
 	@Override
 	public void compute(final RandomAccessibleInterval<B> in, final RandomAccessibleInterval<T> out) {
+		final ExecutorService es = ExecutionContext.executor(this, ts);
 		// stores the size of each dimension
 		final int[] dimensSizes = new int[in.numDimensions()];
 
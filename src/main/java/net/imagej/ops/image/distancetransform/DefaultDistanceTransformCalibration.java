@@ -41,6 +41,7 @@ import net.imagej.ops.create.img.CreateImgFromDimsAndType;
 import net.imagej.ops.special.function.Functions;
 import net.imagej.ops.special.function.UnaryFunctionOp;
 import net.imagej.ops.special.hybrid.AbstractUnaryHybridCF;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
@@ -74,8 +75,6 @@ public class DefaultDistanceTransformCalibration<B extends BooleanType<B>, T ext
 	@SuppressWarnings("rawtypes")
 	private UnaryFunctionOp<FinalInterval, RandomAccessibleInterval> createOp;
 
-	private ExecutorService es;
-
 	@Override
 	public boolean conforms() {
 		long max_dist = 0;
@@ -86,7 +85,6 @@ public class DefaultDistanceTransformCalibration<B extends BooleanType<B>, T ext
 
 	@Override
 	public void initialize() {
-		es = ts.getExecutorService();
 		createOp = Functions.unary(ops(), CreateImgFromDimsAndType.class, RandomAccessibleInterval.class,
 				new FinalInterval(in()), new FloatType());
 	}
@@ -103,6 +101,7 @@ public class DefaultDistanceTransformCalibration<B extends BooleanType<B>, T ext
 	 */
 	@Override
 	public void compute(final RandomAccessibleInterval<B> in, final RandomAccessibleInterval<T> out) {
+		final ExecutorService es = ExecutionContext.executor(this, ts);
 		// stores the size of each dimension
 		final int[] dimensSizes = new int[in.numDimensions()];
 
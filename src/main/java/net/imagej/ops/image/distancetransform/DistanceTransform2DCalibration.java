@@ -40,6 +40,7 @@ import net.imagej.ops.create.img.CreateImgFromDimsAndType;
 import net.imagej.ops.special.function.Functions;
 import net.imagej.ops.special.function.UnaryFunctionOp;
 import net.imagej.ops.special.hybrid.AbstractUnaryHybridCF;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
@@ -71,8 +72,6 @@ public class DistanceTransform2DCalibration<B extends BooleanType<B>, T extends
 	@SuppressWarnings("rawtypes")
 	private UnaryFunctionOp<FinalInterval, RandomAccessibleInterval> createOp;
 
-	private ExecutorService es;
-
 	@Override
 	public boolean conforms() {
 		if (in().numDimensions() == 2) {
@@ -84,7 +83,6 @@ public class DistanceTransform2DCalibration<B extends BooleanType<B>, T extends
 
 	@Override
 	public void initialize() {
-		es = ts.getExecutorService();
 		createOp = Functions.unary(ops(), CreateImgFromDimsAndType.class, RandomAccessibleInterval.class,
 				new FinalInterval(in()), new FloatType());
 	}
@@ -101,6 +99,7 @@ public class DistanceTransform2DCalibration<B extends BooleanType<B>, T extends
 	 */
 	@Override
 	public void compute(final RandomAccessibleInterval<B> in, final RandomAccessibleInterval<T> out) {
+		final ExecutorService es = ExecutionContext.executor(this, ts);
 
 		// tempValues stores the integer values of the first phase, i.e. the
 		// first two scans
@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.image.equation;
+
+import java.util.function.ToDoubleFunction;
+
+import net.imagej.ops.Contingent;
+import net.imagej.ops.Ops;
+import net.imagej.ops.special.hybrid.AbstractUnaryHybridCF;
+import net.imagej.ops.thread.chunker.CellChunk;
+import net.imagej.ops.thread.chunker.CursorBasedChunk;
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+
+import org.scijava.Priority;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Computes an image using an equation compiled by {@link EquationCompiler}.
+ * <p>
+ * The equation is evaluated natively, in parallel, with the same results as
+ * {@link DefaultEquation}. Equations outside the syntax supported by
+ * {@link EquationCompiler} do not match this op, and are left to
+ * {@link DefaultEquation}.
+ * </p>
+ */
+@Plugin(type = Ops.Image.Equation.class, priority = Priority.HIGH_PRIORITY)
+public class CompiledEquation<T extends RealType<T>> extends
+	AbstractUnaryHybridCF<String, IterableInterval<T>> implements EquationOp<T>,
+	Contingent
+{
+
+	/** The most recently compiled equation. */
+	private String equation;
+
+	private ToDoubleFunction<long[]> compiled;
+
+	@Override
+	public boolean conforms() {
+		try {
+			compile(in());
+			return true;
+		}
+		catch (final IllegalArgumentException exc) {
+			return false;
+		}
+	}
+
+	// -- UnaryComputerOp methods --
+
+	@Override
+	public void compute(final String input, final IterableInterval<T> output) {
+		final ToDoubleFunction<long[]> f = compile(input);
+
+		CellChunk.run(this, new CursorBasedChunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				final Cursor<T> c = output.localizingCursor();
+				final long[] pos = new long[output.numDimensions()];
+				for (int ctr = 0; ctr < numSteps; ctr++) {
+					c.jumpFwd(ctr == 0 ? startIndex + 1 : stepSize);
+					c.localize(pos);
+					c.get().setReal(f.applyAsDouble(pos));
+				}
+			}
+		}, output);
+	}
+
+	// -- UnaryOutputFactory methods --
+
+	@Override
+	public IterableInterval<T> createOutput(final String input) {
+		// produce a 256x256 float64 array-backed image by default
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		final IterableInterval<T> newImage =
+			(IterableInterval) ArrayImgs.doubles(256, 256);
+		return newImage;
+	}
+
+	// -- Helper methods --
+
+	private ToDoubleFunction<long[]> compile(final String input) {
+		if (!input.equals(equation)) {
+			compiled = EquationCompiler.compile(input);
+			equation = input;
+		}
+		return compiled;
+	}
+
+}
@@ -61,6 +61,10 @@ import org.scijava.script.ScriptService;
  * Note that this op is rather slow; it is intended mainly for demonstration
  * purposes, and to easily generate small images for testing Ops workflows.
  * </p>
+ * <p>
+ * Equations within the numeric subset supported by {@link EquationCompiler}
+ * are instead computed natively by {@link CompiledEquation}.
+ * </p>
  * 
  * @author Curtis Rueden
  */
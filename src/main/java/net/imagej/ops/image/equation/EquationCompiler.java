@@ -0,0 +1,361 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.image.equation;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+import org.scijava.parse.ExpressionParser;
+import org.scijava.parse.Function;
+import org.scijava.parse.Group;
+import org.scijava.parse.Operator;
+import org.scijava.parse.Operators;
+import org.scijava.parse.SyntaxTree;
+import org.scijava.parse.Variable;
+
+/**
+ * Compiles equations into trees of primitive {@code double} functions of the
+ * position array {@code p}.
+ * <p>
+ * The supported syntax is the numeric subset of the Javascript accepted by
+ * {@link DefaultEquation}, with the same results: number literals, position
+ * coordinates such as {@code p[0]}, the arithmetic, relational and logical
+ * operators, and the common {@code Math} functions and constants; e.g.:
+ * {@code Math.cos(0.1*p[0]) + Math.sin(0.1*p[1])}. Relations evaluate to
+ * {@code 1} or {@code 0}; {@code &&} and {@code ||} return one of their
+ * operands, as in Javascript. Anything else, including {@code ^} (which is
+ * exclusive or in Javascript), is rejected.
+ * </p>
+ */
+public final class EquationCompiler {
+
+	private EquationCompiler() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Compiles the given equation.
+	 *
+	 * @throws IllegalArgumentException if the equation cannot be parsed, or uses
+	 *           syntax which is not supported.
+	 */
+	public static ToDoubleFunction<long[]> compile(final String equation) {
+		// NB: Javascript statement lists have no counterpart here.
+		if (equation.indexOf(';') >= 0) {
+			throw new IllegalArgumentException("Unsupported equation: " + equation);
+		}
+		final SyntaxTree tree;
+		try {
+			tree = new ExpressionParser().parseTree(equation);
+		}
+		catch (final RuntimeException exc) {
+			throw new IllegalArgumentException("Invalid equation: " + equation,
+				exc);
+		}
+		return compile(tree);
+	}
+
+	// -- Helper methods --
+
+	private static ToDoubleFunction<long[]> compile(final SyntaxTree tree) {
+		final Object token = tree.token();
+		if (token instanceof Number) {
+			final double value = ((Number) token).doubleValue();
+			return p -> value;
+		}
+		if (token instanceof Function) return call(tree.child(0), tree.child(1));
+		if (token instanceof Group) {
+			// NB: A parenthesized expression.
+			if (((Group) token).matches(Operators.PARENS) && tree.count() == 1) {
+				return compile(tree.child(0));
+			}
+			throw unsupported(token);
+		}
+		if (token instanceof Operator) {
+			final Operator op = (Operator) token;
+			if (op.equals(Operators.DOT)) return constant(tree);
+			if (op.getArity() == 1) return unary(op, compile(tree.child(0)));
+			if (op.getArity() == 2) {
+				return binary(op, compile(tree.child(0)), compile(tree.child(1)));
+			}
+		}
+		throw unsupported(token);
+	}
+
+	private static ToDoubleFunction<long[]> call(final SyntaxTree callee,
+		final SyntaxTree args)
+	{
+		final Group group = (Group) args.token();
+
+		// position coordinate: p[d]
+		if (isVariable(callee, "p") && group.matches(Operators.BRACKETS) &&
+			args.count() == 1)
+		{
+			final Object index = args.child(0).token();
+			if (!(index instanceof Integer)) throw unsupported(index);
+			final int d = (Integer) index;
+			// NB: Javascript yields NaN for coordinates beyond the dimensionality,
+			// and for negative indices.
+			if (d < 0) return p -> Double.NaN;
+			return p -> d < p.length ? p[d] : Double.NaN;
+		}
+
+		// Math function: Math.f(...)
+		if (!group.matches(Operators.PARENS)) throw unsupported(group);
+		final String name = mathMember(callee);
+		final ToDoubleFunction<long[]>[] a = compileAll(args);
+		if (a.length == 1) {
+			final DoubleUnaryOperator f = unaryFunction(name);
+			if (f != null) {
+				final ToDoubleFunction<long[]> x = a[0];
+				return p -> f.applyAsDouble(x.applyAsDouble(p));
+			}
+		}
+		if (a.length == 2) {
+			final DoubleBinaryOperator f = binaryFunction(name);
+			if (f != null) {
+				final ToDoubleFunction<long[]> x = a[0], y = a[1];
+				return p -> f.applyAsDouble(x.applyAsDouble(p), y.applyAsDouble(p));
+			}
+		}
+		if (a.length > 0 && (name.equals("min") || name.equals("max"))) {
+			final boolean max = name.equals("max");
+			return p -> {
+				double result = a[0].applyAsDouble(p);
+				for (int i = 1; i < a.length; i++) {
+					final double v = a[i].applyAsDouble(p);
+					result = max ? Math.max(result, v) : Math.min(result, v);
+				}
+				return result;
+			};
+		}
+		throw unsupported("Math." + name + " with " + a.length + " arguments");
+	}
+
+	private static ToDoubleFunction<long[]> constant(final SyntaxTree tree) {
+		final String name = mathMember(tree);
+		final double value;
+		switch (name) {
+			case "E":
+				value = Math.E;
+				break;
+			case "PI":
+				value = Math.PI;
+				break;
+			case "LN2":
+				value = Math.log(2);
+				break;
+			case "LN10":
+				value = Math.log(10);
+				break;
+			case "SQRT2":
+				value = Math.sqrt(2);
+				break;
+			default:
+				throw unsupported("Math." + name);
+		}
+		return p -> value;
+	}
+
+	private static ToDoubleFunction<long[]> unary(final Operator op,
+		final ToDoubleFunction<long[]> a)
+	{
+		if (op.equals(Operators.POS)) return a;
+		if (op.equals(Operators.NEG)) return p -> -a.applyAsDouble(p);
+		if (op.equals(Operators.NOT)) return p -> truth(a.applyAsDouble(p)) ? 0
+			: 1;
+		throw unsupported(op);
+	}
+
+	private static ToDoubleFunction<long[]> binary(final Operator op,
+		final ToDoubleFunction<long[]> a, final ToDoubleFunction<long[]> b)
+	{
+		// -- multiplicative, additive --
+		if (op.equals(Operators.MUL)) {
+			return p -> a.applyAsDouble(p) * b.applyAsDouble(p);
+		}
+		if (op.equals(Operators.DIV)) {
+			return p -> a.applyAsDouble(p) / b.applyAsDouble(p);
+		}
+		if (op.equals(Operators.MOD)) {
+			return p -> a.applyAsDouble(p) % b.applyAsDouble(p);
+		}
+		if (op.equals(Operators.ADD)) {
+			return p -> a.applyAsDouble(p) + b.applyAsDouble(p);
+		}
+		if (op.equals(Operators.SUB)) {
+			return p -> a.applyAsDouble(p) - b.applyAsDouble(p);
+		}
+
+		// -- relational, equality --
+		if (op.equals(Operators.LESS_THAN)) {
+			return p -> a.applyAsDouble(p) < b.applyAsDouble(p) ? 1 : 0;
+		}
+		if (op.equals(Operators.GREATER_THAN)) {
+			return p -> a.applyAsDouble(p) > b.applyAsDouble(p) ? 1 : 0;
+		}
+		if (op.equals(Operators.LESS_THAN_OR_EQUAL)) {
+			return p -> a.applyAsDouble(p) <= b.applyAsDouble(p) ? 1 : 0;
+		}
+		if (op.equals(Operators.GREATER_THAN_OR_EQUAL)) {
+			return p -> a.applyAsDouble(p) >= b.applyAsDouble(p) ? 1 : 0;
+		}
+		if (op.equals(Operators.EQUAL)) {
+			return p -> a.applyAsDouble(p) == b.applyAsDouble(p) ? 1 : 0;
+		}
+		if (op.equals(Operators.NOT_EQUAL)) {
+			return p -> a.applyAsDouble(p) != b.applyAsDouble(p) ? 1 : 0;
+		}
+
+		// -- logical --
+		if (op.equals(Operators.LOGICAL_AND)) {
+			return p -> {
+				final double v = a.applyAsDouble(p);
+				return truth(v) ? b.applyAsDouble(p) : v;
+			};
+		}
+		if (op.equals(Operators.LOGICAL_OR)) {
+			return p -> {
+				final double v = a.applyAsDouble(p);
+				return truth(v) ? v : b.applyAsDouble(p);
+			};
+		}
+		throw unsupported(op);
+	}
+
+	private static DoubleUnaryOperator unaryFunction(final String name) {
+		switch (name) {
+			case "abs":
+				return Math::abs;
+			case "acos":
+				return Math::acos;
+			case "asin":
+				return Math::asin;
+			case "atan":
+				return Math::atan;
+			case "cbrt":
+				return Math::cbrt;
+			case "ceil":
+				return Math::ceil;
+			case "cos":
+				return Math::cos;
+			case "cosh":
+				return Math::cosh;
+			case "exp":
+				return Math::exp;
+			case "expm1":
+				return Math::expm1;
+			case "floor":
+				return Math::floor;
+			case "log":
+				return Math::log;
+			case "log10":
+				return Math::log10;
+			case "log1p":
+				return Math::log1p;
+			case "round":
+				// NB: Javascript rounds halves up, and keeps NaN. Adding 0.5 before
+				// flooring would round up, e.g., 0.49999999999999994.
+				return x -> {
+					final double floor = Math.floor(x);
+					return x - floor >= 0.5 ? floor + 1 : floor;
+				};
+			case "sign":
+				return Math::signum;
+			case "sin":
+				return Math::sin;
+			case "sinh":
+				return Math::sinh;
+			case "sqrt":
+				return Math::sqrt;
+			case "tan":
+				return Math::tan;
+			case "tanh":
+				return Math::tanh;
+			default:
+				return null;
+		}
+	}
+
+	private static DoubleBinaryOperator binaryFunction(final String name) {
+		switch (name) {
+			case "atan2":
+				return Math::atan2;
+			case "hypot":
+				return Math::hypot;
+			case "pow":
+				return Math::pow;
+			default:
+				return null;
+		}
+	}
+
+	private static ToDoubleFunction<long[]>[] compileAll(final SyntaxTree args) {
+		@SuppressWarnings("unchecked")
+		final ToDoubleFunction<long[]>[] compiled =
+			new ToDoubleFunction[args.count()];
+		for (int i = 0; i < compiled.length; i++) {
+			compiled[i] = compile(args.child(i));
+		}
+		return compiled;
+	}
+
+	/** Gets the member name of a {@code Math.name} expression. */
+	private static String mathMember(final SyntaxTree tree) {
+		final Object token = tree.token();
+		if (token instanceof Operator && token.equals(Operators.DOT) &&
+			isVariable(tree.child(0), "Math") &&
+			tree.child(1).token() instanceof Variable)
+		{
+			return ((Variable) tree.child(1).token()).getToken();
+		}
+		throw unsupported(token);
+	}
+
+	private static boolean isVariable(final SyntaxTree tree, final String name) {
+		final Object token = tree.token();
+		return token instanceof Variable && ((Variable) token).getToken().equals(
+			name);
+	}
+
+	/** Javascript truthiness of a number: neither zero nor NaN. */
+	private static boolean truth(final double v) {
+		return v != 0 && !Double.isNaN(v);
+	}
+
+	private static IllegalArgumentException unsupported(final Object what) {
+		return new IllegalArgumentException("Unsupported in equations: " + what);
+	}
+
+}
@@ -37,6 +37,7 @@ import net.imagej.ops.Ops;
 import net.imagej.ops.special.function.Functions;
 import net.imagej.ops.special.function.UnaryFunctionOp;
 import net.imagej.ops.special.hybrid.AbstractUnaryHybridCF;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.labeling.ConnectedComponents;
@@ -90,7 +91,7 @@ public class DefaultCCA<T extends IntegerType<T>, L, I extends IntegerType<I>>
 		}
 
 		ConnectedComponents.labelAllConnectedComponents(input, output,
-			labelGenerator, se, threads.getExecutorService());
+			labelGenerator, se, ExecutionContext.executor(this, threads));
 	}
 
 	@Override
@@ -0,0 +1,263 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.map;
+
+import net.imagej.ImgPlus;
+import net.imagej.ops.special.computer.BinaryComputerOp;
+import net.imagej.ops.special.computer.NullaryComputerOp;
+import net.imagej.ops.special.computer.UnaryComputerOp;
+import net.imagej.ops.special.inplace.UnaryInplaceOp;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.NativeType;
+
+/**
+ * Flat index access to the elements of an {@link ArrayImg} or
+ * {@link PlanarImg}.
+ * <p>
+ * Both images keep their elements in primitive arrays, in flat iteration
+ * order: an {@link ArrayImg} in a single array, a {@link PlanarImg} in one
+ * array per plane. Maps over such images walk the arrays with index loops,
+ * plane by plane, instead of moving cursors or positioning random accesses.
+ * Elements are paired by flat index, which is their iteration index, and also
+ * their position if the images have the same dimensions.
+ * </p>
+ *
+ * @param <T> element type of the image
+ */
+final class FlatAccess<T extends NativeType<T>> implements
+	PlanarImg.PlanarContainerSampler
+{
+
+	/** Element at the current index, linked to the image's arrays. */
+	private final T type;
+
+	/** Number of elements per array. */
+	private final int planeSize;
+
+	/** Array holding the current index. */
+	private int slice;
+
+	/** Current index within the array. */
+	private int offset;
+
+	private FlatAccess(final NativeImg<T, ?> img, final int planeSize) {
+		type = img.createLinkedType();
+		this.planeSize = planeSize;
+	}
+
+	// -- PlanarContainerSampler methods --
+
+	@Override
+	public int getCurrentSliceIndex() {
+		return slice;
+	}
+
+	// -- Map methods --
+
+	/**
+	 * Maps the op over {@code numSteps} elements of {@code a}, from flat index
+	 * {@code startIndex}.
+	 *
+	 * @return false if {@code a} has no flat storage, in which case nothing is
+	 *         mapped
+	 */
+	static <O> boolean map(final Object a, final NullaryComputerOp<O> op,
+		final long startIndex, final long numSteps)
+	{
+		final FlatAccess<?> fa = of(a);
+		if (fa == null) return false;
+		@SuppressWarnings("unchecked")
+		final O out = (O) fa.type;
+		long index = startIndex;
+		long remaining = numSteps;
+		while (remaining > 0) {
+			final int run = (int) Math.min(remaining, fa.setIndex(index));
+			final int ia = fa.offset;
+			for (int i = 0; i < run; i++) {
+				fa.type.updateIndex(ia + i);
+				op.compute(out);
+			}
+			index += run;
+			remaining -= run;
+		}
+		return true;
+	}
+
+	/**
+	 * Maps the op over {@code numSteps} elements of {@code a} and {@code b},
+	 * from flat index {@code startIndex}.
+	 *
+	 * @return false if either image has no flat storage, in which case nothing
+	 *         is mapped
+	 */
+	static <I, O> boolean map(final Object a, final Object b,
+		final UnaryComputerOp<I, O> op, final long startIndex,
+		final long numSteps)
+	{
+		final FlatAccess<?> fa = of(a);
+		if (fa == null) return false;
+		final FlatAccess<?> fb = of(b);
+		if (fb == null) return false;
+		@SuppressWarnings("unchecked")
+		final I in = (I) fa.type;
+		@SuppressWarnings("unchecked")
+		final O out = (O) fb.type;
+		long index = startIndex;
+		long remaining = numSteps;
+		while (remaining > 0) {
+			final int run = (int) Math.min(remaining, //
+				Math.min(fa.setIndex(index), fb.setIndex(index)));
+			final int ia = fa.offset, ib = fb.offset;
+			for (int i = 0; i < run; i++) {
+				fa.type.updateIndex(ia + i);
+				fb.type.updateIndex(ib + i);
+				op.compute(in, out);
+			}
+			index += run;
+			remaining -= run;
+		}
+		return true;
+	}
+
+	/**
+	 * Maps the op over {@code numSteps} elements of {@code a}, {@code b} and
+	 * {@code c}, from flat index {@code startIndex}.
+	 *
+	 * @return false if any image has no flat storage, in which case nothing is
+	 *         mapped
+	 */
+	static <I1, I2, O> boolean map(final Object a, final Object b,
+		final Object c, final BinaryComputerOp<I1, I2, O> op,
+		final long startIndex, final long numSteps)
+	{
+		final FlatAccess<?> fa = of(a);
+		if (fa == null) return false;
+		final FlatAccess<?> fb = of(b);
+		if (fb == null) return false;
+		final FlatAccess<?> fc = of(c);
+		if (fc == null) return false;
+		@SuppressWarnings("unchecked")
+		final I1 in1 = (I1) fa.type;
+		@SuppressWarnings("unchecked")
+		final I2 in2 = (I2) fb.type;
+		@SuppressWarnings("unchecked")
+		final O out = (O) fc.type;
+		long index = startIndex;
+		long remaining = numSteps;
+		while (remaining > 0) {
+			final int run = (int) Math.min(remaining, Math.min(fa.setIndex(index),
+				Math.min(fb.setIndex(index), fc.setIndex(index))));
+			final int ia = fa.offset, ib = fb.offset, ic = fc.offset;
+			for (int i = 0; i < run; i++) {
+				fa.type.updateIndex(ia + i);
+				fb.type.updateIndex(ib + i);
+				fc.type.updateIndex(ic + i);
+				op.compute(in1, in2, out);
+			}
+			index += run;
+			remaining -= run;
+		}
+		return true;
+	}
+
+	/**
+	 * Mutates {@code numSteps} elements of {@code arg} with the op, from flat
+	 * index {@code startIndex}.
+	 *
+	 * @return false if {@code arg} has no flat storage, in which case nothing
+	 *         is mutated
+	 */
+	static <I, O extends I> boolean inplace(final Object arg,
+		final UnaryInplaceOp<I, O> op, final long startIndex,
+		final long numSteps)
+	{
+		final FlatAccess<?> fa = of(arg);
+		if (fa == null) return false;
+		@SuppressWarnings("unchecked")
+		final O e = (O) fa.type;
+		long index = startIndex;
+		long remaining = numSteps;
+		while (remaining > 0) {
+			final int run = (int) Math.min(remaining, fa.setIndex(index));
+			final int ia = fa.offset;
+			for (int i = 0; i < run; i++) {
+				fa.type.updateIndex(ia + i);
+				op.mutate(e);
+			}
+			index += run;
+			remaining -= run;
+		}
+		return true;
+	}
+
+	// -- Helper methods --
+
+	/** Gets flat access to the image, or null if it has no flat storage. */
+	private static FlatAccess<?> of(final Object img) {
+		if (img instanceof ImgPlus) return of(((ImgPlus<?>) img).getImg());
+		if (img instanceof ArrayImg) {
+			final ArrayImg<?, ?> arrayImg = (ArrayImg<?, ?>) img;
+			if (arrayImg.size() > Integer.MAX_VALUE) return null;
+			return create(arrayImg, (int) arrayImg.size());
+		}
+		if (img instanceof PlanarImg) {
+			final PlanarImg<?, ?> planarImg = (PlanarImg<?, ?>) img;
+			final int n = planarImg.numDimensions();
+			if (n == 0) return null;
+			final long planeSize = n == 1 ? planarImg.dimension(0) : //
+				planarImg.dimension(0) * planarImg.dimension(1);
+			if (planeSize > Integer.MAX_VALUE) return null;
+			return create(planarImg, (int) planeSize);
+		}
+		return null;
+	}
+
+	private static <T extends NativeType<T>> FlatAccess<T> create(
+		final NativeImg<T, ?> img, final int planeSize)
+	{
+		return new FlatAccess<>(img, planeSize);
+	}
+
+	/**
+	 * Moves to the given flat index.
+	 *
+	 * @return the number of elements from the index to the end of its array
+	 */
+	private int setIndex(final long index) {
+		slice = (int) (index / planeSize);
+		offset = (int) (index - (long) slice * planeSize);
+		type.updateContainer(this);
+		return planeSize - offset;
+	}
+
+}
@@ -32,7 +32,7 @@ package net.imagej.ops.map;
 
 import net.imagej.ops.Ops;
 import net.imagej.ops.Parallel;
-import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imagej.ops.thread.chunker.CellChunk;
 import net.imagej.ops.thread.chunker.CursorBasedChunk;
 import net.imglib2.IterableInterval;
 
@@ -52,7 +52,7 @@ public class MapIIInplaceParallel<A> extends
 
 	@Override
 	public void mutate(final IterableInterval<A> arg) {
-		ops().run(ChunkerOp.class, new CursorBasedChunk() {
+		CellChunk.run(this, new CursorBasedChunk() {
 
 			@Override
 			public void execute(final int startIndex, final int stepSize,
@@ -60,7 +60,7 @@ public class MapIIInplaceParallel<A> extends
 			{
 				Maps.inplace(arg, getOp(), startIndex, stepSize, numSteps);
 			}
-		}, arg.size());
+		}, arg);
 	}
 
 }
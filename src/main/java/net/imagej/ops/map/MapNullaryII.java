@@ -31,7 +31,8 @@
 package net.imagej.ops.map;
 
 import net.imagej.ops.Ops;
-import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imagej.ops.Parallel;
+import net.imagej.ops.thread.chunker.CellChunk;
 import net.imagej.ops.thread.chunker.CursorBasedChunk;
 import net.imglib2.IterableInterval;
 
@@ -40,27 +41,33 @@ import org.scijava.plugin.Plugin;
 
 /**
  * A paralleled version of {@link MapNullaryComputer} over an
- * {@link IterableInterval}.
+ * {@link IterableInterval}. Outputs smaller than
+ * {@link Maps#PARALLEL_THRESHOLD} are mapped serially.
  * 
  * @author Leon Yang
  * @param <O> element type of outputs
  */
 @Plugin(type = Ops.Map.class, priority = Priority.LOW_PRIORITY + 1)
 public class MapNullaryII<O> extends
-	AbstractMapNullaryComputer<O, IterableInterval<O>>
+	AbstractMapNullaryComputer<O, IterableInterval<O>> implements Parallel
 {
 
 	@Override
-	public void compute(IterableInterval<O> output) {
-		ops().run(ChunkerOp.class, new CursorBasedChunk() {
+	public void compute(final IterableInterval<O> output) {
+		if (!Maps.parallel(this, output.size())) {
+			Maps.map(output, getOp());
+			return;
+		}
+		CellChunk.run(this, new CursorBasedChunk() {
 
 			@Override
 			public void execute(final int startIndex, final int stepSize,
 				final int numSteps)
 			{
-				Maps.map(output, getOp(), startIndex, stepSize, numSteps);
+				Maps.map(output, getOp().getIndependentInstance(), startIndex,
+					stepSize, numSteps);
 			}
-		}, output.size());
+		}, output);
 	}
 
 }
@@ -30,12 +30,14 @@
 
 package net.imagej.ops.map;
 
+import net.imagej.ops.Environmental;
 import net.imagej.ops.special.computer.BinaryComputerOp;
 import net.imagej.ops.special.computer.NullaryComputerOp;
 import net.imagej.ops.special.computer.UnaryComputerOp;
 import net.imagej.ops.special.inplace.BinaryInplace1Op;
 import net.imagej.ops.special.inplace.BinaryInplaceOp;
 import net.imagej.ops.special.inplace.UnaryInplaceOp;
+import net.imagej.ops.thread.ExecutionContext;
 import net.imglib2.Cursor;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
@@ -44,15 +46,38 @@ import net.imglib2.util.Intervals;
 
 /**
  * Utility class for {@link MapOp}s.
+ * <p>
+ * Maps over {@link net.imglib2.img.array.ArrayImg}s and
+ * {@link net.imglib2.img.planar.PlanarImg}s walk their primitive arrays with
+ * index loops, as long as the elements are paired in flat order.
+ * </p>
  *
  * @author Leon Yang
  */
 public class Maps {
 
+	/**
+	 * Minimum number of elements for which parallel maps split their work.
+	 * Smaller inputs are mapped serially, since dispatching the chunks would
+	 * take longer than mapping the elements.
+	 */
+	public static final long PARALLEL_THRESHOLD = 16384;
+
 	private Maps() {
 		// NB: Prevent instantiation of utility class.
 	}
 
+	// -- Helpers for parallel maps --
+
+	/**
+	 * Checks whether the given parallel map op should split its work over the
+	 * given number of elements, i.e., whether there are enough elements, and
+	 * more than one thread to map them.
+	 */
+	public static boolean parallel(final Environmental op, final long size) {
+		return size >= PARALLEL_THRESHOLD && ExecutionContext.parallelism(op) > 1;
+	}
+
 	// -- Helpers for conforms() --
 
 	public static <I, O> boolean compatible(final IterableInterval<I> a,
@@ -127,6 +152,8 @@ public class Maps {
 	public static <O> void map(final Iterable<O> a,
 		final NullaryComputerOp<O> op)
 	{
+		if (a instanceof IterableInterval &&
+			FlatAccess.map(a, op, 0, ((IterableInterval<?>) a).size())) return;
 		for (final O e : a)
 			op.compute(e);
 	}
@@ -136,6 +163,8 @@ public class Maps {
 		final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && FlatAccess.map(a, op, startIndex, numSteps))
+			return;
 		final Cursor<O> aCursor = a.cursor();
 
 		for (int ctr = 0; ctr < numSteps; ctr++) {
@@ -149,6 +178,7 @@ public class Maps {
 	public static <I, O> void map(final IterableInterval<I> a,
 		final IterableInterval<O> b, final UnaryComputerOp<I, O> op)
 	{
+		if (FlatAccess.map(a, b, op, 0, a.size())) return;
 		final Cursor<I> aCursor = a.cursor();
 		final Cursor<O> bCursor = b.cursor();
 		while (aCursor.hasNext()) {
@@ -159,6 +189,8 @@ public class Maps {
 	public static <I, O> void map(final IterableInterval<I> a,
 		final RandomAccessibleInterval<O> b, final UnaryComputerOp<I, O> op)
 	{
+		if (Intervals.equalDimensions(b, a) &&
+			FlatAccess.map(a, b, op, 0, a.size())) return;
 		final Cursor<I> aCursor = a.localizingCursor();
 		final RandomAccess<O> bAccess = b.randomAccess();
 		while (aCursor.hasNext()) {
@@ -171,6 +203,8 @@ public class Maps {
 	public static <I, O> void map(final RandomAccessibleInterval<I> a,
 		final IterableInterval<O> b, final UnaryComputerOp<I, O> op)
 	{
+		if (Intervals.equalDimensions(a, b) &&
+			FlatAccess.map(a, b, op, 0, b.size())) return;
 		final RandomAccess<I> aAccess = a.randomAccess();
 		final Cursor<O> bCursor = b.localizingCursor();
 		while (bCursor.hasNext()) {
@@ -186,6 +220,7 @@ public class Maps {
 		final IterableInterval<I2> b, final IterableInterval<O> c,
 		final BinaryComputerOp<I1, I2, O> op)
 	{
+		if (FlatAccess.map(a, b, c, op, 0, a.size())) return;
 		final Cursor<I1> aCursor = a.cursor();
 		final Cursor<I2> bCursor = b.cursor();
 		final Cursor<O> cCursor = c.cursor();
@@ -198,6 +233,8 @@ public class Maps {
 		final IterableInterval<I2> b, final RandomAccessibleInterval<O> c,
 		final BinaryComputerOp<I1, I2, O> op)
 	{
+		if (Intervals.equalDimensions(c, a) &&
+			FlatAccess.map(a, b, c, op, 0, a.size())) return;
 		final Cursor<I1> aCursor = a.localizingCursor();
 		final Cursor<I2> bCursor = b.cursor();
 		final RandomAccess<O> cAccess = c.randomAccess();
@@ -212,6 +249,8 @@ public class Maps {
 		final RandomAccessibleInterval<I2> b, final IterableInterval<O> c,
 		final BinaryComputerOp<I1, I2, O> op)
 	{
+		if (Intervals.equalDimensions(b, a) &&
+			FlatAccess.map(a, b, c, op, 0, a.size())) return;
 		final Cursor<I1> aCursor = a.localizingCursor();
 		final RandomAccess<I2> bAccess = b.randomAccess();
 		final Cursor<O> cCursor = c.cursor();
@@ -226,6 +265,8 @@ public class Maps {
 		final IterableInterval<I2> b, final IterableInterval<O> c,
 		final BinaryComputerOp<I1, I2, O> op)
 	{
+		if (Intervals.equalDimensions(a, b) &&
+			FlatAccess.map(a, b, c, op, 0, b.size())) return;
 		final RandomAccess<I1> aAccess = a.randomAccess();
 		final Cursor<I2> bCursor = b.localizingCursor();
 		final Cursor<O> cCursor = c.cursor();
@@ -240,6 +281,9 @@ public class Maps {
 		final RandomAccessibleInterval<I2> b, final RandomAccessibleInterval<O> c,
 		final BinaryComputerOp<I1, I2, O> op)
 	{
+		if (Intervals.equalDimensions(b, a) &&
+			Intervals.equalDimensions(c, a) &&
+			FlatAccess.map(a, b, c, op, 0, a.size())) return;
 		final Cursor<I1> aCursor = a.localizingCursor();
 		final RandomAccess<I2> bAccess = b.randomAccess();
 		final RandomAccess<O> cAccess = c.randomAccess();
@@ -255,6 +299,9 @@ public class Maps {
 		final IterableInterval<I2> b, final RandomAccessibleInterval<O> c,
 		final BinaryComputerOp<I1, I2, O> op)
 	{
+		if (Intervals.equalDimensions(a, b) &&
+			Intervals.equalDimensions(c, b) &&
+			FlatAccess.map(a, b, c, op, 0, b.size())) return;
 		final RandomAccess<I1> aAccess = a.randomAccess();
 		final Cursor<I2> bCursor = b.localizingCursor();
 		final RandomAccess<O> cAccess = c.randomAccess();
@@ -270,6 +317,9 @@ public class Maps {
 		final RandomAccessibleInterval<I2> b, final IterableInterval<O> c,
 		final BinaryComputerOp<I1, I2, O> op)
 	{
+		if (Intervals.equalDimensions(a, c) &&
+			Intervals.equalDimensions(b, c) &&
+			FlatAccess.map(a, b, c, op, 0, c.size())) return;
 		final RandomAccess<I1> aAccess = a.randomAccess();
 		final RandomAccess<I2> bAccess = b.randomAccess();
 		final Cursor<O> cCursor = c.localizingCursor();
@@ -288,6 +338,8 @@ public class Maps {
 		final int startIndex, final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && FlatAccess.map(a, b, op, startIndex, numSteps))
+			return;
 		final Cursor<I> aCursor = a.cursor();
 		final Cursor<O> bCursor = b.cursor();
 
@@ -304,6 +356,8 @@ public class Maps {
 		final int startIndex, final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && Intervals.equalDimensions(b, a) &&
+			FlatAccess.map(a, b, op, startIndex, numSteps)) return;
 		final Cursor<I> aCursor = a.localizingCursor();
 		final RandomAccess<O> bAccess = b.randomAccess();
 
@@ -319,6 +373,8 @@ public class Maps {
 		final int startIndex, final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && Intervals.equalDimensions(a, b) &&
+			FlatAccess.map(a, b, op, startIndex, numSteps)) return;
 		final RandomAccess<I> aAccess = a.randomAccess();
 		final Cursor<O> bCursor = b.localizingCursor();
 
@@ -337,6 +393,8 @@ public class Maps {
 		final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && FlatAccess.map(a, b, c, op, startIndex, numSteps))
+			return;
 		final Cursor<I1> aCursor = a.cursor();
 		final Cursor<I2> bCursor = b.cursor();
 		final Cursor<O> cCursor = c.cursor();
@@ -356,6 +414,8 @@ public class Maps {
 		final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && Intervals.equalDimensions(c, a) &&
+			FlatAccess.map(a, b, c, op, startIndex, numSteps)) return;
 		final Cursor<I1> aCursor = a.localizingCursor();
 		final Cursor<I2> bCursor = b.cursor();
 		final RandomAccess<O> cAccess = c.randomAccess();
@@ -375,6 +435,8 @@ public class Maps {
 		final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && Intervals.equalDimensions(b, a) &&
+			FlatAccess.map(a, b, c, op, startIndex, numSteps)) return;
 		final Cursor<I1> aCursor = a.localizingCursor();
 		final RandomAccess<I2> bAccess = b.randomAccess();
 		final Cursor<O> cCursor = c.cursor();
@@ -394,6 +456,8 @@ public class Maps {
 		final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && Intervals.equalDimensions(a, b) &&
+			FlatAccess.map(a, b, c, op, startIndex, numSteps)) return;
 		final RandomAccess<I1> aAccess = a.randomAccess();
 		final Cursor<I2> bCursor = b.localizingCursor();
 		final Cursor<O> cCursor = c.cursor();
@@ -413,6 +477,9 @@ public class Maps {
 		final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && Intervals.equalDimensions(b, a) &&
+			Intervals.equalDimensions(c, a) &&
+			FlatAccess.map(a, b, c, op, startIndex, numSteps)) return;
 		final Cursor<I1> aCursor = a.localizingCursor();
 		final RandomAccess<I2> bAccess = b.randomAccess();
 		final RandomAccess<O> cAccess = c.randomAccess();
@@ -431,6 +498,9 @@ public class Maps {
 		final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && Intervals.equalDimensions(a, b) &&
+			Intervals.equalDimensions(c, b) &&
+			FlatAccess.map(a, b, c, op, startIndex, numSteps)) return;
 		final RandomAccess<I1> aAccess = a.randomAccess();
 		final Cursor<I2> bCursor = b.localizingCursor();
 		final RandomAccess<O> cAccess = c.randomAccess();
@@ -449,6 +519,9 @@ public class Maps {
 		final int stepSize, final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && Intervals.equalDimensions(a, c) &&
+			Intervals.equalDimensions(b, c) &&
+			FlatAccess.map(a, b, c, op, startIndex, numSteps)) return;
 		final RandomAccess<I1> aAccess = a.randomAccess();
 		final RandomAccess<I2> bAccess = b.randomAccess();
 		final Cursor<O> cCursor = c.localizingCursor();
@@ -466,6 +539,9 @@ public class Maps {
 	public static <I, O extends I> void inplace(final Iterable<O> arg,
 		final UnaryInplaceOp<I, O> op)
 	{
+		if (arg instanceof IterableInterval &&
+			FlatAccess.inplace(arg, op, 0, ((IterableInterval<?>) arg).size()))
+			return;
 		for (final O e : arg)
 			op.mutate(e);
 	}
@@ -475,6 +551,8 @@ public class Maps {
 		final int numSteps)
 	{
 		if (numSteps <= 0) return;
+		if (stepSize == 1 && FlatAccess.inplace(arg, op, startIndex, numSteps))
+			return;
 		final Cursor<O> argCursor = arg.cursor();
 
 		for (int ctr = 0; ctr < numSteps; ctr++) {
@@ -32,6 +32,7 @@ package net.imagej.ops.morphology.dilate;
 
 import net.imagej.ops.Contingent;
 import net.imagej.ops.Ops;
+import net.imagej.ops.filter.RectangleExtrema;
 import net.imagej.ops.map.Maps;
 import net.imagej.ops.map.neighborhood.MapNeighborhood;
 import net.imagej.ops.special.chain.RAIs;
@@ -46,6 +47,7 @@ import net.imglib2.FinalInterval;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.morphology.MorphologyUtils;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
 import net.imglib2.algorithm.neighborhood.Shape;
 import net.imglib2.img.Img;
 import net.imglib2.outofbounds.OutOfBoundsConstantValueFactory;
@@ -140,7 +142,14 @@ public class DefaultDilate<T extends RealType<T>> extends
 		else {
 			shifted = extended;
 		}
-		mapper.compute(Views.interval(shifted, output), in2, output);
+		final RandomAccessibleInterval<T> source = Views.interval(shifted, output);
+		// NB: Dilations by flat rectangles are computed with the van
+		// Herk/Gil-Werman algorithm, at constant cost per pixel regardless of
+		// their size.
+		if (RectangleExtrema.handles(in2, source, output)) {
+			RectangleExtrema.max(this, shifted, output, (RectangleShape) in2, output);
+		}
+		else mapper.compute(source, in2, output);
 	}
 
 	/**
@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.special;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.imagej.ops.OpEnvironment;
+import net.imagej.ops.special.computer.Computers;
+import net.imagej.ops.special.function.Functions;
+
+/**
+ * A matched {@link SpecialOp}, bound once and safe to invoke from many
+ * threads.
+ * <p>
+ * The op is matched up front, e.g. via {@link Functions} or {@link Computers},
+ * and handed to {@link #of}. Each thread calling {@link #get()} then receives
+ * its own instance: the first thread gets the matched op itself, any other
+ * thread an {@link SpecialOp#getIndependentInstance() independent instance} of
+ * it. Invocation goes straight to the op's typed methods, without the
+ * {@code Module} input assignment, conversion and reflection of the
+ * {@link OpEnvironment#run} methods:
+ * </p>
+ *
+ * <pre>
+ * final OpHandle&lt;UnaryFunctionOp&lt;Img&lt;T&gt;, DoubleType&gt;&gt; mean =
+ * 	OpHandle.of(Functions.unary(ops, Ops.Stats.Mean.class, DoubleType.class,
+ * 		img));
+ * // ...then, from any worker thread:
+ * final DoubleType result = mean.get().calculate(tile);
+ * </pre>
+ *
+ * @param <OP> The type of the bound special op.
+ */
+public final class OpHandle<OP extends SpecialOp> {
+
+	private final OP op;
+
+	private final AtomicBoolean claimed = new AtomicBoolean();
+
+	private final ThreadLocal<OP> instances = ThreadLocal.withInitial(
+		this::instance);
+
+	private OpHandle(final OP op) {
+		this.op = op;
+	}
+
+	// -- OpHandle methods --
+
+	/** Gets the calling thread's instance of the bound op. */
+	public OP get() {
+		return instances.get();
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Binds the given matched op.
+	 *
+	 * @param op The op to bind, typically obtained from {@link Functions},
+	 *          {@link Computers} or a similar utility class.
+	 */
+	public static <OP extends SpecialOp> OpHandle<OP> of(final OP op) {
+		if (op == null) throw new NullPointerException("No op to bind");
+		return new OpHandle<>(op);
+	}
+
+	// -- Helper methods --
+
+	/** Creates the instance of a thread which has none yet. */
+	private OP instance() {
+		if (claimed.compareAndSet(false, true)) return op;
+		@SuppressWarnings("unchecked")
+		final OP independent = (OP) op.getIndependentInstance();
+		return independent;
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.stats;
+
+import net.imagej.ops.Op;
+import net.imagej.ops.Ops;
+import net.imagej.ops.special.function.Functions;
+import net.imagej.ops.special.function.UnaryFunctionOp;
+import net.imglib2.type.numeric.RealType;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * {@link Op} to estimate the n-th {@code stats.quantile} in one pass and
+ * bounded memory, from a {@code stats.quantileSketch} of the input.
+ * <p>
+ * Unlike {@code stats.quantile}, the input need not fit in memory. The rank of
+ * the estimate is within about {@code error} times the number of values of the
+ * exact quantile's rank.
+ * </p>
+ *
+ * @param <I> input type
+ * @param <O> output type
+ * @see KLLSketch
+ */
+@Plugin(type = Ops.Stats.ApproxQuantile.class,
+	label = "Statistics: Approximate Quantile")
+public class DefaultApproxQuantile<I extends RealType<I>, O extends RealType<O>>
+	extends AbstractStatsOp<Iterable<I>, O> implements Ops.Stats.ApproxQuantile
+{
+
+	@Parameter(min = "0.0", max = "1.0")
+	private double quantile;
+
+	@Parameter(required = false, min = "0.0", max = "1.0")
+	private double error = KLLSketch.DEFAULT_ERROR;
+
+	private UnaryFunctionOp<Iterable<I>, KLLSketch> sketchOp;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public void initialize() {
+		sketchOp = (UnaryFunctionOp) Functions.unary(ops(),
+			Ops.Stats.QuantileSketch.class, KLLSketch.class, in() == null
+				? Iterable.class : in(), error);
+	}
+
+	@Override
+	public void compute(final Iterable<I> input, final O output) {
+		output.setReal(sketchOp.calculate(input).quantile(quantile));
+	}
+
+}
@@ -30,12 +30,13 @@
 
 package net.imagej.ops.stats;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collection;
 
 import net.imagej.ops.Op;
 import net.imagej.ops.Ops;
+import net.imglib2.IterableInterval;
+import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 
 import org.scijava.plugin.Parameter;
@@ -43,6 +44,12 @@ import org.scijava.plugin.Plugin;
 
 /**
  * {@link Op} to calculate the n-th {@code stats.percentile}.
+ * <p>
+ * The samples are selected from primitive scratch buffers, reused per thread,
+ * so that repeated calls (e.g., per neighborhood of a filter) do not allocate.
+ * Integers of a range no larger than the number of samples are selected by
+ * counting them instead.
+ * </p>
  * 
  * @author Daniel Seebacher (University of Konstanz)
  * @author Christian Dietz (University of Konstanz)
@@ -55,27 +62,105 @@ public class DefaultQuantile<I extends RealType<I>, O extends RealType<O>>
 	extends AbstractStatsOp<Iterable<I>, O> implements Ops.Stats.Quantile
 {
 
+	/** Initial capacity of the scratch buffer of samples. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Maximum size of the scratch buffers kept per thread, and hence of the range
+	 * of integers that are counted.
+	 */
+	private static final int MAX_RETAINED = 1 << 16;
+
+	/** Samples of the current thread's input. */
+	private static final ThreadLocal<double[]> samples = ThreadLocal
+		.withInitial(() -> new double[INITIAL_CAPACITY]);
+
+	/** Counts of each integer value of the current thread's input. */
+	private static final ThreadLocal<int[]> counts = ThreadLocal.withInitial(
+		() -> new int[0]);
+
 	@Parameter(min = "0.0", max = "1.0")
 	private double quantile;
 	
 	@Override
 	public void compute(final Iterable<I> input, final O output) {
-		final ArrayList<Double> statistics = new ArrayList<>();
+		final long size = size(input);
+		if (size > 0) {
+			final I first = input.iterator().next();
+			if (first instanceof IntegerType) {
+				final long range = (long) first.getMaxValue() - (long) first
+					.getMinValue() + 1;
+				if (range > 0 && range <= size && range <= MAX_RETAINED) {
+					output.setReal(count(input, (long) first.getMinValue(), (int) range,
+						rank(size)));
+					return;
+				}
+			}
+		}
+
+		double[] values = samples.get();
+		int n = 0;
+		for (final I value : input) {
+			if (n == values.length) values = Arrays.copyOf(values, 2 * n);
+			values[n++] = value.getRealDouble();
+		}
+		// NB: Buffers grown for large inputs are not retained.
+		if (values.length <= MAX_RETAINED) samples.set(values);
+
+		if (n == 0) {
+			output.setReal(Double.NaN);
+			return;
+		}
+		output.setReal(select(values, 0, n - 1, rank(n)));
+	}
+
+	// -- Helper methods --
 
-		final Iterator<I> it = input.iterator();
-		while (it.hasNext()) {
-			statistics.add(it.next().getRealDouble());
+	/** Gets the number of samples, or -1 if unknown without iterating. */
+	private static long size(final Iterable<?> input) {
+		if (input instanceof IterableInterval) {
+			return ((IterableInterval<?>) input).size();
 		}
+		if (input instanceof Collection) return ((Collection<?>) input).size();
+		return -1;
+	}
 
-		output.setReal(select(statistics, 0, statistics.size() - 1, (int) (statistics
-			.size() * quantile)));
+	/** Gets the (zero-based) rank of the quantile among {@code n} samples. */
+	private int rank(final long n) {
+		return (int) Math.min((long) (n * quantile), n - 1);
+	}
+
+	/**
+	 * Returns the value of the kth lowest integer, counting the occurrences of
+	 * each value of the given range.
+	 */
+	private static double count(final Iterable<? extends RealType<?>> input,
+		final long min, final int range, final int k)
+	{
+		int[] histogram = counts.get();
+		if (histogram.length < range) {
+			histogram = new int[range];
+			counts.set(histogram);
+		}
+		else Arrays.fill(histogram, 0, range, 0);
+
+		for (final RealType<?> value : input) {
+			histogram[(int) (((IntegerType<?>) value).getIntegerLong() - min)]++;
+		}
+
+		int below = 0;
+		int bin = 0;
+		while (below + histogram[bin] <= k) {
+			below += histogram[bin++];
+		}
+		return min + bin;
 	}
 
 	/**
 	 * Returns the value of the kth lowest element. Do note that for nth lowest
 	 * element, k = n - 1.
 	 */
-	private double select(final ArrayList<Double> array, final int inLeft,
+	private static double select(final double[] array, final int inLeft,
 		final int inRight, final int k)
 	{
 
@@ -86,39 +171,39 @@ public class DefaultQuantile<I extends RealType<I>, O extends RealType<O>>
 
 			if (right <= left + 1) {
 
-				if (right == left + 1 && array.get(right) < array.get(left)) {
+				if (right == left + 1 && array[right] < array[left]) {
 					swap(array, left, right);
 				}
 
-				return array.get(k);
+				return array[k];
 
 			}
 			final int middle = (left + right) >>> 1;
 			swap(array, middle, left + 1);
 
-			if (array.get(left) > array.get(right)) {
+			if (array[left] > array[right]) {
 				swap(array, left, right);
 			}
 
-			if (array.get(left + 1) > array.get(right)) {
+			if (array[left + 1] > array[right]) {
 				swap(array, left + 1, right);
 			}
 
-			if (array.get(left) > array.get(left + 1)) {
+			if (array[left] > array[left + 1]) {
 				swap(array, left, left + 1);
 			}
 
 			int i = left + 1;
 			int j = right;
-			final double pivot = array.get(left + 1);
+			final double pivot = array[left + 1];
 
 			while (true) {
 				do
 					++i;
-				while (array.get(i) < pivot);
+				while (array[i] < pivot);
 				do
 					--j;
-				while (array.get(j) > pivot);
+				while (array[j] > pivot);
 
 				if (j < i) {
 					break;
@@ -127,8 +212,8 @@ public class DefaultQuantile<I extends RealType<I>, O extends RealType<O>>
 				swap(array, i, j);
 			}
 
-			array.set(left + 1, array.get(j));
-			array.set(j, pivot);
+			array[left + 1] = array[j];
+			array[j] = pivot;
 
 			if (j >= k) {
 				right = j - 1;
@@ -141,9 +226,9 @@ public class DefaultQuantile<I extends RealType<I>, O extends RealType<O>>
 	}
 
 	/** Helper method for swapping array entries */
-	private void swap(final List<Double> array, final int a, final int b) {
-		final double temp = array.get(a);
-		array.set(a, array.get(b));
-		array.set(b, temp);
+	private static void swap(final double[] array, final int a, final int b) {
+		final double temp = array[a];
+		array[a] = array[b];
+		array[b] = temp;
 	}
 }
@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.stats;
+
+import java.util.SplittableRandom;
+
+import net.imagej.ops.Op;
+import net.imagej.ops.Ops;
+import net.imagej.ops.special.function.AbstractUnaryFunctionOp;
+import net.imagej.ops.thread.ExecutionContext;
+import net.imagej.ops.thread.chunker.Chunk;
+import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.type.numeric.RealType;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * {@link Op} to compute a {@code stats.quantileSketch}: a {@link KLLSketch} of
+ * the input's values, in one pass and bounded memory.
+ * <p>
+ * Images are split into blocks of elements, which are sketched in parallel
+ * with independently seeded sketches; the sketches are then merged in block
+ * order, so that the result does not depend on thread timing. Block
+ * boundaries are addressed by {@code long} index, so that images of more than
+ * {@code 2^31} elements can be sketched.
+ * </p>
+ *
+ * @param <I> input type
+ */
+@Plugin(type = Ops.Stats.QuantileSketch.class,
+	label = "Statistics: Quantile Sketch")
+public class DefaultQuantileSketch<I extends RealType<I>> extends
+	AbstractUnaryFunctionOp<Iterable<I>, KLLSketch> implements
+	Ops.Stats.QuantileSketch
+{
+
+	/** Number of blocks per thread, to balance the load of the threads. */
+	private static final int BLOCKS_PER_THREAD = 4;
+
+	/** Seed of the sketches, so that results are reproducible. */
+	private static final long SEED = 0x2545f4914f6cdd1dL;
+
+	@Parameter(required = false, min = "0.0", max = "1.0")
+	private double error = KLLSketch.DEFAULT_ERROR;
+
+	@Override
+	public KLLSketch calculate(final Iterable<I> input) {
+		final SplittableRandom random = new SplittableRandom(SEED);
+		final KLLSketch sketch = new KLLSketch(error, random.nextLong());
+		if (!(input instanceof IterableInterval)) {
+			for (final I value : input) {
+				sketch.add(value.getRealDouble());
+			}
+			return sketch;
+		}
+
+		final IterableInterval<I> image = (IterableInterval<I>) input;
+		final long size = image.size();
+		if (size == 0) return sketch;
+		final int blocks = (int) Math.min(size, BLOCKS_PER_THREAD *
+			ExecutionContext.parallelism(this));
+		// NB: Seed the partial sketches up front, in block order.
+		final KLLSketch[] partials = new KLLSketch[blocks];
+		for (int block = 0; block < blocks; block++) {
+			partials[block] = new KLLSketch(error, random.split().nextLong());
+		}
+		ops().run(ChunkerOp.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				final Cursor<I> cursor = image.cursor();
+				long position = 0;
+				for (int i = 0; i < numSteps; i++) {
+					final int block = startIndex + i * stepSize;
+					final long start = size * block / blocks;
+					final long end = size * (block + 1) / blocks;
+					final KLLSketch partial = partials[block];
+					cursor.jumpFwd(start - position);
+					for (long j = start; j < end; j++) {
+						partial.add(cursor.next().getRealDouble());
+					}
+					position = end;
+				}
+			}
+		}, blocks);
+		for (final KLLSketch partial : partials) {
+			sketch.merge(partial);
+		}
+		return sketch;
+	}
+
+}
@@ -35,8 +35,6 @@ import net.imagej.ops.Ops;
 import net.imagej.ops.image.integral.IntegralCursor;
 import net.imagej.ops.special.computer.AbstractUnaryComputerOp;
 import net.imglib2.algorithm.neighborhood.RectangleNeighborhood;
-import net.imglib2.converter.Converter;
-import net.imglib2.converter.RealDoubleConverter;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.util.Intervals;
@@ -67,36 +65,22 @@ public class IntegralMean<I extends RealType<I>> extends
 		final int dimensions = input.numDimensions();
 
 		// Compute \sum (-1)^{dim - ||cornerVector||_{1}} * I(x^{cornerVector})
-		final DoubleType sum = new DoubleType();
-		sum.setZero();
-
-		// Convert from input to return type
-		final Converter<I, DoubleType> conv = new RealDoubleConverter<>();
-		final DoubleType valueAsDoubleType = new DoubleType();
+		double sum = 0;
 
 		while (cursor.hasNext()) {
-			final I value = cursor.next().get(0).copy();
-			conv.convert(value, valueAsDoubleType);
+			final double value = cursor.next().get(0).getRealDouble();
 
 			// Obtain the cursor position encoded as corner vector
 			final int cornerInteger = cursor.getCornerRepresentation();
 
-			// Determine if the value has to be added (factor==1) or subtracted
-			// (factor==-1)
-			final DoubleType factor = new DoubleType(Math.pow(-1.0d, dimensions -
-				IntegralMean.norm(cornerInteger)));
-			valueAsDoubleType.mul(factor);
-
-			sum.add(valueAsDoubleType);
+			// Determine if the value has to be added or subtracted
+			sum += sign(dimensions, cornerInteger) * value;
 		}
 
 		final int area = (int) Intervals.numElements(Intervals.expand(input, -1l));
 
 		// Compute mean by dividing the sum divided by the number of elements
-		valueAsDoubleType.set(area); // NB: Reuse DoubleType
-		sum.div(valueAsDoubleType);
-
-		output.set(sum);
+		output.set(sum / area);
 	}
 
 	/**
@@ -111,4 +95,17 @@ public class IntegralMean<I extends RealType<I>> extends
 		return Integer.bitCount(cornerPosition);
 	}
 
+	/**
+	 * Computes the factor {@code (-1)^{dim - ||cornerVector||_{1}}} with which
+	 * the value at a corner of an {@code IntegralCursor} enters the sum.
+	 *
+	 * @param dimensions number of dimensions of the neighborhood
+	 * @param cornerPosition position vector of an {@code IntegralCursor} encoded
+	 *          as integer
+	 * @return {@code 1} or {@code -1}
+	 */
+	public static int sign(final int dimensions, final int cornerPosition) {
+		return ((dimensions - norm(cornerPosition)) & 1) == 0 ? 1 : -1;
+	}
+
 }
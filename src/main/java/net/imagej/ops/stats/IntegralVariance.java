@@ -35,8 +35,6 @@ import net.imagej.ops.Ops;
 import net.imagej.ops.image.integral.IntegralCursor;
 import net.imagej.ops.special.computer.AbstractUnaryComputerOp;
 import net.imglib2.algorithm.neighborhood.RectangleNeighborhood;
-import net.imglib2.converter.Converter;
-import net.imglib2.converter.RealDoubleConverter;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.util.Intervals;
@@ -67,55 +65,26 @@ public class IntegralVariance<I extends RealType<I>> extends
 		final int dimensions = input.numDimensions();
 
 		// Compute \sum (-1)^{dim - ||cornerVector||_{1}} * I(x^{cornerVector})
-		final DoubleType sum1 = new DoubleType();
-		sum1.setZero();
-
-		// Convert from input to return type
-		final Converter<I, DoubleType> conv = new RealDoubleConverter<>();
-
-		// Compute \sum (-1)^{dim - ||cornerVector||_{1}} * I(x^{cornerVector})
-		final DoubleType sum2 = new DoubleType();
-		sum2.setZero();
-
-		final DoubleType valueAsDoubleType = new DoubleType();
+		// for both the integral image and the integral image of squares
+		double sum1 = 0;
+		double sum2 = 0;
 
 		while (cursorS1.hasNext()) {
 			final Composite<I> compositeValue = cursorS1.next();
-			final I value1 = compositeValue.get(0).copy();
-			conv.convert(value1, valueAsDoubleType);
 
 			// Obtain the cursor position encoded as corner vector
 			final int cornerInteger1 = cursorS1.getCornerRepresentation();
 
-			// Determine if the value has to be added (factor==1) or subtracted
-			// (factor==-1)
-			final DoubleType factor = new DoubleType(Math.pow(-1.0d, dimensions -
-				IntegralMean.norm(cornerInteger1)));
-			valueAsDoubleType.mul(factor);
-
-			sum1.add(valueAsDoubleType);
+			// Determine if the values have to be added or subtracted
+			final int factor = IntegralMean.sign(dimensions, cornerInteger1);
 
-			final I value2 = compositeValue.get(1).copy();
-			conv.convert(value2, valueAsDoubleType);
-
-			// Determine if the value has to be added (factor==1) or subtracted
-			// (factor==-1)
-			valueAsDoubleType.mul(factor);
-
-			sum2.add(valueAsDoubleType);
+			sum1 += factor * compositeValue.get(0).getRealDouble();
+			sum2 += factor * compositeValue.get(1).getRealDouble();
 		}
 
 		final int area = (int) Intervals.numElements(Intervals.expand(input, -1l));
 
-		valueAsDoubleType.set(area); // NB: Reuse available DoubleType
-		sum1.mul(sum1);
-		sum1.div(valueAsDoubleType); // NB
-
-		sum2.sub(sum1);
-		valueAsDoubleType.sub(new DoubleType(1)); // NB
-		sum2.div(valueAsDoubleType); // NB
-
-		output.set(sum2);
+		output.set((sum2 - sum1 * sum1 / area) / (area - 1));
 	}
 
 }
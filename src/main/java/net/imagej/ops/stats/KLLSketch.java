@@ -0,0 +1,312 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.stats;
+
+import java.util.Arrays;
+
+/**
+ * A KLL sketch (Karnin, Lang &amp; Liberty, 2016) of the distribution of a
+ * stream of values, from which quantiles are estimated in bounded memory.
+ * <p>
+ * Values are kept in a hierarchy of compactors: each item at level {@code h}
+ * stands for {@code 2^h} values. When a level is full, it is sorted and every
+ * other item, starting at random, is promoted to the next level. The capacity
+ * of the levels decreases geometrically from the top level, which holds
+ * {@code k} items, so that the sketch holds about {@code 3k} items regardless
+ * of the number of values. Sketches of parts of a stream can be merged into a
+ * sketch of the whole stream.
+ * </p>
+ * <p>
+ * The rank of an estimated quantile is within about {@code error * size()} of
+ * the requested rank, with high probability. The minimum and maximum (i.e.,
+ * quantiles 0 and 1) are exact. NaN values are ignored. Sketches are not
+ * thread-safe; threads should sketch their own values and merge the results.
+ * Such sketches should be given different seeds, so that their compactions
+ * are independent.
+ * </p>
+ */
+public class KLLSketch {
+
+	/** Default rank error of estimated quantiles. */
+	public static final double DEFAULT_ERROR = 0.001;
+
+	/**
+	 * Top level capacity, times the rank error. The rank error of KLL sketches
+	 * is about {@code 1.7/k} with high probability; this leaves some margin.
+	 */
+	private static final double CAPACITY_FACTOR = 2;
+
+	/** Ratio of the capacities of consecutive levels. */
+	private static final double DECAY = 2.0 / 3;
+
+	/** Minimum capacity of a level. */
+	private static final int MIN_CAPACITY = 8;
+
+	/** Seed of sketches created without one. */
+	private static final long DEFAULT_SEED = 0x9e3779b97f4a7c15L;
+
+	private final double error;
+
+	/** Capacity of the top level. */
+	private final int k;
+
+	/** Items of each level, and number of items of each level. */
+	private double[][] levels = new double[0][];
+	private int[] sizes = new int[0];
+
+	/** Total number of items, and maximum before compacting. */
+	private int items, maxItems;
+
+	private long count;
+	private double min = Double.NaN, max = Double.NaN;
+
+	/** State of the generator of random bits. */
+	private long random;
+
+	/** Creates a sketch with the {@link #DEFAULT_ERROR default} rank error. */
+	public KLLSketch() {
+		this(DEFAULT_ERROR);
+	}
+
+	/**
+	 * Creates a sketch whose estimated quantiles have the given (normalized)
+	 * rank error.
+	 *
+	 * @param error the rank error, as a fraction of the number of values
+	 * @throws IllegalArgumentException if the error is not within (0, 1)
+	 */
+	public KLLSketch(final double error) {
+		this(error, DEFAULT_SEED);
+	}
+
+	/**
+	 * Creates a sketch whose estimated quantiles have the given (normalized)
+	 * rank error, and whose compactions are driven by the given seed.
+	 *
+	 * @param error the rank error, as a fraction of the number of values
+	 * @param seed the seed of the generator of random bits
+	 * @throws IllegalArgumentException if the error is not within (0, 1)
+	 */
+	public KLLSketch(final double error, final long seed) {
+		if (!(error > 0 && error < 1)) {
+			throw new IllegalArgumentException("Rank error must be within (0, 1): " +
+				error);
+		}
+		this.error = error;
+		random = mix(seed);
+		k = Math.max(MIN_CAPACITY, (int) Math.ceil(CAPACITY_FACTOR / error));
+		grow();
+	}
+
+	// -- KLLSketch methods --
+
+	/** Gets the rank error of estimated quantiles. */
+	public double error() {
+		return error;
+	}
+
+	/** Gets the number of values added to the sketch, NaNs excluded. */
+	public long size() {
+		return count;
+	}
+
+	/** Adds a value to the sketch. */
+	public void add(final double value) {
+		if (value != value) return; // NaN
+		if (count++ == 0) {
+			min = max = value;
+		}
+		else if (value < min) min = value;
+		else if (value > max) max = value;
+
+		if (sizes[0] == levels[0].length) {
+			levels[0] = Arrays.copyOf(levels[0], 2 * levels[0].length);
+		}
+		levels[0][sizes[0]++] = value;
+		if (++items >= maxItems) compress();
+	}
+
+	/** Adds the values of the given sketch to this sketch. */
+	public void merge(final KLLSketch other) {
+		if (other.count == 0) return;
+		if (count == 0) {
+			min = other.min;
+			max = other.max;
+		}
+		else {
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+		count += other.count;
+
+		while (levels.length < other.levels.length) {
+			grow();
+		}
+		for (int h = 0; h < other.levels.length; h++) {
+			append(h, other.levels[h], 0, other.sizes[h]);
+		}
+		items += other.items;
+		if (items >= maxItems) compress();
+	}
+
+	/**
+	 * Estimates the given quantile, i.e., the value of rank
+	 * {@code floor(quantile * size())} among the values sorted from lowest to
+	 * highest, as with {@code stats.quantile}.
+	 *
+	 * @param quantile the quantile, within [0, 1]
+	 * @return the estimated quantile, or NaN if the sketch is empty
+	 */
+	public double quantile(final double quantile) {
+		if (count == 0) return Double.NaN;
+		final long rank = (long) (quantile * count);
+		if (rank <= 0) return min;
+		if (rank >= count - 1) return max;
+
+		// NB: Merge the sorted levels, accumulating the weights of their items.
+		final int numLevels = levels.length;
+		final double[][] sorted = new double[numLevels][];
+		for (int h = 0; h < numLevels; h++) {
+			sorted[h] = Arrays.copyOf(levels[h], sizes[h]);
+			Arrays.sort(sorted[h]);
+		}
+		final int[] next = new int[numLevels];
+		long weight = 0;
+		while (true) {
+			int lowest = -1;
+			for (int h = 0; h < numLevels; h++) {
+				if (next[h] < sizes[h] && (lowest < 0 ||
+					sorted[h][next[h]] < sorted[lowest][next[lowest]]))
+				{
+					lowest = h;
+				}
+			}
+			if (lowest < 0) return max;
+			weight += 1L << lowest;
+			final double value = sorted[lowest][next[lowest]++];
+			if (weight > rank) return value;
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Adds a level on top of the others. */
+	private void grow() {
+		final int numLevels = levels.length + 1;
+		levels = Arrays.copyOf(levels, numLevels);
+		sizes = Arrays.copyOf(sizes, numLevels);
+		levels[numLevels - 1] = new double[MIN_CAPACITY];
+		maxItems = 0;
+		for (int h = 0; h < numLevels; h++) {
+			maxItems += capacity(h);
+		}
+	}
+
+	/** Gets the capacity of the given level. */
+	private int capacity(final int level) {
+		final int depth = levels.length - level - 1;
+		return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(DECAY,
+			depth)));
+	}
+
+	/** Compacts full levels until the total number of items is acceptable. */
+	private void compress() {
+		for (int h = 0; h < levels.length && items >= maxItems; h++) {
+			if (sizes[h] < capacity(h)) continue;
+			if (h == levels.length - 1) grow();
+			compact(h);
+		}
+	}
+
+	/**
+	 * Promotes every other item of the given level, in sorted order, to the
+	 * next level. If the level has an odd number of items, its largest item
+	 * stays.
+	 */
+	private void compact(final int level) {
+		final double[] values = levels[level];
+		final int size = sizes[level];
+		Arrays.sort(values, 0, size);
+		final int pairs = size / 2;
+		final int offset = randomBit();
+		final int target = level + 1;
+		for (int i = 0; i < pairs; i++) {
+			append(target, values[2 * i + offset]);
+		}
+		if (size % 2 == 1) {
+			values[0] = values[size - 1];
+			sizes[level] = 1;
+		}
+		else sizes[level] = 0;
+		items -= pairs;
+	}
+
+	private void append(final int level, final double value) {
+		if (sizes[level] == levels[level].length) {
+			levels[level] = Arrays.copyOf(levels[level], 2 * sizes[level]);
+		}
+		levels[level][sizes[level]++] = value;
+	}
+
+	private void append(final int level, final double[] values, final int from,
+		final int to)
+	{
+		final int size = sizes[level] + to - from;
+		if (size > levels[level].length) {
+			levels[level] = Arrays.copyOf(levels[level], Math.max(size, 2 *
+				levels[level].length));
+		}
+		System.arraycopy(values, from, levels[level], sizes[level], to - from);
+		sizes[level] = size;
+	}
+
+	/**
+	 * Scrambles the given seed into a state of the xorshift generator, so that
+	 * close seeds yield unrelated sequences.
+	 */
+	private static long mix(final long seed) {
+		long z = seed + DEFAULT_SEED;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		z ^= z >>> 31;
+		// NB: The xorshift generator is stuck at 0.
+		return z == 0 ? DEFAULT_SEED : z;
+	}
+
+	/** Gets a pseudorandom bit, from a xorshift generator. */
+	private int randomBit() {
+		random ^= random << 13;
+		random ^= random >>> 7;
+		random ^= random << 17;
+		return (int) (random >>> 63);
+	}
+
+}
@@ -52,6 +52,47 @@ import org.scijava.plugin.Plugin;
 @Plugin(type = Namespace.class)
 public class StatsNamespace extends AbstractNamespace {
 
+	@OpMethod(op = net.imagej.ops.stats.DefaultApproxQuantile.class)
+	public <T extends RealType<T>, O extends RealType<O>> O approxQuantile(
+		final Iterable<T> in, final double quantile)
+	{
+		final O result =
+			(O) ops().run(net.imagej.ops.Ops.Stats.ApproxQuantile.class, in,
+				quantile);
+		return result;
+	}
+
+	@OpMethod(op = net.imagej.ops.stats.DefaultApproxQuantile.class)
+	public <T extends RealType<T>, O extends RealType<O>> O approxQuantile(
+		final Iterable<T> in, final double quantile, final double error)
+	{
+		final O result =
+			(O) ops().run(net.imagej.ops.Ops.Stats.ApproxQuantile.class, in,
+				quantile, error);
+		return result;
+	}
+
+	@OpMethod(op = net.imagej.ops.stats.DefaultApproxQuantile.class)
+	public <T extends RealType<T>, O extends RealType<O>> O approxQuantile(
+		final O out, final Iterable<T> in, final double quantile)
+	{
+		final O result =
+			(O) ops().run(net.imagej.ops.Ops.Stats.ApproxQuantile.class, out, in,
+				quantile);
+		return result;
+	}
+
+	@OpMethod(op = net.imagej.ops.stats.DefaultApproxQuantile.class)
+	public <T extends RealType<T>, O extends RealType<O>> O approxQuantile(
+		final O out, final Iterable<T> in, final double quantile,
+		final double error)
+	{
+		final O result =
+			(O) ops().run(net.imagej.ops.Ops.Stats.ApproxQuantile.class, out, in,
+				quantile, error);
+		return result;
+	}
+
 	@OpMethod(ops = { net.imagej.ops.stats.IterableGeometricMean.class,
 		net.imagej.ops.stats.DefaultGeometricMean.class })
 	public <T extends RealType<T>, O extends RealType<O>> O geometricMean(
@@ -324,6 +365,23 @@ public class StatsNamespace extends AbstractNamespace {
 		return result;
 	}
 
+	@OpMethod(op = net.imagej.ops.stats.DefaultQuantileSketch.class)
+	public <T extends RealType<T>> KLLSketch quantileSketch(final Iterable<T> in) {
+		final KLLSketch result =
+			(KLLSketch) ops().run(net.imagej.ops.Ops.Stats.QuantileSketch.class, in);
+		return result;
+	}
+
+	@OpMethod(op = net.imagej.ops.stats.DefaultQuantileSketch.class)
+	public <T extends RealType<T>> KLLSketch quantileSketch(final Iterable<T> in,
+		final double error)
+	{
+		final KLLSketch result =
+			(KLLSketch) ops().run(net.imagej.ops.Ops.Stats.QuantileSketch.class, in,
+				error);
+		return result;
+	}
+
 	@OpMethod(op = net.imagej.ops.stats.IISize.class)
 	public <T extends RealType<T>, O extends RealType<O>> O size(
 		final IterableInterval<T> in)
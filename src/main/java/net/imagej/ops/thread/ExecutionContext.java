@@ -0,0 +1,419 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.thread;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import net.imagej.ops.Environmental;
+import net.imagej.ops.OpEnvironment;
+
+import org.scijava.thread.ThreadService;
+
+/**
+ * The executor and degree of parallelism used by multithreaded ops.
+ * <p>
+ * By default, parallel ops run on the shared executor of the
+ * {@link ThreadService}, using all available processors. An execution context
+ * restricts them to a pool of limited parallelism, or to a custom executor,
+ * so that e.g. concurrent jobs of a batch server get a share of the cores
+ * each. A context applies to one call via {@link #run(Runnable)}, or to all
+ * ops of a {@link ParallelOpEnvironment}.
+ * </p>
+ * <p>
+ * Tasks submitted through the context's {@link #getExecutorService()} run
+ * within the context, so nested parallel ops reuse the same executor. When
+ * the executor is a {@link ForkJoinPool}, threads waiting on nested tasks help
+ * execute them. Otherwise, nested tasks submitted from one of the executor's
+ * own threads run directly on that thread, since waiting for a queued task
+ * from within a bounded pool could deadlock.
+ * </p>
+ * <p>
+ * Contexts whose executor is a {@link ForkJoinPool} may also
+ * {@link #setWorkStealing enable} work stealing, so that chunked ops split
+ * their elements into many small chunks, which idle threads take over from
+ * busy ones.
+ * </p>
+ *
+ * @see #of(Environmental)
+ */
+public class ExecutionContext {
+
+	/** The context of the current thread, if any. */
+	private static final ThreadLocal<ExecutionContext> current =
+		new ThreadLocal<>();
+
+	/** The context whose executor runs the current thread's task, if any. */
+	private static final ThreadLocal<ExecutionContext> worker =
+		new ThreadLocal<>();
+
+	private final ExecutorService executor;
+	private final int parallelism;
+
+	/** Whether the executor was created, and hence is disposed, by us. */
+	private final boolean owned;
+
+	private volatile boolean workStealing;
+
+	private final ExecutorService service = new ContextExecutorService();
+
+	// -- Constructors --
+
+	/**
+	 * Creates a context whose ops run on a new {@link ForkJoinPool} of the
+	 * given parallelism. The pool is shut down by {@link #dispose()}.
+	 */
+	public ExecutionContext(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " +
+				parallelism);
+		}
+		this.parallelism = parallelism;
+		executor = new ForkJoinPool(parallelism, new WorkerFactory(), null,
+			false);
+		owned = true;
+	}
+
+	/**
+	 * Creates a context whose ops run on the given executor, with the
+	 * parallelism inferred from it.
+	 */
+	public ExecutionContext(final ExecutorService executor) {
+		this(executor, parallelism(executor));
+	}
+
+	/**
+	 * Creates a context whose ops run on the given executor, splitting their
+	 * work for the given parallelism. The executor is not shut down by
+	 * {@link #dispose()}.
+	 */
+	public ExecutionContext(final ExecutorService executor,
+		final int parallelism)
+	{
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " +
+				parallelism);
+		}
+		this.executor = executor;
+		this.parallelism = parallelism;
+		owned = false;
+	}
+
+	// -- ExecutionContext methods --
+
+	/** Gets the number of threads ops should split their work for. */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Gets the executor on which ops should run their tasks. Tasks run within
+	 * this context, and are safe to wait for from nested ops. Shutting down
+	 * the returned executor has no effect; use {@link #dispose()} instead.
+	 */
+	public ExecutorService getExecutorService() {
+		return service;
+	}
+
+	/**
+	 * Gets the context's executor as a {@link ForkJoinPool}, or null if it is
+	 * not one.
+	 */
+	public ForkJoinPool getForkJoinPool() {
+		return executor instanceof ForkJoinPool ? (ForkJoinPool) executor : null;
+	}
+
+	/** Gets whether chunked ops split their elements by work stealing. */
+	public boolean isWorkStealing() {
+		return workStealing;
+	}
+
+	/**
+	 * Sets whether chunked ops split their elements by work stealing, using
+	 * the {@link net.imagej.ops.thread.chunker.ChunkerForkJoin}. This only has
+	 * an effect if the context's executor is a {@link ForkJoinPool}. Disabled
+	 * by default, since each chunk is then executed many times, rather than
+	 * once per thread.
+	 */
+	public void setWorkStealing(final boolean workStealing) {
+		this.workStealing = workStealing;
+	}
+
+	/** Runs the given task, e.g. an op call, within this context. */
+	public void run(final Runnable task) {
+		final ExecutionContext previous = enter(this);
+		try {
+			task.run();
+		}
+		finally {
+			exit(current, previous);
+		}
+	}
+
+	/** Gets the result of the given task, e.g. an op call, within this context. */
+	public <T> T get(final Supplier<T> task) {
+		final ExecutionContext previous = enter(this);
+		try {
+			return task.get();
+		}
+		finally {
+			exit(current, previous);
+		}
+	}
+
+	/** Shuts down the executor, if it was created by this context. */
+	public void dispose() {
+		if (owned) executor.shutdown();
+	}
+
+	// -- Utility methods --
+
+	/** Gets the context of the current thread, or null if there is none. */
+	public static ExecutionContext current() {
+		return current.get();
+	}
+
+	/**
+	 * Gets the context in which the given op should run. This is the context
+	 * of the current thread if there is one, or else that of the op's
+	 * {@link ParallelOpEnvironment}, or null if there is neither.
+	 */
+	public static ExecutionContext of(final Environmental op) {
+		final ExecutionContext context = current.get();
+		if (context != null || op == null) return context;
+		for (OpEnvironment env = op.ops(); env != null; env = env.parent()) {
+			if (env instanceof ParallelOpEnvironment) {
+				return ((ParallelOpEnvironment) env).getExecutionContext();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the executor on which the given op should run its tasks: that of its
+	 * {@link #of(Environmental) context}, or the thread service's otherwise.
+	 */
+	public static ExecutorService executor(final Environmental op,
+		final ThreadService threadService)
+	{
+		final ExecutionContext context = of(op);
+		return context == null ? threadService.getExecutorService() : //
+			context.getExecutorService();
+	}
+
+	/**
+	 * Gets the number of threads the given op should split its work for: that
+	 * of its {@link #of(Environmental) context}, or the number of available
+	 * processors otherwise.
+	 */
+	public static int parallelism(final Environmental op) {
+		final ExecutionContext context = of(op);
+		return context == null ? Runtime.getRuntime().availableProcessors() : //
+			context.getParallelism();
+	}
+
+	// -- Helper methods --
+
+	private static int parallelism(final ExecutorService executor) {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		if (executor instanceof ForkJoinPool) {
+			return ((ForkJoinPool) executor).getParallelism();
+		}
+		if (executor instanceof ThreadPoolExecutor) {
+			// NB: Unbounded pools, e.g. cached ones, get one thread per processor.
+			final int size = ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+			return size < Integer.MAX_VALUE ? Math.max(1, size) : processors;
+		}
+		return processors;
+	}
+
+	private static ExecutionContext enter(final ExecutionContext context) {
+		final ExecutionContext previous = current.get();
+		current.set(context);
+		return previous;
+	}
+
+	private static void exit(final ThreadLocal<ExecutionContext> local,
+		final ExecutionContext previous)
+	{
+		if (previous == null) local.remove();
+		else local.set(previous);
+	}
+
+	private boolean isNested() {
+		return worker.get() == this && !(executor instanceof ForkJoinPool);
+	}
+
+	private Runnable wrap(final Runnable task) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				final ExecutionContext previous = enter(ExecutionContext.this);
+				final ExecutionContext previousWorker = worker.get();
+				worker.set(ExecutionContext.this);
+				try {
+					task.run();
+				}
+				finally {
+					exit(worker, previousWorker);
+					exit(current, previous);
+				}
+			}
+		};
+	}
+
+	private <T> Callable<T> wrap(final Callable<T> task) {
+		return new Callable<T>() {
+
+			@Override
+			public T call() throws Exception {
+				final ExecutionContext previous = enter(ExecutionContext.this);
+				final ExecutionContext previousWorker = worker.get();
+				worker.set(ExecutionContext.this);
+				try {
+					return task.call();
+				}
+				finally {
+					exit(worker, previousWorker);
+					exit(current, previous);
+				}
+			}
+		};
+	}
+
+	// -- Helper classes --
+
+	/** Creates pool threads which belong to this context. */
+	private class WorkerFactory implements
+		ForkJoinPool.ForkJoinWorkerThreadFactory
+	{
+
+		@Override
+		public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+			return new ForkJoinWorkerThread(pool) {
+
+				@Override
+				protected void onStart() {
+					super.onStart();
+					current.set(ExecutionContext.this);
+					worker.set(ExecutionContext.this);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Executor which runs tasks within this context. Tasks of a
+	 * {@link ForkJoinPool} are submitted to it directly, so that waiting for
+	 * them from a pool thread helps execute them.
+	 */
+	private class ContextExecutorService extends AbstractExecutorService {
+
+		@Override
+		public void execute(final Runnable command) {
+			if (isNested()) command.run();
+			else executor.execute(wrap(command));
+		}
+
+		@Override
+		public Future<?> submit(final Runnable task) {
+			final ForkJoinPool pool = getForkJoinPool();
+			return pool == null ? super.submit(task) : pool.submit(wrap(task));
+		}
+
+		@Override
+		public <T> Future<T> submit(final Runnable task, final T result) {
+			final ForkJoinPool pool = getForkJoinPool();
+			return pool == null ? super.submit(task, result) : //
+				pool.submit(wrap(task), result);
+		}
+
+		@Override
+		public <T> Future<T> submit(final Callable<T> task) {
+			final ForkJoinPool pool = getForkJoinPool();
+			return pool == null ? super.submit(task) : pool.submit(wrap(task));
+		}
+
+		@Override
+		public <T> List<Future<T>> invokeAll(
+			final Collection<? extends Callable<T>> tasks)
+			throws InterruptedException
+		{
+			final ForkJoinPool pool = getForkJoinPool();
+			if (pool == null) return super.invokeAll(tasks);
+			final List<Callable<T>> wrapped = new ArrayList<>(tasks.size());
+			for (final Callable<T> task : tasks) {
+				wrapped.add(wrap(task));
+			}
+			return pool.invokeAll(wrapped);
+		}
+
+		@Override
+		public void shutdown() {
+			// NB: The executor is shared; see ExecutionContext#dispose().
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return executor.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return executor.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(final long timeout, final TimeUnit unit)
+			throws InterruptedException
+		{
+			return executor.awaitTermination(timeout, unit);
+		}
+	}
+
+}
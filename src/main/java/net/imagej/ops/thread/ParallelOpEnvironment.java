@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.thread;
+
+import java.util.Collection;
+
+import net.imagej.ops.CustomOpEnvironment;
+import net.imagej.ops.OpEnvironment;
+import net.imagej.ops.OpInfo;
+
+/**
+ * An op environment whose multithreaded ops run in a given
+ * {@link ExecutionContext}.
+ * <p>
+ * The context applies to all ops matched through this environment, including
+ * ops they call in turn, unless a call is made within another context via
+ * {@link ExecutionContext#run(Runnable)}.
+ * </p>
+ */
+public class ParallelOpEnvironment extends CustomOpEnvironment {
+
+	private final ExecutionContext executionContext;
+
+	/**
+	 * Creates an op environment with the same configuration as the given
+	 * parent, whose ops run in the given execution context.
+	 */
+	public ParallelOpEnvironment(final OpEnvironment parent,
+		final ExecutionContext executionContext)
+	{
+		this(parent, null, executionContext);
+	}
+
+	/**
+	 * Creates an op environment with the same configuration as the given
+	 * parent, plus the specified additional ops, whose ops run in the given
+	 * execution context.
+	 */
+	public ParallelOpEnvironment(final OpEnvironment parent,
+		final Collection<? extends OpInfo> infos,
+		final ExecutionContext executionContext)
+	{
+		super(parent, infos);
+		this.executionContext = executionContext;
+	}
+
+	/** Gets the execution context of this environment's ops. */
+	public ExecutionContext getExecutionContext() {
+		return executionContext;
+	}
+
+}
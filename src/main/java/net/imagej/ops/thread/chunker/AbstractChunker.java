@@ -30,7 +30,10 @@
 
 package net.imagej.ops.thread.chunker;
 
+import java.util.concurrent.Future;
+
 import net.imagej.ops.AbstractOp;
+import net.imagej.ops.thread.ExecutionContext;
 
 import org.scijava.plugin.Parameter;
 import org.scijava.thread.ThreadService;
@@ -93,4 +96,17 @@ public abstract class AbstractChunker extends AbstractOp implements ChunkerOp {
 		return cancelReason;
 	}
 
+	// -- Internal methods --
+
+	/**
+	 * Runs the given task on the executor of this op's
+	 * {@link ExecutionContext}, or on the {@link ThreadService} if there is
+	 * none.
+	 */
+	protected Future<?> submit(final Runnable task) {
+		final ExecutionContext context = ExecutionContext.of(this);
+		return context == null ? threadService.run(task) : //
+			context.getExecutorService().submit(task);
+	}
+
 }
@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.thread.chunker;
+
+import net.imagej.ImgPlus;
+import net.imagej.ops.Environmental;
+import net.imagej.ops.thread.ExecutionContext;
+import net.imglib2.IterableInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.util.Intervals;
+
+/**
+ * A {@link Chunk} over whole cells of a cell image.
+ * <p>
+ * A cell image iterates over its cells in storage order, and over the
+ * elements of each cell in turn. Splitting its elements evenly lets chunks
+ * start and end within cells, so that threads share cells at the chunk
+ * boundaries. This chunk is split over cells instead: each step executes the
+ * wrapped chunk on the elements of a whole cell.
+ * </p>
+ *
+ * @see #run(Environmental, Chunk, IterableInterval)
+ */
+public class CellChunk implements Chunk {
+
+	/** Minimum number of cells per thread for splitting over cells. */
+	private static final int CELLS_PER_THREAD = 2;
+
+	/** Chunk over the elements of the image. */
+	private final Chunk chunk;
+
+	/** Index of the first element of each cell, followed by the image size. */
+	private final long[] offsets;
+
+	/**
+	 * Creates a chunk over the cells of the given image, which executes the
+	 * given chunk on the elements of each cell.
+	 */
+	public CellChunk(final Chunk chunk, final AbstractCellImg<?, ?, ?, ?> img) {
+		this.chunk = chunk;
+		offsets = offsets(img.getCellGrid());
+	}
+
+	/** Gets the number of cells, i.e., the number of steps to split. */
+	public int numberOfCells() {
+		return offsets.length - 1;
+	}
+
+	// -- Chunk methods --
+
+	@Override
+	public void execute(final int startIndex, final int stepSize,
+		final int numSteps)
+	{
+		if (stepSize == 1) {
+			// NB: Consecutive cells hold consecutive elements.
+			execute(startIndex, startIndex + numSteps);
+			return;
+		}
+		for (int i = 0; i < numSteps; i++) {
+			final int cell = startIndex + i * stepSize;
+			execute(cell, cell + 1);
+		}
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Executes the chunk on the elements of the given image, using a
+	 * {@link ChunkerOp} of the op's environment. If the image is a cell image
+	 * with enough cells to keep all threads busy, the chunk is split over whole
+	 * cells.
+	 *
+	 * @param op the op executing the chunk
+	 * @param chunk the chunk, which iterates over the image's elements
+	 * @param image the image whose iteration order the chunk follows
+	 */
+	public static void run(final Environmental op, final Chunk chunk,
+		final IterableInterval<?> image)
+	{
+		final AbstractCellImg<?, ?, ?, ?> cellImg = cellImg(image);
+		// NB: Chunks address elements by int index.
+		if (cellImg != null && cellImg.size() <= Integer.MAX_VALUE) {
+			final CellChunk cells = new CellChunk(chunk, cellImg);
+			final int threads = ExecutionContext.parallelism(op);
+			if (cells.numberOfCells() >= CELLS_PER_THREAD * threads) {
+				op.ops().run(ChunkerOp.class, cells, (long) cells.numberOfCells());
+				return;
+			}
+		}
+		op.ops().run(ChunkerOp.class, chunk, image.size());
+	}
+
+	// -- Helper methods --
+
+	/** Executes the chunk on the elements of the given range of cells. */
+	private void execute(final int fromCell, final int toCell) {
+		final long start = offsets[fromCell];
+		chunk.execute((int) start, 1, (int) (offsets[toCell] - start));
+	}
+
+	private static AbstractCellImg<?, ?, ?, ?> cellImg(final Object image) {
+		if (image instanceof ImgPlus) return cellImg(((ImgPlus<?>) image).getImg());
+		if (image instanceof AbstractCellImg) {
+			return (AbstractCellImg<?, ?, ?, ?>) image;
+		}
+		return null;
+	}
+
+	private static long[] offsets(final CellGrid grid) {
+		final int numCells = (int) Intervals.numElements(grid.getGridDimensions());
+		final int n = grid.numDimensions();
+		final long[] cellMin = new long[n];
+		final int[] cellDims = new int[n];
+		final long[] offsets = new long[numCells + 1];
+		for (int i = 0; i < numCells; i++) {
+			grid.getCellDimensions(i, cellMin, cellDims);
+			offsets[i + 1] = offsets[i] + Intervals.numElements(cellDims);
+		}
+		return offsets;
+	}
+
+}
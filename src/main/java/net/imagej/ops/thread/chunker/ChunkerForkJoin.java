@@ -0,0 +1,193 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.thread.chunker;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.imagej.ops.Ops;
+import net.imagej.ops.thread.ExecutionContext;
+
+import org.scijava.Priority;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * A {@link ChunkerOp} which splits the elements recursively on a
+ * {@link ForkJoinPool}.
+ * <p>
+ * Ranges are halved until they hold no more than the grain size, and the
+ * halves are forked, so idle threads steal pending ranges from busy ones. This
+ * keeps all cores busy even if elements differ in cost, e.g. neighborhoods
+ * near image borders. The calling thread works on the chunks as well, rather
+ * than just waiting for them. If a chunk throws an exception, chunks not yet
+ * started are skipped, and the exception is rethrown once the chunks already
+ * running have finished, so that no chunk still runs when the chunker
+ * returns.
+ * </p>
+ * <p>
+ * Chunks run on the pool of the op's {@link ExecutionContext}, if any. Without
+ * a context, they run on the pool of the calling thread if it is a fork/join
+ * worker, e.g. when chunkers are nested, and on the common pool otherwise. The
+ * grain size, if not given, is chosen such that each thread gets several
+ * chunks.
+ * </p>
+ * <p>
+ * This chunker is not the default, since chunks are executed many more times
+ * than one per thread. It is used when requested by class, or by the
+ * {@link DefaultChunker} within an {@link ExecutionContext} which
+ * {@link ExecutionContext#setWorkStealing enables} work stealing.
+ * </p>
+ */
+@Plugin(type = Ops.Thread.Chunker.class, priority = Priority.LOW_PRIORITY)
+public class ChunkerForkJoin extends AbstractChunker {
+
+	/** Number of chunks per thread, if the grain size is chosen adaptively. */
+	private static final int CHUNKS_PER_THREAD = 8;
+
+	/** Maximum number of elements per chunk, or 0 to choose adaptively. */
+	@Parameter(required = false)
+	private int grainSize;
+
+	@Override
+	public void run() {
+		if (numberOfElements <= 0) return;
+		if (numberOfElements > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many elements: " +
+				numberOfElements);
+		}
+		final ExecutionContext context = ExecutionContext.of(this);
+		final boolean inPool = ForkJoinTask.inForkJoinPool();
+		final ForkJoinPool pool;
+		if (context != null) pool = context.getForkJoinPool();
+		else pool = inPool ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+		if (pool == null) {
+			// NB: The context's executor cannot fork; split the elements evenly.
+			ops().run(DefaultChunker.class, chunkable, numberOfElements);
+			return;
+		}
+
+		// NB: A thread outside the pool works on the chunks, too, unless the
+		// context restricts the work to its own pool.
+		final boolean worker = inPool && ForkJoinTask.getPool() == pool;
+		final boolean helping = worker || context == null;
+		final int threads = pool.getParallelism() + (helping && !worker ? 1 : 0);
+
+		final int n = (int) numberOfElements;
+		final int grain = grainSize > 0 ? grainSize : grainSize(n, threads);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final ChunkTask task = new ChunkTask(null, 0, n, grain, context, failure);
+		if (helping) task.invoke();
+		else pool.invoke(task);
+
+		final Throwable t = failure.get();
+		if (t instanceof RuntimeException) throw (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+		if (t != null) throw new IllegalStateException(t);
+	}
+
+	// -- Helper methods --
+
+	/** Chooses a grain size which gives each thread several chunks. */
+	private static int grainSize(final int n, final int threads) {
+		final long chunks = (long) threads * CHUNKS_PER_THREAD;
+		return (int) Math.max(1, (n + chunks - 1) / chunks);
+	}
+
+	// -- Helper classes --
+
+	/** Executes a range of elements, forking off halves larger than a grain. */
+	private class ChunkTask extends CountedCompleter<Void> {
+
+		private final int start;
+		private final int end;
+		private final int grain;
+		private final ExecutionContext context;
+
+		/** The first exception thrown by any chunk. */
+		private final AtomicReference<Throwable> failure;
+
+		private ChunkTask(final ChunkTask parent, final int start,
+			final int end, final int grain, final ExecutionContext context,
+			final AtomicReference<Throwable> failure)
+		{
+			super(parent);
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+			this.context = context;
+			this.failure = failure;
+		}
+
+		@Override
+		public void compute() {
+			// NB: Failures are recorded rather than thrown, so that the root only
+			// completes once all forked tasks have completed.
+			try {
+				int hi = end;
+				while (hi - start > grain && !stopped()) {
+					final int mid = (start + hi) >>> 1;
+					addToPendingCount(1);
+					new ChunkTask(this, mid, hi, grain, context, failure).fork();
+					hi = mid;
+				}
+				if (!stopped()) execute(start, hi - start);
+			}
+			catch (final Throwable t) {
+				failure.compareAndSet(null, t);
+			}
+			tryComplete();
+		}
+
+		private void execute(final int startIndex, final int numSteps) {
+			if (context == null || ExecutionContext.current() == context) {
+				chunkable.execute(startIndex, 1, numSteps);
+				return;
+			}
+			// NB: Ops called by the chunk should run in the same context.
+			context.run(new Runnable() {
+
+				@Override
+				public void run() {
+					chunkable.execute(startIndex, 1, numSteps);
+				}
+			});
+		}
+
+		/** Whether the chunker was canceled, or another chunk failed. */
+		private boolean stopped() {
+			return isCanceled() || failure.get() != null;
+		}
+	}
+
+}
@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.concurrent.Future;
 
 import net.imagej.ops.Ops;
+import net.imagej.ops.thread.ExecutionContext;
 
 import org.scijava.Priority;
 import org.scijava.log.LogService;
@@ -59,7 +60,7 @@ public class ChunkerInterleaved extends AbstractChunker {
 	@Override
 	public void run() {
 
-		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final int numThreads = ExecutionContext.parallelism(this);
 		final int numStepsFloor = (int) (numberOfElements / numThreads);
 		final int remainder = (int) numberOfElements - (numStepsFloor * numThreads);
 
@@ -68,7 +69,7 @@ public class ChunkerInterleaved extends AbstractChunker {
 		for (int i = 0; i < numThreads; i++) {
 			final int j = i;
 
-			futures.add(threadService.run(new Runnable() {
+			futures.add(submit(new Runnable() {
 
 				@Override
 				public void run() {
@@ -35,6 +35,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 import net.imagej.ops.Ops;
+import net.imagej.ops.thread.ExecutionContext;
 
 import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
@@ -44,7 +45,9 @@ import org.scijava.plugin.Plugin;
  * Simple default implementation of a {@link ChunkerOp}. The list of
  * elements is chunked into equally sized (besides the last one), disjoint
  * chunks, which are processed in parallel. The stepSize is set to one, i.e.
- * each chunk consists of consecutive elements.
+ * each chunk consists of consecutive elements. Within an
+ * {@link ExecutionContext} which enables work stealing, the elements are
+ * chunked by a {@link ChunkerForkJoin} instead.
  * 
  * @author Christian Dietz (University of Konstanz)
  */
@@ -58,11 +61,18 @@ public class DefaultChunker extends AbstractChunker {
 
 	@Override
 	public void run() {
+		final ExecutionContext context = ExecutionContext.of(this);
+		if (context != null && context.isWorkStealing() && context
+			.getForkJoinPool() != null)
+		{
+			ops().run(ChunkerForkJoin.class, chunkable, numberOfElements);
+			return;
+		}
 
 		// TODO: is there a better way to determine the optimal chunk size?
 		
 		final int numSteps = Math.max(1, 
-			(int) (numberOfElements / Runtime.getRuntime().availableProcessors())) ;
+			(int) (numberOfElements / ExecutionContext.parallelism(this))) ;
 		
 		final int numChunks = (int) (numberOfElements / numSteps);
 
@@ -71,7 +81,7 @@ public class DefaultChunker extends AbstractChunker {
 		for (int i = 0; i < numChunks - 1; i++) {
 			final int j = i;
 
-			futures.add(threadService.run(new Runnable() {
+			futures.add(submit(new Runnable() {
 
 				@Override
 				public void run() {
@@ -81,7 +91,7 @@ public class DefaultChunker extends AbstractChunker {
 		}
 
 		// last chunk additionally add the rest of elements
-		futures.add(threadService.run(new Runnable() {
+		futures.add(submit(new Runnable() {
 
 			@Override
 			public void run() {
@@ -32,8 +32,13 @@ package net.imagej.ops.threshold.apply;
 
 import net.imagej.ops.Contingent;
 import net.imagej.ops.filter.AbstractCenterAwareNeighborhoodBasedFilter;
+import net.imagej.ops.filter.RectangleExtrema;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
 import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
 
 /**
  * Apply a local thresholding method to an image, optionally using a out of
@@ -52,4 +57,39 @@ public abstract class LocalThreshold<T extends RealType<T>> extends
 		return true;
 	}
 
+	/**
+	 * Thresholds each pixel of the input against the minimum and maximum of its
+	 * neighborhood, if the neighborhoods are rectangles whose extrema can be
+	 * computed by {@link RectangleExtrema}.
+	 *
+	 * @param input the input image
+	 * @param output the thresholded output
+	 * @param threshold the threshold of a pixel, given its neighborhood's
+	 *          extrema
+	 * @return whether the output was computed
+	 */
+	protected boolean computeFromExtrema(final RandomAccessibleInterval<T> input,
+		final IterableInterval<BitType> output, final ExtremaThreshold threshold)
+	{
+		if (!RectangleExtrema.handles(getShape(), input, output)) return false;
+
+		// NB: The extrema are computed and thresholded slab by slab, in one pass.
+		RectangleExtrema.minMax(this, Views.extend(input, getOutOfBoundsFactory()),
+			input, (RectangleShape) getShape(), output, (center, min,
+				max) -> threshold.compute(center, min, max) ? 1 : 0);
+		return true;
+	}
+
+	// -- Helper classes --
+
+	/** A threshold of a pixel against the extrema of its neighborhood. */
+	protected interface ExtremaThreshold {
+
+		/**
+		 * @return whether the pixel of value {@code center}, in a neighborhood
+		 *         with the given minimum and maximum, is foreground
+		 */
+		boolean compute(double center, double min, double max);
+	}
+
 }
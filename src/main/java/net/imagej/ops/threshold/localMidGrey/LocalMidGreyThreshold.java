@@ -36,6 +36,8 @@ import net.imagej.ops.special.function.Functions;
 import net.imagej.ops.special.function.UnaryFunctionOp;
 import net.imagej.ops.threshold.LocalThresholdMethod;
 import net.imagej.ops.threshold.apply.LocalThreshold;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.util.Pair;
@@ -57,7 +59,18 @@ public class LocalMidGreyThreshold<T extends RealType<T>> extends
 
 	@Parameter
 	private double c;
-	
+
+	@Override
+	public void compute(final RandomAccessibleInterval<T> input,
+		final IterableInterval<BitType> output)
+	{
+		// NB: Rectangles are thresholded against extrema computed at constant
+		// cost per pixel regardless of their size.
+		final boolean computed = computeFromExtrema(input, output, (center, min,
+			max) -> center > ((max + min) / 2.0) - c);
+		if (!computed) super.compute(input, output);
+	}
+
 	@Override
 	protected CenterAwareComputerOp<T, BitType> unaryComputer(final T inClass,
 		final BitType outClass)
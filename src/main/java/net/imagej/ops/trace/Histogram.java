@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values, such as durations in
+ * nanoseconds or sizes in bytes.
+ * <p>
+ * Values are counted in power-of-two buckets: bucket {@code b} holds the
+ * values in {@code [2^(b-1), 2^b)}, and bucket 0 holds zero. Recording a value
+ * costs a few atomic increments, so histograms can be updated from any number
+ * of threads without contention on a lock. Percentiles are therefore
+ * approximate, reported as the upper bound of their bucket.
+ * </p>
+ */
+public class Histogram {
+
+	/** Number of buckets: one for zero, plus one per bit of a long. */
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	// -- Histogram methods --
+
+	/** Records the given value. Negative values are recorded as zero. */
+	public void record(final long value) {
+		final long v = Math.max(value, 0);
+		counts.incrementAndGet(bucket(v));
+		count.increment();
+		sum.add(v);
+		if (v > max.get()) max.accumulateAndGet(v, Math::max);
+	}
+
+	/** Gets the number of recorded values. */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** Gets the sum of the recorded values. */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/** Gets the largest recorded value, or 0 if none. */
+	public long getMax() {
+		return max.get();
+	}
+
+	/** Gets the mean of the recorded values, or 0 if none. */
+	public double getMean() {
+		final long n = getCount();
+		return n == 0 ? 0 : (double) getSum() / n;
+	}
+
+	/** Gets the approximate median. */
+	public long getP50() {
+		return percentile(0.5);
+	}
+
+	/** Gets the approximate 90th percentile. */
+	public long getP90() {
+		return percentile(0.9);
+	}
+
+	/** Gets the approximate 99th percentile. */
+	public long getP99() {
+		return percentile(0.99);
+	}
+
+	/**
+	 * Gets an upper bound of the given quantile of the recorded values, or 0 if
+	 * none.
+	 *
+	 * @param q The quantile, between 0 and 1.
+	 */
+	public long percentile(final double q) {
+		long total = 0;
+		final long[] snapshot = new long[BUCKETS];
+		for (int b = 0; b < BUCKETS; b++) {
+			snapshot[b] = counts.get(b);
+			total += snapshot[b];
+		}
+		if (total == 0) return 0;
+		final long rank = Math.max(1, (long) Math.ceil(q * total));
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += snapshot[b];
+			if (seen >= rank) return Math.min(upperBound(b), getMax());
+		}
+		return getMax();
+	}
+
+	/** Clears all recorded values. */
+	public void reset() {
+		for (int b = 0; b < BUCKETS; b++) {
+			counts.set(b, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	// -- Helper methods --
+
+	private static int bucket(final long value) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+	}
+
+	private static long upperBound(final int bucket) {
+		if (bucket == 0) return 0;
+		if (bucket >= 63) return Long.MAX_VALUE;
+		return (1L << bucket) - 1;
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.trace;
+
+/**
+ * Timing and allocation metrics of one op class, as recorded by an
+ * {@link OpTracer}.
+ * <p>
+ * Times are in nanoseconds. The matching time covers finding the op, creating
+ * it and assigning its inputs, but not its initialization, which is recorded
+ * separately. The allocation histogram records the estimated size of outputs
+ * which the op created, rather than filled in.
+ * </p>
+ */
+public class OpStats {
+
+	private final String opClass;
+
+	private final Histogram matchTime = new Histogram();
+	private final Histogram initializeTime = new Histogram();
+	private final Histogram computeTime = new Histogram();
+	private final Histogram allocatedBytes = new Histogram();
+
+	public OpStats(final String opClass) {
+		this.opClass = opClass;
+	}
+
+	// -- OpStats methods --
+
+	/** Gets the name of the op class these metrics belong to. */
+	public String getOpClass() {
+		return opClass;
+	}
+
+	/** Gets the number of times the op was executed. */
+	public long getCalls() {
+		return computeTime.getCount();
+	}
+
+	/** Gets the time spent matching the op. */
+	public Histogram getMatchTime() {
+		return matchTime;
+	}
+
+	/** Gets the time spent initializing the op. */
+	public Histogram getInitializeTime() {
+		return initializeTime;
+	}
+
+	/** Gets the time spent executing the op, including nested ops. */
+	public Histogram getComputeTime() {
+		return computeTime;
+	}
+
+	/** Gets the estimated sizes of the outputs the op allocated. */
+	public Histogram getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/** Clears all metrics. */
+	public void reset() {
+		matchTime.reset();
+		initializeTime.reset();
+		computeTime.reset();
+		allocatedBytes.reset();
+	}
+
+}
@@ -0,0 +1,362 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.trace;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records per-op-class metrics and nested call trees of op executions.
+ * <p>
+ * A tracer is fed by a {@link TracingOpEnvironment}. For each op class, it
+ * keeps {@link OpStats} with histograms of matching, initialization and
+ * compute times, and of allocated output sizes. Executions are also arranged
+ * in a call tree: an op executed while another one is running on the same
+ * thread is recorded as its child. Ops executed on other threads, e.g. by a
+ * parallel chunker, start at the root of the tree.
+ * </p>
+ * <p>
+ * The metrics can be exported as JSON via {@link #toJSON()}, or published as
+ * a JMX MBean via {@link #register(String)}.
+ * </p>
+ */
+public class OpTracer implements OpTracerMXBean {
+
+	/** JMX domain of registered tracers. */
+	public static final String DOMAIN = "net.imagej.ops";
+
+	private final Map<String, OpStats> stats = new ConcurrentHashMap<>();
+
+	private final Call root = new Call("root");
+
+	/** The innermost running execution of each thread. */
+	private final ThreadLocal<Call> current = new ThreadLocal<>();
+
+	private volatile boolean enabled = true;
+
+	private ObjectName objectName;
+
+	// -- OpTracer methods --
+
+	/** Gets the metrics of the given op class, or null if none. */
+	public OpStats stats(final Class<?> opClass) {
+		return stats.get(opClass.getName());
+	}
+
+	/** Gets the root of the call tree, whose children are top-level calls. */
+	public Call callTree() {
+		return root;
+	}
+
+	/** Writes the metrics and the call tree as a JSON document. */
+	public void writeJSON(final Writer out) throws IOException {
+		out.write("{\"ops\":[");
+		boolean first = true;
+		for (final OpStats s : getStats()) {
+			if (!first) out.write(',');
+			first = false;
+			out.write("{\"opClass\":");
+			writeString(out, s.getOpClass());
+			out.write(",\"calls\":" + s.getCalls());
+			writeHistogram(out, "matchTime", s.getMatchTime());
+			writeHistogram(out, "initializeTime", s.getInitializeTime());
+			writeHistogram(out, "computeTime", s.getComputeTime());
+			writeHistogram(out, "allocatedBytes", s.getAllocatedBytes());
+			out.write('}');
+		}
+		out.write("],\"callTree\":");
+		writeCall(out, root);
+		out.write('}');
+	}
+
+	/**
+	 * Publishes this tracer on the platform MBean server, as
+	 * {@code net.imagej.ops:type=OpTracer,name=<name>}.
+	 *
+	 * @return The name under which the tracer was registered.
+	 * @throws IllegalStateException if the registration fails, e.g. because
+	 *           another tracer is registered under the same name.
+	 */
+	public synchronized ObjectName register(final String name) {
+		unregister();
+		try {
+			final ObjectName on = new ObjectName(DOMAIN + ":type=OpTracer,name=" +
+				ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+			objectName = on;
+			return on;
+		}
+		catch (final JMException exc) {
+			throw new IllegalStateException(exc);
+		}
+	}
+
+	/** Removes this tracer from the platform MBean server, if registered. */
+	public synchronized void unregister() {
+		if (objectName == null) return;
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+		}
+		catch (final JMException exc) {
+			throw new IllegalStateException(exc);
+		}
+		finally {
+			objectName = null;
+		}
+	}
+
+	// -- OpTracerMXBean methods --
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public long getCalls() {
+		long calls = 0;
+		for (final OpStats s : stats.values()) {
+			calls += s.getCalls();
+		}
+		return calls;
+	}
+
+	@Override
+	public List<OpStats> getStats() {
+		final List<OpStats> list = new ArrayList<>(stats.values());
+		Collections.sort(list, Comparator.comparingLong((OpStats s) -> s
+			.getComputeTime().getSum()).reversed().thenComparing(
+				OpStats::getOpClass));
+		return list;
+	}
+
+	@Override
+	public String toJSON() {
+		final StringWriter out = new StringWriter();
+		try {
+			writeJSON(out);
+		}
+		catch (final IOException exc) {
+			// NB: Unreachable, since StringWriter does not throw.
+			throw new UncheckedIOException(exc);
+		}
+		return out.toString();
+	}
+
+	@Override
+	public void reset() {
+		stats.clear();
+		root.children.clear();
+		root.calls.reset();
+		root.time.reset();
+	}
+
+	// -- Internal methods --
+
+	/** Records the matching of an op, minus its initialization. */
+	void matched(final Class<?> opClass, final long matchTime,
+		final long initializeTime)
+	{
+		if (!enabled) return;
+		final OpStats s = stats(opClass.getName());
+		s.getMatchTime().record(matchTime);
+		if (initializeTime > 0) s.getInitializeTime().record(initializeTime);
+	}
+
+	/** Records an explicit initialization of an op. */
+	void initialized(final Class<?> opClass, final long initializeTime) {
+		if (!enabled) return;
+		stats(opClass.getName()).getInitializeTime().record(initializeTime);
+	}
+
+	/**
+	 * Marks the start of an op execution on the current thread.
+	 *
+	 * @return The execution, to pass to {@link #exit}; or null if not tracing.
+	 */
+	Frame enter(final Class<?> opClass) {
+		if (!enabled) return null;
+		final Call parent = current.get();
+		final Call call = (parent == null ? root : parent).child(opClass
+			.getName());
+		current.set(call);
+		return new Frame(stats(opClass.getName()), call, parent);
+	}
+
+	/**
+	 * Marks the end of an op execution begun with {@link #enter}.
+	 *
+	 * @param allocatedBytes Estimated size of the outputs the op created.
+	 */
+	void exit(final Frame frame, final long allocatedBytes) {
+		if (frame == null) return;
+		final long time = System.nanoTime() - frame.start;
+		frame.call.record(time);
+		frame.stats.getComputeTime().record(time);
+		if (allocatedBytes > 0) frame.stats.getAllocatedBytes().record(
+			allocatedBytes);
+		if (frame.parent == null) {
+			root.record(time);
+			current.remove();
+		}
+		else current.set(frame.parent);
+	}
+
+	// -- Helper methods --
+
+	private OpStats stats(final String opClass) {
+		final OpStats s = stats.get(opClass);
+		return s != null ? s : stats.computeIfAbsent(opClass, OpStats::new);
+	}
+
+	private static void writeHistogram(final Writer out, final String name,
+		final Histogram h) throws IOException
+	{
+		out.write(",\"" + name + "\":{\"count\":" + h.getCount() + ",\"sum\":" + //
+			h.getSum() + ",\"mean\":" + h.getMean() + ",\"max\":" + h.getMax() + //
+			",\"p50\":" + h.getP50() + ",\"p90\":" + h.getP90() + ",\"p99\":" + //
+			h.getP99() + "}");
+	}
+
+	private static void writeCall(final Writer out, final Call call)
+		throws IOException
+	{
+		out.write("{\"name\":");
+		writeString(out, call.getName());
+		out.write(",\"calls\":" + call.getCalls() + ",\"totalTime\":" + call
+			.getTotalTime() + ",\"children\":[");
+		boolean first = true;
+		for (final Call child : call.getChildren()) {
+			if (!first) out.write(',');
+			first = false;
+			writeCall(out, child);
+		}
+		out.write("]}");
+	}
+
+	private static void writeString(final Writer out, final String s)
+		throws IOException
+	{
+		out.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') out.write("\\" + c);
+			else if (c < 0x20) out.write(String.format("\\u%04x", (int) c));
+			else out.write(c);
+		}
+		out.write('"');
+	}
+
+	// -- Helper classes --
+
+	/** A node of the call tree: an op class, as called from its parent. */
+	public static final class Call {
+
+		private final String name;
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder time = new LongAdder();
+		private final Map<String, Call> children = new ConcurrentHashMap<>();
+
+		private Call(final String name) {
+			this.name = name;
+		}
+
+		/** Gets the name of the op class. */
+		public String getName() {
+			return name;
+		}
+
+		/** Gets the number of calls from the parent. */
+		public long getCalls() {
+			return calls.sum();
+		}
+
+		/** Gets the total time, in nanoseconds, spent in these calls. */
+		public long getTotalTime() {
+			return time.sum();
+		}
+
+		/** Gets the ops called from this one, by descending total time. */
+		public List<Call> getChildren() {
+			final List<Call> list = new ArrayList<>(children.values());
+			Collections.sort(list, Comparator.comparingLong(Call::getTotalTime)
+				.reversed().thenComparing(Call::getName));
+			return list;
+		}
+
+		private Call child(final String childName) {
+			final Call child = children.get(childName);
+			return child != null ? child : //
+				children.computeIfAbsent(childName, Call::new);
+		}
+
+		private void record(final long nanos) {
+			calls.increment();
+			time.add(nanos);
+		}
+	}
+
+	/** A running op execution. */
+	static final class Frame {
+
+		private final OpStats stats;
+		private final Call call;
+		private final Call parent;
+		private final long start = System.nanoTime();
+
+		private Frame(final OpStats stats, final Call call, final Call parent) {
+			this.stats = stats;
+			this.call = call;
+			this.parent = parent;
+		}
+	}
+
+}
@@ -0,0 +1,345 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.trace;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.imagej.ops.CustomOpEnvironment;
+import net.imagej.ops.Namespace;
+import net.imagej.ops.NamespaceService;
+import net.imagej.ops.Op;
+import net.imagej.ops.OpCandidate;
+import net.imagej.ops.OpEnvironment;
+import net.imagej.ops.OpInfo;
+import net.imagej.ops.OpRef;
+import net.imagej.ops.OpUtils;
+import net.imagej.ops.cached.OpCache;
+
+import org.scijava.module.Module;
+import org.scijava.module.ModuleItem;
+import org.scijava.util.GenericUtils;
+
+/**
+ * An op environment which records where time goes, via an {@link OpTracer}.
+ * <p>
+ * Every op matched through this environment is timed, and its initialization
+ * timed separately. Executions are timed as well: of modules run via
+ * {@code run}, and of ops looked up via {@code op}, whose {@code compute},
+ * {@code calculate}, {@code mutate} and {@code run} methods are intercepted by
+ * a proxy implementing the same interfaces. Since matched ops run their
+ * dependencies in this environment too, whole op graphs are traced, e.g.
+ * {@code RichardsonLucyC} down to the FFT methods it uses.
+ * </p>
+ * <p>
+ * Ops requested by a concrete class cannot be proxied, so only their matching
+ * is recorded when looked up via {@code op}.
+ * </p>
+ */
+public class TracingOpEnvironment extends CustomOpEnvironment {
+
+	/** Op methods whose invocations count as executions. */
+	private static final Set<String> EXECUTIONS = new HashSet<>(Arrays.asList(
+		"compute", "calculate", "mutate", "run"));
+
+	private final OpTracer tracer;
+
+	public TracingOpEnvironment(final OpEnvironment parent) {
+		this(parent, null);
+	}
+
+	public TracingOpEnvironment(final OpEnvironment parent,
+		final Collection<? extends OpInfo> infos)
+	{
+		this(parent, infos, new OpTracer());
+	}
+
+	public TracingOpEnvironment(final OpEnvironment parent,
+		final Collection<? extends OpInfo> infos, final OpTracer tracer)
+	{
+		super(parent, infos);
+		this.tracer = tracer;
+	}
+
+	// -- TracingOpEnvironment methods --
+
+	/** Gets the tracer recording the metrics. */
+	public OpTracer tracer() {
+		return tracer;
+	}
+
+	// -- OpEnvironment methods --
+
+	@Override
+	public Object run(final String name, final Object... args) {
+		return run(lease(OpRef.create(name, args)), args);
+	}
+
+	@Override
+	public Object run(final Class<? extends Op> type, final Object... args) {
+		return run(lease(OpRef.create(type, args)), args);
+	}
+
+	@Override
+	public Object run(final Op op, final Object... args) {
+		return run(module(op, args), args);
+	}
+
+	@Override
+	public Op op(final String name, final Object... args) {
+		final List<Type> types = OpRef.types(Op.class);
+		return wrap(OpUtils.unwrap(module(name, args), types), types);
+	}
+
+	@Override
+	public <OP extends Op> OP op(final Class<OP> type, final Object... args) {
+		final List<Type> types = OpRef.types(type);
+		@SuppressWarnings("unchecked")
+		final OP op = (OP) wrap(OpUtils.unwrap(module(type, args), types), types);
+		return op;
+	}
+
+	@Override
+	public Op op(final List<OpRef> refs) {
+		final OpCandidate match = match(refs);
+		final OpRef ref = match.getRef();
+		return wrap(OpUtils.unwrap(match.getModule(), ref), ref.getTypes());
+	}
+
+	@Override
+	public Module module(final String name, final Object... args) {
+		return match(Collections.singletonList(OpRef.create(name, args)))
+			.getModule();
+	}
+
+	@Override
+	public Module module(final Class<? extends Op> type, final Object... args) {
+		return match(Collections.singletonList(OpRef.create(type, args)))
+			.getModule();
+	}
+
+	@Override
+	public Module module(final Op op, final Object... args) {
+		return super.module(target(op), args);
+	}
+
+	@Override
+	public OpInfo info(final Op op) {
+		return super.info(target(op));
+	}
+
+	@Override
+	public <NS extends Namespace> NS namespace(final Class<NS> nsClass) {
+		// NB: Bind the namespace to this environment, so its ops are traced.
+		return getContext().service(NamespaceService.class).create(nsClass, this);
+	}
+
+	// -- Helper methods --
+
+	/** Finds the best match, recording the time it took. */
+	private OpCandidate match(final List<OpRef> refs) {
+		final long start = System.nanoTime();
+		final OpCandidate match = matcher().findMatch(this, refs);
+		matched(match, System.nanoTime() - start);
+		return match;
+	}
+
+	/**
+	 * Finds the best match for a single execution, recording the time it took.
+	 * The match must be passed to {@link #run(OpCandidate, Object[])}.
+	 */
+	private OpCandidate lease(final OpRef ref) {
+		final long start = System.nanoTime();
+		final OpCandidate match = matcher().leaseMatch(this, Collections
+			.singletonList(ref));
+		matched(match, System.nanoTime() - start);
+		return match;
+	}
+
+	/** Records the time it took to find the given match. */
+	private void matched(final OpCandidate match, final long time) {
+		final long initializeTime = match.getInitializeTime();
+		tracer.matched(match.getModule().getDelegateObject().getClass(), time -
+			initializeTime, initializeTime);
+	}
+
+	/** Runs the module of the given match, releasing it afterwards. */
+	private Object run(final OpCandidate match, final Object[] args) {
+		try {
+			return run(match.getModule(), args);
+		}
+		finally {
+			matcher().release(match);
+		}
+	}
+
+	/** Runs the given module, recording the execution. */
+	private Object run(final Module module, final Object[] args) {
+		final OpTracer.Frame frame = tracer.enter(module.getDelegateObject()
+			.getClass());
+		long allocated = 0;
+		try {
+			final Object result = OpEnvironment.run(module);
+			if (frame != null) {
+				for (final ModuleItem<?> output : module.getInfo().outputs()) {
+					allocated += allocatedBytes(output.getValue(module), args);
+				}
+			}
+			return result;
+		}
+		finally {
+			tracer.exit(frame, allocated);
+		}
+	}
+
+	/**
+	 * Wraps the given op in a tracing proxy, if it can be proxied while still
+	 * implementing the requested types.
+	 */
+	private Op wrap(final Op op, final Collection<? extends Type> types) {
+		if (op == null || Proxy.isProxyClass(op.getClass())) return op;
+		final Set<Class<?>> interfaces = new LinkedHashSet<>();
+		publicInterfaces(op.getClass(), interfaces);
+		final Op proxy;
+		try {
+			proxy = (Op) Proxy.newProxyInstance(op.getClass().getClassLoader(),
+				interfaces.toArray(new Class<?>[interfaces.size()]),
+				new TracingHandler(op));
+		}
+		catch (final IllegalArgumentException exc) {
+			return op;
+		}
+		for (final Type t : types) {
+			if (!GenericUtils.getClass(t).isInstance(proxy)) return op;
+		}
+		return proxy;
+	}
+
+	/** Gets the op behind the given tracing proxy, if it is one. */
+	private static Op target(final Op op) {
+		if (op == null || !Proxy.isProxyClass(op.getClass())) return op;
+		final InvocationHandler handler = Proxy.getInvocationHandler(op);
+		if (!(handler instanceof TracingHandler)) return op;
+		return ((TracingHandler) handler).op;
+	}
+
+	private static void publicInterfaces(final Class<?> c,
+		final Set<Class<?>> interfaces)
+	{
+		if (c == null) return;
+		for (final Class<?> iface : c.getInterfaces()) {
+			if (Modifier.isPublic(iface.getModifiers())) interfaces.add(iface);
+			publicInterfaces(iface, interfaces);
+		}
+		publicInterfaces(c.getSuperclass(), interfaces);
+	}
+
+	/**
+	 * Estimates the size of the given output, unless it was one of the
+	 * arguments, i.e. preallocated by the caller.
+	 */
+	private static long allocatedBytes(final Object output, final Object[] args) {
+		if (output == null) return 0;
+		if (args != null) {
+			for (final Object arg : args) {
+				if (arg == output) return 0;
+			}
+		}
+		return OpCache.estimateBytes(output);
+	}
+
+	// -- Helper classes --
+
+	/** Records the executions of an op, then delegates to it. */
+	private class TracingHandler implements InvocationHandler {
+
+		private final Op op;
+
+		private TracingHandler(final Op op) {
+			this.op = op;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method,
+			final Object[] args) throws Throwable
+		{
+			final String name = method.getName();
+			final int arity = args == null ? 0 : args.length;
+			if (arity == 0 && name.equals("getIndependentInstance")) {
+				final Object instance = invoke(method, args);
+				if (instance == op) return proxy;
+				return wrap((Op) instance, Collections.singletonList(method
+					.getReturnType()));
+			}
+			if (arity == 0 && name.equals("initialize")) {
+				final long start = System.nanoTime();
+				final Object result = invoke(method, args);
+				tracer.initialized(op.getClass(), System.nanoTime() - start);
+				return result;
+			}
+			if (!EXECUTIONS.contains(name)) return invoke(method, args);
+
+			final OpTracer.Frame frame = tracer.enter(op.getClass());
+			long allocated = 0;
+			try {
+				final Object result = invoke(method, args);
+				if (frame != null) allocated = allocatedBytes(result, args);
+				return result;
+			}
+			finally {
+				tracer.exit(frame, allocated);
+			}
+		}
+
+		private Object invoke(final Method method, final Object[] args)
+			throws Throwable
+		{
+			try {
+				return method.invoke(op, args);
+			}
+			catch (final InvocationTargetException exc) {
+				throw exc.getCause();
+			}
+		}
+	}
+
+}
@@ -37,7 +37,7 @@ import net.imagej.ops.Ops;
 import net.imagej.ops.Parallel;
 import net.imagej.ops.special.computer.AbstractUnaryComputerOp;
 import net.imagej.ops.special.computer.UnaryComputerOp;
-import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imagej.ops.thread.chunker.CellChunk;
 import net.imagej.ops.thread.chunker.CursorBasedChunk;
 import net.imglib2.Cursor;
 import net.imglib2.IterableInterval;
@@ -66,7 +66,7 @@ public class DefaultProjectParallel<T, V> extends
 	public void compute(final RandomAccessibleInterval<T> input,
 		final IterableInterval<V> output)
 	{
-		ops().run(ChunkerOp.class, new CursorBasedChunk() {
+		CellChunk.run(this, new CursorBasedChunk() {
 
 			@Override
 			public void
@@ -93,7 +93,7 @@ public class DefaultProjectParallel<T, V> extends
 					ctr++;
 				}
 			}
-		}, output.size());
+		}, output);
 	}
 
 	@Override
@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.ItemIO;
+import org.scijava.command.CommandInfo;
+import org.scijava.command.CommandModule;
+import org.scijava.log.LogService;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Tests {@link OpAccessor}.
+ */
+public class OpAccessorTest extends AbstractOpTest {
+
+	private OpAccessor accessor;
+	private Module module;
+
+	@Before
+	public void createModule() {
+		final CommandInfo info = ops.info(ScaleOp.class).cInfo();
+		accessor = OpAccessor.of(info);
+		module = context.service(ModuleService.class).createModule(info);
+	}
+
+	@Test
+	public void testOf() {
+		assertSame(ScaleOp.class, accessor.opClass());
+		// NB: Accessors are shared by all infos of the same op class.
+		assertSame(accessor, OpAccessor.of(new CommandInfo(ScaleOp.class)));
+		assertEquals(2, accessor.inputs().size());
+		assertEquals("in", accessor.inputs().get(0).getName());
+		assertEquals("scale", accessor.inputs().get(1).getName());
+		assertEquals(1, accessor.outputs().size());
+		assertEquals("out", accessor.outputs().get(0).getName());
+	}
+
+	@Test
+	public void testModule() {
+		assertTrue(module instanceof CommandModule);
+		assertTrue(((CommandModule) module).getCommand() instanceof ScaleOp);
+		assertEquals(2.0, accessor.getInput(module, 1));
+		assertEquals(null, accessor.getOutput(module, 0));
+	}
+
+	@Test
+	public void testInputs() {
+		final DoubleType in = new DoubleType(3);
+		accessor.setInput(module, 0, in);
+		accessor.setInput(module, 1, 4.0);
+		assertSame(in, module.getInput("in"));
+		assertEquals(4.0, module.getInput("scale"));
+		assertSame(in, accessor.getInput(module, 0));
+		assertEquals(4.0, accessor.getInput(module, 1));
+
+		// NB: Values which need converting take the module's usual route.
+		accessor.setInput(module, 1, "5");
+		assertEquals(5.0, accessor.getInput(module, 1));
+	}
+
+	@Test
+	public void testOutputs() {
+		final DoubleType out = new DoubleType(7);
+		accessor.setOutput(module, 0, out);
+		assertSame(out, module.getOutput("out"));
+		assertSame(out, accessor.getOutput(module, 0));
+	}
+
+	@Test
+	public void testRun() {
+		final DoubleType in = new DoubleType(3);
+		assertEquals(6.0, ((DoubleType) ops.run("test.scale", in)).get(), 0.0);
+		assertEquals(12.0, ((DoubleType) ops.run("test.scale", in, 4)).get(),
+			0.0);
+	}
+
+	// -- Helper classes --
+
+	@Plugin(type = Op.class, name = "test.scale")
+	public static class ScaleOp extends AbstractOp {
+
+		@Parameter
+		private LogService log;
+
+		@Parameter
+		private DoubleType in;
+
+		@Parameter(required = false)
+		private double scale = 2;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private DoubleType out;
+
+		@Override
+		public void run() {
+			out = new DoubleType(in.get() * scale);
+		}
+	}
+
+}
@@ -32,6 +32,7 @@ package net.imagej.ops;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -42,6 +43,7 @@ import net.imglib2.type.numeric.real.DoubleType;
 
 import org.junit.Test;
 import org.scijava.ItemIO;
+import org.scijava.Priority;
 import org.scijava.module.Module;
 import org.scijava.plugin.Attr;
 import org.scijava.plugin.Parameter;
@@ -111,6 +113,153 @@ public class OpMatchingServiceTest extends AbstractOpTest {
 		}
 	}
 
+	/** Tests {@link OpMatchingService#findCandidates} by name and type. */
+	@Test
+	public void testFindCandidates() {
+		assertCandidates(OpRef.create("test.nan"), NaNOp.class);
+		assertCandidates(OpRef.create("nan"), NaNOp.class);
+		assertCandidates(OpRef.create(NaNOp.class), NaNOp.class);
+		assertCandidates(new OpRef("test.nan", OpRef.types(NaNOp.class), null),
+			NaNOp.class);
+		assertCandidates(new OpRef("test.nan", OpRef.types(OptionalParams.class),
+			null));
+		assertCandidates(OpRef.create("test.noSuchOp"));
+
+		// NB: Candidates of the wrong arity are still reported.
+		assertCandidates(OpRef.create("test.nan", 1, 2, 3), NaNOp.class);
+		try {
+			matcher.findMatch(ops, OpRef.create("test.nan", 1, 2, 3));
+			fail("Expected IllegalArgumentException for 3 args");
+		}
+		catch (final IllegalArgumentException exc) {
+			assertTrue(exc.getMessage().contains("Too many arguments"));
+		}
+	}
+
+	/** Tests that repeated matches are served from the match cache. */
+	@Test
+	public void testMatchCache() {
+		final DefaultOpMatchingService service =
+			(DefaultOpMatchingService) matcher;
+		final DoubleType value = new DoubleType(123.456);
+		matcher.findMatch(ops, OpRef.create("test.nan", value));
+
+		final long hits = service.getMatchCacheHits();
+		final long misses = service.getMatchCacheMisses();
+		final DoubleType value2 = new DoubleType(987.654);
+		final Module m = matcher.findMatch(ops, OpRef.create("test.nan", value2))
+			.getModule();
+		assertSame(value2, m.getInput("arg"));
+		assertEquals(hits + 1, service.getMatchCacheHits());
+		assertEquals(misses, service.getMatchCacheMisses());
+
+		// NB: Different argument classes must not hit the cache.
+		final Module m2 = matcher.findMatch(ops, OpRef.create("test.nan",
+			DoubleType.class)).getModule();
+		assertSame(NaNOp.class, m2.getDelegateObject().getClass());
+		assertEquals(misses + 1, service.getMatchCacheMisses());
+	}
+
+	/** Tests that cached matches of contingent ops are checked again. */
+	@Test
+	public void testMatchCacheContingent() {
+		assertSame(PositiveOp.class, matchPositive(1));
+		assertSame(PositiveOp.class, matchPositive(2));
+		assertSame(AnyNumberOp.class, matchPositive(-1));
+		assertSame(AnyNumberOp.class, matchPositive(-2));
+		assertSame(PositiveOp.class, matchPositive(3));
+	}
+
+	@Test
+	public void testMatchStats() {
+		final DefaultOpMatchingService service =
+			(DefaultOpMatchingService) matcher;
+		service.resetMatchStats();
+		assertSame(PositiveOp.class, matchPositive(1));
+		assertSame(AnyNumberOp.class, matchPositive(-1));
+
+		final MatchStats stats = service.getMatchStats("test.positive");
+		assertEquals(2, stats.getRequests());
+		assertEquals(0, stats.getCacheHits());
+		assertEquals(0, stats.getFailures());
+		assertEquals(4, stats.getCandidates());
+		assertEquals(0, stats.getMissingArgs());
+		// NB: The cached match of PositiveOp is checked again, then rejected.
+		assertEquals(3, stats.getConformsCalls());
+		assertEquals(2, stats.getConformsRejections());
+		assertTrue(stats.getMatchTime() > 0);
+		assertTrue(service.getMatchStats().contains(stats));
+
+		try {
+			matcher.findMatch(ops, OpRef.create("test.positive", "positive"));
+			fail("Expected IllegalArgumentException");
+		}
+		catch (final IllegalArgumentException exc) {
+			// NB: Expected.
+		}
+		assertEquals(3, stats.getRequests());
+		assertEquals(1, stats.getFailures());
+		assertTrue(stats.getImperfectTypes() > 0);
+		assertTrue(stats.getCastRejections() > 0);
+		assertTrue(stats.getConversions() > 0);
+
+		// NB: Requests by type are listed under the type's name.
+		ops.run(Ops.Math.Add.class, new DoubleType(), new DoubleType(1),
+			new DoubleType(2));
+		assertTrue(service.getMatchStats(Ops.Math.Add.NAME).getRequests() > 0);
+
+		service.resetMatchStats();
+		assertTrue(service.getMatchStats().isEmpty());
+	}
+
+	@Test
+	public void testPooling() {
+		final DefaultOpMatchingService service = (DefaultOpMatchingService) matcher;
+		service.setPooling(true);
+		try {
+			PooledOp.instances = 0;
+			final DoubleType first = runPooled(1, 2);
+			assertEquals(3, first.get(), 0.0);
+			assertEquals(1, PooledOp.instances);
+
+			// NB: The first cached match creates the pooled instance.
+			final DoubleType second = runPooled(2, 3);
+			assertEquals(5, second.get(), 0.0);
+			assertEquals(2, PooledOp.instances);
+
+			// ...which is reused from then on, with fresh outputs.
+			for (int i = 0; i < 5; i++) {
+				final DoubleType result = runPooled(i, 1);
+				assertEquals(i + 1, result.get(), 0.0);
+				assertNotSame(second, result);
+			}
+			assertEquals(2, PooledOp.instances);
+
+			// modules handed out by findMatch do not come from the pool
+			final Module module = matcher.findMatch(ops, OpRef.create(
+				"test.pooled", new DoubleType(1), 1.0)).getModule();
+			assertNotSame(module, matcher.findMatch(ops, OpRef.create(
+				"test.pooled", new DoubleType(1), 1.0)).getModule());
+			assertEquals(4, PooledOp.instances);
+			assertEquals(2, runPooled(1, 1).get(), 0.0);
+			assertEquals(4, PooledOp.instances);
+
+			// a failed execution still returns the instance to the pool
+			try {
+				runPooled(1, Double.NaN);
+				fail("Expected IllegalArgumentException");
+			}
+			catch (final IllegalArgumentException exc) {
+				// NB: Expected.
+			}
+			assertEquals(3, runPooled(2, 1).get(), 0.0);
+			assertEquals(4, PooledOp.instances);
+		}
+		finally {
+			service.setPooling(false);
+		}
+	}
+
 	@Test
 	public void testNameViaInterface() {
 		assertMatches("test.dessert.iceCream", FlavorlessIceCream.class);
@@ -184,6 +333,24 @@ public class OpMatchingServiceTest extends AbstractOpTest {
 		return (Integer) o;
 	}
 
+	private Class<?> matchPositive(final double value) {
+		return matcher.findMatch(ops, OpRef.create("test.positive", new DoubleType(
+			value))).getModule().getDelegateObject().getClass();
+	}
+
+	private DoubleType runPooled(final double value, final double offset) {
+		return (DoubleType) ops.run("test.pooled", new DoubleType(value), offset);
+	}
+
+	private void assertCandidates(final OpRef ref, final Class<?>... opTypes) {
+		final List<OpCandidate> candidates = matcher.findCandidates(ops, ref);
+		assertEquals(opTypes.length, candidates.size());
+		for (int i = 0; i < opTypes.length; i++) {
+			assertEquals(opTypes[i].getName(), candidates.get(i).cInfo()
+				.getDelegateClassName());
+		}
+	}
+
 	private void assertMatches(final String name, Class<?>... opTypes) {
 		final List<OpCandidate> candidates = matcher.findCandidates(ops, OpRef
 			.create(name));
@@ -210,6 +377,54 @@ public class OpMatchingServiceTest extends AbstractOpTest {
 		}
 	}
 
+	/** A test {@link Op} which only accepts positive values. */
+	@Plugin(type = Op.class, name = "test.positive",
+		priority = Priority.HIGH_PRIORITY)
+	public static class PositiveOp extends NoOp implements Contingent {
+
+		@Parameter
+		private DoubleType arg;
+
+		@Override
+		public boolean conforms() {
+			return arg.get() > 0;
+		}
+	}
+
+	/** A test {@link Op} which accepts any value. */
+	@Plugin(type = Op.class, name = "test.positive")
+	public static class AnyNumberOp extends NoOp {
+
+		@Parameter
+		private DoubleType arg;
+	}
+
+	/** A test {@link Op} which counts its instances. */
+	@Plugin(type = Op.class, name = "test.pooled")
+	public static class PooledOp extends AbstractOp {
+
+		private static int instances;
+
+		@Parameter
+		private DoubleType in;
+
+		@Parameter
+		private double offset;
+
+		@Parameter(type = ItemIO.OUTPUT)
+		private DoubleType out;
+
+		public PooledOp() {
+			instances++;
+		}
+
+		@Override
+		public void run() {
+			if (Double.isNaN(offset)) throw new IllegalArgumentException("NaN");
+			out = new DoubleType(in.get() + offset);
+		}
+	}
+
 	@Plugin(type = Op.class)
 	public static class OptionalParams extends AbstractOp {
 
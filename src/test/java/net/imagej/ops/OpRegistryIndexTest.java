@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import net.imagej.ops.OpMatchingServiceTest.NaNOp;
+import net.imagej.ops.OpMatchingServiceTest.OptionalParams;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link OpRegistryIndex}.
+ */
+public class OpRegistryIndexTest extends AbstractOpTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final OpRegistryIndex registry = roundTrip(ops.infos());
+		assertTrue(registry.size() > 100);
+
+		final OpRegistryIndex.Record nan = registry.get(NaNOp.class.getName());
+		assertNotNull(nan);
+		assertEquals(Collections.singletonList("test.nan"), nan.names());
+		assertEquals(1, nan.inputCount());
+		assertEquals(1, nan.requiredCount());
+		assertTrue(nan.isAssignableTo(Op.class));
+		assertTrue(nan.isAssignableTo(AbstractOp.class));
+		assertFalse(nan.isAssignableTo(Ops.Math.Add.class));
+
+		final OpRegistryIndex.Record optional = registry.get(OptionalParams.class
+			.getName());
+		assertEquals(6, optional.inputCount());
+		assertEquals(3, optional.requiredCount());
+
+		assertNull(registry.get(String.class.getName()));
+	}
+
+	@Test(expected = IOException.class)
+	public void testMalformed() throws IOException {
+		OpRegistryIndex.read(new StringReader("not an op registry\n"), loader());
+	}
+
+	/** Tests that indexed metadata yields the same candidates as classes. */
+	@Test
+	public void testCandidates() throws IOException {
+		final Collection<OpInfo> infos = ops.infos();
+		final OpInfoIndex indexed = new OpInfoIndex(infos, roundTrip(infos), null);
+		final OpInfoIndex loaded = new OpInfoIndex(infos, null);
+
+		final DoubleType value = new DoubleType(1);
+		final List<OpRef> refs = new ArrayList<>();
+		refs.add(OpRef.create("test.nan", value));
+		refs.add(OpRef.create("nan", value, value));
+		refs.add(OpRef.create(NaNOp.class, value));
+		refs.add(OpRef.create(Ops.Math.Add.class, value, value, value));
+		refs.add(OpRef.create("math.add", value, value));
+		refs.add(new OpRef("test.nan", OpRef.types(OptionalParams.class), null));
+		for (final OpRef ref : refs) {
+			for (final boolean checkArity : new boolean[] { false, true }) {
+				assertEquals(ref.toString(), infos(loaded, ref, checkArity), infos(
+					indexed, ref, checkArity));
+			}
+		}
+	}
+
+	/** Tests that records of changed class files are ignored. */
+	@Test
+	public void testStale() throws IOException {
+		final Collection<OpInfo> infos = ops.infos();
+		final StringWriter writer = new StringWriter();
+		OpRegistryIndex.write(infos, writer);
+
+		// NB: Rename NaNOp, as if the index predated a change of the class.
+		final StringBuilder index = new StringBuilder();
+		for (final String line : writer.toString().split("\n")) {
+			final String[] fields = line.split("\t", -1);
+			if (fields[0].equals(NaNOp.class.getName())) {
+				fields[1] = Long.toHexString(Long.parseLong(fields[1], 16) ^ 1);
+				fields[2] = "test.stale";
+			}
+			index.append(String.join("\t", fields)).append("\n");
+		}
+		final OpRegistryIndex registry = OpRegistryIndex.read(new StringReader(
+			index.toString()), loader());
+		assertNull(registry.get(NaNOp.class.getName()));
+		assertNotNull(registry.get(OptionalParams.class.getName()));
+
+		final OpInfoIndex indexed = new OpInfoIndex(infos, registry, null);
+		final OpRef ref = OpRef.create("test.nan", new DoubleType(1));
+		final List<OpInfo> nan = infos(indexed, ref, true);
+		assertEquals(1, nan.size());
+		assertEquals(NaNOp.class.getName(), nan.get(0).cInfo().getClassName());
+		assertTrue(infos(indexed, OpRef.create("test.stale", new DoubleType(1)),
+			true).isEmpty());
+	}
+
+	// -- Helper methods --
+
+	private OpRegistryIndex roundTrip(final Collection<OpInfo> infos)
+		throws IOException
+	{
+		final StringWriter writer = new StringWriter();
+		OpRegistryIndex.write(infos, writer);
+		return OpRegistryIndex.read(new StringReader(writer.toString()),
+			loader());
+	}
+
+	private ClassLoader loader() {
+		return getClass().getClassLoader();
+	}
+
+	private List<OpInfo> infos(final OpInfoIndex index, final OpRef ref,
+		final boolean checkArity)
+	{
+		final List<OpInfo> infos = new ArrayList<>();
+		for (final OpCandidate candidate : index.candidates(ops, Collections
+			.singletonList(ref), checkArity))
+		{
+			infos.add(candidate.opInfo());
+		}
+		return infos;
+	}
+
+}
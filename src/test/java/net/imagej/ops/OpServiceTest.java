@@ -32,6 +32,7 @@ package net.imagej.ops;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -48,6 +49,7 @@ import org.scijava.plugin.Attr;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.PluginService;
 
 /**
  * Tests {@link OpService}.
@@ -226,6 +228,31 @@ public class OpServiceTest extends AbstractOpTest {
 		}
 	}
 
+	/**
+	 * Tests that {@link OpService#infos()} is a shared snapshot, which is
+	 * updated when ops are removed or added.
+	 */
+	@Test
+	public void testInfos() {
+		final Collection<OpInfo> infos = ops.infos();
+		assertSame(infos, ops.infos());
+		assertTrue(infos.contains(ops.info(InfinityOp.class)));
+
+		final PluginService pluginService = context.service(PluginService.class);
+		final PluginInfo<Op> info = pluginService.getPlugin(InfinityOp.class,
+			Op.class);
+		pluginService.removePlugin(info);
+		final Collection<OpInfo> fewerInfos = ops.infos();
+		assertNotSame(infos, fewerInfos);
+		assertEquals(infos.size() - 1, fewerInfos.size());
+
+		pluginService.addPlugin(info);
+		assertEquals(infos.size(), ops.infos().size());
+		final DoubleType value = new DoubleType(123.456);
+		ops.run("test.infinity", value);
+		assertTrue(Double.isInfinite(value.get()));
+	}
+
 	// -- Helper classes --
 
 	/** A test {@link Op}. */
@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.benchmark;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.imagej.ops.eval.OpEvaluator;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+/**
+ * Benchmarks evaluating expressions over images, one op per operator versus
+ * fused into a single pass.
+ */
+@BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 1)
+public class EvalBenchmarkTest extends AbstractOpBenchmark {
+
+	private static final String EXPRESSION = "(a - b) * c + a";
+
+	private OpEvaluator evaluator;
+
+	/** Needed for JUnit-Benchmarks */
+	@Rule
+	public TestRule benchmarkRun = new BenchmarkRule();
+
+	/** Sets up test images */
+	@Before
+	public void initImg() {
+		final Map<String, Object> vars = new HashMap<>();
+		vars.put("a", generateFloatArrayTestImg(true, 4000, 4000));
+		vars.put("b", generateFloatArrayTestImg(true, 4000, 4000));
+		vars.put("c", generateFloatArrayTestImg(true, 4000, 4000));
+		evaluator = new OpEvaluator(ops);
+		evaluator.setAll(vars);
+	}
+
+	@Test
+	public void evalPerOperator() {
+		evaluator.evaluate(EXPRESSION);
+	}
+
+	@Test
+	public void evalFused() {
+		evaluator.evaluateFused(EXPRESSION);
+	}
+
+}
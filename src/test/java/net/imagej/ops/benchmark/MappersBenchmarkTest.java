@@ -41,9 +41,12 @@ import net.imagej.ops.map.MapUnaryComputers.IIToII;
 import net.imagej.ops.map.MapUnaryComputers.IIToIIParallel;
 import net.imagej.ops.map.MapUnaryComputers.IIToRAI;
 import net.imagej.ops.map.MapUnaryComputers.IIToRAIParallel;
+import net.imglib2.IterableInterval;
 import net.imglib2.img.Img;
+import net.imglib2.img.planar.PlanarImgs;
 import net.imglib2.type.numeric.NumericType;
 import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.view.Views;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -56,6 +59,10 @@ import org.junit.rules.TestRule;
  * {@link IIToII},
  * {@link IIToRAIParallel},
  * {@link IIToIIParallel}
+ * <p>
+ * Maps over array and planar images walk their arrays directly; the same maps
+ * over views of the images iterate with cursors, for comparison.
+ * </p>
  * 
  * @author Christian Dietz (University of Konstanz)
  */
@@ -64,6 +71,10 @@ public class MappersBenchmarkTest extends AbstractOpBenchmark {
 
 	private Img<ByteType> in;
 	private Img<ByteType> out;
+	private Img<ByteType> inPlanar;
+	private Img<ByteType> outPlanar;
+	private IterableInterval<ByteType> inView;
+	private IterableInterval<ByteType> outView;
 	private Op addConstant;
 	private Op addConstantInplace;
 
@@ -75,6 +86,10 @@ public class MappersBenchmarkTest extends AbstractOpBenchmark {
 	public void initImg() {
 		in = generateByteArrayTestImg(true, 1000, 1000);
 		out = generateByteArrayTestImg(false, 1000, 1000);
+		inPlanar = PlanarImgs.bytes(1000, 1000);
+		outPlanar = PlanarImgs.bytes(1000, 1000);
+		inView = Views.interval(in, in);
+		outView = Views.interval(out, out);
 
 		addConstant =
 			ops.op(Ops.Math.Add.class, null, NumericType.class,
@@ -94,6 +109,21 @@ public class MappersBenchmarkTest extends AbstractOpBenchmark {
 		ops.run(IIToII.class, out, in, addConstant);
 	}
 
+	@Test
+	public void pixelWiseTestMapperView() {
+		ops.run(IIToRAI.class, outView, inView, addConstant);
+	}
+
+	@Test
+	public void pixelWiseTestMapperIIView() {
+		ops.run(IIToII.class, outView, inView, addConstant);
+	}
+
+	@Test
+	public void pixelWiseTestMapperIIPlanar() {
+		ops.run(IIToII.class, outPlanar, inPlanar, addConstant);
+	}
+
 	@Test
 	public void pixelWiseTestThreadedMapper() {
 		ops.run(IIToRAIParallel.class, out, in, addConstant);
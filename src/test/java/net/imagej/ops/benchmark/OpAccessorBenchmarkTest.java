@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.benchmark;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+import java.util.List;
+
+import net.imagej.ops.OpAccessor;
+import net.imagej.ops.OpUtils;
+import net.imagej.ops.Ops;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleInfo;
+import org.scijava.module.ModuleItem;
+import org.scijava.module.ModuleService;
+
+/**
+ * Benchmarks creating a pixel-wise add op and assigning its inputs, via the
+ * reflective {@link Module} methods and via an {@link OpAccessor}.
+ */
+@BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 1)
+public class OpAccessorBenchmarkTest extends AbstractOpBenchmark {
+
+	private static final int RUNS = 10000;
+
+	private ModuleService moduleService;
+	private ModuleInfo info;
+	private Object[] args;
+
+	/** Needed for JUnit-Benchmarks */
+	@Rule
+	public TestRule benchmarkRun = new BenchmarkRule();
+
+	@Before
+	public void initOp() {
+		moduleService = context.service(ModuleService.class);
+		final DoubleType out = new DoubleType();
+		final DoubleType in = new DoubleType(5);
+		info = ops.module(Ops.Math.Add.class, out, in, in).getInfo();
+		args = new Object[] { out, in, in };
+	}
+
+	@Test
+	public void runReflective() {
+		final List<ModuleItem<?>> inputs = OpUtils.inputs(info);
+		for (int i = 0; i < RUNS; i++) {
+			final Module module = moduleService.createModule(info);
+			for (int j = 0; j < args.length; j++) {
+				module.setInput(inputs.get(j).getName(), args[j]);
+			}
+			module.run();
+		}
+	}
+
+	@Test
+	public void runAccessor() {
+		final OpAccessor accessor = OpAccessor.of(info);
+		for (int i = 0; i < RUNS; i++) {
+			final Module module = moduleService.createModule(info);
+			for (int j = 0; j < args.length; j++) {
+				accessor.setInput(module, j, args[j]);
+			}
+			module.run();
+		}
+	}
+
+}
@@ -39,9 +39,13 @@ import net.imagej.ops.AbstractOpTest;
 import net.imagej.ops.Op;
 import net.imagej.ops.OpInfo;
 import net.imagej.ops.Ops;
+import net.imagej.ops.special.computer.Computers;
+import net.imagej.ops.special.computer.UnaryComputerOp;
 import net.imagej.ops.special.function.Functions;
 import net.imagej.ops.special.function.UnaryFunctionOp;
+import net.imagej.ops.special.hybrid.AbstractBinaryHybridCF;
 import net.imagej.ops.special.hybrid.AbstractUnaryHybridCF;
+import net.imagej.ops.special.hybrid.BinaryHybridCF;
 import net.imagej.ops.special.hybrid.Hybrids;
 import net.imagej.ops.special.hybrid.UnaryHybridCF;
 import net.imglib2.img.Img;
@@ -76,6 +80,7 @@ public class CachedOpEnvironmentTest extends AbstractOpTest {
 		final ArrayList<OpInfo> customOps = new ArrayList<>();
 		customOps.add(new OpInfo(MyMin.class));
 		customOps.add(new OpInfo(MyOptionalParameterOp.class));
+		customOps.add(new OpInfo(MyBinaryOp.class));
 
 		env = new CachedOpEnvironment(ops, customOps);
 
@@ -110,6 +115,57 @@ public class CachedOpEnvironmentTest extends AbstractOpTest {
 		assertEquals(2.0, hybrid.calculate(imgB).getRealDouble(), 0.0);
 	}
 
+	@Test
+	public void testFingerprinting() {
+		ctr = 0;
+		env.cache().setFingerprinting(true);
+
+		// Identical pixels should result in the same result
+		assertEquals(1.0, func.calculate(imgA).get(), 0.0);
+		assertEquals(1.0, func.calculate(imgB).get(), 0.0);
+
+		// Changed pixels should result in re-computation
+		imgB.firstElement().inc();
+		assertEquals(2.0, func.calculate(imgB).get(), 0.0);
+		assertEquals(1.0, func.calculate(imgA).get(), 0.0);
+	}
+
+	@Test
+	public void testCachingBinaryHybrid() {
+		ctr = 0;
+
+		final BinaryHybridCF<Img<ByteType>, Img<ByteType>, DoubleType> binary =
+			Hybrids.binaryCF(env, BinaryOp.class, DoubleType.class, imgA, imgB);
+
+		// Calling it twice should result in the same result
+		assertEquals(1.0, binary.calculate(imgA, imgB).get(), 0.0);
+		assertEquals(1.0, binary.calculate(imgA, imgB).get(), 0.0);
+
+		// Should be increased, since the inputs are not commutative
+		assertEquals(2.0, binary.calculate(imgB, imgA).get(), 0.0);
+
+		// Independent instances share the cache
+		assertEquals(1.0, binary.getIndependentInstance().calculate(imgA, imgB)
+			.get(), 0.0);
+		assertEquals(2, env.cache().size());
+	}
+
+	@Test
+	public void testComputerNotCached() {
+		ctr = 0;
+
+		final UnaryComputerOp<Img<ByteType>, DoubleType> computer = Computers
+			.unary(env, Ops.Stats.Min.class, DoubleType.class, imgA);
+		final DoubleType output = new DoubleType();
+
+		// Computers are evaluated on each call
+		computer.compute(imgA, output);
+		assertEquals(1.0, output.get(), 0.0);
+		computer.compute(imgA, output);
+		assertEquals(2.0, output.get(), 0.0);
+		assertEquals(0, env.cache().size());
+	}
+
 	@Test
 	public void testOptionalParameter() {
 		UnaryFunctionOp<DoubleType, Object> f = Functions.unary(env, OptionalParameterOp.class, Object.class, DoubleType.class);
@@ -137,6 +193,33 @@ public class CachedOpEnvironmentTest extends AbstractOpTest {
 
 	}
 
+	private interface BinaryOp extends Op {
+		String name = "binary.op";
+	}
+
+	// specialized binary op to track number of counts
+	public static class MyBinaryOp extends
+		AbstractBinaryHybridCF<Img<ByteType>, Img<ByteType>, DoubleType> implements
+		BinaryOp
+	{
+
+		@Override
+		public DoubleType createOutput(final Img<ByteType> input1,
+			final Img<ByteType> input2)
+		{
+			return new DoubleType();
+		}
+
+		@Override
+		public void compute(final Img<ByteType> input1,
+			final Img<ByteType> input2, final DoubleType output)
+		{
+			ctr++;
+			output.set(ctr);
+		}
+
+	}
+
 	private interface OptionalParameterOp extends Op {
 		String name = "optional.parameter.op";
 	}
@@ -0,0 +1,180 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.cached;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import net.imagej.ops.cached.DiskCache.EvictionPolicy;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests {@link DiskCache}.
+ */
+public class DiskCacheTest {
+
+	private DiskCache disk;
+
+	@After
+	public void clearDisk() {
+		if (disk != null) disk.purge();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		disk = new DiskCache(1 << 20);
+
+		final Img<FloatType> array = ArrayImgs.floats(7, 5);
+		fill(array);
+		assertTrue(disk.put("array", array));
+		final Img<FloatType> planar = PlanarImgs.floats(4, 3, 2);
+		fill(planar);
+		assertTrue(disk.put("planar", planar));
+		assertEquals(2, disk.size());
+		assertEquals(4 * (7 * 5 + 4 * 3 * 2), disk.getBytes());
+
+		final Object arrayBack = disk.get("array");
+		assertTrue(arrayBack instanceof ArrayImg);
+		assertImagesEqual(array, arrayBack);
+		final Object planarBack = disk.get("planar");
+		assertTrue(planarBack instanceof PlanarImg);
+		assertImagesEqual(planar, planarBack);
+
+		// NB: Images read back are discarded from disk.
+		assertNull(disk.get("array"));
+		assertEquals(0, disk.size());
+		assertEquals(0, disk.getBytes());
+	}
+
+	@Test
+	public void testPurge() throws IOException {
+		disk = new DiskCache(1 << 24);
+
+		// NB: Larger than the buffer, so that it is written in several blocks.
+		final Img<FloatType> large = ArrayImgs.floats(1000, 700);
+		fill(large);
+		assertTrue(disk.put("large", large));
+		assertEquals(1, disk.getDirectory().list().length);
+		assertImagesEqual(large, disk.get("large"));
+		assertEquals(0, disk.getDirectory().list().length);
+
+		disk.put("a", ArrayImgs.floats(10));
+		disk.put("b", ArrayImgs.floats(10));
+		disk.purge();
+		assertEquals(0, disk.size());
+		assertEquals(0, disk.getDirectory().list().length);
+	}
+
+	@Test
+	public void testUnsupported() throws IOException {
+		disk = new DiskCache(1 << 20);
+		assertFalse(disk.put("string", "not an image"));
+		assertFalse(DiskCache.canSpill(Views.interval(ArrayImgs.floats(5, 5),
+			new long[] { 1, 1 }, new long[] { 2, 2 })));
+		assertEquals(0, disk.size());
+	}
+
+	@Test
+	public void testEvictionPolicies() throws IOException {
+		final long bytes = 4 * 10;
+		disk = policy(EvictionPolicy.FIFO, 2 * bytes);
+		disk.put("a", ArrayImgs.floats(10));
+		disk.put("b", ArrayImgs.floats(10));
+		disk.remove("missing");
+		disk.put("c", ArrayImgs.floats(10));
+		assertNull(disk.get("a"));
+		assertNotNull(disk.get("b"));
+		assertEquals(1, disk.getEvictions());
+		disk.clear();
+
+		disk = policy(EvictionPolicy.LRU, 2 * bytes);
+		disk.put("a", ArrayImgs.floats(10));
+		disk.put("b", ArrayImgs.floats(10));
+		disk.put("a", ArrayImgs.floats(10));
+		disk.put("c", ArrayImgs.floats(10));
+		assertNull(disk.get("b"));
+		assertNotNull(disk.get("a"));
+		disk.clear();
+
+		disk = policy(EvictionPolicy.LARGEST_FIRST, 3 * bytes);
+		disk.put("a", ArrayImgs.floats(10));
+		disk.put("b", ArrayImgs.floats(20));
+		disk.put("c", ArrayImgs.floats(10));
+		assertNull(disk.get("b"));
+		assertNotNull(disk.get("a"));
+		assertNotNull(disk.get("c"));
+	}
+
+	// -- Helper methods --
+
+	private DiskCache policy(final EvictionPolicy policy, final long maxBytes)
+		throws IOException
+	{
+		return new DiskCache(Files.createTempDirectory("disk-cache-test")
+			.toFile(), maxBytes, policy);
+	}
+
+	private void fill(final Img<FloatType> img) {
+		float value = 0;
+		for (final FloatType t : img) {
+			t.set(value++);
+		}
+	}
+
+	private void assertImagesEqual(final Img<FloatType> expected,
+		final Object actual)
+	{
+		@SuppressWarnings("unchecked")
+		final Img<? extends RealType<?>> img = (Img<? extends RealType<?>>) actual;
+		assertEquals(expected.size(), img.size());
+		final java.util.Iterator<? extends RealType<?>> iter = img.iterator();
+		for (final FloatType t : expected) {
+			assertEquals(t.getRealDouble(), iter.next().getRealDouble(), 0.0);
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.cached;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import net.imagej.ops.AbstractOpTest;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ImgFingerprint}.
+ */
+public class ImgFingerprintTest extends AbstractOpTest {
+
+	@Test
+	public void testArrayImg() {
+		final ArrayImg<ByteType, ByteArray> imgA = generateByteArrayTestImg(true,
+			13, 7);
+		final ArrayImg<ByteType, ByteArray> imgB = generateByteArrayTestImg(true,
+			13, 7);
+		assertEquals(ImgFingerprint.of(imgA), ImgFingerprint.of(imgB));
+
+		// different pixels
+		imgB.firstElement().inc();
+		assertNotEquals(ImgFingerprint.of(imgA), ImgFingerprint.of(imgB));
+
+		// same storage, different type
+		assertNotEquals(ImgFingerprint.of(imgA), ImgFingerprint.of(
+			generateUnsignedByteArrayTestImg(true, 13, 7)));
+
+		// same pixels, different interval
+		assertNotEquals(ImgFingerprint.of(generateByteArrayTestImg(true, 7, 13)),
+			ImgFingerprint.of(generateByteArrayTestImg(true, 13, 7)));
+	}
+
+	@Test
+	public void testPlanarImg() {
+		final Img<FloatType> imgA = PlanarImgs.floats(5, 5, 3);
+		final Img<FloatType> imgB = PlanarImgs.floats(5, 5, 3);
+		assertEquals(ImgFingerprint.of(imgA), ImgFingerprint.of(imgB));
+
+		Views.hyperSlice(imgB, 2, 2).randomAccess().get().set(1);
+		assertNotEquals(ImgFingerprint.of(imgA), ImgFingerprint.of(imgB));
+	}
+
+	@Test
+	public void testCellImg() {
+		final CellImgFactory<UnsignedByteType> factory = new CellImgFactory<>(4);
+		final Img<UnsignedByteType> imgA = factory.create(new long[] { 10, 10 },
+			new UnsignedByteType());
+		final Img<UnsignedByteType> imgB = factory.create(new long[] { 10, 10 },
+			new UnsignedByteType());
+		assertEquals(ImgFingerprint.of(imgA), ImgFingerprint.of(imgB));
+
+		final net.imglib2.RandomAccess<UnsignedByteType> ra = imgB.randomAccess();
+		ra.setPosition(new long[] { 9, 9 });
+		ra.get().set(1);
+		assertNotEquals(ImgFingerprint.of(imgA), ImgFingerprint.of(imgB));
+	}
+
+	@Test
+	public void testViews() {
+		final ArrayImg<ByteType, ByteArray> imgA = generateByteArrayTestImg(true,
+			20, 20);
+		final ArrayImg<ByteType, ByteArray> imgB = generateByteArrayTestImg(true,
+			20, 20);
+		final ImgFingerprint roiA = ImgFingerprint.of(Views.interval(imgA,
+			new long[] { 2, 3 }, new long[] { 9, 11 }));
+		assertNotNull(roiA);
+		assertEquals(roiA, ImgFingerprint.of(Views.interval(imgB, new long[] { 2,
+			3 }, new long[] { 9, 11 })));
+		assertNotEquals(roiA, ImgFingerprint.of(Views.interval(imgB, new long[] {
+			3, 3 }, new long[] { 10, 11 })));
+	}
+
+	@Test
+	public void testUnsupported() {
+		assertNull(ImgFingerprint.of("not an image"));
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.cached;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+
+import net.imagej.ops.AbstractOpTest;
+import net.imagej.ops.Op;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link OpCache}.
+ */
+public class OpCacheTest extends AbstractOpTest {
+
+	private final Op op = new NoOp();
+
+	@Test
+	public void testCollidingKeys() {
+		final OpCache cache = new OpCache(1 << 20);
+		final Object inA = new CollidingInput();
+		final Object inB = new CollidingInput();
+		final Object outA = new Object();
+		cache.put(OpCache.key(inA, op, new Object[0]), outA);
+
+		assertSame(outA, cache.get(OpCache.key(inA, op, new Object[0])));
+		assertNull(cache.get(OpCache.key(inB, op, new Object[0])));
+		assertNull(cache.get(OpCache.key(inA, op, new Object[] { 1 })));
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testMutableTypeInputs() {
+		final OpCache cache = new OpCache(1 << 20);
+		final DoubleType input = new DoubleType(1);
+		final Object result = new Object();
+		cache.put(OpCache.key(input, op, new Object[0]), result);
+
+		// NB: Changing the input must not change the stored key.
+		input.set(2);
+		assertNull(cache.get(OpCache.key(input, op, new Object[0])));
+		assertSame(result, cache.get(OpCache.key(new DoubleType(1), op,
+			new Object[0])));
+	}
+
+	@Test
+	public void testArrayArguments() {
+		final OpCache cache = new OpCache(1 << 20);
+		final double[] sigmas = { 1, 2 };
+		final Object result = new Object();
+		cache.put(OpCache.key("a", op, new Object[] { sigmas }), result);
+
+		// NB: Primitive arrays are compared by content, as of the computation.
+		assertSame(result, cache.get(OpCache.key("a", op, new Object[] {
+			new double[] { 1, 2 } })));
+		sigmas[1] = 3;
+		assertNull(cache.get(OpCache.key("a", op, new Object[] { sigmas })));
+	}
+
+	@Test
+	public void testEviction() {
+		final long size = OpCache.estimateBytes(new byte[100]);
+		final OpCache cache = new OpCache(2 * size);
+		final Object[] inputs = { "a", "b", "c" };
+		for (final Object input : inputs) {
+			cache.put(OpCache.key(input, op, new Object[0]), new byte[100]);
+		}
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertEquals(2 * size, cache.getBytes());
+		assertNull(cache.get(OpCache.key("a", op, new Object[0])));
+
+		// NB: Results larger than the whole budget are not cached.
+		cache.put(OpCache.key("d", op, new Object[0]), new byte[1000]);
+		assertNull(cache.get(OpCache.key("d", op, new Object[0])));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testDiskCache() throws IOException {
+		final Img<FloatType> img = ArrayImgs.floats(10, 10);
+		final long size = OpCache.estimateBytes(img);
+		final OpCache cache = new OpCache(size);
+		final DiskCache disk = new DiskCache(1 << 20);
+		cache.setDiskCache(disk);
+
+		cache.put(OpCache.key("a", op, new Object[0]), img);
+		cache.put(OpCache.key("b", op, new Object[0]), ArrayImgs.floats(10, 10));
+		assertEquals(1, cache.size());
+		assertEquals(1, disk.size());
+
+		// NB: Reading a spilled image back spills the other one.
+		final Object spilled = cache.get(OpCache.key("a", op, new Object[0]));
+		assertNotNull(spilled);
+		assertEquals(img.size(), ((Img<?>) spilled).size());
+		assertEquals(1, disk.size());
+		assertNotNull(cache.get(OpCache.key("b", op, new Object[0])));
+		assertEquals(2, cache.getHits());
+
+		cache.clear();
+		assertEquals(0, disk.size());
+	}
+
+	@Test(timeout = 30000)
+	public void testSpillOutsideLock() throws Exception {
+		final Img<FloatType> img = ArrayImgs.floats(10, 10);
+		final OpCache cache = new OpCache(OpCache.estimateBytes(img));
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch written = new CountDownLatch(1);
+		final DiskCache disk = new DiskCache(Files.createTempDirectory(
+			"imagej-ops-test").toFile(), 1 << 20, DiskCache.EvictionPolicy.LRU)
+		{
+
+			@Override
+			public boolean put(final Object key, final Object value) {
+				writing.countDown();
+				try {
+					written.await();
+				}
+				catch (final InterruptedException exc) {
+					throw new IllegalStateException(exc);
+				}
+				return super.put(key, value);
+			}
+		};
+		cache.setDiskCache(disk);
+		try {
+			cache.put(OpCache.key("a", op, new Object[0]), img);
+			final Thread spiller = new Thread(() -> cache.put(OpCache.key("b", op,
+				new Object[0]), ArrayImgs.floats(10, 10)));
+			spiller.start();
+			writing.await();
+
+			// NB: Lookups proceed while the evicted image is being written.
+			assertSame(img, cache.get(OpCache.key("a", op, new Object[0])));
+			assertNotNull(cache.get(OpCache.key("b", op, new Object[0])));
+			written.countDown();
+			spiller.join();
+			assertEquals(1, disk.size());
+			assertEquals(img.size(), ((Img<?>) cache.get(OpCache.key("a", op,
+				new Object[0]))).size());
+		}
+		finally {
+			written.countDown();
+			disk.purge();
+			disk.getDirectory().delete();
+		}
+	}
+
+	@Test
+	public void testEstimateBytes() {
+		final long overhead = OpCache.estimateBytes(new Object());
+		assertEquals(overhead + 400, OpCache.estimateBytes(new float[100]));
+		assertEquals(overhead + 2 * 100 * 100, OpCache.estimateBytes(ArrayImgs
+			.unsignedShorts(100, 100)));
+		assertEquals(overhead + 8 * 100, OpCache.estimateBytes(ArrayImgs.doubles(
+			10, 10)));
+		assertEquals(overhead + 13, OpCache.estimateBytes(ArrayImgs.bits(10, 10)));
+	}
+
+	// -- Helper classes --
+
+	/** An input with identity equality, whose hash codes always collide. */
+	private static class CollidingInput {
+
+		@Override
+		public int hashCode() {
+			return 42;
+		}
+	}
+
+}
@@ -31,11 +31,18 @@
 package net.imagej.ops.eval;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.HashMap;
 import java.util.Map;
 
 import net.imagej.ops.AbstractOpTest;
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
 
 import org.junit.Test;
 
@@ -61,4 +68,70 @@ public class EvalTest extends AbstractOpTest {
 		assertEquals(17, ops.run(DefaultEval.class, "a+b*c", vars));
 	}
 
+	@Test
+	public void testFused() {
+		final Img<FloatType> a = ramp(1);
+		final Img<FloatType> b = ramp(2);
+		final Img<FloatType> c = ramp(3);
+		final Map<String, Object> vars = new HashMap<>();
+		vars.put("a", a);
+		vars.put("b", b);
+		vars.put("c", c);
+		vars.put("t", 20);
+		final OpEvaluator e = new OpEvaluator(ops);
+		e.setAll(vars);
+
+		final IterableInterval<DoubleType> result = e.evaluateFused(
+			"(a - b) * c > t");
+
+		final Cursor<FloatType> ca = a.cursor(), cb = b.cursor(), cc = c.cursor();
+		final Cursor<DoubleType> cr = result.cursor();
+		while (cr.hasNext()) {
+			final double expected = (ca.next().get() - cb.next().get()) * cc.next()
+				.get() > 20 ? 1 : 0;
+			assertEquals(expected, cr.next().get(), 0);
+		}
+	}
+
+	@Test
+	public void testFusedOutput() {
+		final Img<FloatType> a = ramp(1);
+		final Img<FloatType> out = ArrayImgs.floats(200, 100);
+		final Map<String, Object> vars = new HashMap<>();
+		vars.put("a", a);
+		final OpEvaluator e = new OpEvaluator(ops);
+		e.setAll(vars);
+
+		// NB: Shared subexpressions are computed once, with the same results.
+		assertSame(out, e.evaluateFused("(a + 1) * (a + 1) - -a / 2^2", out));
+
+		final Cursor<FloatType> ca = a.cursor(), co = out.cursor();
+		while (co.hasNext()) {
+			final float v = ca.next().get();
+			assertEquals((v + 1) * (v + 1) + v / 4, co.next().get(), 1e-3);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFusedIncompatible() {
+		final Map<String, Object> vars = new HashMap<>();
+		vars.put("a", ramp(1));
+		vars.put("b", ArrayImgs.floats(100, 200));
+		final OpEvaluator e = new OpEvaluator(ops);
+		e.setAll(vars);
+		e.evaluateFused("a + b");
+	}
+
+	// -- Helper methods --
+
+	private Img<FloatType> ramp(final int slope) {
+		final Img<FloatType> img = ArrayImgs.floats(200, 100);
+		final Cursor<FloatType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().set(slope * c.getIntPosition(0) % 17 + c.getIntPosition(1) % 5);
+		}
+		return img;
+	}
+
 }
@@ -34,6 +34,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Random;
 
 import net.imagej.ops.AbstractOpTest;
 import net.imagej.ops.filter.max.DefaultMaxFilter;
@@ -48,12 +49,19 @@ import net.imagej.ops.filter.sigma.DefaultSigmaFilter;
 import net.imagej.ops.filter.sigma.SigmaFilterOp;
 import net.imagej.ops.filter.variance.DefaultVarianceFilter;
 import net.imagej.ops.filter.variance.VarianceFilterOp;
+import net.imglib2.Cursor;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
 import net.imglib2.algorithm.neighborhood.RectangleShape;
 import net.imglib2.algorithm.neighborhood.RectangleShape.NeighborhoodsIterableInterval;
 import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.outofbounds.OutOfBoundsMirrorFactory;
 import net.imglib2.outofbounds.OutOfBoundsMirrorFactory.Boundary;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
@@ -192,4 +200,165 @@ public class NonLinearFiltersTest extends AbstractOpTest {
 		assertEquals((byte)Util.round((sumSq - (sum * sum / 9)) / 8), out.firstElement().get());
 	}
 
+	/**
+	 * @see MeanFilterOp
+	 * @see DefaultMeanFilter
+	 */
+	@Test
+	public void testMeanFilterLargeSpan() {
+		final Img<FloatType> input = generateFloatArrayTestImg(true, 30, 20, 10);
+		final Img<DoubleType> output = ArrayImgs.doubles(30, 20, 10);
+		final RectangleShape largeShape = new RectangleShape(7, false);
+
+		ops.run(MeanFilterOp.class, output, input, largeShape,
+			new OutOfBoundsMirrorFactory<>(Boundary.SINGLE));
+
+		assertNeighborhoodStats(input, largeShape, output, false);
+	}
+
+	/**
+	 * @see VarianceFilterOp
+	 * @see DefaultVarianceFilter
+	 */
+	@Test
+	public void testVarianceFilterSkipCenter() {
+		final Img<FloatType> input = generateFloatArrayTestImg(true, 40, 30);
+		final Img<DoubleType> output = ArrayImgs.doubles(40, 30);
+		final RectangleShape skipShape = new RectangleShape(3, true);
+
+		ops.run(VarianceFilterOp.class, output, input, skipShape,
+			new OutOfBoundsMirrorFactory<>(Boundary.SINGLE));
+
+		assertNeighborhoodStats(input, skipShape, output, true);
+	}
+
+	/**
+	 * @see MinFilterOp
+	 * @see DefaultMinFilter
+	 */
+	@Test
+	public void testMinFilterLargeSpan() {
+		final Img<FloatType> input = generateFloatArrayTestImg(true, 30, 20, 10);
+		final Img<DoubleType> output = ArrayImgs.doubles(30, 20, 10);
+		final RectangleShape largeShape = new RectangleShape(6, false);
+
+		ops.run(MinFilterOp.class, output, input, largeShape,
+			new OutOfBoundsMirrorFactory<>(Boundary.SINGLE));
+
+		assertNeighborhoodExtrema(input, largeShape, output, false);
+	}
+
+	/**
+	 * @see MaxFilterOp
+	 * @see DefaultMaxFilter
+	 */
+	@Test
+	public void testMaxFilterLargeSpan() {
+		final Img<FloatType> input = generateFloatArrayTestImg(true, 300, 7);
+		final Img<DoubleType> output = ArrayImgs.doubles(300, 7);
+		final RectangleShape largeShape = new RectangleShape(4, false);
+
+		ops.run(MaxFilterOp.class, output, input, largeShape,
+			new OutOfBoundsMirrorFactory<>(Boundary.SINGLE));
+
+		assertNeighborhoodExtrema(input, largeShape, output, true);
+	}
+
+	/**
+	 * @see MedianFilterOp
+	 * @see DefaultMedianFilter
+	 */
+	@Test
+	public void testMedianFilterLargeSpan() {
+		final Img<UnsignedShortType> input = ArrayImgs.unsignedShorts(30, 20, 5);
+		final Random random = new Random(0xdeadbeefL);
+		for (final UnsignedShortType t : input) {
+			t.set(random.nextInt(65536));
+		}
+		final Img<DoubleType> output = ArrayImgs.doubles(30, 20, 5);
+		final RectangleShape largeShape = new RectangleShape(4, false);
+
+		ops.run(MedianFilterOp.class, output, input, largeShape,
+			new OutOfBoundsMirrorFactory<>(Boundary.SINGLE));
+
+		assertNeighborhoodMedians(input, largeShape, output);
+	}
+
+	/**
+	 * @see MedianFilterOp
+	 * @see DefaultMedianFilter
+	 */
+	@Test
+	public void testMedianFilterSkipCenter() {
+		final Img<ByteType> input = generateByteArrayTestImg(true, 40, 30);
+		final Img<DoubleType> output = ArrayImgs.doubles(40, 30);
+		final RectangleShape skipShape = new RectangleShape(2, true);
+
+		ops.run(MedianFilterOp.class, output, input, skipShape,
+			new OutOfBoundsMirrorFactory<>(Boundary.SINGLE));
+
+		assertNeighborhoodMedians(input, skipShape, output);
+	}
+
+	// -- Helper methods --
+
+	/** Checks the mean or variance of each neighborhood. */
+	private void assertNeighborhoodStats(final Img<FloatType> input,
+		final RectangleShape rect, final Img<DoubleType> output,
+		final boolean variance)
+	{
+		final Cursor<Neighborhood<FloatType>> neighborhoods = rect.neighborhoods(
+			Views.interval(Views.extendMirrorSingle(input), input)).cursor();
+		final Cursor<DoubleType> outCursor = output.cursor();
+		while (outCursor.hasNext()) {
+			double sum = 0;
+			double sumSq = 0;
+			for (final FloatType t : neighborhoods.next()) {
+				sum += t.getRealDouble();
+				sumSq += t.getRealDouble() * t.getRealDouble();
+			}
+			final long n = neighborhoods.get().size();
+			final double expected = variance ? (sumSq - sum * sum / n) / (n - 1)
+				: sum / n;
+			assertEquals(expected, outCursor.next().get(), 1e-6);
+		}
+	}
+
+	/** Checks the minimum or maximum of each neighborhood. */
+	private void assertNeighborhoodExtrema(final Img<FloatType> input,
+		final RectangleShape rect, final Img<DoubleType> output,
+		final boolean max)
+	{
+		final Cursor<Neighborhood<FloatType>> neighborhoods = rect.neighborhoods(
+			Views.interval(Views.extendMirrorSingle(input), input)).cursor();
+		final Cursor<DoubleType> outCursor = output.cursor();
+		while (outCursor.hasNext()) {
+			double expected = max ? Double.NEGATIVE_INFINITY
+				: Double.POSITIVE_INFINITY;
+			for (final FloatType t : neighborhoods.next()) {
+				expected = max ? Math.max(expected, t.getRealDouble()) : Math.min(
+					expected, t.getRealDouble());
+			}
+			assertEquals(expected, outCursor.next().get(), 0);
+		}
+	}
+
+	/** Checks the median of each neighborhood, as sorted by hand. */
+	private <T extends RealType<T>> void assertNeighborhoodMedians(
+		final Img<T> input, final RectangleShape rect,
+		final Img<DoubleType> output)
+	{
+		final Cursor<Neighborhood<T>> neighborhoods = rect.neighborhoods(Views
+			.interval(Views.extendMirrorSingle(input), input)).cursor();
+		final Cursor<DoubleType> outCursor = output.cursor();
+		while (outCursor.hasNext()) {
+			final ArrayList<Double> values = new ArrayList<>();
+			for (final T t : neighborhoods.next()) {
+				values.add(t.getRealDouble());
+			}
+			Collections.sort(values);
+			assertEquals(values.get(values.size() / 2), outCursor.next().get(), 0);
+		}
+	}
+
 }
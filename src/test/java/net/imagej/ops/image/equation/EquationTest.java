@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.image.equation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import net.imagej.ops.AbstractOpTest;
+import net.imagej.ops.Op;
+import net.imagej.ops.Ops;
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Ops.Image.Equation} ops.
+ */
+public class EquationTest extends AbstractOpTest {
+
+	private static final double EPSILON = 1e-12;
+
+	@Test
+	public void testCompiler() {
+		final long[] p = { 3, 4 };
+		assertCompiled(Math.cos(0.3) + Math.sin(0.4),
+			"Math.cos(0.1*p[0]) + Math.sin(0.1*p[1])", p);
+		assertCompiled(-8, "-(p[0]+1)*2", p);
+		assertCompiled(1, "p[0] % 2", p);
+		assertCompiled(16, "Math.pow(2, p[1])", p);
+		assertCompiled(10, "Math.max(p[0], p[1], 10)", p);
+		assertCompiled(3, "Math.round(2.5)", p);
+		assertCompiled(-2, "Math.round(-2.5)", p);
+		assertCompiled(0, "Math.round(0.49999999999999994)", p);
+		assertCompiled(2 * Math.PI, "2 * Math.PI", p);
+		assertCompiled(Double.NaN, "p[2]", p);
+		assertCompiled(Double.NaN, "p[-1]", p);
+	}
+
+	@Test
+	public void testCompilerLogic() {
+		final long[] p = { 3, 4 };
+		assertCompiled(1, "p[0] < 5 && p[1] >= 3", p);
+		assertCompiled(0, "p[0] == p[1]", p);
+		// NB: As in Javascript, logical operators return one of their operands.
+		assertCompiled(7, "p[0] > 5 || 7", p);
+		assertCompiled(0, "!p[0]", p);
+	}
+
+	@Test
+	public void testCompilerUnsupported() {
+		assertUnsupported("p[0] ^ 2");
+		assertUnsupported("x + 1");
+		assertUnsupported("p[0] +");
+		assertUnsupported("p[0]; p[1]");
+		assertUnsupported("Math.foo(p[0])");
+	}
+
+	@Test
+	public void testMatching() {
+		final Img<DoubleType> img = ArrayImgs.doubles(10, 10);
+		final Op compiled = ops.op(Ops.Image.Equation.class, img, "p[0] + p[1]");
+		assertTrue(compiled instanceof CompiledEquation);
+		final Op js = ops.op(Ops.Image.Equation.class, img, "p[0] ^ p[1]");
+		assertTrue(js instanceof DefaultEquation);
+	}
+
+	@Test
+	public void testEquation() {
+		final Img<DoubleType> img = new CellImgFactory<DoubleType>(32).create(
+			new long[] { 300, 200 }, new DoubleType());
+		ops.image().equation(img, "Math.cos(0.1*p[0]) + Math.sin(0.1*p[1])");
+
+		final Cursor<DoubleType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			final double expected = Math.cos(0.1 * c.getLongPosition(0)) + //
+				Math.sin(0.1 * c.getLongPosition(1));
+			assertEquals(expected, c.get().get(), EPSILON);
+		}
+	}
+
+	@Test
+	public void testEquationOutput() {
+		@SuppressWarnings("unchecked")
+		final IterableInterval<DoubleType> img =
+			(IterableInterval<DoubleType>) ops.run(CompiledEquation.class,
+				"p[0] * p[1]");
+		assertEquals(256 * 256, img.size());
+
+		final Cursor<DoubleType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			assertEquals(c.getLongPosition(0) * c.getLongPosition(1), c.get().get(),
+				0);
+		}
+	}
+
+	// -- Helper methods --
+
+	private void assertCompiled(final double expected, final String equation,
+		final long[] p)
+	{
+		assertEquals(equation, expected, EquationCompiler.compile(equation)
+			.applyAsDouble(p), EPSILON);
+	}
+
+	private void assertUnsupported(final String equation) {
+		try {
+			EquationCompiler.compile(equation);
+			fail("Compiled: " + equation);
+		}
+		catch (final IllegalArgumentException exc) {
+			// NB: Expected.
+		}
+	}
+
+}
@@ -32,14 +32,18 @@ package net.imagej.ops.map;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import net.imagej.ops.AbstractOpTest;
 import net.imagej.ops.Op;
 import net.imagej.ops.Ops;
+import net.imagej.ops.special.computer.AbstractUnaryComputerOp;
 import net.imagej.ops.special.computer.Computers;
 import net.imagej.ops.special.inplace.BinaryInplaceOp;
 import net.imagej.ops.special.inplace.Inplaces;
 import net.imglib2.Cursor;
 import net.imglib2.img.Img;
+import net.imglib2.img.planar.PlanarImgs;
 import net.imglib2.type.numeric.integer.ByteType;
 
 import org.junit.Rule;
@@ -83,6 +87,76 @@ public class MapTest extends AbstractOpTest {
 			assertEquals(ps.get(), 0);
 	}
 
+	@Test
+	public void testIIParallel() {
+		final Img<ByteType> in = generateByteArrayTestImg(true, 200, 200);
+
+		final Op nullary = Computers.nullary(ops, Ops.Math.Zero.class,
+			ByteType.class);
+		ops.run(MapNullaryII.class, in, nullary);
+
+		for (final ByteType ps : in)
+			assertEquals(ps.get(), 0);
+	}
+
+	@Test
+	public void testIIToIIParallel() {
+		final Img<ByteType> in = generateByteArrayTestImg(true, 200, 200);
+		final Img<ByteType> out = generateByteArrayTestImg(false, 200, 200);
+
+		ops.run(MapUnaryComputers.IIToIIParallel.class, out, in, new Negate());
+
+		assertImgNegated(in, out);
+	}
+
+	@Test
+	public void testIIToIIParallelSmall() {
+		final Img<ByteType> in = generateByteArrayTestImg(true, 10, 10);
+		final Img<ByteType> out = generateByteArrayTestImg(false, 10, 10);
+
+		final Negate negate = new Negate();
+		ops.run(MapUnaryComputers.IIToIIParallel.class, out, in, negate);
+
+		assertImgNegated(in, out);
+		// NB: Small inputs are mapped serially, without copies of the op.
+		assertEquals(0, negate.copies.get());
+	}
+
+	@Test
+	public void testIIToIIParallelCell() {
+		final Img<ByteType> in = generateByteTestCellImg(true, new int[] { 16,
+			16 }, 200, 200);
+		final Img<ByteType> out = generateByteTestCellImg(false, new int[] { 16,
+			16 }, 200, 200);
+
+		ops.run(MapUnaryComputers.IIToIIParallel.class, out, in, new Negate());
+
+		assertImgNegated(in, out);
+	}
+
+	@Test
+	public void testIIToIIPlanar() {
+		final Img<ByteType> in = generateByteArrayTestImg(true, 10, 10, 3);
+		final Img<ByteType> out = PlanarImgs.bytes(10, 10, 3);
+
+		ops.run(MapUnaryComputers.IIToII.class, out, in, new Negate());
+
+		assertImgNegated(in, out);
+	}
+
+	@Test
+	public void testIIToRAIPlanar() {
+		final Img<ByteType> in = PlanarImgs.bytes(10, 10, 3);
+		final Img<ByteType> out = generateByteArrayTestImg(false, 10, 10, 3);
+		int i = 0;
+		for (final ByteType px : in)
+			px.set((byte) i++);
+
+		ops.run(MapUnaryComputers.IIToRAI.class, out, in, new Negate());
+
+		assertImgNegated(in, out);
+	}
+
 	@Test
 	public void testIIAndIIInplace() {
 		final Img<ByteType> first = generateByteArrayTestImg(true, 10, 10);
@@ -229,6 +303,17 @@ public class MapTest extends AbstractOpTest {
 		}
 	}
 
+	private static void assertImgNegated(final Img<ByteType> in,
+		final Img<ByteType> out)
+	{
+		final Cursor<ByteType> inCursor = in.cursor();
+		final Cursor<ByteType> outCursor = out.cursor();
+
+		while (inCursor.hasNext()) {
+			assertEquals((byte) -inCursor.next().get(), outCursor.next().get());
+		}
+	}
+
 	private static void assertImgSubOneEquals(final Img<ByteType> in,
 		final Img<ByteType> out)
 	{
@@ -240,4 +325,25 @@ public class MapTest extends AbstractOpTest {
 		}
 	}
 
+	// -- Helper classes --
+
+	/** Negates bytes, counting its independent instances. */
+	private static class Negate extends
+		AbstractUnaryComputerOp<ByteType, ByteType>
+	{
+
+		private final AtomicInteger copies = new AtomicInteger();
+
+		@Override
+		public void compute(final ByteType input, final ByteType output) {
+			output.set((byte) -input.get());
+		}
+
+		@Override
+		public Negate getIndependentInstance() {
+			copies.incrementAndGet();
+			return this;
+		}
+	}
+
 }
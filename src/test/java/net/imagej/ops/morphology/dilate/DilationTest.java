@@ -110,6 +110,32 @@ public class DilationTest extends AbstractOpTest {
 			assertEquals(c1.next().get(), c2.next().get());
 	}
 
+	@Test
+	public void testSingleDilateRectangleBitType() {
+		final Shape shape = new RectangleShape(2, false);
+		@SuppressWarnings("unchecked")
+		final Img<BitType> out1 = (Img<BitType>) ops.run(DefaultDilate.class,
+			Img.class, bitIn, shape, false);
+		final Img<BitType> out2 = Dilation.dilate(bitIn, shape, 1);
+		final Cursor<BitType> c1 = out1.cursor();
+		final Cursor<BitType> c2 = out2.cursor();
+		while (c1.hasNext())
+			assertEquals(c1.next().get(), c2.next().get());
+	}
+
+	@Test
+	public void testSingleDilateRectangleFull() {
+		final Shape shape = new RectangleShape(2, false);
+		@SuppressWarnings("unchecked")
+		final Img<ByteType> out1 = (Img<ByteType>) ops.run(DefaultDilate.class,
+			Img.class, in, shape, true);
+		final Img<ByteType> out2 = Dilation.dilateFull(in, shape, 1);
+		final Cursor<ByteType> c1 = out1.cursor();
+		final Cursor<ByteType> c2 = out2.cursor();
+		while (c1.hasNext())
+			assertEquals(c1.next().get(), c2.next().get());
+	}
+
 	@Test
 	public void testListDilate() {
 		final List<Shape> shapes = new ArrayList<>();
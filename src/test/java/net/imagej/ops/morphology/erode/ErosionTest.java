@@ -105,6 +105,26 @@ public class ErosionTest extends AbstractOpTest {
 		assertIterationsEqual(out1, out2);
 	}
 
+	@Test
+	public void testSingleErodeRectangle() {
+		final Shape shape = new RectangleShape(2, false);
+		@SuppressWarnings("unchecked")
+		final Img<ByteType> out1 = (Img<ByteType>) ops.run(DefaultErode.class,
+			Img.class, in, shape, false);
+		final Img<ByteType> out2 = Erosion.erode(in, shape, 1);
+		assertIterationsEqual(out1, out2);
+	}
+
+	@Test
+	public void testSingleErodeRectangleFull() {
+		final Shape shape = new RectangleShape(2, false);
+		@SuppressWarnings("unchecked")
+		final Img<ByteType> out1 = (Img<ByteType>) ops.run(DefaultErode.class,
+			Img.class, in, shape, true);
+		final Img<ByteType> out2 = Erosion.erodeFull(in, shape, 1);
+		assertIterationsEqual(out1, out2);
+	}
+
 //	@Test
 	public void testListErode() {
 		final List<Shape> shapes = new ArrayList<>();
@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.special;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imagej.ops.AbstractOpTest;
+import net.imagej.ops.Ops;
+import net.imagej.ops.special.computer.Computers;
+import net.imagej.ops.special.computer.UnaryComputerOp;
+import net.imagej.ops.special.function.AbstractUnaryFunctionOp;
+import net.imagej.ops.special.function.UnaryFunctionOp;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link OpHandle}.
+ */
+public class OpHandleTest extends AbstractOpTest {
+
+	@Test
+	public void testMatchedOp() {
+		final OpHandle<UnaryComputerOp<DoubleType, DoubleType>> sqrt = OpHandle.of(
+			Computers.unary(ops, Ops.Math.Sqrt.class, DoubleType.class,
+				DoubleType.class));
+		final DoubleType out = new DoubleType();
+		sqrt.get().compute(new DoubleType(16), out);
+		assertEquals(4, out.get(), 0.0);
+		sqrt.get().compute(new DoubleType(25), out);
+		assertEquals(5, out.get(), 0.0);
+	}
+
+	@Test
+	public void testInstancePerThread() throws InterruptedException,
+		ExecutionException
+	{
+		final BufferedOp op = new BufferedOp();
+		final OpHandle<UnaryFunctionOp<Double, Double>> handle = OpHandle.of(op);
+		assertSame(op, handle.get());
+		assertSame(op, handle.get());
+
+		final ExecutorService es = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<UnaryFunctionOp<Double, Double>>> futures =
+				new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(es.submit(() -> {
+					assertEquals(6.0, handle.get().calculate(3.0), 0.0);
+					return handle.get();
+				}));
+			}
+			for (final Future<UnaryFunctionOp<Double, Double>> future : futures) {
+				assertNotSame(op, future.get());
+			}
+		}
+		finally {
+			es.shutdown();
+		}
+	}
+
+	// -- Helper classes --
+
+	/** A function with a buffer, which thus cannot be shared by threads. */
+	public static class BufferedOp extends AbstractUnaryFunctionOp<Double, Double>
+	{
+
+		private final double[] buffer = new double[1];
+
+		@Override
+		public Double calculate(final Double input) {
+			buffer[0] = 2 * input;
+			return buffer[0];
+		}
+
+		@Override
+		public BufferedOp getIndependentInstance() {
+			return new BufferedOp();
+		}
+	}
+
+}
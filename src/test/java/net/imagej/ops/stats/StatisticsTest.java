@@ -30,11 +30,17 @@
 
 package net.imagej.ops.stats;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import net.imagej.ops.AbstractOpTest;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
@@ -257,6 +263,78 @@ public class StatisticsTest extends AbstractOpTest {
 			0.00001d);
 	}
 
+	@Test
+	public void testQuantileFloat() {
+		final Img<FloatType> img = generateFloatArrayTestImg(true, 37, 23);
+		assertQuantiles(img);
+	}
+
+	@Test
+	public void testQuantileCounting() {
+		// NB: 256 values over 10000 samples, which are hence counted.
+		assertQuantiles(randomlyFilledImg);
+	}
+
+	@Test
+	public void testQuantileSmallInput() {
+		// NB: Too few samples to be counted, and of unknown size.
+		final List<UnsignedByteType> values = new ArrayList<>();
+		for (final int v : new int[] { 7, 3, 250, 3, 0, 99, 42 }) {
+			values.add(new UnsignedByteType(v));
+		}
+		assertQuantiles(values);
+	}
+
+	@Test
+	public void testApproxQuantile() {
+		for (final double q : new double[] { 0.01, 0.5, 0.99 }) {
+			final double value = ((DoubleType) ops.run(DefaultApproxQuantile.class,
+				randomlyFilledImg, q, 0.01)).getRealDouble();
+			assertRankWithin(randomlyFilledImg, q, value, 0.01);
+		}
+	}
+
+	@Test
+	public void testQuantileSketchMerge() {
+		final Img<FloatType> img = generateFloatArrayTestImg(true, 300, 100);
+		final KLLSketch first = new KLLSketch(0.005, 1);
+		final KLLSketch second = new KLLSketch(0.005, 2);
+		long i = 0;
+		for (final FloatType t : img) {
+			(i++ % 3 == 0 ? first : second).add(t.getRealDouble());
+		}
+		first.merge(second);
+
+		Assert.assertEquals(img.size(), first.size());
+		for (final double q : new double[] { 0, 0.01, 0.25, 0.5, 0.75, 0.99, 1 }) {
+			assertRankWithin(img, q, first.quantile(q), 0.005);
+		}
+	}
+
+	@Test
+	public void testQuantileSketchCellImg() {
+		final Img<ByteType> img = generateByteTestCellImg(true, new int[] { 16,
+			16 }, 300, 200);
+		final KLLSketch sketch = ops.stats().quantileSketch(img, 0.01);
+
+		Assert.assertEquals(img.size(), sketch.size());
+		Assert.assertEquals(Byte.MIN_VALUE, sketch.quantile(0), 0);
+		Assert.assertEquals(Byte.MAX_VALUE, sketch.quantile(1), 0);
+		for (final double q : new double[] { 0.01, 0.5, 0.99 }) {
+			assertRankWithin(img, q, sketch.quantile(q), 0.01);
+		}
+	}
+
+	@Test
+	public void testQuantileSketchReproducible() {
+		final Img<FloatType> img = generateFloatArrayTestImg(true, 300, 200);
+		final KLLSketch first = ops.stats().quantileSketch(img, 0.01);
+		final KLLSketch second = ops.stats().quantileSketch(img, 0.01);
+		for (final double q : new double[] { 0.01, 0.25, 0.5, 0.75, 0.99 }) {
+			Assert.assertEquals(first.quantile(q), second.quantile(q), 0);
+		}
+	}
+
 	@Test
 	public void testSkewness() {
 		Assert.assertEquals("Skewness", -0.0012661517853476312, ((DoubleType) ops
@@ -283,4 +361,47 @@ public class StatisticsTest extends AbstractOpTest {
 		Assert.assertEquals("Sum Of Squares", 217588654, ((DoubleType) ops.run(
 			DefaultSumOfSquares.class, randomlyFilledImg)).getRealDouble(), 0.00001d);
 	}
+
+	// -- Helper methods --
+
+	/**
+	 * Checks that the given value is that of a rank within {@code error} times
+	 * the number of values of the rank of the quantile.
+	 */
+	private <T extends RealType<T>> void assertRankWithin(
+		final Iterable<T> values, final double quantile, final double value,
+		final double error)
+	{
+		long below = 0;
+		long equal = 0;
+		long n = 0;
+		for (final T t : values) {
+			if (t.getRealDouble() < value) below++;
+			else if (t.getRealDouble() == value) equal++;
+			n++;
+		}
+		Assert.assertTrue("Quantile " + quantile + " is not a value", equal > 0);
+		final long rank = Math.min((long) (quantile * n), n - 1);
+		final double distance = rank < below ? below - rank : Math.max(0, rank -
+			(below + equal - 1));
+		Assert.assertTrue("Quantile " + quantile + " is off by " + distance +
+			" ranks", distance <= error * n);
+	}
+
+	/** Checks quantiles of the given values against their sorted values. */
+	private <T extends RealType<T>> void assertQuantiles(
+		final Iterable<T> values)
+	{
+		final List<Double> sorted = new ArrayList<>();
+		for (final T t : values) {
+			sorted.add(t.getRealDouble());
+		}
+		Collections.sort(sorted);
+		for (final double q : new double[] { 0, 0.1, 0.25, 0.5, 0.9, 1 }) {
+			final int rank = Math.min((int) (sorted.size() * q), sorted.size() - 1);
+			Assert.assertEquals("Quantile " + q, sorted.get(rank), ((DoubleType) ops
+				.run(DefaultQuantile.class, values, q)).getRealDouble(), 0);
+		}
+	}
+
 }
@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import net.imagej.ops.AbstractOpTest;
+import net.imagej.ops.Environmental;
+import net.imagej.ops.OpEnvironment;
+import net.imagej.ops.thread.chunker.CellChunk;
+import net.imagej.ops.thread.chunker.Chunk;
+import net.imglib2.Cursor;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.ByteType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link CellChunk}.
+ */
+public class CellChunkTest extends AbstractOpTest {
+
+	@Test
+	public void testCellAligned() {
+		final CellImg<ByteType, ?> img = new CellImgFactory<ByteType>(16).create(
+			new long[] { 100, 37, 3 }, new ByteType());
+		assertEquals(7 * 3 * 1, new CellChunk(null, img).numberOfCells());
+
+		final AtomicIntegerArray visits = new AtomicIntegerArray((int) img.size());
+		final AtomicInteger misaligned = new AtomicInteger();
+		final Chunk chunk = new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				if (!isCellStart(img, startIndex) || //
+					!isCellStart(img, startIndex + numSteps)) misaligned.incrementAndGet();
+				for (int i = 0; i < numSteps; i++) {
+					visits.incrementAndGet(startIndex + i * stepSize);
+				}
+			}
+		};
+		final ExecutionContext context = new ExecutionContext(2);
+		try {
+			context.run(new Runnable() {
+
+				@Override
+				public void run() {
+					CellChunk.run(environmental(), chunk, img);
+				}
+			});
+		}
+		finally {
+			context.dispose();
+		}
+
+		assertEquals(0, misaligned.get());
+		for (int i = 0; i < visits.length(); i++) {
+			assertEquals("index " + i, 1, visits.get(i));
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Whether the element at the given index starts a cell, or ends the image. */
+	private static boolean isCellStart(final CellImg<ByteType, ?> img,
+		final int index)
+	{
+		if (index == img.size()) return true;
+		final Cursor<ByteType> cursor = img.localizingCursor();
+		cursor.jumpFwd(index + 1);
+		for (int d = 0; d < img.numDimensions(); d++) {
+			if (cursor.getLongPosition(d) % 16 != 0) return false;
+		}
+		return true;
+	}
+
+	private Environmental environmental() {
+		return new Environmental() {
+
+			@Override
+			public OpEnvironment ops() {
+				return ops;
+			}
+
+			@Override
+			public void setEnvironment(final OpEnvironment env) {
+				// NB: Always the test's environment.
+			}
+		};
+	}
+
+}
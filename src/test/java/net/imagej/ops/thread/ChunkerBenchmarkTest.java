@@ -74,6 +74,12 @@ public class ChunkerBenchmarkTest extends AbstractOpBenchmark {
 		ops.run(RunInterleavedChunker.class, out, in);
 	}
 
+	@Test
+	public void run100MbForkJoin() {
+		generateByteTestImgs(10240);
+		ops.run(RunForkJoinChunker.class, out, in);
+	}
+
 	@Test
 	public void run1MbTest() {
 		generateByteTestImgs(1024);
@@ -86,6 +92,12 @@ public class ChunkerBenchmarkTest extends AbstractOpBenchmark {
 		ops.run(RunInterleavedChunker.class, out, in);
 	}
 
+	@Test
+	public void run1MbForkJoin() {
+		generateByteTestImgs(1024);
+		ops.run(RunForkJoinChunker.class, out, in);
+	}
+
 	//with arrays
 
 	@Test
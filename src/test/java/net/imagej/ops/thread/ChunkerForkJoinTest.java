@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import net.imagej.ops.AbstractOpTest;
+import net.imagej.ops.thread.chunker.Chunk;
+import net.imagej.ops.thread.chunker.ChunkerForkJoin;
+import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imagej.ops.thread.chunker.DefaultChunker;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ChunkerForkJoin}.
+ */
+public class ChunkerForkJoinTest extends AbstractOpTest {
+
+	@Test
+	public void testCoverage() {
+		final int n = 100003;
+		final AtomicIntegerArray visits = new AtomicIntegerArray(n);
+		ops.run(ChunkerForkJoin.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				for (int i = 0; i < numSteps; i++) {
+					visits.incrementAndGet(startIndex + i * stepSize);
+				}
+			}
+		}, (long) n);
+		for (int i = 0; i < n; i++) {
+			assertEquals("index " + i, 1, visits.get(i));
+		}
+	}
+
+	@Test
+	public void testGrainSize() {
+		final AtomicInteger chunks = new AtomicInteger();
+		final AtomicInteger elements = new AtomicInteger();
+		ops.run(ChunkerForkJoin.class, new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				assertTrue(numSteps <= 10);
+				chunks.incrementAndGet();
+				elements.addAndGet(numSteps);
+			}
+		}, 1000L, 10);
+		assertEquals(1000, elements.get());
+		assertTrue(chunks.get() >= 100);
+	}
+
+	@Test
+	public void testException() {
+		final AtomicInteger chunks = new AtomicInteger();
+		try {
+			ops.run(ChunkerForkJoin.class, new Chunk() {
+
+				@Override
+				public void execute(final int startIndex, final int stepSize,
+					final int numSteps)
+				{
+					chunks.incrementAndGet();
+					throw new IllegalStateException("failed at " + startIndex);
+				}
+			}, 1000000L, 1);
+			fail("Expected IllegalStateException");
+		}
+		catch (final IllegalStateException exc) {
+			// NB: Remaining chunks are skipped after the first failure.
+			assertTrue(chunks.get() < 1000000);
+		}
+	}
+
+	@Test
+	public void testExceptionWaitsForChunks() {
+		final AtomicInteger running = new AtomicInteger();
+		try {
+			ops.run(ChunkerForkJoin.class, new Chunk() {
+
+				@Override
+				public void execute(final int startIndex, final int stepSize,
+					final int numSteps)
+				{
+					if (startIndex == 0) throw new IllegalStateException("failed");
+					running.incrementAndGet();
+					try {
+						Thread.sleep(20);
+					}
+					catch (final InterruptedException exc) {
+						Thread.currentThread().interrupt();
+					}
+					running.decrementAndGet();
+				}
+			}, 64L, 1);
+			fail("Expected IllegalStateException");
+		}
+		catch (final IllegalStateException exc) {
+			// NB: Chunks already running finish before the exception propagates.
+			assertEquals(0, running.get());
+		}
+	}
+
+	@Test
+	public void testDefault() {
+		final ChunkerOp chunker = (ChunkerOp) ops.op(ChunkerOp.class, Chunk.class,
+			1L);
+		assertSame(DefaultChunker.class, chunker.getClass());
+	}
+
+	@Test
+	public void testWorkStealing() {
+		final AtomicInteger chunks = new AtomicInteger();
+		final Chunk chunk = new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				chunks.incrementAndGet();
+			}
+		};
+		final ExecutionContext context = new ExecutionContext(2);
+		try {
+			context.run(() -> ops.run(ChunkerOp.class, chunk, 1000L));
+			assertEquals(2, chunks.get());
+
+			// NB: The default chunker delegates to the fork/join chunker.
+			chunks.set(0);
+			context.setWorkStealing(true);
+			context.run(() -> ops.run(ChunkerOp.class, chunk, 1000L));
+			assertTrue(chunks.get() > 2);
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imagej.ops.AbstractOpTest;
+import net.imagej.ops.Environmental;
+import net.imagej.ops.OpEnvironment;
+import net.imagej.ops.thread.chunker.Chunk;
+import net.imagej.ops.thread.chunker.ChunkerForkJoin;
+import net.imagej.ops.thread.chunker.ChunkerOp;
+import net.imagej.ops.thread.chunker.DefaultChunker;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ExecutionContext}.
+ */
+public class ExecutionContextTest extends AbstractOpTest {
+
+	@Test
+	public void testParallelism() {
+		final ExecutionContext context = new ExecutionContext(2);
+		try {
+			final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+			context.run(new Runnable() {
+
+				@Override
+				public void run() {
+					assertSame(context, ExecutionContext.current());
+					assertEquals(2, ExecutionContext.parallelism(null));
+					ops.run(ChunkerOp.class, new Chunk() {
+
+						@Override
+						public void execute(final int startIndex, final int stepSize,
+							final int numSteps)
+						{
+							threads.add(Thread.currentThread());
+							assertSame(context, ExecutionContext.current());
+						}
+					}, 100000L);
+				}
+			});
+			assertNull(ExecutionContext.current());
+			assertTrue(threads.size() <= 2);
+			assertTrue(!threads.contains(Thread.currentThread()));
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	@Test
+	public void testEnvironment() {
+		final ExecutionContext context = new ExecutionContext(1);
+		try {
+			final OpEnvironment env = new ParallelOpEnvironment(ops, context);
+			final Environmental op = env.op(ChunkerOp.class, Chunk.class, 1L);
+			assertSame(context, ExecutionContext.of(op));
+			assertEquals(1, ExecutionContext.parallelism(op));
+			assertNull(ExecutionContext.of(ops.op(ChunkerOp.class, Chunk.class,
+				1L)));
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	/** Tests nested chunkers on a pool of a single thread. */
+	@Test(timeout = 30000)
+	public void testNestedForkJoin() {
+		final ExecutionContext context = new ExecutionContext(1);
+		try {
+			assertEquals(100 * 100, runNested(context, ChunkerForkJoin.class));
+			assertEquals(100 * 100, runNested(context, DefaultChunker.class));
+			context.setWorkStealing(true);
+			assertEquals(100 * 100, runNested(context, ChunkerOp.class));
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	/** Tests nested chunkers on a custom executor of two threads. */
+	@Test(timeout = 30000)
+	public void testNestedExecutor() {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final ExecutionContext context = new ExecutionContext(executor);
+			assertEquals(2, context.getParallelism());
+			assertEquals(100 * 100, runNested(context, ChunkerOp.class));
+			assertEquals(100 * 100, runNested(context, DefaultChunker.class));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Runs chunkers within chunkers, counting the inner elements. */
+	private int runNested(final ExecutionContext context,
+		final Class<? extends ChunkerOp> chunker)
+	{
+		final AtomicInteger count = new AtomicInteger();
+		final Chunk inner = new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				count.addAndGet(numSteps);
+			}
+		};
+		final Chunk outer = new Chunk() {
+
+			@Override
+			public void execute(final int startIndex, final int stepSize,
+				final int numSteps)
+			{
+				for (int i = 0; i < numSteps; i++) {
+					ops.run(chunker, inner, 100L);
+				}
+			}
+		};
+		context.run(new Runnable() {
+
+			@Override
+			public void run() {
+				ops.run(chunker, outer, 100L);
+			}
+		});
+		return count.get();
+	}
+
+}
@@ -86,6 +86,7 @@ import net.imglib2.Cursor;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
 import net.imglib2.algorithm.neighborhood.RectangleShape;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
@@ -98,6 +99,7 @@ import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.ByteType;
 import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -457,6 +459,31 @@ public class LocalThresholdTest extends AbstractOpTest {
 		assertEquals(true, out.firstElement().get());
 	}
 
+	/**
+	 * @see LocalMidGreyThreshold
+	 */
+	@Test
+	public void testLocalMidGreyThresholdAllPixels() {
+		final RectangleShape shape = new RectangleShape(2, false);
+		ops.run(LocalMidGreyThreshold.class, out, in, shape,
+			new OutOfBoundsMirrorFactory<ByteType, Img<ByteType>>(Boundary.SINGLE),
+			1.0);
+
+		final Cursor<Neighborhood<ByteType>> neighborhoods = shape.neighborhoods(
+			Views.interval(Views.extendMirrorSingle(in), in)).cursor();
+		final Cursor<ByteType> centers = in.cursor();
+		for (final BitType t : out) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (final ByteType v : neighborhoods.next()) {
+				min = Math.min(min, v.getRealDouble());
+				max = Math.max(max, v.getRealDouble());
+			}
+			assertEquals(centers.next().getRealDouble() > (max + min) / 2.0 - 1.0, t
+				.get());
+		}
+	}
+
 	/**
 	 * @see LocalMinErrorThreshold
 	 */
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2014 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, University of Konstanz and Brian Northan.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imagej.ops.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imagej.ops.AbstractOpTest;
+import net.imagej.ops.Op;
+import net.imagej.ops.OpInfo;
+import net.imagej.ops.special.function.AbstractUnaryFunctionOp;
+import net.imagej.ops.special.function.Functions;
+import net.imagej.ops.special.function.UnaryFunctionOp;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TracingOpEnvironment} and {@link OpTracer}.
+ */
+public class TracingOpEnvironmentTest extends AbstractOpTest {
+
+	private TracingOpEnvironment env;
+	private OpTracer tracer;
+
+	@Before
+	public void createEnvironment() {
+		final List<OpInfo> infos = new ArrayList<>();
+		infos.add(new OpInfo(Outer.class));
+		infos.add(new OpInfo(Inner.class));
+		env = new TracingOpEnvironment(ops, infos);
+		tracer = env.tracer();
+	}
+
+	@Test
+	public void testFunction() {
+		final UnaryFunctionOp<DoubleType, DoubleType> outer = Functions.unary(env,
+			TraceOuter.class, DoubleType.class, DoubleType.class);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(10.0, outer.calculate(new DoubleType(4)).get(), 0.0);
+		}
+
+		final OpStats outerStats = tracer.stats(Outer.class);
+		assertEquals(3, outerStats.getCalls());
+		assertEquals(1, outerStats.getMatchTime().getCount());
+		assertEquals(1, outerStats.getInitializeTime().getCount());
+		assertEquals(3, outerStats.getAllocatedBytes().getCount());
+
+		// NB: The inner op is matched by the outer one, then called through it.
+		final OpStats innerStats = tracer.stats(Inner.class);
+		assertEquals(3, innerStats.getCalls());
+		assertEquals(1, innerStats.getMatchTime().getCount());
+		assertEquals(6, tracer.getCalls());
+
+		final List<OpTracer.Call> top = tracer.callTree().getChildren();
+		assertEquals(1, top.size());
+		assertEquals(Outer.class.getName(), top.get(0).getName());
+		assertEquals(3, top.get(0).getCalls());
+		final List<OpTracer.Call> nested = top.get(0).getChildren();
+		assertEquals(1, nested.size());
+		assertEquals(Inner.class.getName(), nested.get(0).getName());
+		assertEquals(3, nested.get(0).getCalls());
+		assertTrue(top.get(0).getTotalTime() >= nested.get(0).getTotalTime());
+	}
+
+	@Test
+	public void testRun() {
+		final Object result = env.run(TraceInner.class, new DoubleType(1));
+		assertEquals(2.0, ((DoubleType) result).get(), 0.0);
+		final OpStats stats = tracer.stats(Inner.class);
+		assertEquals(1, stats.getCalls());
+		assertEquals(1, stats.getMatchTime().getCount());
+		assertEquals(1, stats.getAllocatedBytes().getCount());
+	}
+
+	@Test
+	public void testJSON() {
+		Functions.unary(env, TraceOuter.class, DoubleType.class, DoubleType.class)
+			.calculate(new DoubleType(1));
+		final String json = tracer.toJSON();
+		assertTrue(json.startsWith("{\"ops\":[{\"opClass\":\"" + Outer.class
+			.getName() + "\",\"calls\":1,"));
+		assertTrue(json.contains("\"callTree\":{\"name\":\"root\",\"calls\":1,"));
+		assertTrue(json.contains("{\"name\":\"" + Inner.class.getName() +
+			"\",\"calls\":1,"));
+	}
+
+	@Test
+	public void testDisabled() {
+		tracer.setEnabled(false);
+		env.run(TraceInner.class, new DoubleType(1));
+		assertEquals(0, tracer.getCalls());
+		assertTrue(tracer.getStats().isEmpty());
+
+		tracer.setEnabled(true);
+		env.run(TraceInner.class, new DoubleType(1));
+		assertEquals(1, tracer.getCalls());
+		tracer.reset();
+		assertEquals(0, tracer.getCalls());
+		assertTrue(tracer.callTree().getChildren().isEmpty());
+	}
+
+	// -- Helper classes --
+
+	public interface TraceOuter extends Op {
+
+		String NAME = "test.traceOuter";
+	}
+
+	public interface TraceInner extends Op {
+
+		String NAME = "test.traceInner";
+	}
+
+	/** Doubles the result of {@link Inner}. */
+	public static class Outer extends
+		AbstractUnaryFunctionOp<DoubleType, DoubleType> implements TraceOuter
+	{
+
+		private UnaryFunctionOp<DoubleType, DoubleType> inner;
+
+		@Override
+		public void initialize() {
+			inner = Functions.unary(ops(), TraceInner.class, DoubleType.class,
+				DoubleType.class);
+		}
+
+		@Override
+		public DoubleType calculate(final DoubleType input) {
+			return new DoubleType(2 * inner.calculate(input).get());
+		}
+	}
+
+	/** Adds one. */
+	public static class Inner extends
+		AbstractUnaryFunctionOp<DoubleType, DoubleType> implements TraceInner
+	{
+
+		@Override
+		public DoubleType calculate(final DoubleType input) {
+			return new DoubleType(input.get() + 1);
+		}
+	}
+
+}